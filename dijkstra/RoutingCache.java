@@ -3,7 +3,7 @@ package cs455.overlay.dijkstra;
 import cs455.overlay.node.Node;
 import cs455.overlay.wireformats.LinkWeights;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.LinkedList;
 
 /**
@@ -12,6 +12,9 @@ import java.util.LinkedList;
  * MessagingNode receives. This class also facilitates the re-building of
  * the cache with a new LinkWeights message by over-writing the old message
  * and calling buildCache() again.
+ *
+ * Nodes are known by the indices the Registry assigned them, as the LinkWeights message lists them,
+ * so a route is found by an array load and is already in the form a PayloadMessage carries it.
  */
 public class RoutingCache
 {
@@ -26,11 +29,16 @@ public class RoutingCache
     private LinkWeights _linkWeights;
 
     /**
-     * HashMap to hash node ID's to their shortest path. Shortest path will be stored
-     * in the form of  "A C B D" hashed to D; where A,B,C, and D are node ID's, separated by tab
-     * characters.
+     * int array of the shortest path to each node, by the node's index. Shortest path will be stored
+     * in the form of {C, B, D} at D's index, for the path A C B D from us (A); where A, B, C and D are
+     * node indices. null where there is no route.
      */
-    private HashMap<String, LinkedList<String>> _routing;
+    private int[][] _routing;
+
+    /**
+     * int array of the indices of the nodes we have a route to
+     */
+    private int[] _sinks;
 
     /**
      * Constructor for the RoutingCache class
@@ -42,7 +50,8 @@ public class RoutingCache
     {
         _node = callingNode;
         _linkWeights = linkWeights;
-        _routing = new HashMap<String, LinkedList<String>>();
+        _routing = new int[0][];
+        _sinks = new int[0];
 
 
         // build the cache for this link weight
@@ -74,13 +83,23 @@ public class RoutingCache
          */
         String[] tokens;
 
+        /**
+         * int array of the routes being built, by the index of the node they go to
+         */
+        int[][] routing = new int[getLinkWeights().getNodeIDs().size()][];
+
+        /**
+         * ArrayList of the indices of the nodes a route has been built to
+         */
+        ArrayList<Integer> sinks = new ArrayList<Integer>();
+
         // find the shortest paths from this node
         dijkstra.getShortestPath().execute(new Vertex(getNode().getID()));
 
 
         /**
-         * For every node in the overlay we need to construct their shortest paths and hash
-         * them to the node's ID for later retrieval. Because the link weights message is generic
+         * For every node in the overlay we need to construct their shortest paths and store
+         * them at the node's index for later retrieval. Because the link weights message is generic
          * and constructed:
          *
          * sourceID targetID
@@ -98,8 +117,10 @@ public class RoutingCache
              */
             tokens = nodeInfo.split("\t");
 
+            int sinkIndex = getLinkWeights().getNodeIndex(tokens[0]);
+
             // IF the current vertex is not this node
-            if ((!tokens[0].equals(getNode().getID())) && (!getRoutingMap().containsKey(tokens[0])))
+            if ((!tokens[0].equals(getNode().getID())) && routing[sinkIndex] == null)
             {
 
                 shortestPath = dijkstra.getShortestPath().getPath(new Vertex(tokens[0]));
@@ -113,24 +134,27 @@ public class RoutingCache
 
                 /**
                  * Then while we're at it, lets convert this linked list of Vertices to
-                 * Strings to make it more clean and convenient for the caller.
+                 * node indices, the way a PayloadMessage carries them.
                  */
-                LinkedList<String> path = new LinkedList<String>();
+                int[] path = new int[shortestPath.size()];
+
+                int hop = 0;
 
                 for (Vertex v : shortestPath)
-                    path.add(v.toString());
+                    path[hop++] = getLinkWeights().getNodeIndex(v.toString());
 
 
                 /**
-                 * Hash the String version of the shortest path to this node
+                 * Store the shortest path to this node at its index
                  */
-                _routing.put(tokens[0], path);
+                routing[sinkIndex] = path;
+                sinks.add(sinkIndex);
 
                 System.out.println("Node: " + tokens[0]);
 
-                for(String s : path)
+                for(Vertex v : shortestPath)
                 {
-                    System.out.println("\t" + s);
+                    System.out.println("\t" + v);
                 }
 
             }
@@ -138,22 +162,31 @@ public class RoutingCache
 
         }
 
+        _sinks = new int[sinks.size()];
+
+        for (int i = 0; i < _sinks.length; ++i)
+            _sinks[i] = sinks.get(i);
+
+        _routing = routing;
+
     }
 
 
     /**
-     * Method to return a String containing the shortest path to the given sink node.
+     * Method to return the shortest path to the given sink node.
      *
-     * @param sinkID <code>String</code> denoting the ID of the node a route is requested to.
-     * @return <code>LinkedList<Vertex></code> containing the shortest path to the sink node.
+     * @param sinkIndex <code>int</code> denoting the index of the node a route is requested to.
+     * @return <code>int[]</code> containing the indices of the nodes on the shortest path to the sink
+     * node, the sink included and this node not; null if there is none.
      */
-    public LinkedList<String> getRoute(String sinkID)
+    public int[] getRoute(int sinkIndex)
     {
+        int[][] routing = _routing;
 
         /**
-         * return the linked list shortest path
+         * return the shortest path
          */
-        return getRoutingMap().get(sinkID);
+        return (sinkIndex >= 0 && sinkIndex < routing.length) ? routing[sinkIndex] : null;
 
     }
 
@@ -172,8 +205,8 @@ public class RoutingCache
         return _node;
     }
 
-    public HashMap<String, LinkedList<String>> getRoutingMap()
+    public int[] getSinks()
     {
-        return _routing;
+        return _sinks;
     }
 }
@@ -0,0 +1,254 @@
+package cs455.overlay.node;
+
+import cs455.overlay.transport.Connection;
+import cs455.overlay.transport.ConnectionFactory;
+import cs455.overlay.transport.Link;
+import cs455.overlay.transport.Listener;
+import cs455.overlay.transport.WaitStrategy;
+import cs455.overlay.wireformats.Event;
+import cs455.overlay.wireformats.EventFactory;
+import cs455.overlay.wireformats.LinkPing;
+import cs455.overlay.wireformats.LinkPong;
+import cs455.overlay.wireformats.Protocol;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A LatencyBenchmark class to measure what the wait strategies (overlay.wait.receive and
+ * overlay.wait.send, see WaitStrategy) cost and buy on the selected transport. Two nodes in one JVM
+ * bounce a LinkPing/LinkPong back and forth over a Link, one at a time, each answer sent from the
+ * receiving loop, so every round trip goes through two receive loops and two send loops. It prints
+ * the round trip time percentiles, the CPU used while the ping pong is running, and the CPU used
+ * while the Link sits idle afterwards.
+ *
+ * Usage: java [-Doverlay.wait.receive=..] [-Doverlay.wait.send=..] cs455.overlay.node.LatencyBenchmark
+ *        [round trips] [port]
+ */
+public class LatencyBenchmark
+{
+    /**
+     * long for the milliseconds the Link is left idle to measure the CPU used doing nothing
+     */
+    private static final long IDLE_MILLIS = 2000;
+
+
+    /**
+     * A node at one end of the ping pong
+     */
+    private static class Endpoint implements Node
+    {
+        /**
+         * String of the node's ID
+         */
+        private final String _ID;
+
+        /**
+         * ConcurrentHashMap of the Links to answer on, by the connection a ping came over
+         */
+        private final ConcurrentHashMap<Connection, Link> _links;
+
+        /**
+         * long array of the round trip times measured, in nanoseconds; null at the answering end
+         */
+        private final long[] _rtts;
+
+        /**
+         * int for the round trips measured so far
+         */
+        private int _measured;
+
+        /**
+         * CountDownLatch counted down once every round trip has been measured
+         */
+        private final CountDownLatch _done;
+
+        /**
+         * Link the pings are sent on; null at the answering end
+         */
+        private volatile Link _link;
+
+
+        private Endpoint(String ID, int roundTrips)
+        {
+            _ID = ID;
+            _links = new ConcurrentHashMap<Connection, Link>();
+            _rtts = (roundTrips > 0) ? new long[roundTrips] : null;
+            _done = new CountDownLatch(1);
+        }
+
+        /**
+         * Method to send the next ping.
+         *
+         * @param sequence <code>int</code> of the round trip.
+         */
+        private void ping(int sequence)
+        {
+            LinkPing linkPing = (LinkPing) EventFactory.getFactoryInstance().createEvent(Protocol.LINK_PING,
+                    "localhost", 0, _ID);
+
+            linkPing.setSequence(sequence);
+            linkPing.setSentNanos(System.nanoTime());
+
+            _link.send(linkPing.getBytes());
+        }
+
+        public void onEvent(Connection connection, Event event) throws IOException
+        {
+            // IF it is a ping, send it back on the Link it came over
+            if (event.getType() == Protocol.LINK_PING)
+            {
+                LinkPing linkPing = (LinkPing) event;
+
+                Link link = _links.get(connection);
+
+                // IF this is the first ping over the connection
+                if (link == null)
+                {
+                    link = new Link(connection, _ID, linkPing.getID());
+                    _links.put(connection, link);
+                }
+
+                LinkPong linkPong = (LinkPong) EventFactory.getFactoryInstance().createEvent(Protocol.LINK_PONG,
+                        "localhost", 0, _ID);
+
+                linkPong.setSequence(linkPing.getSequence());
+                linkPong.setSentNanos(linkPing.getSentNanos());
+
+                link.send(linkPong.getBytes());
+            }
+            // ELSE IF it answers our ping, measure it and send the next
+            else if (event.getType() == Protocol.LINK_PONG)
+            {
+                _rtts[_measured++] = System.nanoTime() - ((LinkPong) event).getSentNanos();
+
+                if (_measured < _rtts.length)
+                    ping(_measured);
+                else
+                    _done.countDown();
+            }
+        }
+
+        public void registerConnection(Connection connection, String sourceID, String targetID)
+        {
+
+        }
+
+        public void deregisterConnection(String ID)
+        {
+
+        }
+
+        public void connectionLost(Connection connection, IOException cause)
+        {
+
+        }
+
+        public String getID()
+        {
+            return _ID;
+        }
+    }
+
+
+    /**
+     * main method
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int roundTrips = 20000;
+        int port = 5200;
+
+        try
+        {
+            if (args.length > 0)
+                roundTrips = Integer.parseInt(args[0]);
+            if (args.length > 1)
+                port = Integer.parseInt(args[1]);
+        }
+        catch (NumberFormatException e)
+        {
+            System.err.println("Usage: java LatencyBenchmark [round trips] [port]");
+            System.exit(1);
+        }
+
+        Endpoint answering = new Endpoint("answering", 0);
+        Endpoint pinging = new Endpoint("pinging", roundTrips);
+
+        Listener listener = ConnectionFactory.listen(port, answering);
+        listener.start();
+
+        Connection connection = ConnectionFactory.connect(listener.getLocalHostName(), listener.getLocalPort(),
+                pinging);
+
+        pinging._link = new Link(connection, pinging.getID(), answering.getID());
+
+        long cpuStart = processCpuNanos();
+        long start = System.nanoTime();
+
+        pinging.ping(0);
+
+        // IF the round trips didn't all come back
+        if (!pinging._done.await(10, TimeUnit.MINUTES))
+        {
+            System.err.println("LatencyBenchmark gave up after " + pinging._measured + " round trips.");
+            System.exit(1);
+        }
+
+        long busyNanos = System.nanoTime() - start;
+        long busyCpuNanos = processCpuNanos() - cpuStart;
+
+        cpuStart = processCpuNanos();
+        start = System.nanoTime();
+
+        Thread.sleep(IDLE_MILLIS);
+
+        long idleNanos = System.nanoTime() - start;
+        long idleCpuNanos = processCpuNanos() - cpuStart;
+
+        // leave out the first tenth, while the JIT is still warming up
+        long[] rtts = Arrays.copyOfRange(pinging._rtts, roundTrips / 10, roundTrips);
+        Arrays.sort(rtts);
+
+        System.out.printf("receive=%s send=%s transport=%s: rtt p50 %.1f us, p99 %.1f us, p99.9 %.1f us, " +
+                        "max %.1f us; %.1f us CPU per round trip, %.2f cores busy, %.2f cores idle%n",
+                WaitStrategy.RECEIVE, WaitStrategy.SEND, System.getProperty("overlay.transport", "tcp"),
+                percentile(rtts, 0.50), percentile(rtts, 0.99), percentile(rtts, 0.999),
+                rtts[rtts.length - 1] / 1e3, busyCpuNanos / 1e3 / roundTrips,
+                (double) busyCpuNanos / busyNanos, (double) idleCpuNanos / idleNanos);
+
+        System.exit(0);
+    }
+
+    /**
+     * @param sorted   <code>long[]</code> of sorted round trip times in nanoseconds.
+     * @param fraction <code>double</code> of the percentile, as a fraction.
+     * @return <code>double</code> of the round trip time at the percentile, in microseconds.
+     */
+    private static double percentile(long[] sorted, double fraction)
+    {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e3;
+    }
+
+    /**
+     * @return <code>long</code> of the CPU time the whole JVM has used, in nanoseconds.
+     */
+    private static long processCpuNanos()
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        // IF the JVM can tell us the process's CPU time
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+
+        return 0;
+    }
+
+}
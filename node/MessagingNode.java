@@ -1,18 +1,30 @@
 package cs455.overlay.node;
 
 import cs455.overlay.dijkstra.RoutingCache;
+import cs455.overlay.transport.Connection;
+import cs455.overlay.transport.ConnectionFactory;
+import cs455.overlay.transport.DatagramEndpoint;
+import cs455.overlay.transport.FrameRelay;
 import cs455.overlay.transport.Link;
-import cs455.overlay.transport.TCPReceiverThread;
+import cs455.overlay.transport.LinkStripe;
+import cs455.overlay.transport.Listener;
+import cs455.overlay.transport.SharedMemoryConnection;
 import cs455.overlay.transport.TCPSender;
-import cs455.overlay.transport.TCPServerThread;
+import cs455.overlay.util.LinkProber;
 import cs455.overlay.util.NodeMessageGenerator;
+import cs455.overlay.util.OverlayThreadFactory;
 import cs455.overlay.util.Statics;
 import cs455.overlay.wireformats.*;
 
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.Random;
 import java.util.Scanner;
 
 
@@ -22,7 +34,7 @@ import java.util.Scanner;
 *
 * @author Aaron Hartman
 */
-public class MessagingNode implements Node
+public class MessagingNode implements Node, FrameRelay
 {
     /**
      * String for the initial Registry address to connect to
@@ -35,19 +47,67 @@ public class MessagingNode implements Node
     private int _initialRegistryPort;
 
     /**
-     * ServerSocket to be passed to the TCPServerThread
+     * Listener to listen for incoming communications
      */
-    private ServerSocket _serverSocket;
+    private Listener _listener;
 
     /**
-     * ServerThread to listen for incoming communications
+     * Hash map for the links to the current node
      */
-    private TCPServerThread _serverThread;
+    private ConcurrentHashMap<String, Link> _registeredNodesMap;
 
     /**
-     * Hash map for the links to the current node
+     * Hash map from each Link's connection back to the Link, to find the Link a message arrived on
+     */
+    private ConcurrentHashMap<Connection, Link> _linksByConnection;
+
+    /**
+     * Link array of the Links to other nodes by the index the Registry assigned each node, so the Link
+     * to a payload message's next hop is an array load; null where we have no Link to the node
+     */
+    private volatile Link[] _indexedLinks = new Link[0];
+
+    /**
+     * Hash map of the index the Registry assigned every node we know of, by its ID
+     */
+    private ConcurrentHashMap<String, Integer> _nodeIndices;
+
+    /**
+     * Hash map of shared memory rings agreed on a connection, waiting for the Link to be registered
+     */
+    private HashMap<Connection, SharedMemoryConnection> _pendingRings;
+
+    /**
+     * Hash map of the capabilities the node at the other end of a connection sent, waiting for the Link to be registered
+     */
+    private HashMap<Connection, LinkCapabilities> _peerCapabilities;
+
+    /**
+     * DatagramEndpoint payload messages are sent and received on; null if they go over the Links
+     */
+    private DatagramEndpoint _datagramEndpoint;
+
+    /**
+     * Hash map of the connection each Link being resumed is being resumed over, by the ID of the node
+     * it is to; only kept at the end that reconnects
+     */
+    private HashMap<String, Connection> _resumeAttempts;
+
+    /**
+     * Hash set of the IDs of the nodes whose Links have a thread resuming them
+     */
+    private HashSet<String> _resuming;
+
+    /**
+     * Object locked while a Link is suspended or resumed. It isn't the node itself, so a Link can be
+     * resumed while a control message waits for room in its queues.
+     */
+    private final Object _resumeLock = new Object();
+
+    /**
+     * LinkProber measuring the round trip time of our Links; null until we are registered
      */
-    private HashMap<String, Link> _registeredNodesMap;
+    private LinkProber _linkProber;
 
     /**
      * int to represent the number of connections the node has
@@ -80,6 +140,11 @@ public class MessagingNode implements Node
      */
     private String _registryID;
 
+    /**
+     * int for the index the Registry assigned us; -1 until we are registered
+     */
+    private int _nodeIndex;
+
     /**
      * MessagingNodesList containing all of the connections this node is supposed to connect with.
      */
@@ -126,7 +191,13 @@ public class MessagingNode implements Node
     {
         _initialRegistryAddress = address;
         _initialRegistryPort = portNum;
-        _registeredNodesMap = new HashMap<String, Link>();
+        _registeredNodesMap = new ConcurrentHashMap<String, Link>();
+        _linksByConnection = new ConcurrentHashMap<Connection, Link>();
+        _nodeIndices = new ConcurrentHashMap<String, Integer>();
+        _pendingRings = new HashMap<Connection, SharedMemoryConnection>();
+        _peerCapabilities = new HashMap<Connection, LinkCapabilities>();
+        _resumeAttempts = new HashMap<String, Connection>();
+        _resuming = new HashSet<String>();
 
         _numLinks = 0;
 
@@ -136,9 +207,11 @@ public class MessagingNode implements Node
 
         try
         {
-            _serverSocket = new ServerSocket(0);
+            _listener = ConnectionFactory.listen(0, this);
 
-            _serverThread = new TCPServerThread(_serverSocket, this);
+            // IF payload messages are to go as datagrams, listen for them on our port number
+            if (Statics.DATAGRAM && !ConnectionFactory.isInMemory())
+                openDatagramEndpoint(_listener.getLocalPort());
 
 
 
@@ -151,9 +224,10 @@ public class MessagingNode implements Node
 
 
         _listeningIP = "";
-        _listeningPort = _serverSocket.getLocalPort();
+        _listeningPort = _listener.getLocalPort();
         _ID = "";
         _registryID = "";
+        _nodeIndex = -1;
         _messagingNodeList = null;
         _linkWeights = null;
         _routing = null;
@@ -201,8 +275,7 @@ public class MessagingNode implements Node
      */
     private void run()
     {
-        initializer();
-        registerWithRegistry(_initialRegistryAddress, _initialRegistryPort);
+        start();
 
         /**
          * Scanner object for user input
@@ -253,7 +326,7 @@ public class MessagingNode implements Node
 
                         TCPSender sender = new TCPSender(new Socket("129.82.46.221", 5000));
 
-                        sender.sendData(nodeRegistrationRequest.getBytes());
+                        sender.sendEvent(nodeRegistrationRequest);
 
                     }
                     catch( IOException ioe)
@@ -270,19 +343,133 @@ public class MessagingNode implements Node
 
                 }
             }
+            // ELSE process the two word commands
+            else
+            {
+                // IF the command was reset-link
+                if (commands[0].equals("reset-link"))
+                    resetLink(commands[1]);
+                // ELSE invalid two word command
+                else
+                    System.err.println("Two-word MessagingNode commands can only be one of \n" +
+                            "[reset-link <node ID>].");
+            }
+        }
+
+    }
+
+
+    /**
+     * Method to start listening for other MessagingNodes and register with the registry.
+     */
+    public void start()
+    {
+        initializer();
+        registerWithRegistry(_initialRegistryAddress, _initialRegistryPort);
+    }
+
+
+    /**
+     * Method to be signaled with a received message. Payload messages are handled right away on the
+     * thread that received them; control messages are handled one at a time, so a control message
+     * never waits for the payload messages being received (or relayed) on other Links.
+     *
+     * @param connection <code>Connection</code> the message was received on. Contains
+     *                   a connection to the message sender.
+     * @param event      <code>Event</code> of the incoming message.
+     */
+    public void onEvent(Connection connection, Event event) throws IOException
+    {
+        // IF it is a payload message, it is data rather than control
+        if (event.getType() == Protocol.PAYLOAD_MESSAGE)
+        {
+            // process the payload message
+            processPayload((PayloadMessage) event);
+
+            // grant the sender more credit if it is time to
+            grantCredits(connection);
+
+            return;
+        }
+
+        // IF it is a probe of the link, answer at once; waiting on other control messages would skew it
+        if (event.getType() == Protocol.LINK_PING || event.getType() == Protocol.LINK_PONG)
+        {
+            processProbe(connection, event);
+
+            return;
+        }
+
+        // IF the other end acknowledges frames it has received over a Link, we can let go of them
+        if (event.getType() == Protocol.LINK_ACK)
+        {
+            Link link = (connection == null) ? null : _linksByConnection.get(connection);
+
+            if (link != null && link.getSession() != null)
+                link.getSession().acknowledged(((LinkAck) event).getReceived());
+
+            return;
+        }
+
+        // IF the other end is resuming a Link over a new connection
+        if (event.getType() == Protocol.LINK_RESUME)
+        {
+            processResume(connection, (LinkResume) event);
+
+            return;
         }
 
+        // IF our messages have all been generated, let them leave before we report the task complete
+        if (event.getType() == Protocol.TRAFFIC_SUMMARY)
+            awaitDataDrained();
+
+        onControlEvent(connection, event);
     }
 
+    /**
+     * Private method to handle a LinkPing or LinkPong probe. A LinkPing is answered with a LinkPong over
+     * the same Link; a LinkPong's round trip time is folded into the Link it came back on.
+     *
+     * @param connection <code>Connection</code> the probe was received on.
+     * @param event      <code>Event</code> of the LinkPing or LinkPong.
+     */
+    private void processProbe(Connection connection, Event event)
+    {
+        /**
+         * Link the probe came over
+         */
+        Link link = (connection == null) ? null : _linksByConnection.get(connection);
+
+        // IF the link isn't registered (yet), there is nothing to answer on or measure
+        if (link == null)
+            return;
+
+        // IF it is a probe from the other end, send it back as it is
+        if (event.getType() == Protocol.LINK_PING)
+        {
+            LinkPing linkPing = (LinkPing) event;
+
+            LinkPong linkPong = (LinkPong) EventFactory.getFactoryInstance().createEvent(Protocol.LINK_PONG,
+                    getListeningIP(), getListeningPort(), getID());
+
+            linkPong.setSequence(linkPing.getSequence());
+            linkPong.setSentNanos(linkPing.getSentNanos());
+
+            link.send(linkPong.getBytes());
+        }
+        // ELSE it is the answer to one of ours
+        else
+            link.recordRtt(System.nanoTime() - ((LinkPong) event).getSentNanos());
+    }
 
     /**
-     * Method to be signaled with a received message
+     * Private method to handle a received control message.
      *
-     * @param receiverThread <code>TCPReceiverThread</code> of the receiver associated with the message. Contains
-     *                       a socket connection to the message sender.
-     * @param event          <code>Event</code> of the incoming message.
+     * @param connection <code>Connection</code> the message was received on. Contains
+     *                   a connection to the message sender.
+     * @param event      <code>Event</code> of the incoming message.
      */
-    public synchronized void onEvent(TCPReceiverThread receiverThread, Event event) throws IOException
+    private synchronized void onControlEvent(Connection connection, Event event) throws IOException
     {
 
 
@@ -311,9 +498,19 @@ public class MessagingNode implements Node
                     _registryID = registrationResponse.
                             getID();
 
+                    // store the index we were assigned
+                    _nodeIndex = registrationResponse.getNodeIndex();
+
                     // register the connection
-                    registerConnection(receiverThread, getID(), registrationResponse.getID());
+                    registerConnection(connection, getID(), registrationResponse.getID());
 
+                    // IF our links are to be probed, start measuring them
+                    if (Statics.PROBE_INTERVAL_MILLIS > 0)
+                    {
+                        _linkProber = new LinkProber(getRegisteredNodesMap(), getRegistryID(), getListeningIP(),
+                                getListeningPort(), getID());
+                        _linkProber.start();
+                    }
                 }
 
                 break;
@@ -335,6 +532,24 @@ public class MessagingNode implements Node
                 processLinkWeights(linkWeights);
 
 
+                break;
+            case Protocol.LINK_EMULATION:
+
+                // convert the event to the appropriate type
+                LinkEmulation linkEmulation = (LinkEmulation) event;
+
+                // FOR each of our links to another node
+                for (Link link : getRegisteredNodesMap().values())
+                {
+                    // IF the link is to the registry, or the emulation is for a different link
+                    if (link.getTargetID().equals(getRegistryID()) || (!linkEmulation.getTargetID().isEmpty() &&
+                            !linkEmulation.getTargetID().equals(link.getTargetID())))
+                        continue;
+
+                    link.emulate(linkEmulation.getDelayMicros(), linkEmulation.getJitterMicros(),
+                            linkEmulation.getBandwidthBytes(), linkEmulation.getLossPerMillion());
+                }
+
                 break;
             case Protocol.MESSAGING_NODE_CONNECTION_REQUEST:
 
@@ -352,7 +567,7 @@ public class MessagingNode implements Node
                     System.out.println("Should not be here. (node already registered)");
                     response = "Error! Node has been previously registered with this MessagingNode [ID: " + getID() +
                             "]!";
-                    registerResponse(nodeRegistrationRequest, false, response);
+                    registerResponse(connection, nodeRegistrationRequest, false, response);
                 }
                 else
                 {
@@ -362,7 +577,7 @@ public class MessagingNode implements Node
                     response = "Registration request successful. The number of messaging nodes currently " +
                             "connected to this node [ID: " + getID() + "] is " + getNumLinks() + ".";
 
-                    registerResponse(nodeRegistrationRequest, true, response);
+                    registerResponse(connection, nodeRegistrationRequest, true, response);
 
 //                    try
 //                    {
@@ -377,6 +592,23 @@ public class MessagingNode implements Node
 
                 }
 
+                break;
+            case Protocol.STRIPE_JOIN:
+
+                // convert the event to the appropriate type
+                StripeJoin stripeJoin = (StripeJoin) event;
+
+                // IF we have no link to the node for the connection to be a stripe of
+                if (!getRegisteredNodesMap().containsKey(stripeJoin.getID()))
+                {
+                    System.err.println("Stripe " + stripeJoin.getStripe() + " from unregistered node " +
+                            stripeJoin.getID() + " refused.");
+                    connection.close();
+                    break;
+                }
+
+                registerConnection(connection, getID(), stripeJoin.getID());
+
                 break;
             case Protocol.MESSAGING_NODE_CONNECTION_RESPONSE:
 
@@ -394,7 +626,10 @@ public class MessagingNode implements Node
                 // IF the status was successful
                 if (nodeRegistrationResponse.getStatus())
                 {
-                    registerConnection(receiverThread, getID(), nodeRegistrationResponse.getID());
+                    registerConnection(takeRing(connection), getID(), nodeRegistrationResponse.getID());
+
+                    // spread the new link over extra connections, if it is to be striped
+                    openStripes(nodeRegistrationResponse.getID());
 
 //                    try
 //                    {
@@ -408,7 +643,10 @@ public class MessagingNode implements Node
 //                    test(nodeRegistrationResponse.getID());
                 }
                 else
+                {
+                    dropRing(connection);
                     System.err.println(nodeRegistrationResponse.getDescription());
+                }
 
 
                 break;
@@ -427,14 +665,54 @@ public class MessagingNode implements Node
                 taskInitiate();
 
                 break;
-            case Protocol.PAYLOAD_MESSAGE:
+            case Protocol.SHARED_MEMORY_OFFER:
+
+                // convert the event to the appropriate type
+                SharedMemoryOffer sharedMemoryOffer = (SharedMemoryOffer) event;
+
+                acceptRing(connection, sharedMemoryOffer);
+
+                break;
+            case Protocol.SHARED_MEMORY_RESPONSE:
+
+                // convert the event to the appropriate type
+                SharedMemoryResponse sharedMemoryResponse = (SharedMemoryResponse) event;
+
+                // IF the other node could not use the ring we offered, the link stays on TCP
+                if (!sharedMemoryResponse.getStatus())
+                    dropRing(connection);
+
+                // ELSE both of us have it mapped, so the file itself is no longer needed
+                else if (_pendingRings.containsKey(connection))
+                    _pendingRings.get(connection).unlink();
+
+                break;
+            case Protocol.LINK_CAPABILITIES:
 
                 // convert the event to the appropriate type
-                PayloadMessage payloadMessage = (PayloadMessage) event;
+                LinkCapabilities linkCapabilities = (LinkCapabilities) event;
 
-                // process the payload message
-                processPayload(payloadMessage);
+                // keep what the other node can do for when its Link is registered
+                _peerCapabilities.put(connection, linkCapabilities);
+
+                // IF the other node dialed us, tell it what we can do
+                if (!linkCapabilities.getReply())
+                    sendCapabilities(connection, true);
+
+                break;
+            case Protocol.FLOW_CREDIT:
+
+                // convert the event to the appropriate type
+                FlowCredit flowCredit = (FlowCredit) event;
+
+                /**
+                 * Link the credits were granted on
+                 */
+                Link creditedLink = _linksByConnection.get(connection);
 
+                // IF the link is known, the node at the other end may send it more payload messages
+                if (creditedLink != null)
+                    creditedLink.grantCredits(flowCredit.getCredits());
 
                 break;
             case Protocol.TRAFFIC_SUMMARY:
@@ -451,6 +729,10 @@ public class MessagingNode implements Node
                 trafficSummary.setIpAddress(getRegisteredNodesMap().get(getRegistryID()).getHostname());
                 trafficSummary.setPort(getRegisteredNodesMap().get(getRegistryID()).getPort());
 
+                // IF payload messages went as datagrams, send the last ones before we say we are done
+                if (_datagramEndpoint != null)
+                    _datagramEndpoint.flushAll();
+
                 _trafficSummary = trafficSummary;
 
                 /**
@@ -477,11 +759,41 @@ public class MessagingNode implements Node
                 _trafficSummary.setNumReceived(getReceiveTracker());
                 _trafficSummary.setReceivedSummation(getReceiveSummation());
                 _trafficSummary.setNumRelayed(getRelayedTracker());
+
+                // IF payload messages came as datagrams, report the ones that didn't make it
+                if (_datagramEndpoint != null)
+                {
+                    _trafficSummary.setNumLost((int) _datagramEndpoint.getLost());
+                    _trafficSummary.setNumReordered((int) _datagramEndpoint.getReordered());
+                }
                 //???????????????????????????????????????????????????????????????????????
 
                 // send the message
                 getRegisteredNodesMap().get(getRegistryID()).send(_trafficSummary.getBytes());
 
+                // report how flow control treated each link
+                for (Link link : getRegisteredNodesMap().values())
+                {
+                    if (link.getFlowControl() != null && !link.getTargetID().equals(getRegistryID()))
+                        System.out.println("Flow control to " + link.getTargetID() + ": " + link.getFlowControl());
+
+                    if (link.getCompressor() != null)
+                        System.out.println("Compression to " + link.getTargetID() + ": " + link.getCompressor());
+
+                    if (link.getRttNanos() != 0)
+                        System.out.printf("RTT to %s: %.1f us%n", link.getTargetID(), link.getRttNanos() / 1e3);
+
+                    if (link.getEmulator() != null)
+                        System.out.println("Emulation to " + link.getTargetID() + ": " + link.getEmulator());
+
+                    if (link.getSession() != null && link.getSession().getResumes() > 0)
+                        System.out.println("Session to " + link.getTargetID() + ": " + link.getSession());
+
+                    if (link.getCutThroughCount() > 0)
+                        System.out.println("Cut through to " + link.getTargetID() + ": " + link.getCutThroughCount() +
+                                " frames");
+                }
+
                 break;
             default:
                 System.err.println("Not in OnEvent on MessagingNode");
@@ -495,13 +807,26 @@ public class MessagingNode implements Node
      * Method to register a connection between the current node and another. To register a
      * connection, we must create a new Link and add it to our list of connected nodes.
      *
-     * @param receiverThread <code>TCPReceiverThread</code> of the receiver associated with the message. Contains a
-     *                       socket connection to the message sender.
-     * @param sourceID       <code>String</code> identifier of the owner of this Link (the current Node).
-     * @param targetID       <code>String</code> identifier this Link is to.
+     * @param connection <code>Connection</code> the message was received on. Contains a
+     *                   connection to the message sender.
+     * @param sourceID   <code>String</code> identifier of the owner of this Link (the current Node).
+     * @param targetID   <code>String</code> identifier this Link is to.
      */
-    public synchronized void registerConnection(TCPReceiverThread receiverThread, String sourceID, String targetID)
+    public synchronized void registerConnection(Connection connection, String sourceID, String targetID)
     {
+        /**
+         * Link we already have to the node, if any
+         */
+        Link existingLink = getRegisteredNodesMap().get(targetID);
+
+        // IF we already have a Link to the node, the connection is another stripe of it
+        if (existingLink != null && existingLink.getConnection() != connection)
+        {
+            existingLink.addStripe(connection);
+            _linksByConnection.put(connection, existingLink);
+
+            return;
+        }
 
         // IF we know how many nodes we should allow connections to, and we haven't reached those
 //        if (targetID.equals(getRegistryID()) || getNumLinks() < getMaxMessagingNodes())
@@ -510,10 +835,38 @@ public class MessagingNode implements Node
             /**
              * Link to the node to be added
              */
-            Link nodeLink = new Link(receiverThread, sourceID, targetID);
+            Link nodeLink = new Link(connection, sourceID, targetID);
 
             // add the connection to our list of connected nodes.
             getRegisteredNodesMap().put(targetID, nodeLink);
+            _linksByConnection.put(connection, nodeLink);
+            indexLinks();
+
+            // IF the link is to another node, it may be resumed over a new connection if this one fails
+            if (!getRegistryID().equals(targetID) && Statics.RESUME_BUFFER > 0)
+                nodeLink.startSession();
+
+            // IF the link is over a shared memory ring, anything still arriving over TCP belongs to it too
+            if (connection instanceof SharedMemoryConnection)
+                _linksByConnection.put(((SharedMemoryConnection) connection).getControl(), nodeLink);
+
+            /**
+             * LinkCapabilities the other node sent; null if it sent none
+             */
+            LinkCapabilities capabilities = _peerCapabilities.remove((connection instanceof SharedMemoryConnection) ?
+                    ((SharedMemoryConnection) connection).getControl() : connection);
+
+            if (capabilities != null)
+                nodeLink.applyCapabilities(capabilities);
+
+            // IF payload messages go as datagrams, send them to the other node's endpoint, found from its ID
+            if (_datagramEndpoint != null && !getRegistryID().equals(targetID))
+            {
+                int colon = targetID.lastIndexOf(':');
+
+                nodeLink.setDatagram(_datagramEndpoint.getOutbound(targetID.substring(0, colon),
+                        Integer.parseInt(targetID.substring(colon + 1))));
+            }
 
             // IF the node getting added is not the Registry (Registry should not count towards our count)
             if (!getRegistryID().equals(targetID))
@@ -557,8 +910,22 @@ public class MessagingNode implements Node
             // stop the receiver thread
             getRegisteredNodesMap().get(ID).interruptReceiver();
 
+            /**
+             * Connection the link is over
+             */
+            Connection connection = getRegisteredNodesMap().get(ID).getConnection();
+
             // remove the Link from our connections
+            _linksByConnection.remove(connection);
+
+            if (connection instanceof SharedMemoryConnection)
+                _linksByConnection.remove(((SharedMemoryConnection) connection).getControl());
+
+            for (LinkStripe stripe : getRegisteredNodesMap().get(ID).getStripes())
+                _linksByConnection.remove(stripe.getConnection());
+
             getRegisteredNodesMap().remove(ID);
+            indexLinks();
 
             // IF the node getting added is not the Registry (Registry should not count towards our count)
             if (!getRegistryID().equals(ID))
@@ -573,146 +940,494 @@ public class MessagingNode implements Node
 
 
     /**
-     * Private method to register the current MessagingNode with the registry.
+     * Method to be told that a connection failed under us. If it carried a resumable Link, the Link is
+     * suspended and resumed over a new connection: the node whose ID sorts first reconnects, and the
+     * other waits for it. A Link that can't be resumed, or isn't within Statics.RESUME_TIMEOUT_MILLIS,
+     * is deregistered. Losing the registry leaves us nothing to do.
      *
-     * @param hostName <code>String</code> containing the host name of the Registry.
-     * @param portNum  <code>int</code> denoting the port number of the Registry.
+     * @param connection <code>Connection</code> that failed.
+     * @param cause      <code>IOException</code> it failed with.
      */
-    private void registerWithRegistry(String hostName, int portNum)
+    public void connectionLost(Connection connection, IOException cause)
     {
-        try
-        {
-
-            /**
-             *  Socket to the registry
-             */
-            Socket clientSocket = new Socket(hostName, portNum);
+        /**
+         * Link the connection carried
+         */
+        Link link = _linksByConnection.get(connection);
 
+        // IF the connection didn't carry a Link
+        if (link == null)
+        {
+            synchronized (_resumeLock)
+            {
+                // IF it was a connection a Link was being resumed over, another is tried
+                if (_resumeAttempts.values().remove(connection))
+                    System.out.println("Connection to resume a link over lost: " + cause.getMessage());
+            }
 
-            /**
-             * Set the ip address of this node (wasn't able to do via the ServerSocket)
-             * as well as initialize the node's ID with this registration request.
-             */
-            _listeningIP = clientSocket.getLocalAddress().getCanonicalHostName();
-            _ID = _listeningIP + ":" + _listeningPort;
+            return;
+        }
 
-            /**
-             *  TCPSender to send a message to the client
-             */
-            TCPSender sender = new TCPSender(clientSocket);
+        // IF it was to the registry
+        if (link.getTargetID().equals(getRegistryID()))
+        {
+            System.out.println("Connection to the registry lost: " + cause.getMessage());
+            System.exit(0);
+        }
 
+        // IF it was one of the Link's stripes, the Link carries on over the rest
+        if (link.getConnection() != connection)
+        {
+            System.out.println("Stripe of the link to " + link.getTargetID() + " lost: " + cause.getMessage());
+            _linksByConnection.remove(connection);
+            link.removeStripe(connection);
 
-            /**
-             * This is sort of confusing, but we are creating the message with the connection info from this socket.
-             * The listening IP is the same no matter if its the ServerSocket or a normal Socket, but the port used
-             * by the Registry to verify REGISTRATION_REQUEST messages is specific to the current outgoing socket.
-             */
-            RegistrationRequest registrationMessage = (RegistrationRequest) EventFactory.getFactoryInstance()
-                    .createEvent(Protocol
-                            .REGISTRATION_REQUEST, getListeningIP(), clientSocket.getLocalPort(), getID());
+            return;
+        }
 
-            /**
-             * Set the field in the message for the port that other messaging nodes should initially connect to;
-             * to be later used by the Registry when creating MessagingNodeLists to send to the Overlay.
-             */
-            registrationMessage.setNodeServerPort(getListeningPort());
+        System.out.println("Connection to " + link.getTargetID() + " lost: " + cause.getMessage());
 
-            // send the message
-            sender.sendData(registrationMessage.getBytes());
+        // IF the Link can't be resumed
+        if (link.getSession() == null)
+        {
+            link.closeLink();
+            deregisterConnection(link.getTargetID());
 
+            return;
         }
-        catch (IOException e)
+
+        synchronized (_resumeLock)
         {
-            e.printStackTrace();
+            // IF the Link hasn't already been resumed over another connection
+            if (link.getConnection() == connection)
+                suspendLink(link);
         }
-
     }
 
     /**
-     * Private method to deregister from the registry by sending a deregistration request.
+     * Private method to suspend a Link whose connection failed, and start resuming it. Must be called
+     * holding _resumeLock.
+     *
+     * @param link <code>Link</code> whose connection failed.
      */
-    private void deregisterFromRegistry()
+    private void suspendLink(final Link link)
     {
+        // IF the Link is already being resumed
+        if (link.isSuspended())
+            return;
 
-        /**
-         * Get the Socket connection to the registry
-         */
-        Socket socketToRegistry = getRegisteredNodesMap().get(getRegistryID()).getSocketConnection();
-
-
-        try
-        {
-            /**
-             *  TCPSender to send a message to the registry
-             */
-            TCPSender sender = new TCPSender(socketToRegistry);
-
-            DeregistrationRequest deregisterMessage = (DeregistrationRequest) EventFactory.getFactoryInstance()
-                    .createEvent(Protocol
-                            .DEREGISTRATION_REQUEST, socketToRegistry.getLocalAddress().getCanonicalHostName(),
-                            socketToRegistry.getLocalPort(),
-                            getID());
-
+        link.suspend();
+        closeQuietly(link.getConnection());
 
-            // send the message
-            sender.sendData(deregisterMessage.getBytes());
+        // IF the thread that resumed the Link last time is still around, it carries on with this one
+        if (!_resuming.add(link.getTargetID()))
+            return;
 
-            deregisterConnection(_registryID);
-
-        }
-        catch (IOException e)
+        OverlayThreadFactory.getFactoryInstance().newThread(new Runnable()
         {
-            e.printStackTrace();
-        }
-
+            public void run()
+            {
+                resumeLink(link);
+            }
+        }, "link-resume-" + link.getTargetID()).start();
     }
 
     /**
-     * Private method to respond to MessagingNodeList message's from the registry.
-     * The method will initiate the connections to the nodes given in the list by
-     * sending them all NodeRegistrationRequest messages.
+     * Private method to resume a suspended Link. At the end that reconnects, new connections are tried,
+     * backing off between them, and a LinkResume is sent over each; the other end waits for one to
+     * arrive. If the Link is still suspended after Statics.RESUME_TIMEOUT_MILLIS it is given up on.
      *
-     * @param messagingNodeList <code>MessagingNodeList</code> message containing the list of nodes this node is to
-     *                          connect with.
+     * @param link <code>Link</code> to resume.
      */
-    private void processNodeList(MessagingNodeList messagingNodeList)
+    private void resumeLink(Link link)
     {
+        String targetID = link.getTargetID();
 
         /**
-         * Socket for the connection to the fellow messaging node
+         * boolean for if we reconnect, rather than the other end
          */
-        Socket socket;
+        boolean reconnecting = getID().compareTo(targetID) < 0;
 
         /**
-         * TCPSender object to send the MessagingNodeConnectionRequests to
-         * all nodes on the list.
+         * int for the times the Link had been resumed when it last failed
          */
-        TCPSender sender;
+        int resumes = link.getSession().getResumes();
 
-        /**
-         * NodeRegistrationRequest message to be sent to all recipients.
-         */
-        NodeRegistrationRequest nodeRegistrationRequest = (NodeRegistrationRequest) EventFactory.createEvent(Protocol
-                .MESSAGING_NODE_CONNECTION_REQUEST,
-                getListeningIP(), getListeningPort(), getID());
+        long deadline = System.currentTimeMillis() + Statics.RESUME_TIMEOUT_MILLIS;
 
-        /**
-         * byte array of the message contents in bytes, so we aren't doing this for every connection
-         */
-        byte[] connectionMessageBytes = nodeRegistrationRequest.getBytes();
+        long backoffMillis = 10;
 
-        /**
-         * String array containing the address and port of the node
-         */
-        String[] tokens;
+        // WHILE we haven't given up on the Link
+        while (true)
+        {
+            synchronized (_resumeLock)
+            {
+                // IF the Link was resumed, and hasn't failed again since, or was given up on
+                if (!link.isSuspended() || getRegisteredNodesMap().get(targetID) != link)
+                {
+                    _resuming.remove(targetID);
+                    return;
+                }
 
+                // IF the Link was resumed and has failed again, it gets the whole time again
+                if (link.getSession().getResumes() != resumes)
+                {
+                    resumes = link.getSession().getResumes();
+                    deadline = System.currentTimeMillis() + Statics.RESUME_TIMEOUT_MILLIS;
+                    backoffMillis = 10;
+                }
 
-        // set this messaging node list as the current one
-        setMessagingNodeList(messagingNodeList);
+                // IF the Link has been suspended too long
+                if (System.currentTimeMillis() >= deadline)
+                {
+                    _resuming.remove(targetID);
 
-        // set the max number of connections this node is to have
+                    Connection connection = _resumeAttempts.remove(targetID);
+
+                    if (connection != null)
+                        closeQuietly(connection);
+
+                    break;
+                }
+            }
+
+            // IF we reconnect, and there is no connection waiting for the other end to answer
+            if (reconnecting && !awaitingResume(targetID))
+            {
+                try
+                {
+                    int colon = targetID.lastIndexOf(':');
+
+                    Connection connection = ConnectionFactory.connect(targetID.substring(0, colon),
+                            Integer.parseInt(targetID.substring(colon + 1)), this);
+
+                    synchronized (_resumeLock)
+                    {
+                        // IF the Link was resumed, or given up on, while we were connecting
+                        if (!link.isSuspended())
+                            closeQuietly(connection);
+                        else
+                        {
+                            _resumeAttempts.put(targetID, connection);
+                            link.getSession().expect(connection);
+
+                            LinkResume linkResume = (LinkResume) EventFactory.getFactoryInstance().createEvent(
+                                    Protocol.LINK_RESUME, getListeningIP(), getListeningPort(), getID());
+
+                            linkResume.setReceived(link.getSession().getReceived());
+
+                            connection.sendEvent(linkResume);
+                            connection.flush();
+                        }
+                    }
+                }
+                catch (IOException ioe)
+                {
+                    System.out.println("Reconnecting to " + targetID + " failed: " + ioe.getMessage());
+                }
+            }
+
+            LockSupport.parkNanos(backoffMillis * 1000000L);
+            backoffMillis = Math.min(1000, backoffMillis * 2);
+        }
+
+        System.out.println("Link to " + targetID + " could not be resumed within " + Statics.RESUME_TIMEOUT_MILLIS +
+                " ms.");
+
+        giveUpLink(link);
+    }
+
+    /**
+     * @param targetID <code>String</code> of the ID of the node a Link is being resumed to.
+     * @return <code>true</code> if a LinkResume has been sent over a connection to the node and not answered.
+     */
+    private boolean awaitingResume(String targetID)
+    {
+        synchronized (_resumeLock)
+        {
+            return _resumeAttempts.containsKey(targetID);
+        }
+    }
+
+    /**
+     * Private method to handle a LinkResume. At the end that reconnected it answers the one we sent, and
+     * the Link is resumed over the connection it was sent on. At the other end it asks for the Link to
+     * be resumed over the connection it came on: the Link is suspended, if we hadn't noticed its
+     * connection fail yet, we answer with a LinkResume of our own and resume it.
+     *
+     * @param connection <code>Connection</code> the LinkResume was received on.
+     * @param linkResume <code>LinkResume</code> with the number of frames the other end has received.
+     */
+    private void processResume(Connection connection, LinkResume linkResume)
+    {
+        Link link = getRegisteredNodesMap().get(linkResume.getID());
+
+        boolean resumed;
+
+        synchronized (_resumeLock)
+        {
+            // IF there is no Link to the node that can be resumed
+            if (link == null || link.getSession() == null)
+            {
+                System.out.println("No link to " + linkResume.getID() + " to resume.");
+                closeQuietly(connection);
+
+                return;
+            }
+
+            // IF we reconnected, it has to answer the last LinkResume we sent
+            if (getID().compareTo(linkResume.getID()) < 0)
+            {
+                // IF it answers one we no longer wait on, the other end has to notice and wait for the next
+                if (!link.isSuspended() || _resumeAttempts.get(linkResume.getID()) != connection)
+                {
+                    closeQuietly(connection);
+                    return;
+                }
+
+                _resumeAttempts.remove(linkResume.getID());
+            }
+            // ELSE the other end reconnected, and we answer it
+            else
+            {
+                // IF we hadn't noticed the Link's connection fail
+                if (!link.isSuspended())
+                    suspendLink(link);
+
+                LinkResume answer = (LinkResume) EventFactory.getFactoryInstance().createEvent(Protocol.LINK_RESUME,
+                        getListeningIP(), getListeningPort(), getID());
+
+                answer.setReceived(link.getSession().getReceived());
+
+                try
+                {
+                    connection.sendEvent(answer);
+                    connection.flush();
+                }
+                catch (IOException ioe)
+                {
+                    System.out.println("Answering " + linkResume.getID() + " failed: " + ioe.getMessage());
+                    closeQuietly(connection);
+
+                    return;
+                }
+            }
+
+            Connection previous = link.getConnection();
+
+            resumed = link.resume(connection, linkResume.getReceived());
+
+            // IF the Link carries on over the new connection
+            if (resumed)
+            {
+                _linksByConnection.remove(previous);
+                _linksByConnection.put(connection, link);
+
+                System.out.println("Link to " + link.getTargetID() + " resumed: " + link.getSession());
+            }
+            else
+                closeQuietly(connection);
+        }
+
+        // IF frames the other end is missing are no longer kept, the Link can't be resumed
+        if (!resumed)
+        {
+            System.out.println("Link to " + linkResume.getID() + " could not be resumed; frames it is missing " +
+                    "are no longer kept.");
+
+            giveUpLink(link);
+        }
+    }
+
+    /**
+     * Private method to close and deregister a Link that couldn't be resumed.
+     *
+     * @param link <code>Link</code> given up on.
+     */
+    private void giveUpLink(Link link)
+    {
+        synchronized (this)
+        {
+            // IF the Link hasn't been deregistered already
+            if (getRegisteredNodesMap().get(link.getTargetID()) == link)
+                deregisterConnection(link.getTargetID());
+        }
+
+        link.closeLink();
+    }
+
+    /**
+     * Private method to stop listening to a connection and close it, whatever state it is in.
+     *
+     * @param connection <code>Connection</code> to close.
+     */
+    private void closeQuietly(Connection connection)
+    {
+        connection.interrupt();
+
+        try
+        {
+            connection.close();
+        }
+        catch (IOException ioe)
+        {
+            // the connection is being given up on; there is nothing more to do with it
+        }
+    }
+
+    /**
+     * Method to break the connection of our Link to a node, as a network fault would, to try out
+     * resuming it.
+     *
+     * @param ID <code>String</code> of the ID of the node the Link is to.
+     */
+    public void resetLink(String ID)
+    {
+        Link link = getRegisteredNodesMap().get(ID);
+
+        // IF there is no Link to another node by that ID
+        if (link == null || ID.equals(getRegistryID()))
+        {
+            System.err.println("No link to a messaging node " + ID + " to reset.");
+            return;
+        }
+
+        link.breakConnection();
+    }
+
+
+    /**
+     * Private method to register the current MessagingNode with the registry. The connection the
+     * request is sent on is kept and listened to; the registry answers over it and keeps it as
+     * its Link to us.
+     *
+     * @param hostName <code>String</code> containing the host name of the Registry.
+     * @param portNum  <code>int</code> denoting the port number of the Registry.
+     */
+    private void registerWithRegistry(String hostName, int portNum)
+    {
+        try
+        {
+
+            /**
+             *  Connection to the registry
+             */
+            Connection registryConnection = ConnectionFactory.connect(hostName, portNum, this);
+
+
+            /**
+             * Set the ip address of this node (wasn't able to do via the ServerSocket)
+             * as well as initialize the node's ID with this registration request.
+             */
+            _listeningIP = registryConnection.getLocalHostName();
+            _ID = _listeningIP + ":" + _listeningPort;
+
+
+            /**
+             * This is sort of confusing, but we are creating the message with the connection info from this socket.
+             * The listening IP is the same no matter if its the ServerSocket or a normal Socket, but the port used
+             * by the Registry to verify REGISTRATION_REQUEST messages is specific to the current outgoing socket.
+             */
+            RegistrationRequest registrationMessage = (RegistrationRequest) EventFactory.getFactoryInstance()
+                    .createEvent(Protocol
+                            .REGISTRATION_REQUEST, getListeningIP(), registryConnection.getLocalPort(), getID());
+
+            /**
+             * Set the field in the message for the port that other messaging nodes should initially connect to;
+             * to be later used by the Registry when creating MessagingNodeLists to send to the Overlay.
+             */
+            registrationMessage.setNodeServerPort(getListeningPort());
+
+            // tell the registry what our links can do, then send the message
+            sendCapabilities(registryConnection, false);
+            registryConnection.sendEvent(registrationMessage);
+
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Private method to deregister from the registry by sending a deregistration request.
+     */
+    private void deregisterFromRegistry()
+    {
+
+        /**
+         * Get the Link to the registry
+         */
+        Link linkToRegistry = getRegisteredNodesMap().get(getRegistryID());
+
+
+        DeregistrationRequest deregisterMessage = (DeregistrationRequest) EventFactory.getFactoryInstance()
+                .createEvent(Protocol
+                        .DEREGISTRATION_REQUEST, linkToRegistry.getLocalHostName(),
+                        linkToRegistry.getLocalPort(),
+                        getID());
+
+
+        // send the message
+        linkToRegistry.send(deregisterMessage.getBytes());
+
+        deregisterConnection(_registryID);
+
+    }
+
+    /**
+     * Private method to respond to MessagingNodeList message's from the registry.
+     * The method will initiate the connections to the nodes given in the list by
+     * sending them all NodeRegistrationRequest messages. Each connection is kept and
+     * listened to, the NodeRegistrationResponse comes back over it, and it becomes the
+     * Link to that node.
+     *
+     * @param messagingNodeList <code>MessagingNodeList</code> message containing the list of nodes this node is to
+     *                          connect with.
+     */
+    private void processNodeList(MessagingNodeList messagingNodeList)
+    {
+
+        /**
+         * Connection to the fellow messaging node
+         */
+        Connection connection;
+
+        /**
+         * NodeRegistrationRequest message to be sent to all recipients.
+         */
+        NodeRegistrationRequest nodeRegistrationRequest = (NodeRegistrationRequest) EventFactory.createEvent(Protocol
+                .MESSAGING_NODE_CONNECTION_REQUEST,
+                getListeningIP(), getListeningPort(), getID());
+
+        /**
+         * byte array of the message contents in bytes, so we aren't doing this for every connection
+         */
+        byte[] connectionMessageBytes = nodeRegistrationRequest.getBytes();
+
+        /**
+         * String array containing the address and port of the node
+         */
+        String[] tokens;
+
+
+        // set this messaging node list as the current one
+        setMessagingNodeList(messagingNodeList);
+
+        // set the max number of connections this node is to have
         setMaxMessagingNodes(messagingNodeList.getNumConnections());
 
+        // keep the indices of the nodes we are to connect with, to find their Links by
+        for (int i = 0; i < messagingNodeList.getNodeIndices().size(); ++i)
+        {
+            if (messagingNodeList.getNodeIndices().get(i) >= 0)
+                _nodeIndices.put(messagingNodeList.getNodeConnectionInfo().get(i),
+                        messagingNodeList.getNodeIndices().get(i));
+        }
+
+        indexLinks();
+
 
         // FOR every node in the message node list
         for (String connectionInfo : messagingNodeList.getNodeConnectionInfo())
@@ -729,11 +1444,13 @@ public class MessagingNode implements Node
 
                 try
                 {
-                    socket = new Socket(tokens[0], Integer.parseInt(tokens[1]));
+                    connection = ConnectionFactory.connect(tokens[0], Integer.parseInt(tokens[1]), this);
 
-                    sender = new TCPSender(socket);
+                    // tell the node what our links can do and offer it a shared memory ring first, in case it is on this machine
+                    sendCapabilities(connection, false);
+                    offerRing(connection);
 
-                    sender.sendData(connectionMessageBytes);
+                    connection.sendData(connectionMessageBytes);
 
                 }
                 catch (IOException e)
@@ -748,15 +1465,18 @@ public class MessagingNode implements Node
     }
 
     /**
-     * Private method to send a registration response message to the requesting MessagingNode.
+     * Private method to send a registration response message to the requesting MessagingNode over
+     * the connection its request arrived on.
      *
+     * @param connection          <code>Connection</code> the registration request was received on.
      * @param registrationRequest <code>NodeRegistrationRequest</code> the calling node sent
      * @param status              <code>boolean</code> that signifies if the Link to the node was successfully
      *                            created or
      *                            not
      * @param message             <code>String</code> with a message for the successful/unsuccessful registration.
      */
-    private void registerResponse(RegistrationRequest registrationRequest, boolean status, String message)
+    private void registerResponse(Connection connection, RegistrationRequest registrationRequest, boolean status,
+                                  String message)
     {
 
         /**
@@ -784,40 +1504,20 @@ public class MessagingNode implements Node
 
         try
         {
+            // send message back over the connection the request came in on
+            connection.sendEvent(nodeRegistrationResponse);
 
-            /**
-             *  Socket to the client
-             */
-            Socket clientSocket = new Socket(registrationRequest.getIpAddress(), registrationRequest.getPort());
-//            Socket clientSocket = new Socket("129.82.46.214", 5000);
 
             /**
-             *  TCPSender to send a message to the client
-             */
-            TCPSender sender = new TCPSender(clientSocket);
-
-            // send message
-            sender.sendData(nodeRegistrationResponse.getBytes());
-
-
-            /**
-             * Link this socket with the node we just sent the response message to
+             * Link this connection with the node we just sent the response message to
              * to maintain connection.
              */
 
             // IF the register response gave a successful registration status
             if (status)
-            {
-                /**
-                 * Create a new receiver for the socket to the registering node,
-                 * and register the connection
-                 */
-                TCPReceiverThread receiver = new TCPReceiverThread(clientSocket, this);
-                receiver.start();
-
-                registerConnection(receiver, getID(), registrationRequest.getID()); // listen to that socket
-
-            }
+                registerConnection(takeRing(connection), getID(), registrationRequest.getID()); // keep listening to that socket
+            else
+                dropRing(connection);
 
         }
         catch (IOException e)
@@ -864,6 +1564,15 @@ public class MessagingNode implements Node
          */
         setLinkWeights(linkWeightsMessage);
 
+        // keep the index of every node in the overlay, to find the Links to those we are connected to by
+        for (int i = 0; i < linkWeightsMessage.getNodeIDs().size(); ++i)
+        {
+            if (linkWeightsMessage.getNodeID(i) != null)
+                _nodeIndices.put(linkWeightsMessage.getNodeID(i), i);
+        }
+
+        indexLinks();
+
         /**
          * First assign all the appropriate link weights designated in the message
          * to the Links this node already has.
@@ -903,8 +1612,8 @@ public class MessagingNode implements Node
         _routing = new RoutingCache(getLinkWeights(), this);
 
         System.out.println("starting");
-        NodeMessageGenerator nodeMessageGenerator = new NodeMessageGenerator(getRegisteredNodesMap(),
-                getRegistryID(), this, getRouting());
+        NodeMessageGenerator nodeMessageGenerator = new NodeMessageGenerator(_indexedLinks, getRegistryID(), this,
+                getRouting());
 
         nodeMessageGenerator.start();
     }
@@ -918,17 +1627,8 @@ public class MessagingNode implements Node
     private void processPayload(PayloadMessage payloadMessage) throws IOException
     {
 
-        /**
-         * First, remove ourselves from the routing plan and see if the message
-         * needs to be relayed or further processed.
-         */
-
-        payloadMessage.getPath().removeFirst();
-
-
-
-        // IF the size is zero after removing ourselves we know it is ours
-        if (payloadMessage.getPath().size() == 0)
+        // IF we are the only node left in the path we know it is ours; the path needn't be decoded to tell
+        if (payloadMessage.getPathSize() <= 1)
         {
             synchronized (this)
             {
@@ -939,16 +1639,28 @@ public class MessagingNode implements Node
         }
         else
         {
+            /**
+             * Step past ourselves in the routing plan, so the next in the path is a node that we are
+             * connected to; get the connection and send the message
+             */
+            payloadMessage.setHopIndex(payloadMessage.getHopIndex() + 1);
 
             /**
-             * The next in the path is a node that we are connected to, so get the connection and send the message
+             * Link to the next node in the path
              */
-//            if (getRegisteredNodesMap().containsKey(payloadMessage.getPath().getFirst()))
-            {
-                _registeredNodesMap.get(payloadMessage.getPath().getFirst()).send(payloadMessage.getBytes());
+            Link link = linkTo(payloadMessage.getHop());
 
-                synchronized (this) {
-                _relayedTracker += 1;   // update our tracker
+            // IF we have no link to the next node, the message can go no further
+            if (link == null)
+                System.err.println("Node not registered with this node: " + payloadMessage.getHop());
+            else
+            {
+                // IF the next link took the message (rather than dropping it for want of credits)
+                if (link.sendPayload(payloadMessage.getBytes(), false))
+                {
+                    synchronized (this) {
+                    _relayedTracker += 1;   // update our tracker
+                    }
                 }
                 if(payloadMessage.getType() != Protocol.PAYLOAD_MESSAGE)
                 {
@@ -980,6 +1692,417 @@ public class MessagingNode implements Node
         }
     }
 
+    /**
+     * Private method to tell the node at the other end of a connection which optional link features
+     * we have turned on. Nothing is sent if we have none, and the other node then uses none.
+     *
+     * @param connection <code>Connection</code> to the other node.
+     * @param reply      <code>boolean</code> for if we are answering the other node's LinkCapabilities.
+     * @throws IOException
+     */
+    private void sendCapabilities(Connection connection, boolean reply) throws IOException
+    {
+        // IF we have no optional features turned on
+        if (!Statics.COMPRESS && !Statics.COMPACT)
+            return;
+
+        LinkCapabilities linkCapabilities = (LinkCapabilities) EventFactory.getFactoryInstance().createEvent
+                (Protocol.LINK_CAPABILITIES, getListeningIP(), getListeningPort(), getID());
+
+        /**
+         * int of the Protocol CAPABILITY_ flags we have turned on
+         */
+        int capabilities = 0;
+
+        if (Statics.COMPRESS)
+            capabilities |= Protocol.CAPABILITY_DEFLATE;
+
+        // IF we send compact payload frames, the other end needs the epoch their time stamps count from
+        if (Statics.COMPACT)
+        {
+            capabilities |= Protocol.CAPABILITY_COMPACT;
+            linkCapabilities.setTimestamp(CompactPayload.EPOCH);
+        }
+
+        linkCapabilities.setCapabilities(capabilities);
+        linkCapabilities.setReply(reply);
+
+        connection.sendEvent(linkCapabilities);
+    }
+
+    /**
+     * Private method to open Statics.LINK_STRIPES extra connections to a node we have just linked to, and
+     * add them to the Link as stripes. Each is announced with a StripeJoin so the other node adds it to
+     * its Link to us as well. A Link over a shared memory ring, or whose payload messages go as
+     * datagrams, isn't striped.
+     *
+     * @param targetID <code>String</code> of the ID of the node, as host:port.
+     */
+    private void openStripes(String targetID)
+    {
+        /**
+         * Link to stripe
+         */
+        Link link = getRegisteredNodesMap().get(targetID);
+
+        // IF links aren't striped, or this one has no use for stripes
+        if (Statics.LINK_STRIPES <= 0 || link == null || link.getConnection() instanceof SharedMemoryConnection ||
+                link.getDatagram() != null)
+            return;
+
+        int colon = targetID.lastIndexOf(':');
+
+        // FOR each extra connection
+        for (int i = 1; i <= Statics.LINK_STRIPES; ++i)
+        {
+            try
+            {
+                Connection connection = ConnectionFactory.connect(targetID.substring(0, colon),
+                        Integer.parseInt(targetID.substring(colon + 1)), this);
+
+                StripeJoin stripeJoin = (StripeJoin) EventFactory.getFactoryInstance().createEvent
+                        (Protocol.STRIPE_JOIN, getListeningIP(), getListeningPort(), getID());
+
+                stripeJoin.setStripe(i);
+
+                connection.sendEvent(stripeJoin);
+                connection.flush();
+
+                registerConnection(connection, getID(), targetID);
+            }
+            catch (IOException ioe)
+            {
+                System.err.println("Could not open stripe " + i + " to " + targetID + ", sending on " +
+                        link.getStripeCount() + " extra connections: " + ioe.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Private method to offer the node at the other end of a new connection a shared memory ring to
+     * carry the Link, if rings are turned on and the node could be on this machine. The offer must
+     * go ahead of the NodeRegistrationRequest so the answer comes back ahead of the response.
+     *
+     * @param connection <code>Connection</code> just opened to the other node.
+     */
+    private void offerRing(Connection connection)
+    {
+        // IF rings are off, or the node can't be on this machine
+        if (!Statics.SHM || !SharedMemoryConnection.isLocal(connection))
+            return;
+
+        try
+        {
+            /**
+             * long for the other node to make sure it opened our file
+             */
+            long nonce = new Random().nextLong();
+
+            SharedMemoryConnection ring = SharedMemoryConnection.create(connection, nonce);
+
+            SharedMemoryOffer sharedMemoryOffer = (SharedMemoryOffer) EventFactory.getFactoryInstance().createEvent
+                    (Protocol.SHARED_MEMORY_OFFER, getListeningIP(), getListeningPort(), getID());
+
+            sharedMemoryOffer.setPath(ring.getPath());
+            sharedMemoryOffer.setNonce(nonce);
+
+            _pendingRings.put(connection, ring);
+
+            connection.sendEvent(sharedMemoryOffer);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("Could not offer a shared memory ring, staying on TCP: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Private method to answer a shared memory ring offered on a connection. The ring is taken if
+     * rings are turned on and the offered file can be opened, which means we are on the same machine.
+     *
+     * @param connection        <code>Connection</code> the offer arrived on.
+     * @param sharedMemoryOffer <code>SharedMemoryOffer</code> to answer.
+     * @throws IOException
+     */
+    private void acceptRing(Connection connection, SharedMemoryOffer sharedMemoryOffer) throws IOException
+    {
+        /**
+         * SharedMemoryConnection over the offered file, if we can use it
+         */
+        SharedMemoryConnection ring = null;
+
+        if (Statics.SHM)
+            ring = SharedMemoryConnection.open(connection, sharedMemoryOffer.getPath(), sharedMemoryOffer.getNonce());
+
+        if (ring != null)
+            _pendingRings.put(connection, ring);
+
+        SharedMemoryResponse sharedMemoryResponse = (SharedMemoryResponse) EventFactory.getFactoryInstance()
+                .createEvent(Protocol.SHARED_MEMORY_RESPONSE, getListeningIP(), getListeningPort(), getID());
+
+        sharedMemoryResponse.setStatus(ring != null);
+
+        connection.sendEvent(sharedMemoryResponse);
+    }
+
+    /**
+     * Private method to get the Connection a new Link should be built on: the shared memory ring agreed on
+     * the connection, started, if there is one, otherwise the connection itself.
+     *
+     * @param connection <code>Connection</code> the handshake was done on.
+     * @return <code>Connection</code> for the Link.
+     */
+    private Connection takeRing(Connection connection)
+    {
+        SharedMemoryConnection ring = _pendingRings.remove(connection);
+
+        // IF no ring was agreed, the link is over TCP
+        if (ring == null)
+            return connection;
+
+        ring.start();
+
+        return ring;
+    }
+
+    /**
+     * Private method to throw away any shared memory ring offered on a connection that will not be used.
+     *
+     * @param connection <code>Connection</code> the ring was offered on.
+     */
+    private void dropRing(Connection connection)
+    {
+        SharedMemoryConnection ring = _pendingRings.remove(connection);
+
+        if (ring != null)
+            ring.unlink();
+    }
+
+    /**
+     * Private method to open the endpoint payload messages are sent and received on as datagrams.
+     * If the port number is taken for UDP, payload messages stay on the Links.
+     *
+     * @param port <code>int</code> of the port our TCP server socket listens on.
+     */
+    private void openDatagramEndpoint(int port)
+    {
+        try
+        {
+            _datagramEndpoint = new DatagramEndpoint(port, this);
+            _datagramEndpoint.start();
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("Could not open datagram endpoint on port " + port + ", staying on TCP: " +
+                    ioe.getMessage());
+        }
+    }
+
+    /**
+     * FrameRelay interface method to forward a payload message that isn't ours to its next hop
+     * straight from the received frame. Only the hop cursor and the next hop's entry are read; the
+     * cursor is moved on in place and the frame sent as it is, copied only if it lies in a buffer
+     * the receiver will reuse.
+     *
+     * @param connection <code>Connection</code> the frame was received on; null if it came as a datagram.
+     * @param data       <code>byte[]</code> holding the frame.
+     * @param offset     <code>int</code> index in data of the first byte of the frame.
+     * @param length     <code>int</code> number of bytes in the frame.
+     * @param owned      <code>boolean</code> for if data holds just this frame and may be forwarded as it is.
+     * @return <code>true</code> if the message was relayed, <code>false</code> if it is to be decoded.
+     * @throws IOException
+     */
+    public boolean relayFrame(Connection connection, byte[] data, int offset, int length, boolean owned)
+            throws IOException
+    {
+        // IF relays are to decode every message
+        if (!Statics.RELAY.equals(Statics.RELAY_CURSOR))
+            return false;
+
+        /**
+         * int index in the frame of the next hop's entry
+         */
+        int nextHop = PayloadMessage.nextHop(data, offset, length);
+
+        // IF the message is ours, it has to be decoded for its payload
+        if (nextHop < 0)
+            return false;
+
+        /**
+         * Link to the next hop
+         */
+        Link link = findRelayLink(data, offset + nextHop);
+
+        // IF we have no link to the next hop, let the decoding path report it
+        if (link == null)
+            return false;
+
+        byte[] frame = owned ? data : Arrays.copyOfRange(data, offset, offset + length);
+
+        PayloadMessage.setHopCursor(frame, 0, nextHop);
+
+        // IF the next link took the message (rather than dropping it for want of credits)
+        if (link.sendPayload(frame, false))
+        {
+            synchronized (this)
+            {
+                _relayedTracker += 1;   // update our tracker
+            }
+        }
+
+        // grant the sender more credit if it is time to
+        grantCredits(connection);
+
+        return true;
+    }
+
+    /**
+     * FrameRelay interface method to find the Link a payload message still arriving is to be cut
+     * through on, from the path entry of its next hop.
+     *
+     * @param connection <code>Connection</code> the frame is being received on.
+     * @param data       <code>byte[]</code> the frame is being read into.
+     * @param nextHop    <code>int</code> index in data of the next hop's entry.
+     * @return <code>Link</code> to the next hop; null if the frame is to be received whole.
+     */
+    public Link cutThroughLink(Connection connection, byte[] data, int nextHop)
+    {
+        // IF relays are to decode every message
+        if (!Statics.RELAY.equals(Statics.RELAY_CURSOR))
+            return null;
+
+        return findRelayLink(data, nextHop);
+    }
+
+    /**
+     * FrameRelay interface method to count a payload message cut through to its next hop as relayed.
+     *
+     * @param connection <code>Connection</code> the frame was received on.
+     */
+    public void frameCutThrough(Connection connection)
+    {
+        synchronized (this)
+        {
+            _relayedTracker += 1;   // update our tracker
+        }
+
+        // grant the sender more credit if it is time to
+        grantCredits(connection);
+    }
+
+    /**
+     * FrameRelay interface method to find the Link a connection carries.
+     *
+     * @param connection <code>Connection</code> a frame was received on.
+     * @return <code>Link</code> the connection carries; null if none.
+     */
+    public Link linkFor(Connection connection)
+    {
+        return _linksByConnection.get(connection);
+    }
+
+    /**
+     * Private method to find the Link to the node whose path entry (its index) is at an index in a frame.
+     *
+     * @param data  <code>byte[]</code> holding the frame.
+     * @param entry <code>int</code> index in data of the path entry.
+     * @return <code>Link</code> to the node; null if we have none.
+     */
+    private Link findRelayLink(byte[] data, int entry)
+    {
+        return linkTo(PayloadMessage.readInt(data, entry));
+    }
+
+    /**
+     * Private method to find the Link to a node by the index the Registry assigned it.
+     *
+     * @param index <code>int</code> of the node's index.
+     * @return <code>Link</code> to the node; null if we have none.
+     */
+    private Link linkTo(int index)
+    {
+        Link[] links = _indexedLinks;
+
+        return (index >= 0 && index < links.length) ? links[index] : null;
+    }
+
+    /**
+     * Private method to rebuild the array of our Links by the index of the node each is to, once a
+     * Link comes or goes or we learn more of the nodes' indices.
+     */
+    private synchronized void indexLinks()
+    {
+        int size = 0;
+
+        // FOR every node we know the index of
+        for (int index : _nodeIndices.values())
+            size = Math.max(size, index + 1);
+
+        Link[] links = new Link[size];
+
+        // FOR every node we know the index of, its Link if we have one
+        for (Map.Entry<String, Integer> nodeIndex : _nodeIndices.entrySet())
+            links[nodeIndex.getValue()] = getRegisteredNodesMap().get(nodeIndex.getKey());
+
+        _indexedLinks = links;
+    }
+
+    /**
+     * Private method to wait until every payload message queued (or spilled waiting for credits) on our
+     * Links has been written, so the Registry can't be told the task is complete while some of our
+     * messages have yet to leave.
+     */
+    private void awaitDataDrained()
+    {
+        // FOR each of our links
+        for (Link link : getRegisteredNodesMap().values())
+        {
+            // WHILE the link still has payload messages to send
+            while (link.getDataQueueDepth() > 0 ||
+                    (link.getFlowControl() != null && link.getFlowControl().getSpillDepth() > 0))
+                LockSupport.parkNanos(1000000);
+        }
+    }
+
+    /**
+     * Private method to count a payload message received on a connection as dealt with, and to send
+     * the node at the other end a FlowCredit message once enough have been.
+     *
+     * @param connection <code>Connection</code> the payload message was received on.
+     */
+    private void grantCredits(Connection connection)
+    {
+        // IF the payload message didn't come over a Link (eg. it came as a datagram)
+        if (connection == null)
+            return;
+
+        /**
+         * Link the payload message arrived on
+         */
+        Link link = _linksByConnection.get(connection);
+
+        // IF the link isn't known (yet) there is no one to grant credit to
+        if (link == null)
+            return;
+
+        /**
+         * int for the credits to give back
+         */
+        int credits = link.payloadConsumed();
+
+        // IF it is time to grant credits
+        if (credits > 0)
+        {
+            FlowCredit flowCredit = (FlowCredit) EventFactory.getFactoryInstance().createEvent(Protocol
+                    .FLOW_CREDIT, getListeningIP(), getListeningPort(), getID());
+
+            flowCredit.setCredits(credits);
+
+            link.send(flowCredit.getBytes());
+        }
+    }
+
     private void test(String nodeID)
     {
         /**
@@ -1006,12 +2129,12 @@ public class MessagingNode implements Node
                 PayloadMessage payloadMessage = (PayloadMessage) EventFactory.createEvent(Protocol.PAYLOAD_MESSAGE, _listeningIP,
                         _listeningPort, _ID);
 
-               payloadMessage.getPath().add(nodeID);
+               payloadMessage.setPath(new int[]{_nodeIndices.get(nodeID)});
 
                 payloadMessage.setPayload(17);
 
 
-                _registeredNodesMap.get(payloadMessage.getPath().getFirst()).send(payloadMessage.getBytes());
+                _registeredNodesMap.get(nodeID).sendPayload(payloadMessage.getBytes(), true);
 
 
                 payloadMessage = null;
@@ -1072,8 +2195,8 @@ public class MessagingNode implements Node
 
     private void initializer()
     {
-        _serverThread.start();
-        _listeningIP = _serverThread.getServerSocket().getInetAddress().toString();
+        _listener.start();
+        _listeningIP = _listener.getLocalHostName();
     }
 
 
@@ -1082,7 +2205,7 @@ public class MessagingNode implements Node
      * ************************* ACCESSORS AND MUTATORS ******************************
      */
 
-    public HashMap<String, Link> getRegisteredNodesMap()
+    public ConcurrentHashMap<String, Link> getRegisteredNodesMap()
     {
         return _registeredNodesMap;
     }
@@ -1,6 +1,6 @@
 package cs455.overlay.node;
 
-import cs455.overlay.transport.TCPReceiverThread;
+import cs455.overlay.transport.Connection;
 import cs455.overlay.wireformats.Event;
 
 import java.io.IOException;
@@ -16,13 +16,15 @@ import java.io.IOException;
 public interface Node
 {
     /**
-     * Method to be signaled with a received message
+     * Method to be signaled with a received message. A PayloadMessage received may be a view over the
+     * receiver's buffer (see PayloadMessage.wrap()), good only until this method returns; whatever is
+     * to be kept of it has to be read, or its bytes taken, before then.
      *
-     * @param receiverThread <code>TCPReceiverThread</code> of the receiver associated with the message. Contains
-     *                       a socket connection to the message sender.
-     * @param data          <code>Event</code> of the incoming message.
+     * @param connection <code>Connection</code> the message was received on. Contains
+     *                   a connection to the message sender.
+     * @param data       <code>Event</code> of the incoming message.
      */
-    public void onEvent(TCPReceiverThread receiverThread, Event event) throws IOException;
+    public void onEvent(Connection connection, Event event) throws IOException;
 
 //    public void onEvent(TCPReceiverThread receiverThread, byte[] data) throws IOException;
 
@@ -31,12 +33,11 @@ public interface Node
      * Method to register a connection between the current node and another. To register a
      * connection, we must create a new Link and add it to our list of connected nodes.
      *
-     * @param receiverThread <code>TCPReceiverThread</code> of the receiver thread associated with the node that
-     *                       is being registered.
-     * @param sourceID       <code>String</code> identifier of the Node creating the Link.
-     * @param targetID       <code>String</code> identifier of the Node the created Link is to.
+     * @param connection <code>Connection</code> to the node that is being registered.
+     * @param sourceID   <code>String</code> identifier of the Node creating the Link.
+     * @param targetID   <code>String</code> identifier of the Node the created Link is to.
      */
-    public void registerConnection(TCPReceiverThread receiverThread, String sourceID, String targetID);
+    public void registerConnection(Connection connection, String sourceID, String targetID);
 
     /**
      * Method to deregister a node from the current node (ie., sever the link)
@@ -45,6 +46,14 @@ public interface Node
      */
     public void deregisterConnection(String ID);
 
+    /**
+     * Method to be told that a connection failed under us, rather than being closed by either end.
+     *
+     * @param connection <code>Connection</code> that failed.
+     * @param cause      <code>IOException</code> it failed with.
+     */
+    public void connectionLost(Connection connection, IOException cause);
+
     /**
      * Method to return the current Node's ID
      *
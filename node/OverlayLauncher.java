@@ -0,0 +1,137 @@
+package cs455.overlay.node;
+
+/**
+ * An OverlayLauncher class to run a whole overlay, a Registry and its MessagingNodes, inside one
+ * JVM and take it through one task the way an operator would at the Registry's command line:
+ * setup-overlay, send-overlay-link-weights, start, then wait for every node's traffic summary.
+ *
+ * The nodes are connected by whichever transport overlay.transport selects, as they would be in
+ * separate processes; overlay.transport=memory leaves the kernel's networking out, so a run (or a
+ * profile of one) measures just the protocol, routing and threading. Unless overlay.start.stagger
+ * is set, every node is sent its TaskInitiate at once.
+ *
+ * Usage: java cs455.overlay.node.OverlayLauncher [number of nodes] [connections per node] [registry port]
+ */
+public class OverlayLauncher
+{
+    /**
+     * long for the milliseconds to wait for any one step of the task before giving up
+     */
+    private static final long STEP_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+
+    /**
+     * main method
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args)
+    {
+        int numNodes = 10;
+        int numConnections = 4;
+        int port = 5000;
+
+        try
+        {
+            if (args.length > 0)
+                numNodes = Integer.parseInt(args[0]);
+            if (args.length > 1)
+                numConnections = Integer.parseInt(args[1]);
+            if (args.length > 2)
+                port = Integer.parseInt(args[2]);
+        }
+        catch (NumberFormatException e)
+        {
+            System.err.println("Usage: java OverlayLauncher [number of nodes] [connections per node] [registry port]");
+            System.exit(1);
+        }
+
+        // the stagger is read when Statics is first loaded, so it has to be set before anything else
+        if (System.getProperty("overlay.start.stagger") == null)
+            System.setProperty("overlay.start.stagger", "0");
+
+        Registry registry = new Registry(port, numNodes);
+        registry.start();
+
+        /**
+         * MessagingNode array of the nodes in the overlay
+         */
+        MessagingNode[] nodes = new MessagingNode[numNodes];
+
+        // FOR every node, start it and have it register
+        for (int i = 0; i < numNodes; ++i)
+        {
+            nodes[i] = new MessagingNode("localhost", port);
+            nodes[i].start();
+        }
+
+        long deadline = System.currentTimeMillis() + STEP_TIMEOUT_MILLIS;
+
+        // WHILE some node hasn't registered
+        while (registry.getNumLinks() < numNodes)
+            pause(deadline, "registration");
+
+        registry.processCommand("setup-overlay " + numConnections);
+
+        deadline = System.currentTimeMillis() + STEP_TIMEOUT_MILLIS;
+
+        // FOR every node, wait for it to have all of its links
+        for (MessagingNode node : nodes)
+        {
+            while (node.getMaxMessagingNodes() == 0 || node.getNumLinks() < node.getMaxMessagingNodes())
+                pause(deadline, "overlay setup");
+        }
+
+        registry.processCommand("send-overlay-link-weights");
+
+        deadline = System.currentTimeMillis() + STEP_TIMEOUT_MILLIS;
+
+        // FOR every node, wait for it to have the link weights
+        for (MessagingNode node : nodes)
+        {
+            while (node.getLinkWeights() == null)
+                pause(deadline, "link weights");
+        }
+
+        long start = System.nanoTime();
+
+        registry.processCommand("start");
+
+        deadline = System.currentTimeMillis() + STEP_TIMEOUT_MILLIS;
+
+        // WHILE some node's traffic summary hasn't arrived
+        while (registry.getSummariesCollected() < numNodes)
+            pause(deadline, "traffic summaries");
+
+        System.out.printf("Task over %d nodes with %d connections each took %.1f ms%n", numNodes, numConnections,
+                (System.nanoTime() - start) / 1e6);
+
+        System.exit(0);
+    }
+
+    /**
+     * Method to wait a little for a step of the task, giving up on the whole run if it is taking too long.
+     *
+     * @param deadline <code>long</code> of the System.currentTimeMillis() by which the step must be done.
+     * @param step     <code>String</code> naming the step, for the error.
+     */
+    private static void pause(long deadline, String step)
+    {
+        // IF the step is taking too long, something is wrong
+        if (System.currentTimeMillis() > deadline)
+        {
+            System.err.println("OverlayLauncher gave up waiting for " + step + ".");
+            System.exit(1);
+        }
+
+        try
+        {
+            Thread.sleep(10);
+        }
+        catch (InterruptedException ie)
+        {
+            System.exit(1);
+        }
+    }
+
+}
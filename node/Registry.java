@@ -1,20 +1,23 @@
 package cs455.overlay.node;
 
+import cs455.overlay.transport.Connection;
+import cs455.overlay.transport.ConnectionFactory;
 import cs455.overlay.transport.Link;
-import cs455.overlay.transport.TCPReceiverThread;
-import cs455.overlay.transport.TCPSender;
-import cs455.overlay.transport.TCPServerThread;
+import cs455.overlay.transport.Listener;
 import cs455.overlay.util.LinkWeightsMessageCreator;
 import cs455.overlay.util.OverlayCreator;
+import cs455.overlay.util.OverlayThreadFactory;
 import cs455.overlay.util.StatisticsCollectorAndDisplay;
+import cs455.overlay.util.Statics;
 import cs455.overlay.wireformats.*;
 
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 
@@ -30,14 +33,9 @@ public class Registry implements Node
 {
 
     /**
-     * ServerSocket to be passed to the TCPServerThread
+     * Listener to listen for incoming communication
      */
-    private ServerSocket _serverSocket;
-
-    /**
-     * TCPServerThread to listen for incoming communication
-     */
-    private TCPServerThread _serverThread;
+    private Listener _listener;
 
     /**
      * Hash map for the links to each node registered with the registry
@@ -51,6 +49,16 @@ public class Registry implements Node
      */
     private HashMap<String, RegistrationRequest> _registrationRequestMap;
 
+    /**
+     * Array list of the ID of the node each index is assigned to; null where an index is free again
+     */
+    private ArrayList<String> _nodeIDsByIndex;
+
+    /**
+     * Hash map of the index assigned to each registered node, by its ID
+     */
+    private HashMap<String, Integer> _nodeIndices;
+
     /**
      * Hash map for building the overlay connections by hashing each nodes ID
      * to its corresponding MessagingNodeList message. The node list message
@@ -59,6 +67,22 @@ public class Registry implements Node
      */
     private HashMap<String, MessagingNodeList> _nodeListMessageMap;
 
+    /**
+     * Hash map of the capabilities the node at the other end of a connection sent, waiting for the Link to be registered
+     */
+    private HashMap<Connection, LinkCapabilities> _peerCapabilities;
+
+    /**
+     * Hash map of the latest smoothed round trip time, in nanoseconds, the nodes reported for each of
+     * their links, keyed by LinkWeightsMessageCreator.linkKey(source, target)
+     */
+    private ConcurrentHashMap<String, Long> _linkRtts;
+
+    /**
+     * Array list of the LinkEmulation messages asked for, in order, to be sent again whenever the link weights are
+     */
+    private ArrayList<LinkEmulation> _linkEmulations;
+
     /**
      * int to represent the number of connections the node has
      */
@@ -106,7 +130,12 @@ public class Registry implements Node
 
         _registeredNodesMap = new HashMap<String, Link>();
         _registrationRequestMap = new HashMap<String, RegistrationRequest>();
+        _nodeIDsByIndex = new ArrayList<String>();
+        _nodeIndices = new HashMap<String, Integer>();
         _nodeListMessageMap = new HashMap<String, MessagingNodeList>();
+        _peerCapabilities = new HashMap<Connection, LinkCapabilities>();
+        _linkRtts = new ConcurrentHashMap<String, Long>();
+        _linkEmulations = new ArrayList<LinkEmulation>();
         _numLinks = 0;
         _listeningPort = listeningPort;
 
@@ -115,9 +144,7 @@ public class Registry implements Node
          */
         try
         {
-            _serverSocket = new ServerSocket(_listeningPort, 0);
-
-            _serverThread = new TCPServerThread(_serverSocket, this);
+            _listener = ConnectionFactory.listen(_listeningPort, this);
 
         }
         catch(UnknownHostException uhe)
@@ -171,116 +198,122 @@ public class Registry implements Node
 
     private void run()
     {
-        try
-        {
-            initializer();
-        }
-        catch(UnknownHostException uhe)
-        {
-            uhe.printStackTrace();
-        }
-
-
+        start();
 
         /**
          * Scanner object for user input
          */
         Scanner scanner = new Scanner(System.in);
 
-        String input;
-
-        String[] commands;
-
         /**
          * Continuously loop for user input
          */
         while (true)
+            processCommand(scanner.nextLine());
+
+    }
+
+    /**
+     * Method to start accepting connections from MessagingNodes.
+     */
+    public void start()
+    {
+        initializer();
+    }
+
+    /**
+     * Method to carry out one Registry command, as typed at the command line.
+     *
+     * @param input <code>String</code> of the command and its argument, if any.
+     */
+    public void processCommand(String input)
+    {
+        String[] commands = input.split(" ");
+
+        // IF the user entered 0 or more than 2 words, print an error and continue
+        if (commands.length == 0 || commands.length > 2)
         {
-            input = scanner.nextLine();
+            System.err.println("Registry commands must be no more than two words and no less than one.");
+            return;
+        }
 
-            commands = input.split(" ");
+        // IF the length is one, process the one word commands
+        if (commands.length == 1)
+        {
+            // IF the command was list-weights
+            if (commands[0].equals("list-weights"))
+            {
+                // do something
+            }
+            // ELSE IF the command was start
+            else if (commands[0].equals("start"))
+            {
+                // reset our statistics
+                _statisticsCollectorAndDisplay.clear();
+
+                TaskInitiate taskInitiate = (TaskInitiate) _eventFactory.createEvent(Protocol.TASK_INITIATE);
 
-            // IF the user entered 0 or more than 2 words, print an error and continue
-            if (commands.length == 0 || commands.length > 2)
+                broadcastMessage(taskInitiate, Statics.TASK_INITIATE_STAGGER_MILLIS);
+            }
+            // ELSE IF te command was send-overlay-link-weights
+            else if (commands[0].equals("send-overlay-link-weights"))
             {
-                System.err.println("Registry commands must be no more than two words and no less than one.");
-                continue;
+                sendOverlayLinkWeights(Statics.LINK_WEIGHTS);
             }
+            // ELSE invalid one word command
+            else
+            {
+                System.err.println("Single-word Registry commands can only be one of \n" +
+                        "[list-weights, send-overlay-link-weights [random|rtt], emulate-links <spec>, start].");
 
-            // IF the length is one, process the one word commands
-            if (commands.length == 1)
+            }
+        }
+        // ELSE IF the length is two, process the two word commands
+        else if (commands.length == 2)
+        {
+            // IF the first word of the command is list-messaging
+            if (commands[0].equals("list-messaging"))
             {
-                // IF the command was list-weights
-                if (commands[0].equals("list-weights"))
+                // IF the second word of the command is nodes
+                if (commands[1].equals("nodes"))
                 {
                     // do something
                 }
-                // ELSE IF the command was start
-                else if (commands[0].equals("start"))
-                {
-                    // reset our statistics
-                    _statisticsCollectorAndDisplay.clear();
-
-                    TaskInitiate taskInitiate = (TaskInitiate) _eventFactory.createEvent(Protocol.TASK_INITIATE);
-
-                    broadcastMessage(taskInitiate, 5000);
-                }
-                // ELSE IF te command was send-overlay-link-weights
-                else if (commands[0].equals("send-overlay-link-weights"))
-                {
-                    LinkWeightsMessageCreator linkWeightsCreator = new LinkWeightsMessageCreator
-                            (getNodeListMessageMap(), 10);
-
-                    broadcastMessage(linkWeightsCreator.createLinkWeightMessage(), 0);
-
-
-                }
-                // ELSE invalid one word command
                 else
                 {
-                    System.err.println("Single-word Registry commands can only be one of \n" +
-                            "[list-weights, send-overlay-link-weights, start].");
+                    System.err.println("Argument [" + commands[1] + "] to list-messaging invalid!");
 
                 }
             }
-            // ELSE IF the length is two, process the two word commands
-            else if (commands.length == 2)
+            // ELSE IF the first word of the command is setup-overlay
+            else if (commands[0].equals("setup-overlay"))
             {
-                // IF the first word of the command is list-messaging
-                if (commands[0].equals("list-messaging"))
-                {
-                    // IF the second word of the command is nodes
-                    if (commands[1].equals("nodes"))
-                    {
-                        // do something
-                    }
-                    else
-                    {
-                        System.err.println("Argument [" + commands[1] + "] to list-messaging invalid!");
-
-                    }
-                }
-                // ELSE IF the first word of the command is setup-overlay
-                else if (commands[0].equals("setup-overlay"))
-                {
-                    // number of connections each node should have
-                    int numConnections = Integer.parseInt(commands[1]);
+                // number of connections each node should have
+                int numConnections = Integer.parseInt(commands[1]);
 
 
-                    // create an OverlayCreator with the appropriate info
-                    OverlayCreator overlay = new OverlayCreator(getRegistrationRequestMap(), numConnections);
+                // create an OverlayCreator with the appropriate info
+                OverlayCreator overlay = new OverlayCreator(getRegistrationRequestMap(), numConnections,
+                        _nodeIndices);
 
 
-                    // generate and overlay and pass the MessagingNodeLists off to be broad-casted
-                    _nodeListMessageMap = overlay.setUpOverlay();
-                    broadcastMessagingNodeLists(getNodeListMessageMap());
+                // generate and overlay and pass the MessagingNodeLists off to be broad-casted
+                _nodeListMessageMap = overlay.setUpOverlay();
+                broadcastMessagingNodeLists(getNodeListMessageMap());
 
 
-                }
+            }
+            // ELSE IF the first word of the command is send-overlay-link-weights
+            else if (commands[0].equals("send-overlay-link-weights"))
+            {
+                sendOverlayLinkWeights(commands[1]);
+            }
+            // ELSE IF the first word of the command is emulate-links
+            else if (commands[0].equals("emulate-links"))
+            {
+                emulateLinks(commands[1]);
             }
         }
-
-
     }
 
 
@@ -396,11 +429,11 @@ public class Registry implements Node
     /**
      * Method to be signaled with a received message
      *
-     * @param receiverThread <code>TCPReceiverThread</code> of the receiver associated with the message. Contains
-     *                       a socket connection to the message sender.
-     * @param event          <code>Event</code> of the incoming message.
+     * @param connection <code>Connection</code> the message was received on. Contains
+     *                   a connection to the message sender.
+     * @param event      <code>Event</code> of the incoming message.
      */
-    public synchronized void onEvent(TCPReceiverThread receiverThread, Event event)
+    public synchronized void onEvent(Connection connection, Event event)
     {
 
         /**
@@ -425,7 +458,7 @@ public class Registry implements Node
                 if (getRegisteredNodesMap().containsKey(registrationRequest.getID()))
                 {
                     response = "Error! Node has been previously registered with the registry!";
-                    registerResponse(registrationRequest, false, response);
+                    registerResponse(connection, registrationRequest, false, response);
                 }
                 else
                 {
@@ -435,12 +468,38 @@ public class Registry implements Node
                     response = "Registration request successful. The number of messaging nodes currently " +
                             "constituting the overlay is " + getNumLinks() + ".";
 
-                    registerResponse(registrationRequest, true, response);
+                    registerResponse(connection, registrationRequest, true, response);
 
                 }
 
                 break;
 
+            case Protocol.LINK_CAPABILITIES:
+
+                /**
+                 * Convert the event to its appropriate type
+                 */
+                LinkCapabilities linkCapabilities = (LinkCapabilities) event;
+
+                // keep what the node can do for when its Link is registered, and tell it what we can do
+                _peerCapabilities.put(connection, linkCapabilities);
+                sendCapabilities(connection);
+
+                break;
+
+            case Protocol.LINK_LATENCY:
+
+                /**
+                 * Convert the event to its appropriate type
+                 */
+                LinkLatency linkLatency = (LinkLatency) event;
+
+                // keep the latest measurement of the link, for when weights are sent
+                _linkRtts.put(LinkWeightsMessageCreator.linkKey(linkLatency.getID(), linkLatency.getTargetID()),
+                        linkLatency.getRttNanos());
+
+                break;
+
             case Protocol.DEREGISTRATION_REQUEST:
 
                 /**
@@ -472,8 +531,17 @@ public class Registry implements Node
 
                 // IF we have received a summary from every node
                 if (_statisticsCollectorAndDisplay.getTotalCollected() == getMaxMessagingNodes())
+                {
                     _statisticsCollectorAndDisplay.print();
 
+                    // report how compression did on each link that has it
+                    for (Link link : getRegisteredNodesMap().values())
+                    {
+                        if (link.getCompressor() != null)
+                            System.out.println("Compression to " + link.getTargetID() + ": " + link.getCompressor());
+                    }
+                }
+
                 break;
             default:
                 System.err.println("Not in OnEvent for Registry");
@@ -487,15 +555,18 @@ public class Registry implements Node
 
 
     /**
-     * Private method to send a registration response message to the requesting MessagingNode.
+     * Private method to send a registration response message to the requesting MessagingNode over
+     * the connection its request arrived on.
      *
+     * @param connection          <code>Connection</code> the registration request was received on.
      * @param registrationRequest <code>RegistrationRequest</code> the calling node sent
      * @param status              <code>boolean</code> that signifies if the Link to the node was successfully
      *                            created or
      *                            not
      * @param message             <code>String</code> with a message for the successful/unsuccessful registration.
      */
-    private void registerResponse(RegistrationRequest registrationRequest, boolean status, String message)
+    private void registerResponse(Connection connection, RegistrationRequest registrationRequest, boolean status,
+                                  String message)
     {
 
         /**
@@ -520,39 +591,26 @@ public class Registry implements Node
         // set the message
         registrationResponse.setDescription(message);
 
+        // IF the node is being registered, give it the lowest index free
+        if (status)
+            registrationResponse.setNodeIndex(assignNodeIndex(registrationRequest.getID()));
+
         try
         {
-
-            /**
-             *  Socket to the client
-             */
-            Socket clientSocket = new Socket(registrationRequest.getIpAddress(),
-                    registrationRequest.getNodeServerPort());
-
-            /**
-             *  TCPSender to send a message to the client
-             */
-            TCPSender sender = new TCPSender(clientSocket);
-
-            // send message
-            sender.sendData(registrationResponse.getBytes());
+            // send message back over the connection the request came in on
+            connection.sendEvent(registrationResponse);
 
 
             /**
-             * Link this socket with the node we just sent the response message to
+             * Link this connection with the node we just sent the response message to
              * to maintain connection.
              */
 
             // IF the register response gave a successful registration status
             if (status)
             {
-                /**
-                 * Create a new receiver for the socket to the registering node,
-                 * and register the connection
-                 */
-                TCPReceiverThread receiver = new TCPReceiverThread(clientSocket, this);
-                receiver.start();
-                registerConnection(receiver, getID(), registrationRequest.getID()); // listen to that socket
+                // register the connection
+                registerConnection(connection, getID(), registrationRequest.getID()); // keep listening to that socket
 
                 /**
                  * Add the RegistrationRequest message to our tracker
@@ -568,16 +626,69 @@ public class Registry implements Node
 
     }
 
+    /**
+     * Private method to assign a node the lowest index no registered node has, so the indices stay
+     * dense as nodes come and go.
+     *
+     * @param ID <code>String</code> of the node's ID.
+     * @return <code>int</code> of the index assigned.
+     */
+    private int assignNodeIndex(String ID)
+    {
+        int index = _nodeIDsByIndex.indexOf(null);
+
+        // IF no index is free, the node gets the next one
+        if (index < 0)
+        {
+            index = _nodeIDsByIndex.size();
+            _nodeIDsByIndex.add(ID);
+        }
+        else
+            _nodeIDsByIndex.set(index, ID);
+
+        _nodeIndices.put(ID, index);
+
+        return index;
+    }
+
+    /**
+     * Private method to answer a node's LinkCapabilities with the optional link features we have
+     * turned on. Nothing is sent if we have none, and the node then uses none.
+     *
+     * @param connection <code>Connection</code> to the node.
+     */
+    private void sendCapabilities(Connection connection)
+    {
+        // IF we have no optional features turned on
+        if (!Statics.COMPRESS)
+            return;
+
+        LinkCapabilities linkCapabilities = (LinkCapabilities) EventFactory.getFactoryInstance().createEvent
+                (Protocol.LINK_CAPABILITIES, _listeningIP, _listeningPort, _ID);
+
+        linkCapabilities.setCapabilities(Protocol.CAPABILITY_DEFLATE);
+        linkCapabilities.setReply(true);
+
+        try
+        {
+            connection.sendEvent(linkCapabilities);
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+        }
+    }
+
     /**
      * Method to register a connection between the current node and another. To register a
      * connection, we must create a new Link and add it to our list of connected nodes.
      *
-     * @param receiverThread <code>TCPReceiverThread</code> of the receiver associated with the message. Contains a
-     *                       socket connection to the message sender.
-     * @param sourceID       <code>String</code> identifier of the owner of this Link (the current Node)
-     * @param targetID       <code>String</code> identifier this Link is to.
+     * @param connection <code>Connection</code> the message was received on. Contains a
+     *                   connection to the message sender.
+     * @param sourceID   <code>String</code> identifier of the owner of this Link (the current Node)
+     * @param targetID   <code>String</code> identifier this Link is to.
      */
-    public synchronized void registerConnection(TCPReceiverThread receiverThread, String sourceID, String targetID)
+    public synchronized void registerConnection(Connection connection, String sourceID, String targetID)
     {
 
         // IF the max nodes connected hasn't been reached
@@ -587,11 +698,19 @@ public class Registry implements Node
             /**
              * Link to the node to be added
              */
-            Link nodeLink = new Link(receiverThread, sourceID, targetID);
+            Link nodeLink = new Link(connection, sourceID, targetID);
 
             // add the connection to our list of connected nodes.
             getRegisteredNodesMap().put(targetID, nodeLink);
 
+            /**
+             * LinkCapabilities the node sent; null if it sent none
+             */
+            LinkCapabilities capabilities = _peerCapabilities.remove(connection);
+
+            if (capabilities != null)
+                nodeLink.applyCapabilities(capabilities);
+
             ++_numLinks;
         }
         else    // print an error
@@ -615,6 +734,14 @@ public class Registry implements Node
             getRegisteredNodesMap().remove(ID);
             --_numLinks;
 
+            /**
+             * Integer of the index the node was assigned, free for the next node to register
+             */
+            Integer index = _nodeIndices.remove(ID);
+
+            if (index != null)
+                _nodeIDsByIndex.set(index, null);
+
         }
         else
         {
@@ -623,6 +750,32 @@ public class Registry implements Node
     }
 
 
+    /**
+     * Method to be told that the connection to a node failed. The node is gone as far as we can
+     * tell, so it is deregistered; the registry keeps running for the nodes that are left.
+     *
+     * @param connection <code>Connection</code> that failed.
+     * @param cause      <code>IOException</code> it failed with.
+     */
+    public synchronized void connectionLost(Connection connection, IOException cause)
+    {
+        // FOR each node registered with us
+        for (Link link : getRegisteredNodesMap().values())
+        {
+            // IF it is the node whose connection failed
+            if (link.getConnection() == connection)
+            {
+                System.out.println("Connection to " + link.getTargetID() + " lost: " + cause.getMessage());
+
+                deregisterConnection(link.getTargetID());
+                return;
+            }
+        }
+
+        System.out.println("Connection from " + connection.getHostname() + " lost: " + cause.getMessage());
+    }
+
+
     /**
      * Private method to send out a node list message to every node who has a MessagingNodeList
      * created for them.
@@ -670,6 +823,132 @@ public class Registry implements Node
 
     }
 
+    /**
+     * Method to weight every link of the overlay and send the weights to all the nodes.
+     *
+     * @param mode <code>String</code> of how to weight the links: Statics.LINK_WEIGHTS_RANDOM or
+     *             Statics.LINK_WEIGHTS_RTT.
+     */
+    private void sendOverlayLinkWeights(String mode)
+    {
+        LinkWeightsMessageCreator linkWeightsCreator = new LinkWeightsMessageCreator
+                (getNodeListMessageMap(), 10);
+
+        // IF the links are to be weighted by their measured round trip times
+        if (mode.equals(Statics.LINK_WEIGHTS_RTT))
+            broadcastMessage(linkWeightsCreator.createMeasuredLinkWeightMessage(_linkRtts), 0);
+        // ELSE IF they are to be weighted at random
+        else if (mode.equals(Statics.LINK_WEIGHTS_RANDOM))
+            broadcastMessage(linkWeightsCreator.createLinkWeightMessage(), 0);
+        else
+        {
+            System.err.println("Argument [" + mode + "] to send-overlay-link-weights invalid! Must be one of " +
+                    "[" + Statics.LINK_WEIGHTS_RANDOM + ", " + Statics.LINK_WEIGHTS_RTT + "].");
+            return;
+        }
+
+        // IF every link is to emulate a WAN path and hasn't been told to yet
+        if (!Statics.EMULATE.isEmpty() && _linkEmulations.isEmpty())
+            emulateLinks(Statics.EMULATE);
+
+        // the nodes have all their links now, so tell them again how each is to behave
+        for (LinkEmulation linkEmulation : _linkEmulations)
+            sendLinkEmulation(linkEmulation);
+    }
+
+    /**
+     * Method to have links of the overlay emulate a WAN path, given as
+     * "delay ms,jitter ms,bandwidth kB/s,loss %" for every link, or as
+     * "node ID,node ID,delay ms,jitter ms,bandwidth kB/s,loss %" for the link between two nodes.
+     * A bandwidth of 0 is no cap. The nodes are told now if they have their links, and again every
+     * time the link weights are sent.
+     *
+     * @param spec <code>String</code> of the WAN path and the link it is for.
+     */
+    private void emulateLinks(String spec)
+    {
+        String[] fields = spec.split(",");
+
+        // IF the spec isn't for every link or for one
+        if (fields.length != 4 && fields.length != 6)
+        {
+            System.err.println("Argument [" + spec + "] to emulate-links invalid! Must be " +
+                    "[delay ms,jitter ms,bandwidth kB/s,loss %] or [node ID,node ID,delay ms,jitter ms,bandwidth kB/s,loss %].");
+            return;
+        }
+
+        int first = fields.length - 4;
+
+        LinkEmulation linkEmulation = (LinkEmulation) _eventFactory.createEvent(Protocol.LINK_EMULATION);
+
+        try
+        {
+            linkEmulation.setDelayMicros((int) (Double.parseDouble(fields[first]) * 1000));
+            linkEmulation.setJitterMicros((int) (Double.parseDouble(fields[first + 1]) * 1000));
+            linkEmulation.setBandwidthBytes((long) (Double.parseDouble(fields[first + 2]) * 1000));
+            linkEmulation.setLossPerMillion((int) (Double.parseDouble(fields[first + 3]) * 10000));
+        }
+        catch (NumberFormatException nfe)
+        {
+            System.err.println("Argument [" + spec + "] to emulate-links invalid! " + nfe.getMessage());
+            return;
+        }
+
+        // IF the emulation is for the link between two nodes, carry both ends in the message for now
+        if (fields.length == 6)
+            linkEmulation.setTargetID(fields[0] + "," + fields[1]);
+
+        _linkEmulations.add(linkEmulation);
+
+        // IF the overlay has been set up, the nodes have links to emulate
+        if (!getNodeListMessageMap().isEmpty())
+            sendLinkEmulation(linkEmulation);
+    }
+
+    /**
+     * Method to send a LinkEmulation to the nodes it is for: every node, or the two ends of one link.
+     *
+     * @param linkEmulation <code>LinkEmulation</code> as made by emulateLinks.
+     */
+    private void sendLinkEmulation(LinkEmulation linkEmulation)
+    {
+        String[] ends = linkEmulation.getTargetID().split(",");
+
+        // IF the emulation is for every link
+        if (ends.length != 2)
+        {
+            broadcastMessage(linkEmulation, 0);
+            return;
+        }
+
+        // FOR each end of the link, tell it about the node at the other end
+        for (int i = 0; i < 2; ++i)
+        {
+            Link link = getRegisteredNodesMap().get(ends[i]);
+
+            // IF the node isn't registered
+            if (link == null)
+            {
+                System.err.println("emulate-links: no registered node " + ends[i]);
+                continue;
+            }
+
+            LinkEmulation endEmulation = (LinkEmulation) _eventFactory.createEvent(Protocol.LINK_EMULATION);
+
+            endEmulation.setID(getID());
+            endEmulation.setIpAddress(link.getHostname());
+            endEmulation.setPort(link.getPort());
+            endEmulation.setTargetID(ends[1 - i]);
+            endEmulation.setDelayMicros(linkEmulation.getDelayMicros());
+            endEmulation.setJitterMicros(linkEmulation.getJitterMicros());
+            endEmulation.setBandwidthBytes(linkEmulation.getBandwidthBytes());
+            endEmulation.setLossPerMillion(linkEmulation.getLossPerMillion());
+
+            link.send(endEmulation.getBytes());
+        }
+    }
+
+
     /**
      * Private method to send out a messages to every node in the Overlay and set the
      * appropriate IP and port number for each node.
@@ -770,23 +1049,31 @@ public class Registry implements Node
         if (getTaskCompleteReceived() == getRegisteredNodesMap().size())
         {
             /**
-             * Slight pause before sending the PULL_TRAFFIC_SUMMARY message
+             * Slight pause before sending the PULL_TRAFFIC_SUMMARY message, taken on a thread of its
+             * own so the thread that handed us the TaskComplete can carry on delivering
              */
-            try
+            OverlayThreadFactory.getFactoryInstance().newThread(new Runnable()
             {
-                Thread.sleep(2000);
-            }
-            catch (InterruptedException ie)
-            {
-                ie.printStackTrace();
-            }
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep(2000);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        ie.printStackTrace();
+                    }
 
 
-            PullTrafficSummary pullTrafficSummary = (PullTrafficSummary) _eventFactory.createEvent(Protocol.PULL_TRAFFIC_SUMMARY);
+                    PullTrafficSummary pullTrafficSummary = (PullTrafficSummary) _eventFactory.createEvent(
+                            Protocol.PULL_TRAFFIC_SUMMARY);
 
-            broadcastMessage(pullTrafficSummary, 0);
+                    broadcastMessage(pullTrafficSummary, 0);
 
-            System.out.println("Sent a PULL_TRAFFIC_SUMMARY");
+                    System.out.println("Sent a PULL_TRAFFIC_SUMMARY");
+                }
+            }, "pull-traffic-summary").start();
         }
     }
 
@@ -813,13 +1100,12 @@ public class Registry implements Node
     }
 
     /**
-     * Private method to start our server thread and set our listening address from it.
-     * @throws UnknownHostException
+     * Private method to start our listener and set our listening address from it.
      */
-    private void initializer() throws UnknownHostException
+    private void initializer()
     {
-        _serverThread.start();
-        _listeningIP = _serverThread.getServerSocket().getInetAddress().getLocalHost().getCanonicalHostName();
+        _listener.start();
+        _listeningIP = _listener.getLocalHostName();
 
         _ID = _listeningIP + ":" + _listeningPort;
     }
@@ -864,6 +1150,14 @@ public class Registry implements Node
         return _maxMessagingNodes;
     }
 
+    /**
+     * @return <code>int</code> of the number of TrafficSummary messages collected since the task was started.
+     */
+    public synchronized int getSummariesCollected()
+    {
+        return _statisticsCollectorAndDisplay.getTotalCollected();
+    }
+
     public String getListeningIP()
     {
         return _listeningIP;
@@ -0,0 +1,311 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.Statics;
+import cs455.overlay.wireformats.CompressedBatch;
+import cs455.overlay.wireformats.EventFactory;
+import cs455.overlay.wireformats.Protocol;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A BatchCompressor class to compress the frames a Link's writer drains in one go into a single
+ * CompressedBatch frame, and, on the receiving side, to inflate a CompressedBatch back into the
+ * frames it holds (the FrameDispatcher does this for every Connection). Every batch is deflated on
+ * its own, with no dictionary carried over from the last one, so a receiver needs no state to
+ * inflate it and a Link can start or stop compressing between any two batches.
+ *
+ * A BatchCompressor belongs to one Link and is only used by that Link's writer. It keeps the
+ * counters reported for the Link: frames and bytes in, bytes out, and the CPU time spent deflating.
+ */
+public class BatchCompressor
+{
+    /**
+     * ThreadMXBean to measure the CPU time spent deflating
+     */
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Inflater for each receiving thread
+     */
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>()
+    {
+        protected Inflater initialValue()
+        {
+            return new Inflater();
+        }
+    };
+
+    /**
+     * Deflater batches are compressed with
+     */
+    private final Deflater _deflater;
+
+    /**
+     * byte array the batch is gathered in, each frame with its length in front
+     */
+    private byte[] _batch;
+
+    /**
+     * byte array the batch is deflated into
+     */
+    private byte[] _deflated;
+
+    /**
+     * int for the bytes gathered in the batch so far
+     */
+    private int _batchBytes;
+
+    /**
+     * int for the frames gathered in the batch so far
+     */
+    private int _batchFrames;
+
+    /**
+     * long for the number of batches deflated
+     */
+    private long _batches;
+
+    /**
+     * long for the number of frames sent in deflated batches
+     */
+    private long _frames;
+
+    /**
+     * long for the bytes of frames, with their lengths, before deflating
+     */
+    private long _rawBytes;
+
+    /**
+     * long for the bytes of the CompressedBatch frames sent in their place
+     */
+    private long _compressedBytes;
+
+    /**
+     * long for the nanoseconds of CPU time spent deflating
+     */
+    private long _cpuNanos;
+
+
+    /**
+     * Constructor
+     */
+    public BatchCompressor()
+    {
+        _deflater = new Deflater(Statics.COMPRESS_LEVEL);
+        _batch = new byte[Statics.COMPRESS_BATCH_BYTES + 1024];
+        _deflated = new byte[_batch.length];
+        _batchBytes = 0;
+        _batchFrames = 0;
+    }
+
+    /**
+     * Method to add a frame to the batch.
+     *
+     * @param frame <code>byte[]</code> containing the frame.
+     */
+    public void add(byte[] frame)
+    {
+        // IF the batch array is too small for the frame, grow it
+        if (_batchBytes + 4 + frame.length > _batch.length)
+        {
+            byte[] larger = new byte[Math.max(_batch.length * 2, _batchBytes + 4 + frame.length)];
+            System.arraycopy(_batch, 0, larger, 0, _batchBytes);
+            _batch = larger;
+        }
+
+        _batch[_batchBytes] = (byte) (frame.length >>> 24);
+        _batch[_batchBytes + 1] = (byte) (frame.length >>> 16);
+        _batch[_batchBytes + 2] = (byte) (frame.length >>> 8);
+        _batch[_batchBytes + 3] = (byte) frame.length;
+        System.arraycopy(frame, 0, _batch, _batchBytes + 4, frame.length);
+
+        _batchBytes += 4 + frame.length;
+        ++_batchFrames;
+    }
+
+    /**
+     * @return <code>true</code> if the batch has reached Statics.COMPRESS_BATCH_BYTES and should be sent.
+     */
+    public boolean isFull()
+    {
+        return _batchBytes >= Statics.COMPRESS_BATCH_BYTES;
+    }
+
+    /**
+     * @return <code>true</code> if no frames have been added since the last batch was finished.
+     */
+    public boolean isEmpty()
+    {
+        return _batchFrames == 0;
+    }
+
+    /**
+     * Method to finish the batch and start a new one.
+     *
+     * @return <code>byte[]</code> of the frame to send in place of the batch: a CompressedBatch, or the
+     * frame itself if the batch is a single frame too small to be worth deflating.
+     */
+    public byte[] finish()
+    {
+        // IF the batch is a single small frame, send it as it is
+        if (_batchFrames == 1 && _batchBytes - 4 < Statics.COMPRESS_MIN_BYTES)
+        {
+            byte[] frame = new byte[_batchBytes - 4];
+            System.arraycopy(_batch, 4, frame, 0, frame.length);
+
+            _batchBytes = 0;
+            _batchFrames = 0;
+
+            return frame;
+        }
+
+        long start = cpuTime();
+
+        _deflater.reset();
+        _deflater.setInput(_batch, 0, _batchBytes);
+        _deflater.finish();
+
+        /**
+         * int for the bytes deflated so far
+         */
+        int deflatedBytes = 0;
+
+        // WHILE the deflater has more to give
+        while (!_deflater.finished())
+        {
+            if (deflatedBytes == _deflated.length)
+            {
+                byte[] larger = new byte[_deflated.length * 2];
+                System.arraycopy(_deflated, 0, larger, 0, deflatedBytes);
+                _deflated = larger;
+            }
+
+            deflatedBytes += _deflater.deflate(_deflated, deflatedBytes, _deflated.length - deflatedBytes);
+        }
+
+        _cpuNanos += cpuTime() - start;
+
+        CompressedBatch compressedBatch = (CompressedBatch) EventFactory.getFactoryInstance().createEvent
+                (Protocol.COMPRESSED_BATCH);
+
+        byte[] deflated = new byte[deflatedBytes];
+        System.arraycopy(_deflated, 0, deflated, 0, deflatedBytes);
+
+        compressedBatch.setRawLength(_batchBytes);
+        compressedBatch.setDeflated(deflated);
+
+        byte[] frame = compressedBatch.getBytes();
+
+        ++_batches;
+        _frames += _batchFrames;
+        _rawBytes += _batchBytes;
+        _compressedBytes += frame.length + 4;
+
+        _batchBytes = 0;
+        _batchFrames = 0;
+
+        return frame;
+    }
+
+    /**
+     * Method to inflate a received CompressedBatch back into the frames it holds.
+     *
+     * @param compressedBatch <code>CompressedBatch</code> received.
+     * @return <code>byte[]</code> of the frames in the batch, each with its length in front.
+     * @throws IOException
+     */
+    public static byte[] inflate(CompressedBatch compressedBatch) throws IOException
+    {
+        byte[] batch = new byte[compressedBatch.getRawLength()];
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressedBatch.getDeflated());
+
+        try
+        {
+            /**
+             * int for the bytes inflated so far
+             */
+            int inflated = 0;
+
+            // WHILE the batch isn't whole
+            while (inflated < batch.length && !inflater.finished())
+            {
+                int bytes = inflater.inflate(batch, inflated, batch.length - inflated);
+
+                if (bytes == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("CompressedBatch ended after " + inflated + " of " + batch.length + " bytes");
+
+                inflated += bytes;
+            }
+        }
+        catch (DataFormatException dfe)
+        {
+            throw new IOException("CompressedBatch could not be inflated: " + dfe.getMessage());
+        }
+
+        return batch;
+    }
+
+    /**
+     * @return <code>long</code> nanoseconds of CPU time used by the current thread, or of wall clock
+     * time where the JVM can't measure CPU time for it.
+     */
+    private static long cpuTime()
+    {
+        long cpuTime = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+
+        return (cpuTime < 0) ? System.nanoTime() : cpuTime;
+    }
+
+
+    /**
+     * ************************* OVERIDDEN METHODS **********************************
+     */
+    @Override
+    public String toString()
+    {
+        return "batches " + _batches + ", frames " + _frames + ", " + _rawBytes + " bytes deflated to " +
+                _compressedBytes + String.format(" (ratio %.2f), %.1f ms CPU", getRatio(), _cpuNanos / 1e6);
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    /**
+     * @return <code>double</code> of the bytes before deflating over the bytes sent; 1 before any batch.
+     */
+    public double getRatio()
+    {
+        return (_compressedBytes == 0) ? 1.0 : (double) _rawBytes / _compressedBytes;
+    }
+
+    public long getBatches()
+    {
+        return _batches;
+    }
+
+    public long getRawBytes()
+    {
+        return _rawBytes;
+    }
+
+    public long getCompressedBytes()
+    {
+        return _compressedBytes;
+    }
+
+    public long getCpuNanos()
+    {
+        return _cpuNanos;
+    }
+
+}
@@ -0,0 +1,82 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.Statics;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A BufferPool class to hand out and take back the receive buffers connections read into, so a
+ * connection being opened does not have to allocate (and a closed one leave for the collector)
+ * Statics.RECEIVE_BUFFER_SIZE bytes. Heap and direct buffers are pooled separately.
+ */
+public class BufferPool
+{
+    /**
+     * Free heap buffers
+     */
+    private static final ConcurrentLinkedQueue<ByteBuffer> _heapBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * Free direct buffers
+     */
+    private static final ConcurrentLinkedQueue<ByteBuffer> _directBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * int for the number of free buffers in the pool, heap and direct together
+     */
+    private static final AtomicInteger _free = new AtomicInteger();
+
+
+    private BufferPool()
+    {
+
+    }
+
+
+    /**
+     * Method to take a buffer from the pool, or allocate one if the pool is empty.
+     *
+     * @param direct <code>boolean</code> for if the buffer should be direct.
+     * @return cleared <code>ByteBuffer</code> of Statics.RECEIVE_BUFFER_SIZE bytes.
+     */
+    public static ByteBuffer acquire(boolean direct)
+    {
+        ByteBuffer buffer = (direct ? _directBuffers : _heapBuffers).poll();
+
+        // IF the pool had nothing for us
+        if (buffer == null)
+            return direct ? ByteBuffer.allocateDirect(Statics.RECEIVE_BUFFER_SIZE)
+                    : ByteBuffer.allocate(Statics.RECEIVE_BUFFER_SIZE);
+
+        _free.decrementAndGet();
+
+        return buffer;
+    }
+
+    /**
+     * Method to give a buffer back to the pool. Buffers that were grown past Statics.RECEIVE_BUFFER_SIZE,
+     * or that arrive when the pool is already full, are left for the collector.
+     *
+     * @param buffer <code>ByteBuffer</code> no longer in use by its connection.
+     */
+    public static void release(ByteBuffer buffer)
+    {
+        // IF the buffer isn't one of ours to keep
+        if (buffer == null || buffer.capacity() != Statics.RECEIVE_BUFFER_SIZE)
+            return;
+
+        // IF the pool is full
+        if (_free.incrementAndGet() > Statics.RECEIVE_POOL_SIZE)
+        {
+            _free.decrementAndGet();
+            return;
+        }
+
+        buffer.clear();
+
+        (buffer.isDirect() ? _directBuffers : _heapBuffers).offer(buffer);
+    }
+
+}
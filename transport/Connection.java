@@ -0,0 +1,85 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.wireformats.Event;
+
+import java.io.IOException;
+
+/**
+ * A Connection interface to represent one open connection between the current Node and
+ * another. A Connection receives length-prefixed frames from the other end, turns them into
+ * Events and hands them to its callback Node; it is also the path frames are sent back over.
+ * Both the thread-per-connection TCPReceiverThread and the selector based NIOConnection
+ * implement it, so Links and Nodes do not care which transport is in use.
+ */
+public interface Connection
+{
+    /**
+     * Method to send a single frame (the length prefix is added by the Connection) to the
+     * other end of this Connection.
+     *
+     * @param data <code>byte[]</code> containing the message to the other node.
+     * @throws IOException
+     */
+    public void sendData(byte[] data) throws IOException;
+
+    /**
+     * Method to send a message as a single frame, encoding it straight into whatever the Connection
+     * sends from where it can, rather than into a byte array of its own first.
+     *
+     * @param event <code>Event</code> to send to the other node.
+     * @throws IOException
+     */
+    public void sendEvent(Event event) throws IOException;
+
+    /**
+     * Method to write any frames the Connection is still holding back.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException;
+
+    /**
+     * Method to stop receiving on this Connection and close it.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException;
+
+    /**
+     * Method to stop delivering received messages to the callback Node.
+     */
+    public void interrupt();
+
+    /**
+     * Method to tell if the Connection has been interrupted.
+     *
+     * @return <code>true</code> if the Connection has been interrupted, <code>false</code> otherwise.
+     */
+    public boolean isInterrupted();
+
+    /**
+     * @return <code>String</code> of the host name at the other end of this Connection.
+     */
+    public String getHostname();
+
+    /**
+     * @return <code>int</code> of the port at the other end of this Connection.
+     */
+    public int getPort();
+
+    /**
+     * @return <code>String</code> of the host name at this end of the Connection.
+     */
+    public String getLocalHostName();
+
+    /**
+     * @return <code>int</code> of the port at this end of the Connection.
+     */
+    public int getLocalPort();
+
+    /**
+     * @return <code>Node</code> that is notified of messages received on this Connection.
+     */
+    public Node getCallbackNode();
+}
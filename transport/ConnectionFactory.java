@@ -0,0 +1,128 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.util.Statics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * A ConnectionFactory class to create the Listeners and Connections for the transport selected
+ * at startup (Statics.TRANSPORT). With the "tcp" transport every connection gets its own
+ * TCPReceiverThread; with the "nio" transport connections are handed to the shared NIOEventLoops.
+ * Gathering TCPSenders need sockets with channels, so those are opened through channels as well.
+ * With the "memory" transport there are no sockets at all: Nodes in the same JVM are connected
+ * by InMemoryConnections.
+ */
+public class ConnectionFactory
+{
+    /**
+     * Transport selected at startup
+     */
+    private static final Transport TRANSPORT = isInMemory() ? new InMemoryTransport() : new TCPTransport();
+
+    private ConnectionFactory()
+    {
+
+    }
+
+
+    /**
+     * Method to open a server socket for the selected transport. Sockets accepted from it are
+     * suitable for startConnection().
+     *
+     * @param port    <code>int</code> of the port to listen to; 0 for any free port.
+     * @param backlog <code>int</code> of the requested maximum length of the queue of incoming connections.
+     * @return <code>ServerSocket</code> listening on the port.
+     * @throws IOException
+     */
+    public static ServerSocket openServerSocket(int port, int backlog) throws IOException
+    {
+        // IF we are using the selector transport or gathering senders the accepted sockets need channels
+        if (isNIO() || TCPSender.isGathering())
+        {
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port), backlog);
+
+            return serverChannel.socket();
+        }
+
+        return new ServerSocket(port, backlog);
+    }
+
+    /**
+     * Method to open a connection to the given node and begin receiving on it.
+     *
+     * @param hostName     <code>String</code> of the host to connect to.
+     * @param port         <code>int</code> of the port to connect to.
+     * @param callbackNode <code>Node</code> that has interest in the received messages.
+     * @return <code>Connection</code> to the node.
+     * @throws IOException
+     */
+    public static Connection connect(String hostName, int port, Node callbackNode) throws IOException
+    {
+        return TRANSPORT.connect(hostName, port, callbackNode);
+    }
+
+    /**
+     * Method to open a Listener for Connections from other nodes with the selected transport.
+     *
+     * @param port         <code>int</code> of the port to listen to; 0 for any free port.
+     * @param callbackNode <code>Node</code> to be notified of the messages received on accepted Connections.
+     * @return <code>Listener</code> for the port, not yet started.
+     * @throws IOException
+     */
+    public static Listener listen(int port, Node callbackNode) throws IOException
+    {
+        return TRANSPORT.listen(port, callbackNode);
+    }
+
+    /**
+     * Method to begin receiving on a connected socket.
+     *
+     * @param socket       <code>Socket</code> connected to the other node.
+     * @param callbackNode <code>Node</code> that has interest in the received messages.
+     * @return <code>Connection</code> for the socket.
+     * @throws IOException
+     */
+    public static Connection startConnection(Socket socket, Node callbackNode) throws IOException
+    {
+        // IF small frames are to go out at once rather than wait to be coalesced
+        if (Statics.tcpNoDelay())
+            socket.setTcpNoDelay(true);
+
+        // IF the socket was opened for the selector transport
+        if (isNIO() && socket.getChannel() != null)
+            return NIOEventLoop.register(socket.getChannel(), callbackNode);
+
+        TCPReceiverThread receiver = new TCPReceiverThread(socket, callbackNode);
+        receiver.start();
+
+        return receiver;
+    }
+
+    /**
+     * @return <code>true</code> if the selector transport was selected at startup.
+     */
+    public static boolean isNIO()
+    {
+        return Statics.TRANSPORT_NIO.equals(Statics.TRANSPORT);
+    }
+
+    /**
+     * @return <code>true</code> if the in-memory transport was selected at startup.
+     */
+    public static boolean isInMemory()
+    {
+        return Statics.TRANSPORT_MEMORY.equals(Statics.TRANSPORT);
+    }
+
+    public static Transport getTransport()
+    {
+        return TRANSPORT;
+    }
+
+}
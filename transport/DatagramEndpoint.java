@@ -0,0 +1,474 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.util.OverlayThreadFactory;
+import cs455.overlay.util.Statics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A DatagramEndpoint class to carry a MessagingNode's payload messages as UDP datagrams instead of
+ * over its TCP Links, so the payload flood is not held up behind a lost segment the way an in-order
+ * stream is. Control messages stay on TCP.
+ *
+ * Each node has one endpoint, bound to the same port number as its TCP server socket so peers can
+ * find it from the node's ID. Payload messages sent to a peer are packed, as many as fit in
+ * Statics.DATAGRAM_BYTES, into datagrams of the form
+ * [int magic][long sequence of the first message][int number of messages]([int length][message])*
+ * and every message on a link gets the next sequence number. The receiving end uses the sequence
+ * numbers to count, per link, the messages lost and the messages that arrived out of order;
+ * nothing is retransmitted.
+ */
+public class DatagramEndpoint implements Runnable
+{
+    /**
+     * int marking a datagram as one of ours
+     */
+    private static final int MAGIC = 0x4F564C44;
+
+    /**
+     * int for the bytes of datagram header ahead of the messages
+     */
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * Executor that sends datagrams that have been held back long enough, shared by every endpoint
+     */
+    private static ScheduledExecutorService _flusher;
+
+    /**
+     * DatagramChannel the endpoint sends and receives on
+     */
+    private final DatagramChannel _channel;
+
+    /**
+     * Node to be notified when a payload message is received
+     */
+    private final Node _callbackNode;
+
+    /**
+     * Hash map of the links messages are being sent on, by the address of the other end
+     */
+    private final HashMap<SocketAddress, Outbound> _outbound;
+
+    /**
+     * Hash map of the links messages are being received on, by the address of the other end
+     */
+    private final HashMap<SocketAddress, Inbound> _inbound;
+
+    /**
+     * Thread the receiver runs on
+     */
+    private Thread _thread;
+
+
+    /**
+     * One link's worth of payload messages waiting to go out in the next datagram
+     */
+    public class Outbound implements Runnable
+    {
+        /**
+         * SocketAddress of the endpoint at the other end
+         */
+        private final SocketAddress _target;
+
+        /**
+         * ByteBuffer the next datagram is being packed into
+         */
+        private final ByteBuffer _datagram;
+
+        /**
+         * long for the sequence number of the next message
+         */
+        private long _nextSequence;
+
+        /**
+         * int for the messages packed into the datagram so far
+         */
+        private int _count;
+
+        /**
+         * boolean for if a flush of the datagram has been scheduled
+         */
+        private boolean _flushScheduled;
+
+        /**
+         * long for the number of datagrams sent
+         */
+        private long _datagramsSent;
+
+
+        private Outbound(SocketAddress target)
+        {
+            _target = target;
+            _datagram = ByteBuffer.allocate(Statics.DATAGRAM_BYTES);
+            _nextSequence = 0;
+            _count = 0;
+        }
+
+        /**
+         * Method to pack a payload message into the next datagram, sending the datagram first if the
+         * message won't fit and sending it right away if it is full.
+         *
+         * @param data <code>byte[]</code> containing the payload message.
+         * @throws IOException
+         */
+        public synchronized void send(byte[] data) throws IOException
+        {
+            // IF the message won't fit behind the ones already packed
+            if (_count > 0 && _datagram.position() + 4 + data.length > _datagram.capacity())
+                flush();
+
+            // IF the message won't fit in a datagram at all
+            if (HEADER_BYTES + 4 + data.length > _datagram.capacity())
+                throw new IOException("Payload message of " + data.length + " bytes is too large for a datagram");
+
+            // IF this is the first message of the datagram, leave room for the header
+            if (_count == 0)
+                _datagram.position(HEADER_BYTES);
+
+            _datagram.putInt(data.length);
+            _datagram.put(data);
+            ++_count;
+
+            // IF no more will fit, or we aren't to hold messages back
+            if (_datagram.remaining() < 8 || Statics.DATAGRAM_LINGER_MICROS <= 0)
+                flush();
+            else if (!_flushScheduled)
+            {
+                _flushScheduled = true;
+                flusher().schedule(this, Statics.DATAGRAM_LINGER_MICROS, TimeUnit.MICROSECONDS);
+            }
+        }
+
+        /**
+         * Method to send the datagram packed so far.
+         *
+         * @throws IOException
+         */
+        public synchronized void flush() throws IOException
+        {
+            // IF there is nothing to send
+            if (_count == 0)
+                return;
+
+            _datagram.putInt(0, MAGIC);
+            _datagram.putLong(4, _nextSequence);
+            _datagram.putInt(12, _count);
+            _datagram.flip();
+
+            _channel.send(_datagram, _target);
+
+            _nextSequence += _count;
+            _count = 0;
+            ++_datagramsSent;
+            _datagram.clear();
+        }
+
+        /**
+         * Send the datagram once it has been held back long enough.
+         */
+        public synchronized void run()
+        {
+            _flushScheduled = false;
+
+            try
+            {
+                flush();
+            }
+            catch (IOException ioe)
+            {
+                ioe.printStackTrace();
+            }
+        }
+
+        public synchronized long getMessagesSent()
+        {
+            return _nextSequence + _count;
+        }
+
+        public synchronized long getDatagramsSent()
+        {
+            return _datagramsSent;
+        }
+    }
+
+    /**
+     * One link's worth of sequence accounting for the messages received on it
+     */
+    private static class Inbound
+    {
+        /**
+         * long for the sequence number expected next
+         */
+        private long _expected;
+
+        /**
+         * long for the messages received
+         */
+        private long _received;
+
+        /**
+         * long for the messages skipped over that have not (yet) turned up
+         */
+        private long _lost;
+
+        /**
+         * long for the messages that turned up after later ones
+         */
+        private long _reordered;
+
+        /**
+         * Method to account for a datagram of messages.
+         *
+         * @param first <code>long</code> sequence number of the first message.
+         * @param count <code>int</code> number of messages.
+         */
+        private void received(long first, int count)
+        {
+            _received += count;
+
+            // IF the datagram is the one we expected, or later ones were lost
+            if (first >= _expected)
+            {
+                _lost += first - _expected;
+                _expected = first + count;
+            }
+            // ELSE it was overtaken; its messages were counted as lost when we skipped them
+            else
+            {
+                _reordered += count;
+                _lost -= count;
+            }
+        }
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param port         <code>int</code> of the port to bind to; the same number as the node's TCP server socket.
+     * @param callbackNode <code>Node</code> that has interest in the received payload messages.
+     * @throws IOException
+     */
+    public DatagramEndpoint(int port, Node callbackNode) throws IOException
+    {
+        _callbackNode = callbackNode;
+        _outbound = new HashMap<SocketAddress, Outbound>();
+        _inbound = new HashMap<SocketAddress, Inbound>();
+
+        _channel = DatagramChannel.open();
+        _channel.setOption(StandardSocketOptions.SO_RCVBUF, Statics.DATAGRAM_SOCKET_BUFFER);
+        _channel.setOption(StandardSocketOptions.SO_SNDBUF, Statics.DATAGRAM_SOCKET_BUFFER);
+        _channel.bind(new InetSocketAddress(port));
+    }
+
+    /**
+     * Method to get the executor that sends held back datagrams, starting it the first time through.
+     *
+     * @return <code>ScheduledExecutorService</code> to schedule flushes on.
+     */
+    private static synchronized ScheduledExecutorService flusher()
+    {
+        // IF the flusher hasn't been started yet
+        if (_flusher == null)
+        {
+            _flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "datagram-flusher");
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+        }
+
+        return _flusher;
+    }
+
+    /**
+     * Method to start receiving on a thread of the selected kind.
+     */
+    public void start()
+    {
+        _thread = OverlayThreadFactory.getFactoryInstance().newThread(this, "datagram-receiver-" + getLocalPort());
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Method to get the outbound link to another node's endpoint, creating it the first time.
+     *
+     * @param hostName <code>String</code> of the other node's host.
+     * @param port     <code>int</code> of the other node's port.
+     * @return <code>Outbound</code> to send payload messages to the node with.
+     */
+    public synchronized Outbound getOutbound(String hostName, int port)
+    {
+        SocketAddress target = new InetSocketAddress(hostName, port);
+
+        // IF we haven't sent to this node before
+        if (!_outbound.containsKey(target))
+            _outbound.put(target, new Outbound(target));
+
+        return _outbound.get(target);
+    }
+
+    /**
+     * Method to send every datagram still being packed.
+     */
+    public void flushAll()
+    {
+        Outbound[] outbound;
+
+        synchronized (this)
+        {
+            outbound = _outbound.values().toArray(new Outbound[0]);
+        }
+
+        for (Outbound link : outbound)
+        {
+            try
+            {
+                link.flush();
+            }
+            catch (IOException ioe)
+            {
+                ioe.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Receive datagrams, account for their sequence numbers and notify the node of every payload
+     * message in them.
+     */
+    public void run()
+    {
+        ByteBuffer datagram = ByteBuffer.allocate(64 * 1024);
+
+        // WHILE the channel is open
+        while (_channel.isOpen())
+        {
+            try
+            {
+                datagram.clear();
+
+                SocketAddress source = _channel.receive(datagram);
+
+                datagram.flip();
+
+                // IF it isn't one of ours
+                if (datagram.remaining() < HEADER_BYTES || datagram.getInt() != MAGIC)
+                    continue;
+
+                long first = datagram.getLong();
+                int count = datagram.getInt();
+
+                synchronized (this)
+                {
+                    // IF this is the first datagram from the node
+                    if (!_inbound.containsKey(source))
+                        _inbound.put(source, new Inbound());
+
+                    _inbound.get(source).received(first, count);
+                }
+
+                // FOR every message in the datagram
+                for (int i = 0; i < count && datagram.remaining() >= 4; ++i)
+                {
+                    int length = datagram.getInt();
+                    int start = datagram.position();
+
+                    datagram.position(start + length);
+
+                    FrameDispatcher.dispatch(_callbackNode, null, datagram.array(), datagram.arrayOffset() + start,
+                            length, false);
+                }
+            }
+            catch (IOException ioe)
+            {
+                // IF the endpoint was closed on purpose
+                if (!_channel.isOpen())
+                    return;
+
+                ioe.printStackTrace();
+            }
+
+        } // END WHILE
+
+    }//ENDRUN
+
+    /**
+     * Method to close the endpoint.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        flushAll();
+        _channel.close();
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    /**
+     * @return <code>long</code> of the messages skipped over on every link that have not turned up.
+     */
+    public synchronized long getLost()
+    {
+        long lost = 0;
+
+        for (Inbound inbound : _inbound.values())
+            lost += inbound._lost;
+
+        return lost;
+    }
+
+    /**
+     * @return <code>long</code> of the messages on every link that turned up after later ones.
+     */
+    public synchronized long getReordered()
+    {
+        long reordered = 0;
+
+        for (Inbound inbound : _inbound.values())
+            reordered += inbound._reordered;
+
+        return reordered;
+    }
+
+    /**
+     * @return <code>long</code> of the messages received on every link.
+     */
+    public synchronized long getReceived()
+    {
+        long received = 0;
+
+        for (Inbound inbound : _inbound.values())
+            received += inbound._received;
+
+        return received;
+    }
+
+    public int getLocalPort()
+    {
+        return _channel.socket().getLocalPort();
+    }
+
+}
@@ -0,0 +1,232 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.Statics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * A FlowControl class to keep the credit window of one Link. Each end of a Link starts out able to
+ * send Statics.FLOW_CREDIT_WINDOW payload messages; every payload message sent uses up one credit,
+ * and the other end hands credits back (with FlowCredit messages) as it works through the payload
+ * messages it received. Control messages are never held back.
+ *
+ * When a Link is out of credits a sender that can afford to wait (a message generator) waits for
+ * more; a relay cannot, since credits arrive through the same onEvent it is running in, so its
+ * message is either spilled into a bounded local queue to be sent as credits come back, or dropped,
+ * as chosen with Statics.FLOW_POLICY. Both are counted.
+ */
+public class FlowControl
+{
+    /**
+     * Results of asking to send a payload message
+     */
+    public static final int SEND = 0;
+    public static final int SPILLED = 1;
+    public static final int DROPPED = 2;
+
+    /**
+     * int for the number of payload messages we may send right now
+     */
+    private int _credits;
+
+    /**
+     * Payload messages waiting for credits, oldest first
+     */
+    private final ArrayDeque<byte[]> _spill;
+
+    /**
+     * int for the number of payload messages received and dealt with that have not been granted back yet
+     */
+    private int _unGranted;
+
+    /**
+     * int for the number of dealt with messages to grant back at a time
+     */
+    private final int _grantBatch;
+
+    /**
+     * long for the number of payload messages spilled
+     */
+    private long _spilled;
+
+    /**
+     * long for the number of payload messages dropped
+     */
+    private long _dropped;
+
+    /**
+     * long for the number of times a sender had to wait for credits
+     */
+    private long _stalls;
+
+
+    /**
+     * Constructor
+     *
+     * @param window <code>int</code> of the payload messages either end may have outstanding.
+     */
+    public FlowControl(int window)
+    {
+        _credits = window;
+        _grantBatch = Math.max(1, window / 4);
+        _spill = new ArrayDeque<byte[]>();
+    }
+
+    /**
+     * Method to take a credit to send a payload message. Messages spilled earlier go first, so a new
+     * message is spilled (or dropped) while any are still waiting.
+     *
+     * @param frame <code>byte[]</code> of the payload message.
+     * @param wait  <code>boolean</code> for if the caller would rather wait for a credit than have its
+     *              message spilled or dropped.
+     * @return <code>SEND</code> if the caller should send the message now, <code>SPILLED</code> if it
+     * has been kept to be sent later, <code>DROPPED</code> if it has been thrown away.
+     */
+    public synchronized int acquire(byte[] frame, boolean wait)
+    {
+        boolean stalled = false;
+
+        while (true)
+        {
+            // IF we have a credit and nothing is waiting ahead of this message
+            if (_credits > 0 && _spill.isEmpty())
+            {
+                --_credits;
+                return SEND;
+            }
+
+            // IF the caller would rather wait
+            if (wait)
+            {
+                if (!stalled)
+                {
+                    ++_stalls;
+                    stalled = true;
+                }
+
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    wait = false;
+                }
+                continue;
+            }
+
+            // IF we may keep the message until credits come back
+            if (Statics.FLOW_POLICY.equals(Statics.FLOW_POLICY_SPILL) && _spill.size() < Statics.FLOW_SPILL_CAPACITY)
+            {
+                _spill.addLast(frame);
+                ++_spilled;
+                return SPILLED;
+            }
+
+            ++_dropped;
+            return DROPPED;
+        }
+    }
+
+    /**
+     * Method to take a credit if one is free right now and no spilled message is waiting for it.
+     * Unlike acquire(), nothing is spilled, dropped or counted when there isn't one.
+     *
+     * @return <code>true</code> if a credit was taken.
+     */
+    public synchronized boolean tryAcquire()
+    {
+        // IF we have no credit, or messages are waiting ahead for one
+        if (_credits <= 0 || !_spill.isEmpty())
+            return false;
+
+        --_credits;
+
+        return true;
+    }
+
+    /**
+     * Method to add the credits granted by the other end, and take off the spill as many waiting
+     * messages as they cover. The caller is to send the returned messages, in order, before it lets go
+     * of this FlowControl's monitor.
+     *
+     * @param credits <code>int</code> of the credits granted.
+     * @return <code>ArrayList<byte[]></code> of spilled messages that can be sent now.
+     */
+    public synchronized ArrayList<byte[]> grant(int credits)
+    {
+        ArrayList<byte[]> ready = new ArrayList<byte[]>();
+
+        _credits += credits;
+
+        // WHILE there are credits for the waiting messages
+        while (_credits > 0 && !_spill.isEmpty())
+        {
+            ready.add(_spill.removeFirst());
+            --_credits;
+        }
+
+        // wake any sender waiting for credits
+        notifyAll();
+
+        return ready;
+    }
+
+    /**
+     * Method to count a payload message received from the other end as dealt with.
+     *
+     * @return <code>int</code> of the credits to grant back to the other end now; 0 until enough
+     * messages have been dealt with to be worth a FlowCredit message.
+     */
+    public synchronized int consumed()
+    {
+        // IF it is not time to grant credits back yet
+        if (++_unGranted < _grantBatch)
+            return 0;
+
+        int credits = _unGranted;
+        _unGranted = 0;
+
+        return credits;
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public synchronized int getCredits()
+    {
+        return _credits;
+    }
+
+    public synchronized int getSpillDepth()
+    {
+        return _spill.size();
+    }
+
+    public synchronized long getSpilled()
+    {
+        return _spilled;
+    }
+
+    public synchronized long getDropped()
+    {
+        return _dropped;
+    }
+
+    public synchronized long getStalls()
+    {
+        return _stalls;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "credits " + _credits + " spill " + _spill.size() + " spilled " + _spilled + " dropped " + _dropped
+                + " stalls " + _stalls;
+    }
+
+}
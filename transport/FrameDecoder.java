@@ -0,0 +1,174 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.Statics;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * A FrameDecoder class to hold the receive buffer of one connection and turn the length-prefixed
+ * frames read into it into Events. The connection reads as much as the socket has into the buffer
+ * and then has every complete frame in it decoded where it lies and handed to its callback Node;
+ * a partial frame is kept at the front of the buffer for the next read.
+ */
+public class FrameDecoder
+{
+    /**
+     * ByteBuffer the connection reads into, left ready to be read into between calls
+     */
+    private ByteBuffer _buffer;
+
+    /**
+     * boolean for if the buffer is direct
+     */
+    private final boolean _direct;
+
+    /**
+     * byte[] a frame in a direct buffer is copied into to be decoded
+     */
+    private byte[] _scratch;
+
+
+    /**
+     * Constructor
+     *
+     * @param direct <code>boolean</code> for if the receive buffer should be direct. A direct buffer
+     *               can only be filled from a channel.
+     */
+    public FrameDecoder(boolean direct)
+    {
+        _direct = direct;
+        _buffer = BufferPool.acquire(direct);
+
+        if (direct)
+            _scratch = new byte[Statics.RECEIVE_BUFFER_SIZE];
+    }
+
+    /**
+     * Method to decode every complete frame that has been read into the buffer and hand each one to
+     * the connection's callback node, in order. Frames are not delivered once the connection has
+     * been interrupted.
+     *
+     * @param connection <code>Connection</code> the frames were read from.
+     * @throws IOException
+     */
+    public void decodeFrames(Connection connection) throws IOException
+    {
+        _buffer.flip();
+
+        // WHILE there is at least a length prefix to look at
+        while (_buffer.remaining() >= 4)
+        {
+            int start = _buffer.position();
+            int payLoadLength = _buffer.getInt(start);
+
+            // IF the length can't be right, we have lost track of the frames
+            if (payLoadLength < 0)
+                throw new StreamCorruptedException("Invalid frame length " + payLoadLength + " from "
+                        + connection.getHostname());
+
+            // IF the whole frame hasn't arrived yet
+            if (_buffer.remaining() < 4 + payLoadLength)
+            {
+                // IF the frame won't fit in the buffer, move what we have into one it will fit in
+                if (4 + payLoadLength > _buffer.capacity())
+                {
+                    ByteBuffer larger = _direct ? ByteBuffer.allocateDirect(4 + payLoadLength)
+                            : ByteBuffer.allocate(4 + payLoadLength);
+                    larger.put(_buffer);
+
+                    BufferPool.release(_buffer);
+                    _buffer = larger;
+                    return;
+                }
+                break;
+            }
+
+            _buffer.position(start + 4 + payLoadLength);
+
+            // IF we are still delivering messages
+            if (!connection.isInterrupted())
+            {
+                // IF the frame is on the heap it can be dispatched where it lies
+                if (!_direct)
+                    FrameDispatcher.dispatch(connection.getCallbackNode(), connection, _buffer.array(),
+                            _buffer.arrayOffset() + start + 4, payLoadLength, false);
+                else
+                {
+                    if (_scratch.length < payLoadLength)
+                        _scratch = new byte[payLoadLength];
+
+                    _buffer.get(start + 4, _scratch, 0, payLoadLength);
+                    FrameDispatcher.dispatch(connection.getCallbackNode(), connection, _scratch, 0, payLoadLength,
+                            false);
+                }
+            }
+        }
+
+        _buffer.compact();
+
+        // IF an oversized frame has been dealt with, go back to a pooled buffer
+        if (_buffer.capacity() > Statics.RECEIVE_BUFFER_SIZE && _buffer.position() == 0)
+            _buffer = BufferPool.acquire(_direct);
+    }
+
+    /**
+     * @return <code>int</code> of the length of the frame that has started arriving at the front of the
+     * buffer, once its length prefix has; -1 if none has.
+     */
+    public int getPartialFrameLength()
+    {
+        // IF not even the length prefix of the next frame has been read
+        if (_buffer.position() < 4)
+            return -1;
+
+        return _buffer.getInt(0);
+    }
+
+    /**
+     * Method to take the part of the frame at the front of the buffer that has arrived out of the
+     * buffer, for the connection to read the rest of it itself. The buffer is left empty.
+     *
+     * @param frame <code>byte[]</code> the size of the frame's body to copy the part into.
+     * @return <code>int</code> of the number of bytes of the body copied.
+     */
+    public int takePartialFrame(byte[] frame)
+    {
+        int received = _buffer.position() - 4;
+
+        _buffer.get(4, frame, 0, received);
+        _buffer.clear();
+
+        // IF the frame had outgrown the pooled buffer, go back to one
+        if (_buffer.capacity() > Statics.RECEIVE_BUFFER_SIZE)
+            _buffer = BufferPool.acquire(_direct);
+
+        return received;
+    }
+
+    /**
+     * Method to give the buffer back to the pool once the connection is done with it.
+     */
+    public void release()
+    {
+        BufferPool.release(_buffer);
+        _buffer = null;
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public ByteBuffer getBuffer()
+    {
+        return _buffer;
+    }
+
+    public boolean isDirect()
+    {
+        return _direct;
+    }
+
+}
@@ -0,0 +1,146 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.wireformats.CompactPayload;
+import cs455.overlay.wireformats.CompressedBatch;
+import cs455.overlay.wireformats.Event;
+import cs455.overlay.wireformats.EventFactory;
+import cs455.overlay.wireformats.PayloadMessage;
+import cs455.overlay.wireformats.Protocol;
+
+import java.io.IOException;
+
+/**
+ * A FrameDispatcher class to hand every frame a Connection (or the DatagramEndpoint) receives to
+ * its Node. A payload frame is first offered, undecoded, to a Node that is a FrameRelay; anything
+ * else is decoded by the EventFactory and passed to onEvent, except a CompressedBatch, which is
+ * inflated and its frames dispatched one at a time. A payload frame that isn't relayed is handed
+ * over as a PayloadMessage view over the frame (see PayloadMessage.wrap()), one kept by each
+ * receiving thread, rather than being decoded; the view is good only until onEvent returns. Every
+ * frame but a batch or a LinkResume that arrives on a resumable Link's connection is counted by
+ * its LinkSession first, and dropped if the connection has been given up on. A compact payload
+ * frame (see CompactPayload) is expanded back into a PayloadMessage frame, with the epoch of the
+ * Link it came over, before anything else is done with it.
+ */
+public class FrameDispatcher
+{
+    /**
+     * EventFactory instance
+     */
+    private static final EventFactory EVENT_FACTORY = EventFactory.getFactoryInstance();
+
+    /**
+     * ThreadLocal of the PayloadMessage each receiving thread hands its payload messages over in
+     */
+    private static final ThreadLocal<PayloadMessage> PAYLOAD_VIEWS = new ThreadLocal<PayloadMessage>()
+    {
+        @Override
+        protected PayloadMessage initialValue()
+        {
+            return new PayloadMessage();
+        }
+    };
+
+
+    /**
+     * Method to hand a received frame to a node.
+     *
+     * @param node       <code>Node</code> to be notified of the frame.
+     * @param connection <code>Connection</code> the frame was received on; null if it came as a datagram.
+     * @param data       <code>byte[]</code> holding the frame.
+     * @param offset     <code>int</code> index in data of the first byte of the frame.
+     * @param length     <code>int</code> number of bytes in the frame.
+     * @param owned      <code>boolean</code> for if data holds just this frame and is not used again by the caller.
+     * @throws IOException
+     */
+    public static void dispatch(Node node, Connection connection, byte[] data, int offset, int length, boolean owned)
+            throws IOException
+    {
+        /**
+         * int for the type of the message in the frame
+         */
+        int type = (length < 4) ? 0 : PayloadMessage.readInt(data, offset);
+
+        // IF the frame may be carried by a resumable Link, it has to be counted
+        if (connection != null && type != Protocol.COMPRESSED_BATCH && type != Protocol.LINK_RESUME)
+        {
+            LinkSession session = LinkSession.forConnection(connection);
+
+            // IF the connection has been given up on, the frame is replayed over the next one
+            if (session != null && !session.received(connection))
+                return;
+        }
+
+        // IF it is a compact payload frame, expand it with the epoch its sender counts from
+        if (type == Protocol.COMPACT_PAYLOAD_MESSAGE && node instanceof FrameRelay)
+        {
+            Link link = (connection == null) ? null : ((FrameRelay) node).linkFor(connection);
+
+            byte[] frame = (link == null) ? null : CompactPayload.expand(data, offset, length, link.getPeerEpoch());
+
+            // IF we don't know who sent it, or it isn't well formed
+            if (frame == null)
+            {
+                System.err.println("Dropping a compact payload message that could not be expanded.");
+                return;
+            }
+
+            data = frame;
+            offset = 0;
+            length = frame.length;
+            owned = true;
+            type = Protocol.PAYLOAD_MESSAGE;
+        }
+
+        // IF a payload frame can be relayed as it is
+        if (type == Protocol.PAYLOAD_MESSAGE && node instanceof FrameRelay &&
+                ((FrameRelay) node).relayFrame(connection, data, offset, length, owned))
+            return;
+
+        // IF it is a payload message, hand it over as a view over the frame, unless the view is in use further up
+        if (type == Protocol.PAYLOAD_MESSAGE)
+        {
+            PayloadMessage view = PAYLOAD_VIEWS.get();
+
+            if (!view.isView() && view.wrap(data, offset, length))
+            {
+                try
+                {
+                    node.onEvent(connection, view);
+                }
+                finally
+                {
+                    view.release();
+                }
+                return;
+            }
+        }
+
+        Event event = EVENT_FACTORY.createEvent(data, offset, length);
+
+        // IF the frame isn't a batch, there is nothing to unpack
+        if (type != Protocol.COMPRESSED_BATCH)
+        {
+            node.onEvent(connection, event);
+            return;
+        }
+
+        byte[] batch = BatchCompressor.inflate((CompressedBatch) event);
+
+        /**
+         * int index in the batch of the next frame
+         */
+        int position = 0;
+
+        // WHILE there are frames left in the batch, and we are still delivering them
+        while (position + 4 <= batch.length && (connection == null || !connection.isInterrupted()))
+        {
+            int frameLength = PayloadMessage.readInt(batch, position);
+
+            dispatch(node, connection, batch, position + 4, frameLength, false);
+
+            position += 4 + frameLength;
+        }
+    }
+
+}
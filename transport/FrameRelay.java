@@ -0,0 +1,61 @@
+package cs455.overlay.transport;
+
+import java.io.IOException;
+
+/**
+ * A FrameRelay interface for a Node that can forward a received payload frame to its next hop
+ * straight from the raw bytes, without the frame being decoded into an Event first. The
+ * FrameDispatcher offers every payload frame to a Node that implements it before decoding.
+ *
+ * A TCP receiver may also cut a large payload frame through (see Statics.CUT_THROUGH_BYTES): once the
+ * frame's next hop has arrived, it asks the Node for the Link to it and writes the frame on while the
+ * rest of it is still being read.
+ *
+ * A payload frame received in its compact form (see CompactPayload) is expanded with the epoch of the
+ * Link it came over, which the FrameDispatcher asks the Node for, before it is offered.
+ */
+public interface FrameRelay
+{
+    /**
+     * Method to forward a received payload frame if the receiving node is not its sink.
+     *
+     * @param connection <code>Connection</code> the frame was received on; null if it came as a datagram.
+     * @param data       <code>byte[]</code> holding the frame.
+     * @param offset     <code>int</code> index in data of the first byte of the frame.
+     * @param length     <code>int</code> number of bytes in the frame.
+     * @param owned      <code>boolean</code> for if data holds just this frame and is not used again by the
+     *                   caller, so it may be forwarded as it is rather than copied.
+     * @return <code>true</code> if the frame was dealt with, <code>false</code> if it is to be decoded and
+     * handed to onEvent as usual.
+     * @throws IOException
+     */
+    public boolean relayFrame(Connection connection, byte[] data, int offset, int length, boolean owned)
+            throws IOException;
+
+    /**
+     * Method to find the Link a payload frame that is still arriving is to be cut through on.
+     *
+     * @param connection <code>Connection</code> the frame is being received on.
+     * @param data       <code>byte[]</code> the frame is being read into, holding at least everything up
+     *                   to the end of the next hop's entry.
+     * @param nextHop    <code>int</code> index in data of the next hop's entry.
+     * @return <code>Link</code> to the next hop; null if the frame is to be received whole and handed to
+     * relayFrame() as usual.
+     */
+    public Link cutThroughLink(Connection connection, byte[] data, int nextHop);
+
+    /**
+     * Method to be told a payload frame has been cut through to its next hop.
+     *
+     * @param connection <code>Connection</code> the frame was received on.
+     */
+    public void frameCutThrough(Connection connection);
+
+    /**
+     * Method to find the Link a connection carries, whether as its own connection or as a stripe.
+     *
+     * @param connection <code>Connection</code> a frame was received on.
+     * @return <code>Link</code> the connection carries; null if none.
+     */
+    public Link linkFor(Connection connection);
+}
@@ -0,0 +1,281 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.util.OverlayThreadFactory;
+import cs455.overlay.util.Statics;
+import cs455.overlay.wireformats.Event;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An InMemoryConnection class for one end of a Connection made by the InMemoryTransport. Frames
+ * sent on it are copied onto the other end's bounded queue, standing in for the socket buffers: a
+ * sender waits while the queue is full. Each end has a receiver thread taking frames off its queue
+ * and handing them to its callback Node through the FrameDispatcher.
+ */
+public class InMemoryConnection implements Connection, Runnable
+{
+    /**
+     * ArrayBlockingQueue of frames sent by the other end, waiting to be received
+     */
+    private final ArrayBlockingQueue<byte[]> _inbound;
+
+    /**
+     * InMemoryConnection at the other end
+     */
+    private InMemoryConnection _peer;
+
+    /**
+     * int of the port this end is at
+     */
+    private final int _localPort;
+
+    /**
+     * Node to be notified of received messages
+     */
+    private final Node _callbackNode;
+
+    /**
+     * Thread the receiver runs on
+     */
+    private Thread _thread;
+
+    /**
+     * boolean for if received messages are no longer to be delivered
+     */
+    private volatile boolean _interrupted;
+
+    /**
+     * boolean for if this end has been closed
+     */
+    private volatile boolean _closed;
+
+    /**
+     * boolean for if the other end has been closed
+     */
+    private volatile boolean _peerClosed;
+
+    /**
+     * boolean for if the connection has been reset, so nothing more is delivered, even if it was already sent
+     */
+    private volatile boolean _reset;
+
+
+    /**
+     * Constructor
+     *
+     * @param localPort    <code>int</code> of the port this end is at.
+     * @param callbackNode <code>Node</code> to be notified of received messages.
+     */
+    InMemoryConnection(int localPort, Node callbackNode)
+    {
+        _inbound = new ArrayBlockingQueue<byte[]>(Statics.MEMORY_QUEUE_CAPACITY);
+        _localPort = localPort;
+        _callbackNode = callbackNode;
+    }
+
+    /**
+     * Method to join two ends into a Connection.
+     *
+     * @param first  <code>InMemoryConnection</code> of one end.
+     * @param second <code>InMemoryConnection</code> of the other end.
+     */
+    static void pair(InMemoryConnection first, InMemoryConnection second)
+    {
+        first._peer = second;
+        second._peer = first;
+    }
+
+    /**
+     * Method to start receiving on a thread of the selected kind.
+     */
+    void start()
+    {
+        _thread = OverlayThreadFactory.getFactoryInstance().newThread(this, "memory-receiver-" + _localPort);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Receive frames until either end is closed.
+     */
+    public void run()
+    {
+        /**
+         * int for the polls in a row that found no frame, when polling rather than blocking
+         */
+        int idle = 0;
+
+        // WHILE we haven't been closed, and the other end hasn't been closed with nothing left for us
+        while (!_closed && !_reset && !(_peerClosed && _inbound.isEmpty()))
+        {
+            try
+            {
+                byte[] frame;
+
+                // IF we block for the next frame (waking now and then to see if either end was closed)
+                if (WaitStrategy.RECEIVE.isBlocking())
+                    frame = _inbound.poll(100, TimeUnit.MILLISECONDS);
+                // ELSE IF a poll found no frame, wait the way we were told to
+                else if ((frame = _inbound.poll()) == null)
+                {
+                    WaitStrategy.RECEIVE.idle(++idle);
+                    continue;
+                }
+                else
+                    idle = 0;
+
+                // IF there is a frame and we are still delivering
+                if (frame != null && !_interrupted && !_reset)
+                    FrameDispatcher.dispatch(_callbackNode, this, frame, 0, frame.length, true);
+            }
+            catch (InterruptedException ie)
+            {
+                // IF we were asked to stop listening
+                if (_interrupted || _closed)
+                    return;
+            }
+            catch (IOException ioe)
+            {
+                ioe.printStackTrace();
+            }
+
+        } // END WHILE
+
+        // IF the other end went away without us asking
+        if (!_closed && !_interrupted)
+        {
+            System.out.println("Receiver belongs to: " + getCallbackNode().getID() + "; connection from port " +
+                    getPort() + " closed by the other end.");
+
+            _callbackNode.connectionLost(this, new IOException("Connection from port " + getPort() + " closed"));
+        }
+
+    }//ENDRUN
+
+    /**
+     * Connection interface method to send a frame to the other end. The frame is copied, as it would be
+     * into a socket buffer, so the caller may reuse it and the receiver may forward it as it is.
+     *
+     * @param data <code>byte[]</code> containing the message to the other node.
+     * @throws IOException
+     */
+    public void sendData(byte[] data) throws IOException
+    {
+        // IF either end has been closed
+        if (_closed || _peerClosed)
+            throw new IOException("Connection to port " + getPort() + " is closed");
+
+        try
+        {
+            _peer._inbound.put(Arrays.copyOf(data, data.length));
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted sending to port " + getPort());
+        }
+    }
+
+    /**
+     * Connection interface method to send a message. It is encoded into an array of its own, which is
+     * handed to the other end as it is.
+     *
+     * @param event <code>Event</code> to send to the other node.
+     * @throws IOException
+     */
+    public void sendEvent(Event event) throws IOException
+    {
+        // IF either end has been closed
+        if (_closed || _peerClosed)
+            throw new IOException("Connection to port " + getPort() + " is closed");
+
+        try
+        {
+            _peer._inbound.put(event.getBytes());
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted sending to port " + getPort());
+        }
+    }
+
+    /**
+     * Connection interface method to write held back frames; frames are never held back.
+     */
+    public void flush()
+    {
+
+    }
+
+    /**
+     * Connection interface method to close both ends.
+     */
+    public void close()
+    {
+        _closed = true;
+        _peer._peerClosed = true;
+    }
+
+    /**
+     * Method to break both ends, as a network fault would: frames still on their way are lost, and
+     * both receivers tell their nodes the connection was lost.
+     */
+    void abort()
+    {
+        _reset = true;
+        _peer._reset = true;
+
+        _peerClosed = true;
+        _peer._peerClosed = true;
+
+        _inbound.clear();
+        _peer._inbound.clear();
+    }
+
+    /**
+     * Connection interface method to stop delivering received messages to the callback Node.
+     */
+    public void interrupt()
+    {
+        _interrupted = true;
+
+        if (_thread != null)
+            _thread.interrupt();
+    }
+
+    public boolean isInterrupted()
+    {
+        return _interrupted;
+    }
+
+    public String getHostname()
+    {
+        return InMemoryTransport.HOST_NAME;
+    }
+
+    public int getPort()
+    {
+        return _peer._localPort;
+    }
+
+    public String getLocalHostName()
+    {
+        return InMemoryTransport.HOST_NAME;
+    }
+
+    public int getLocalPort()
+    {
+        return _localPort;
+    }
+
+    public Node getCallbackNode()
+    {
+        return _callbackNode;
+    }
+
+}
@@ -0,0 +1,167 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An InMemoryTransport class to connect Nodes running in the same JVM without sockets. Listening
+ * takes a port number out of a table kept by the transport, and connecting to a port pairs two
+ * InMemoryConnections, one for each end, whose frames go straight onto the other end's queue. Host
+ * names play no part; every node is at HOST_NAME.
+ *
+ * With no kernel, no system calls and no copies beyond one per frame sent, an overlay run on this
+ * transport costs only what the protocol, routing and threading cost, which is what it is for.
+ */
+public class InMemoryTransport implements Transport
+{
+    /**
+     * String of the host name every node on this transport is at
+     */
+    public static final String HOST_NAME = "localhost";
+
+    /**
+     * int of the first port number handed out when a listener or connection asks for any port
+     */
+    private static final int FIRST_PORT = 40000;
+
+    /**
+     * Hash map of the open listeners, by their port number
+     */
+    private final ConcurrentHashMap<Integer, MemoryListener> _listeners;
+
+    /**
+     * AtomicInteger for the next port number to hand out
+     */
+    private final AtomicInteger _nextPort;
+
+
+    /**
+     * A listener on one port of the transport
+     */
+    private class MemoryListener implements Listener
+    {
+        /**
+         * int of the port listened to
+         */
+        private final int _port;
+
+        /**
+         * Node to be notified of the messages received on accepted Connections
+         */
+        private final Node _callbackNode;
+
+
+        private MemoryListener(int port, Node callbackNode)
+        {
+            _port = port;
+            _callbackNode = callbackNode;
+        }
+
+        /**
+         * Listener interface method to start accepting; a port is accepting as soon as it is taken.
+         */
+        public void start()
+        {
+
+        }
+
+        /**
+         * Listener interface method to give the port back.
+         */
+        public void close()
+        {
+            _listeners.remove(_port, this);
+        }
+
+        public String getLocalHostName()
+        {
+            return HOST_NAME;
+        }
+
+        public int getLocalPort()
+        {
+            return _port;
+        }
+    }
+
+
+    /**
+     * Constructor
+     */
+    public InMemoryTransport()
+    {
+        _listeners = new ConcurrentHashMap<Integer, MemoryListener>();
+        _nextPort = new AtomicInteger(FIRST_PORT);
+    }
+
+    /**
+     * Transport interface method to take a port number to listen to.
+     *
+     * @param port         <code>int</code> of the port to listen to; 0 for any free port.
+     * @param callbackNode <code>Node</code> to be notified of the messages received on accepted Connections.
+     * @return <code>Listener</code> for the port.
+     * @throws IOException
+     */
+    public Listener listen(int port, Node callbackNode) throws IOException
+    {
+        // IF any port will do
+        if (port == 0)
+            port = freePort();
+
+        MemoryListener listener = new MemoryListener(port, callbackNode);
+
+        // IF someone is listening to the port already
+        if (_listeners.putIfAbsent(port, listener) != null)
+            throw new BindException("Port " + port + " is already in use");
+
+        return listener;
+    }
+
+    /**
+     * Transport interface method to connect to the node listening to a port, whatever the host name.
+     *
+     * @param hostName     <code>String</code> of the host to connect to; only used in errors.
+     * @param port         <code>int</code> of the port to connect to.
+     * @param callbackNode <code>Node</code> that has interest in the received messages.
+     * @return <code>Connection</code> to the node.
+     * @throws IOException
+     */
+    public Connection connect(String hostName, int port, Node callbackNode) throws IOException
+    {
+        MemoryListener listener = _listeners.get(port);
+
+        // IF no one is listening to the port
+        if (listener == null)
+            throw new ConnectException("Connection refused: " + hostName + ":" + port);
+
+        InMemoryConnection connection = new InMemoryConnection(freePort(), callbackNode);
+        InMemoryConnection accepted = new InMemoryConnection(port, listener._callbackNode);
+
+        InMemoryConnection.pair(connection, accepted);
+
+        accepted.start();
+        connection.start();
+
+        return connection;
+    }
+
+    /**
+     * @return <code>int</code> of a port number no listener has.
+     */
+    private int freePort()
+    {
+        int port;
+
+        // WHILE the number handed out is taken by a listener that asked for it by number
+        while (_listeners.containsKey(port = _nextPort.getAndIncrement()))
+            ;
+
+        return port;
+    }
+
+}
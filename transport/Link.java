@@ -1,25 +1,67 @@
 package cs455.overlay.transport;
 
+import cs455.overlay.util.Statics;
+import cs455.overlay.wireformats.CompactPayload;
+import cs455.overlay.wireformats.LinkCapabilities;
+import cs455.overlay.wireformats.PayloadMessage;
+import cs455.overlay.wireformats.Protocol;
+
 import java.io.IOException;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A Link class to represent the connection between a node and another node.
  *
+ * Unless overlay.link.queue is 0, frames sent on a Link are put on a bounded OutboundQueue and
+ * written by the Link's LinkWriter, so a thread sending (or relaying) on a Link never waits on a
+ * slow socket; it only waits if the queue is full. There are two queues, one per channel: payload
+ * messages sent with sendPayload() go on the data channel, everything sent with send() on the
+ * control channel, and the writer always writes queued control frames first. A control message
+ * from the Registry therefore never sits behind the payload flood.
+ *
+ * Unless overlay.flow.window is 0, payload messages sent with sendPayload() are held to the Link's
+ * credit window (see FlowControl), so a slow node pushes back on the nodes sending to it instead
+ * of letting their queues and the kernel buffers grow without bound.
+ *
+ * If both ends have compression turned on (overlay.compress) and have said so in LinkCapabilities
+ * messages, the writer sends the frames it drains together as deflated CompressedBatch frames.
+ *
+ * If the Link has been given a datagram outbound (overlay.datagram), payload messages go as UDP
+ * datagrams instead, outside the credit window, and everything else still goes over the connection.
+ *
+ * A Link can be striped (overlay.link.stripes): the node that opened it opens extra connections to
+ * the same node, and payload messages are spread over the Link's own connection and those
+ * LinkStripes, each with its own writer, either by a hash of the message's source, which keeps every
+ * source's messages in order, or round robin (overlay.link.stripe.policy). Control frames stay on
+ * the Link's own connection.
+ *
+ * A MessagingNode's LinkProber keeps each Link's smoothed round trip time up to date with
+ * LinkPing/LinkPong control messages.
+ *
+ * The Registry can have a Link emulate a WAN path (a LinkEmulation message): every frame sent on it
+ * then passes through a LinkEmulator, which holds it back for the configured delay, bandwidth cap
+ * and losses before it goes on to the queues above.
+ *
+ * A Link between two MessagingNodes can be resumable (overlay.resume.buffer): its LinkSession keeps
+ * the frames written until the other end acknowledges them. If the connection fails the Link is
+ * suspended, with frames waiting in its queues, until it is resumed over a new connection with the
+ * lost frames replayed; its queues, credit window and counters carry on as they were.
+ *
+ * A large payload frame a TCP receiver is relaying can be cut through onto a resumable Link over TCP
+ * (overlay.relay.cutthrough): written straight to the connection as it arrives, while nothing else
+ * is waiting to be written.
+ *
  * @author ahrtmn, 26 01 2014
  */
 public class Link
 {
 
     /**
-     * TCPReceiverThread to listen for communications from the connected node
+     * Connection to the other node; used to listen for and send communications
      */
-    private TCPReceiverThread _receiverThread;      // contains most of the data we need
-
-    /**
-     * TCPSender to send data over the given link
-     */
-    private TCPSender _messageSender;
+    private Connection _connection;      // contains most of the data we need
 
     /**
      * String of the ID the owner of this Link is.
@@ -36,34 +78,116 @@ public class Link
      */
     private int _weight;
 
+    /**
+     * OutboundQueue of control frames waiting to be written; null if frames are written by the sender
+     */
+    private OutboundQueue _controlQueue;
+
+    /**
+     * OutboundQueue of data (payload) frames waiting to be written; null if frames are written by the sender
+     */
+    private OutboundQueue _dataQueue;
+
+    /**
+     * LinkWriter writing the outbound queue to the connection
+     */
+    private volatile LinkWriter _writer;
+
+    /**
+     * FlowControl holding the credit window of this Link; null if flow control is off
+     */
+    private FlowControl _flowControl;
+
+    /**
+     * DatagramEndpoint.Outbound payload messages are sent on; null if they go over the connection
+     */
+    private DatagramEndpoint.Outbound _datagram;
+
+    /**
+     * BatchCompressor the writer compresses frames with; null if the Link isn't compressed
+     */
+    private BatchCompressor _compressor;
+
+    /**
+     * long for the smoothed round trip time to the other end in nanoseconds; 0 until the first probe returns
+     */
+    private long _rttNanos;
+
+    /**
+     * LinkStripe array of the extra connections payload messages are spread over; empty if the Link isn't striped
+     */
+    private volatile LinkStripe[] _stripes;
+
+    /**
+     * AtomicInteger counting payload messages sent, to deal them round robin over the stripes
+     */
+    private final AtomicInteger _nextStripe;
+
+    /**
+     * LinkEmulator every frame sent passes through first; null unless the Link emulates a WAN path
+     */
+    private volatile LinkEmulator _emulator;
+
+    /**
+     * LinkSession keeping the frames written until they are acknowledged; null unless the Link is resumable
+     */
+    private volatile LinkSession _session;
+
+    /**
+     * boolean for if the Link's connection has failed and it is waiting to be resumed
+     */
+    private volatile boolean _suspended;
+
+    /**
+     * boolean for if the Link has been closed
+     */
+    private volatile boolean _closed;
+
+    /**
+     * long for the number of payload frames cut through onto the Link
+     */
+    private volatile long _cutThrough;
+
+    /**
+     * boolean for if payload frames are sent in their compact form (see CompactPayload)
+     */
+    private volatile boolean _compact;
+
+    /**
+     * long for the epoch the other end counts the time stamps of the compact frames it sends from
+     */
+    private volatile long _peerEpoch;
+
 
     /**
      * Constructor for the Link class.
      *
-     * @param receiverThread <code>TCPReceiverThread</code> containing connection data necessary for the
-     *                       <code>Link</code>.
-     * @param sourceID       <code>String</code> containing the identifier of the Node owning this Link.
-     * @param targetID       <code>String</code> containing the identifier to the node the <code>Link</code> is to.
+     * @param connection <code>Connection</code> containing connection data necessary for the
+     *                   <code>Link</code>.
+     * @param sourceID   <code>String</code> containing the identifier of the Node owning this Link.
+     * @param targetID   <code>String</code> containing the identifier to the node the <code>Link</code> is to.
      */
-    public Link(TCPReceiverThread receiverThread, String sourceID, String targetID)
+    public Link(Connection connection, String sourceID, String targetID)
     {
-        this(receiverThread, sourceID, targetID, 0);
+        this(connection, sourceID, targetID, 0);
     }
 
     /**
      * Overloaded Constructor for the Link class. Constructs a link between two nodes.
      *
-     * @param receiverThread <code>TCPReceiverThread</code> listening to communications from the target Node.
-     * @param sourceID       <code>String</code> ID of the connected <code>Node</code>
-     * @param targetID       <code>String</code> ID of the Node this Link is connecting to.
-     * @param weight         <code>int</code> denoting the weight of the connection
+     * @param connection <code>Connection</code> listening to communications from the target Node.
+     * @param sourceID   <code>String</code> ID of the connected <code>Node</code>
+     * @param targetID   <code>String</code> ID of the Node this Link is connecting to.
+     * @param weight     <code>int</code> denoting the weight of the connection
      */
-    public Link(TCPReceiverThread receiverThread, String sourceID, String targetID, int weight)
+    public Link(Connection connection, String sourceID, String targetID, int weight)
     {
         _ID = sourceID;
         _targetID = targetID;
         _weight = weight;
-        _receiverThread = receiverThread;
+        _connection = connection;
+        _stripes = new LinkStripe[0];
+        _nextStripe = new AtomicInteger();
 
 
         if (_ID == null)
@@ -71,18 +195,18 @@ public class Link
         else if (_targetID == null)
             System.out.println("target id null for source: " + _ID);
 
-        /**
-         * Try to create a new TCPSender for the connection to the target node.
-         */
-        try
+        // IF frames are to be queued rather than written by the sender (a shared memory ring is a queue already)
+        if (Statics.LINK_QUEUE_CAPACITY > 0 && !(connection instanceof SharedMemoryConnection))
         {
-            _messageSender = new TCPSender(_receiverThread.getSocket());
-        }
-        catch (IOException ioe)
-        {
-            ioe.printStackTrace();
+            _controlQueue = new OutboundQueue(Statics.LINK_CONTROL_QUEUE_CAPACITY);
+            _dataQueue = new OutboundQueue(Statics.LINK_QUEUE_CAPACITY);
+            _writer = new LinkWriter(_controlQueue, _dataQueue, _connection, "link-writer-" + _targetID);
         }
 
+        // IF payload messages are to be held to a credit window
+        if (Statics.FLOW_CREDIT_WINDOW > 0)
+            _flowControl = new FlowControl(Statics.FLOW_CREDIT_WINDOW);
+
     }
 
 
@@ -91,18 +215,30 @@ public class Link
      */
     public void closeLink()
     {
+        _closed = true;
 
-        // IF the receiver for this link hasn't been interrupted yet
-        if (!_receiverThread.isInterrupted())
-            interruptReceiver();
+        if (_session != null)
+            _session.detach();
 
-        try
+        if (_emulator != null)
+            _emulator.stop();
+
+        for (LinkStripe stripe : _stripes)
+            stripe.close();
+
+        _ID = "";
+        _weight = 0;
+
+        // IF there is a writer, it closes the connection once it has written the frames already queued
+        if (_writer != null)
         {
-            _receiverThread.getDin().close();
-            _receiverThread.getSocket().close();
-            _ID = "";
-            _weight = 0;
+            _writer.close();
+            return;
+        }
 
+        try
+        {
+            _connection.close();
         }
         catch (IOException ioe)
         {
@@ -154,30 +290,598 @@ public class Link
 //        return _messageSender;
 //    }
 
-    public synchronized void send(byte[] data)
+    /**
+     * Method to send a control frame over this Link. With outbound queues the frame is queued ahead
+     * of any payload messages and this returns right away, unless the control queue is full, in
+     * which case it waits for room.
+     *
+     * @param data <code>byte[]</code> containing the message to the other node.
+     */
+    public void send(byte[] data)
+    {
+        LinkEmulator emulator = _emulator;
+
+        // IF the Link emulates a WAN path, the frame is held back there first
+        if (emulator != null)
+            emulator.submit(data, false);
+        else
+            enqueue(_controlQueue, data);
+    }
+
+    /**
+     * Method for the LinkEmulator to let a frame it has held back through to the Link.
+     *
+     * @param data    <code>byte[]</code> containing the message to the other node.
+     * @param payload <code>boolean</code> for if the frame is a payload message rather than a control message.
+     */
+    void release(byte[] data, boolean payload)
+    {
+        if (payload)
+            stripePayload(data);
+        else
+            enqueue(_controlQueue, data);
+    }
+
+    /**
+     * Method to have the Link emulate a WAN path from now on, or to change the one it emulates.
+     *
+     * @param delayMicros    <code>int</code> of the one way delay, in microseconds.
+     * @param jitterMicros   <code>int</code> of the most the delay may vary either way, in microseconds.
+     * @param bandwidthBytes <code>long</code> of the bytes per second the Link may carry; 0 for no cap.
+     * @param lossPerMillion <code>int</code> of the frames in every million that are lost.
+     */
+    public synchronized void emulate(int delayMicros, int jitterMicros, long bandwidthBytes, int lossPerMillion)
+    {
+        // IF the Link isn't emulating yet; once it is, it keeps its emulator so no frame overtakes a held one
+        if (_emulator == null)
+        {
+            LinkEmulator emulator = new LinkEmulator(this);
+            emulator.configure(delayMicros, jitterMicros, bandwidthBytes, lossPerMillion);
+            emulator.start();
+
+            _emulator = emulator;
+        }
+        else
+            _emulator.configure(delayMicros, jitterMicros, bandwidthBytes, lossPerMillion);
+    }
+
+    /**
+     * Method to put a frame on one of the outbound queues, or write it straight to the connection
+     * if there are none.
+     *
+     * @param queue <code>OutboundQueue</code> of the channel the frame is sent on.
+     * @param data  <code>byte[]</code> containing the message to the other node.
+     */
+    private void enqueue(OutboundQueue queue, byte[] data)
+    {
+        // IF frames are written by the sender
+        if (queue == null)
+        {
+            sendNow(data);
+            return;
+        }
+
+        /**
+         * int for the tries at queueing the frame
+         */
+        int tries = 0;
+
+        // WHILE the queue is full, give the writer a chance to catch up
+        while (!queue.offer(data))
+        {
+            // IF the Link has been closed, the frame has nowhere to go
+            if (_closed)
+                return;
+
+            _writer.signal();
+
+            if (WaitStrategy.SEND.isBlocking())
+                LockSupport.parkNanos(50000);
+            else
+                WaitStrategy.SEND.idle(++tries);
+        }
+
+        _writer.signal();
+    }
+
+    /**
+     * Method to put a payload frame on the stripe it belongs to: the Link's own data queue, or one of
+     * its LinkStripes.
+     *
+     * @param data <code>byte[]</code> containing the payload message to the other node.
+     */
+    private void enqueuePayload(byte[] data)
+    {
+        LinkEmulator emulator = _emulator;
+
+        // IF the Link emulates a WAN path, the frame is held back there first
+        if (emulator != null)
+            emulator.submit(data, true);
+        else
+            stripePayload(data);
+    }
+
+    /**
+     * Method to put a payload frame on the stripe it belongs to, once any emulated delay is over.
+     *
+     * @param data <code>byte[]</code> containing the payload message to the other node.
+     */
+    private void stripePayload(byte[] data)
+    {
+        LinkStripe[] stripes = _stripes;
+
+        // IF the Link isn't striped
+        if (stripes.length == 0)
+        {
+            enqueue(_dataQueue, compact(data));
+            return;
+        }
+
+        /**
+         * int for the stripe to send on; 0 for the Link's own connection
+         */
+        int stripe;
+
+        if (Statics.LINK_STRIPE_POLICY.equals(Statics.LINK_STRIPE_ROUND_ROBIN))
+            stripe = (_nextStripe.getAndIncrement() & Integer.MAX_VALUE) % (stripes.length + 1);
+        else
+            stripe = (PayloadMessage.flowHash(data, 0) & Integer.MAX_VALUE) % (stripes.length + 1);
+
+        // the stripe is picked from the frame as it was, so a flow keeps to one stripe either way
+        if (stripe == 0 || !stripes[stripe - 1].send(compact(data)))
+            enqueue(_dataQueue, compact(data));
+    }
+
+    /**
+     * Private method to turn a payload frame into the form it is sent in over this Link.
+     *
+     * @param data <code>byte[]</code> containing the payload message to the other node.
+     * @return <code>byte[]</code> of the compact frame if the Link sends them and the message can be made
+     * compact; data otherwise.
+     */
+    private byte[] compact(byte[] data)
+    {
+        // IF the other end doesn't take compact frames
+        if (!_compact)
+            return data;
+
+        byte[] compact = CompactPayload.compact(data, CompactPayload.EPOCH);
+
+        return (compact == null) ? data : compact;
+    }
+
+    /**
+     * Method to add an extra connection to the same node to this Link, for payload messages to be spread over.
+     *
+     * @param connection <code>Connection</code> to the node at the other end of the Link.
+     */
+    public synchronized void addStripe(Connection connection)
     {
+        LinkStripe stripe = new LinkStripe(connection, "link-writer-" + _targetID + "-" + (_stripes.length + 1));
+
+        // IF the Link compresses, so does the stripe
+        if (_compressor != null)
+            stripe.compress();
+
+        LinkStripe[] stripes = new LinkStripe[_stripes.length + 1];
+        System.arraycopy(_stripes, 0, stripes, 0, _stripes.length);
+        stripes[_stripes.length] = stripe;
+
+        _stripes = stripes;
+    }
+
+    /**
+     * Method to drop the stripe on a connection that was lost. The Link carries on over the rest,
+     * and the frames still queued on the stripe are put on the Link's own queue.
+     *
+     * @param connection <code>Connection</code> of the stripe that was lost.
+     * @return <code>true</code> if the connection was one of the Link's stripes.
+     */
+    public boolean removeStripe(Connection connection)
+    {
+        LinkStripe lost = null;
+
+        synchronized (this)
+        {
+            LinkStripe[] stripes = new LinkStripe[Math.max(0, _stripes.length - 1)];
+            int count = 0;
+
+            for (LinkStripe stripe : _stripes)
+            {
+                // IF this is the lost stripe, leave it out
+                if (lost == null && stripe.getConnection() == connection)
+                    lost = stripe;
+                else if (count < stripes.length)
+                    stripes[count++] = stripe;
+            }
+
+            // IF the connection isn't one of the stripes
+            if (lost == null)
+                return false;
+
+            _stripes = stripes;
+        }
+
+        // requeued outside the lock, as the Link's queue may be full and its writer needs to get on
+        for (byte[] frame : lost.abandon())
+            enqueue(_dataQueue, frame);
+
+        return true;
+    }
+
+    /**
+     * Method to send a payload message over this Link within its credit window. If the Link is out
+     * of credits the caller either waits for more, or the message is spilled or dropped as chosen
+     * with overlay.flow.policy.
+     *
+     * @param data <code>byte[]</code> containing the payload message to the other node.
+     * @param wait <code>boolean</code> for if the caller may wait for credits. A caller running in
+     *             onEvent must not, as the credits arrive through onEvent.
+     * @return <code>false</code> if the message was dropped, <code>true</code> otherwise.
+     */
+    public boolean sendPayload(byte[] data, boolean wait)
+    {
+        // IF payload messages go as datagrams, there is no window to hold them to
+        if (_datagram != null)
+        {
+            try
+            {
+                _datagram.send(data);
+                return true;
+            }
+            catch (IOException ioe)
+            {
+                ioe.printStackTrace();
+                return false;
+            }
+        }
+
+        // IF there is no flow control
+        if (_flowControl == null)
+        {
+            enqueuePayload(data);
+            return true;
+        }
+
+        int result = _flowControl.acquire(data, wait);
+
+        // IF we have a credit
+        if (result == FlowControl.SEND)
+            enqueuePayload(data);
+
+        return result != FlowControl.DROPPED;
+    }
+
+    /**
+     * Method to add the credits the other end of this Link granted us, sending any spilled payload
+     * messages they cover.
+     *
+     * @param credits <code>int</code> of the credits granted.
+     */
+    public void grantCredits(int credits)
+    {
+        // IF there is no flow control there is nothing to grant
+        if (_flowControl == null)
+            return;
+
+        // hold the window while sending so new payload messages can't go ahead of the spilled ones
+        synchronized (_flowControl)
+        {
+            ArrayList<byte[]> ready = _flowControl.grant(credits);
+
+            for (byte[] frame : ready)
+                enqueuePayload(frame);
+        }
+    }
+
+    /**
+     * Method to turn on the features both ends of this Link have, given the LinkCapabilities message
+     * the other end sent. Compression needs an outbound queue to batch from. Compact payload frames
+     * carry their time stamps counted from the epoch the other end sent as the message's time stamp.
+     *
+     * @param linkCapabilities <code>LinkCapabilities</code> the other end sent.
+     */
+    public void applyCapabilities(LinkCapabilities linkCapabilities)
+    {
+        /**
+         * int of the Protocol CAPABILITY_ flags the other end has
+         */
+        int capabilities = linkCapabilities.getCapabilities();
+
+        // IF both ends compress and there is a writer to batch frames
+        if (Statics.COMPRESS && (capabilities & Protocol.CAPABILITY_DEFLATE) != 0 && _writer != null)
+        {
+            _compressor = new BatchCompressor();
+            _writer.setCompressor(_compressor);
+
+            for (LinkStripe stripe : _stripes)
+                stripe.compress();
+        }
+
+        // IF both ends send compact payload frames
+        if (Statics.COMPACT && (capabilities & Protocol.CAPABILITY_COMPACT) != 0)
+        {
+            _peerEpoch = linkCapabilities.getTimestamp();
+            _compact = true;
+        }
+    }
+
+    /**
+     * Method to make the Link resumable, keeping the frames written until the other end acknowledges
+     * them. Must be called before anything is sent on the Link. A Link over a shared memory ring isn't
+     * made resumable; the ring can't fail under it the way a socket can.
+     */
+    public synchronized void startSession()
+    {
+        // IF the Link is already resumable, or can't be
+        if (_session != null || _connection instanceof SharedMemoryConnection)
+            return;
+
+        _session = new LinkSession(this, _connection);
+
+        // IF there is a writer, it has to count the frames it writes, so it is replaced by one that does,
+        // once the old one has written what it was given
+        if (_writer != null)
+        {
+            LinkWriter previous = _writer;
+
+            previous.stop();
+            _writer = new LinkWriter(_controlQueue, _dataQueue, _connection, "link-writer-" + _targetID, _session,
+                    _compressor, null, previous);
+        }
+    }
+
+    /**
+     * Method to stop writing to the Link's connection, which has failed, until the Link is resumed.
+     * Frames sent in the meantime wait in the Link's queues.
+     */
+    public void suspend()
+    {
+        _suspended = true;
+
+        // nothing more received over the failed connection counts
+        _session.freeze();
+
+        // IF there is a writer, it stops writing at once
+        if (_writer != null)
+            _writer.pause();
+    }
+
+    /**
+     * Method to resume the Link over a new connection: the frames the other end is missing are
+     * replayed, and then a new writer carries on with the frames that were waiting in the queues. The
+     * replay is left to the writer, so the receiving thread resuming the Link doesn't wait on the other
+     * end, which may be replaying to us at the same time, to read it.
+     *
+     * @param connection <code>Connection</code> to the node at the other end.
+     * @param received   <code>long</code> of the number of frames the other end says it received.
+     * @return <code>true</code> if the Link was resumed; <code>false</code> if frames the other end
+     * is missing are no longer kept, or the new connection failed too.
+     */
+    public synchronized boolean resume(Connection connection, long received)
+    {
+        // the old writer is paused, so it writes nothing more, but it may be counting a frame it took first
+        if (_writer != null)
+            _writer.abandon();
+
+        byte[][] replay = _session.replayFrom(received);
+
+        // IF we can't give the other end everything it is missing
+        if (replay == null)
+            return false;
+
+        _connection = connection;
+        _session.attach(connection);
+
+        // IF frames are queued, a writer over the new connection replays the missing ones and carries on
+        if (_writer != null)
+        {
+            _writer = new LinkWriter(_controlQueue, _dataQueue, _connection, "link-writer-" + _targetID, _session,
+                    _compressor, replay, null);
+            _writer.signal();
+        }
+        // ELSE frames are written as they are sent, so the missing ones are written now
+        else
+        {
+            try
+            {
+                // FOR every frame the other end is missing, oldest first; they were counted when first written
+                for (byte[] frame : replay)
+                    connection.sendData(frame);
+
+                connection.flush();
+            }
+            catch (IOException ioe)
+            {
+                ioe.printStackTrace();
+                return false;
+            }
+        }
+
+        _suspended = false;
+
+        return true;
+    }
+
+    /**
+     * Method to break the Link's connection underneath it, as a network fault would, to try out resuming.
+     */
+    public void breakConnection()
+    {
+        // IF the connection isn't one we know how to break
+        if (!abort(_connection))
+            System.err.println("Connection to " + _targetID + " can't be broken.");
+    }
+
+    /**
+     * Method to break a connection, as a network fault would; its node is told it was lost.
+     *
+     * @param connection <code>Connection</code> to break.
+     * @return <code>true</code> if it was broken; <code>false</code> if it isn't one we know how to break.
+     */
+    static boolean abort(Connection connection)
+    {
+        if (connection instanceof TCPReceiverThread)
+            ((TCPReceiverThread) connection).abort();
+        else if (connection instanceof NIOConnection)
+            ((NIOConnection) connection).abort();
+        else if (connection instanceof InMemoryConnection)
+            ((InMemoryConnection) connection).abort();
+        else
+            return false;
+
+        return true;
+    }
+
+    /**
+     * Method to forward a payload frame that is still arriving straight onto the Link's connection,
+     * each part written as soon as it has been read. The writer is held off until the whole frame has
+     * been written, so it is only done while nothing is queued ahead of the frame and a credit is free;
+     * otherwise the frame is left to be received whole and sent the usual way. The Link has to be
+     * resumable, as a frame cut short is taken back by breaking the connection under it. Control frames
+     * wait behind the frame, so one whose rest takes longer than Statics.CUT_THROUGH_WAIT_MILLIS to
+     * arrive is taken back too, and sent the usual way once it has.
+     *
+     * @param frame    <code>byte[]</code> the frame is being read into; its hop cursor already moved on.
+     * @param received <code>int</code> of the number of bytes of the frame read so far.
+     * @param source   <code>TCPReceiverThread</code> the frame is being read from.
+     * @return <code>true</code> if the frame was taken; <code>false</code> if it is to be sent the usual way.
+     * @throws IOException if reading the rest of the frame failed.
+     */
+    boolean cutThrough(byte[] frame, int received, TCPReceiverThread source) throws IOException
+    {
+        LinkWriter writer = _writer;
+        LinkSession session = _session;
+
+        // IF the frame can't go straight out over the Link's own connection
+        if (writer == null || session == null || _emulator != null || _stripes.length > 0 || _datagram != null ||
+                !(_connection instanceof TCPReceiverThread))
+            return false;
+
+        int result;
+
+        // hold off the writer, whose drains hold its monitor
+        synchronized (writer)
+        {
+            // IF the Link is being resumed or closed, or frames are waiting ahead of this one
+            if (_suspended || _closed || writer != _writer || !writer.isReady() || getQueueDepth() > 0)
+                return false;
+
+            // IF there is no credit free for the frame right now
+            if (_flowControl != null && !_flowControl.tryAcquire())
+                return false;
+
+            result = ((TCPReceiverThread) _connection).sendCutThrough(frame, received, source, session);
+
+            // IF writing failed, nothing more is written until the Link is resumed, as if the writer had failed
+            if (result == TCPReceiverThread.CUT_THROUGH_FAILED)
+                writer.pause();
+
+            if (result != TCPReceiverThread.CUT_THROUGH_GIVEN_UP)
+                ++_cutThrough;
+        }
+
+        // IF it was given up on, the frame takes a credit again when it is sent, so hand back the one it took
+        if (result == TCPReceiverThread.CUT_THROUGH_GIVEN_UP)
+        {
+            grantCredits(1);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Method to fold a measured round trip time into the Link's smoothed one. Like TCP's SRTT, each
+     * sample moves the average an eighth of the way towards it, so one slow probe doesn't swing the
+     * weight of the Link.
+     *
+     * @param sampleNanos <code>long</code> of the nanoseconds between a LinkPing being sent and its LinkPong returning.
+     */
+    public synchronized void recordRtt(long sampleNanos)
+    {
+        // IF this is the first sample, it is all we know
+        if (_rttNanos == 0)
+            _rttNanos = Math.max(1, sampleNanos);
+        else
+            _rttNanos = Math.max(1, _rttNanos + (sampleNanos - _rttNanos) / 8);
+    }
+
+    /**
+     * Method to count a payload message received over this Link as dealt with.
+     *
+     * @return <code>int</code> of the credits the caller should now grant back to the other end with a
+     * FlowCredit message; 0 if none yet.
+     */
+    public int payloadConsumed()
+    {
+        return (_flowControl == null) ? 0 : _flowControl.consumed();
+    }
+
+    /**
+     * Method to write a frame straight to the connection.
+     *
+     * @param data <code>byte[]</code> containing the message to the other node.
+     */
+    private synchronized void sendNow(byte[] data)
+    {
+        // IF the Link is resumable, keep the frame in case the connection fails under it
+        if (_session != null)
+            _session.sent(data);
+
         try
         {
-            _messageSender.sendData(data);
+            _connection.sendData(data);
         }
         catch(IOException ioe)
         {
             ioe.printStackTrace();
         }
     }
+
+    /**
+     * @return <code>int</code> of the number of frames waiting to be written to this Link.
+     */
+    public int getQueueDepth()
+    {
+        return (_dataQueue == null) ? 0 : _controlQueue.size() + getDataQueueDepth();
+    }
+
+    /**
+     * @return <code>int</code> of the number of payload messages waiting to be written to this Link.
+     */
+    public int getDataQueueDepth()
+    {
+        int depth = (_dataQueue == null) ? 0 : _dataQueue.size();
+
+        // frames held back by an emulator are still waiting to be written
+        if (_emulator != null)
+            depth += _emulator.getHeldCount();
+
+        for (LinkStripe stripe : _stripes)
+            depth += stripe.getDataQueueDepth();
+
+        return depth;
+    }
+
     public String getLocalHostName()
     {
-        return _receiverThread.getSocket().getLocalAddress().getCanonicalHostName();
+        return _connection.getLocalHostName();
+    }
+
+    public int getLocalPort()
+    {
+        return _connection.getLocalPort();
     }
 
     public String getHostname()
     {
-        return _receiverThread.getSocket().getInetAddress().getCanonicalHostName();
+        return _connection.getHostname();
     }
 
     public int getPort()
     {
-        return _receiverThread.getSocket().getPort();
+        return _connection.getPort();
     }
 
     public String getID()
@@ -195,9 +899,80 @@ public class Link
         _weight = weight;
     }
 
-    public Socket getSocketConnection()
+    public Connection getConnection()
     {
-        return _receiverThread.getSocket();
+        return _connection;
+    }
+
+    public FlowControl getFlowControl()
+    {
+        return _flowControl;
+    }
+
+    public BatchCompressor getCompressor()
+    {
+        return _compressor;
+    }
+
+    public DatagramEndpoint.Outbound getDatagram()
+    {
+        return _datagram;
+    }
+
+    public void setDatagram(DatagramEndpoint.Outbound datagram)
+    {
+        _datagram = datagram;
+    }
+
+    /**
+     * @return <code>long</code> of the smoothed round trip time to the other end in nanoseconds; 0 if not yet measured.
+     */
+    public synchronized long getRttNanos()
+    {
+        return _rttNanos;
+    }
+
+    public LinkSession getSession()
+    {
+        return _session;
+    }
+
+    public long getCutThroughCount()
+    {
+        return _cutThrough;
+    }
+
+    public boolean isCompact()
+    {
+        return _compact;
+    }
+
+    public long getPeerEpoch()
+    {
+        return _peerEpoch;
+    }
+
+    public boolean isSuspended()
+    {
+        return _suspended;
+    }
+
+    public LinkEmulator getEmulator()
+    {
+        return _emulator;
+    }
+
+    /**
+     * @return <code>int</code> of the number of extra connections payload messages are spread over.
+     */
+    public int getStripeCount()
+    {
+        return _stripes.length;
+    }
+
+    public LinkStripe[] getStripes()
+    {
+        return _stripes;
     }
 
     public String getTargetID()
@@ -210,7 +985,10 @@ public class Link
      */
     public void interruptReceiver()
     {
-        _receiverThread.interrupt();
+        _connection.interrupt();
+
+        for (LinkStripe stripe : _stripes)
+            stripe.getConnection().interrupt();
     }
 
 
@@ -0,0 +1,308 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.OverlayThreadFactory;
+import cs455.overlay.util.Statics;
+
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A LinkEmulator class to make one direction of a Link behave like a path over a WAN, so routing
+ * and flow control can be measured on one machine. Every frame sent on the Link is held back for
+ * the configured delay, give or take the jitter, and then let through no faster than the bandwidth
+ * cap allows (a token bucket of Statics.EMULATE_BURST_BYTES) before it goes on to the Link's queues.
+ *
+ * Links are streams, so frames come out in the order they went in. A lost frame is therefore not
+ * dropped: it is held back for a further Statics.EMULATE_RTO_MILLIS, the way a TCP segment waits
+ * for its retransmission, and everything sent after it waits behind it.
+ *
+ * Each end emulates what it sends, so the Registry configures both ends of a Link.
+ */
+public class LinkEmulator implements Runnable
+{
+    /**
+     * A frame being held back, and when it is due out
+     */
+    private static class Held
+    {
+        private final byte[] _data;
+        private final boolean _payload;
+        private final long _dueNanos;
+
+        private Held(byte[] data, boolean payload, long dueNanos)
+        {
+            _data = data;
+            _payload = payload;
+            _dueNanos = dueNanos;
+        }
+    }
+
+    /**
+     * Link the frames are let through to
+     */
+    private final Link _link;
+
+    /**
+     * LinkedBlockingQueue of the frames being held back, in the order they are due out
+     */
+    private final LinkedBlockingQueue<Held> _held;
+
+    /**
+     * Random for the jitter and the losses
+     */
+    private final Random _random;
+
+    /**
+     * AtomicInteger counting the frames submitted and not yet let through to the Link
+     */
+    private final AtomicInteger _pending;
+
+    /**
+     * long for the one way delay in nanoseconds
+     */
+    private volatile long _delayNanos;
+
+    /**
+     * long for the most the delay varies either way, in nanoseconds
+     */
+    private volatile long _jitterNanos;
+
+    /**
+     * long for the bytes per second let through; 0 for no cap
+     */
+    private volatile long _bandwidthBytes;
+
+    /**
+     * int for the frames in every million that are lost
+     */
+    private volatile int _lossPerMillion;
+
+    /**
+     * long for when the last frame held back is due out, so no frame overtakes another
+     */
+    private long _lastDueNanos;
+
+    /**
+     * double for the bytes the token bucket holds
+     */
+    private double _tokens;
+
+    /**
+     * long for when the token bucket was last filled
+     */
+    private long _filledNanos;
+
+    /**
+     * long for the number of frames held back
+     */
+    private long _frames;
+
+    /**
+     * long for the number of frames lost and held back for a retransmission
+     */
+    private long _lost;
+
+    /**
+     * boolean for if the emulator has been told to stop
+     */
+    private volatile boolean _stopped;
+
+    /**
+     * Thread letting the frames through
+     */
+    private Thread _thread;
+
+
+    /**
+     * Constructor
+     *
+     * @param link <code>Link</code> whose frames are held back.
+     */
+    public LinkEmulator(Link link)
+    {
+        _link = link;
+        _held = new LinkedBlockingQueue<Held>();
+        _random = new Random();
+        _pending = new AtomicInteger(0);
+        _tokens = Statics.EMULATE_BURST_BYTES;
+        _filledNanos = System.nanoTime();
+    }
+
+    /**
+     * Method to start letting frames through on a thread of the selected kind.
+     */
+    public void start()
+    {
+        _thread = OverlayThreadFactory.getFactoryInstance().newThread(this, "link-emulator-" + _link.getTargetID());
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Method to change how the Link behaves. Frames already held back keep the times they were given.
+     *
+     * @param delayMicros    <code>int</code> of the one way delay, in microseconds.
+     * @param jitterMicros   <code>int</code> of the most the delay may vary either way, in microseconds.
+     * @param bandwidthBytes <code>long</code> of the bytes per second the Link may carry; 0 for no cap.
+     * @param lossPerMillion <code>int</code> of the frames in every million that are lost.
+     */
+    public void configure(int delayMicros, int jitterMicros, long bandwidthBytes, int lossPerMillion)
+    {
+        _delayNanos = Math.max(0, delayMicros) * 1000L;
+        _jitterNanos = Math.max(0, jitterMicros) * 1000L;
+        _bandwidthBytes = Math.max(0, bandwidthBytes);
+        _lossPerMillion = Math.max(0, lossPerMillion);
+    }
+
+    /**
+     * Method to hold a frame back until it is due out.
+     *
+     * @param data    <code>byte[]</code> containing the frame.
+     * @param payload <code>boolean</code> for if the frame is a payload message rather than a control message.
+     */
+    public synchronized void submit(byte[] data, boolean payload)
+    {
+        long due = System.nanoTime() + _delayNanos;
+
+        // IF the delay varies, move it up to the jitter either way
+        if (_jitterNanos > 0)
+            due += (long) ((_random.nextDouble() * 2 - 1) * _jitterNanos);
+
+        // IF the frame is lost, it waits for its retransmission
+        if (_lossPerMillion > 0 && _random.nextInt(1000000) < _lossPerMillion)
+        {
+            due += Statics.EMULATE_RTO_MILLIS * 1000000L;
+            ++_lost;
+        }
+
+        // a stream never lets a frame overtake the one before it
+        due = Math.max(due, _lastDueNanos);
+        _lastDueNanos = due;
+
+        ++_frames;
+        _pending.incrementAndGet();
+        _held.offer(new Held(data, payload, due));
+    }
+
+    /**
+     * Let each frame through to the Link once it is due and the bandwidth allows.
+     */
+    public void run()
+    {
+        // WHILE we haven't been stopped
+        while (!_stopped)
+        {
+            Held held;
+
+            try
+            {
+                held = _held.take();
+            }
+            catch (InterruptedException ie)
+            {
+                break;
+            }
+
+            long wait;
+
+            // WHILE the frame isn't due out yet
+            while (!_stopped && (wait = held._dueNanos - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+
+            long bandwidth = _bandwidthBytes;
+
+            // WHILE the bandwidth is capped and the bucket doesn't hold enough for the frame
+            while (!_stopped && bandwidth > 0 && !takeTokens(held._data.length + 4, bandwidth))
+                LockSupport.parkNanos((long) ((held._data.length + 4 - _tokens) * 1e9 / bandwidth));
+
+            _link.release(held._data, held._payload);
+            _pending.decrementAndGet();
+
+        } // END WHILE
+
+        Held held;
+
+        // WHILE there are frames left, let them straight through so none are lost when the Link closes
+        while ((held = _held.poll()) != null)
+        {
+            _link.release(held._data, held._payload);
+            _pending.decrementAndGet();
+        }
+
+    }//ENDRUN
+
+    /**
+     * Method to fill the token bucket for the time gone by and take a frame's worth out of it.
+     *
+     * @param bytes     <code>int</code> of the bytes the frame takes on the wire.
+     * @param bandwidth <code>long</code> of the bytes per second the bucket fills at.
+     * @return <code>true</code> if the bucket held enough and the frame may go.
+     */
+    private boolean takeTokens(int bytes, long bandwidth)
+    {
+        long now = System.nanoTime();
+
+        // a frame larger than the bucket may still go once the bucket is full
+        double capacity = Math.max(Statics.EMULATE_BURST_BYTES, bytes);
+
+        _tokens = Math.min(capacity, _tokens + (now - _filledNanos) * bandwidth / 1e9);
+        _filledNanos = now;
+
+        // IF there isn't enough for the frame yet
+        if (_tokens < bytes)
+            return false;
+
+        _tokens -= bytes;
+
+        return true;
+    }
+
+    /**
+     * Method to stop holding frames back; those still held are let through at once.
+     */
+    public void stop()
+    {
+        _stopped = true;
+
+        // IF the emulator was started, wake it up to let the rest through
+        if (_thread != null)
+            _thread.interrupt();
+    }
+
+
+    /**
+     * ************************* OVERIDDEN METHODS **********************************
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("delay %d us, jitter %d us, bandwidth %d B/s, loss %d ppm: %d frames, %d lost",
+                _delayNanos / 1000, _jitterNanos / 1000, _bandwidthBytes, _lossPerMillion, _frames, _lost);
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public synchronized long getFrames()
+    {
+        return _frames;
+    }
+
+    public synchronized long getLost()
+    {
+        return _lost;
+    }
+
+    /**
+     * @return <code>int</code> of the number of frames held back and not yet let through to the Link.
+     */
+    public int getHeldCount()
+    {
+        return _pending.get();
+    }
+
+}
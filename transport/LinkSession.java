@@ -0,0 +1,292 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.Statics;
+import cs455.overlay.wireformats.EventFactory;
+import cs455.overlay.wireformats.LinkAck;
+import cs455.overlay.wireformats.Protocol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A LinkSession class to let a Link outlive the connection under it. Both ends count the frames
+ * that go over the Link's connection: the sending end as its writer writes them, before any
+ * compression, and the receiving end as the FrameDispatcher hands them over, after inflating any
+ * batch. The sending end keeps the last Statics.RESUME_BUFFER frames it wrote, and every
+ * Statics.RESUME_ACK_FRAMES frames the receiving end sends back a LinkAck so it can let go of the
+ * ones that arrived.
+ *
+ * If the connection fails, the Link is resumed over a new one: each end tells the other, in a
+ * LinkResume, how many frames it has received, and each replays the frames the other is missing
+ * before anything new is written. Once a connection is given up on, nothing more received over it is
+ * counted or delivered, so the count each end sends is exactly what it has handed to its node.
+ * Frames sent on the Link's stripes or as datagrams are not counted;
+ * they are not carried by the Link's connection.
+ */
+public class LinkSession
+{
+    /**
+     * ConcurrentHashMap of the sessions by the connection their Link is currently over
+     */
+    private static final ConcurrentHashMap<Connection, LinkSession> SESSIONS =
+            new ConcurrentHashMap<Connection, LinkSession>();
+
+    /**
+     * Link the session belongs to
+     */
+    private final Link _link;
+
+    /**
+     * ArrayDeque of the frames written and not yet acknowledged, oldest first
+     */
+    private final ArrayDeque<byte[]> _unacknowledged;
+
+    /**
+     * long for the number of the oldest frame in _unacknowledged, counting from 0
+     */
+    private long _firstUnacknowledged;
+
+    /**
+     * long for the number of frames written over the Link
+     */
+    private long _sent;
+
+    /**
+     * long for the number of frames received over the Link
+     */
+    private long _received;
+
+    /**
+     * boolean for if the Link's connection has been given up on and nothing more received counts
+     */
+    private boolean _frozen;
+
+    /**
+     * long for the number of frames received when the last LinkAck was sent
+     */
+    private long _acknowledged;
+
+    /**
+     * Connection the Link is currently over
+     */
+    private Connection _connection;
+
+    /**
+     * ArrayList of the connections the Link was over before; anything still arriving on them is dropped
+     */
+    private final ArrayList<Connection> _previous;
+
+    /**
+     * int for the number of times the Link has been resumed
+     */
+    private int _resumes;
+
+    /**
+     * long for the number of frames replayed over all the resumes
+     */
+    private long _replayed;
+
+
+    /**
+     * Constructor
+     *
+     * @param link       <code>Link</code> the session belongs to.
+     * @param connection <code>Connection</code> the Link is over.
+     */
+    public LinkSession(Link link, Connection connection)
+    {
+        _link = link;
+        _unacknowledged = new ArrayDeque<byte[]>();
+        _previous = new ArrayList<Connection>();
+        attach(connection);
+    }
+
+    /**
+     * Method to find the session of the Link a connection is carrying.
+     *
+     * @param connection <code>Connection</code> a frame was received on.
+     * @return <code>LinkSession</code> of the Link; null if the connection doesn't carry a resumable Link.
+     */
+    public static LinkSession forConnection(Connection connection)
+    {
+        return SESSIONS.get(connection);
+    }
+
+    /**
+     * Method to move the session over to the connection its Link is now over.
+     *
+     * @param connection <code>Connection</code> the Link is now over.
+     */
+    synchronized void attach(Connection connection)
+    {
+        // IF the Link was over another connection, frames from it no longer count, nor are they delivered
+        if (_connection != null)
+            _previous.add(_connection);
+
+        _connection = connection;
+        _frozen = false;
+        SESSIONS.put(connection, this);
+    }
+
+    /**
+     * Method to drop whatever arrives over a connection the Link is being resumed over, until the Link
+     * is attached to it. If the connection is given up on before then, what the other end sent over it
+     * is replayed the next time the Link is resumed.
+     *
+     * @param connection <code>Connection</code> the Link may be resumed over.
+     */
+    public synchronized void expect(Connection connection)
+    {
+        _previous.add(connection);
+        SESSIONS.put(connection, this);
+    }
+
+    /**
+     * Method to stop counting what arrives over the Link's connection, which has failed. Frames still
+     * being received over it are dropped; the other end replays them once the Link is resumed.
+     *
+     * @return <code>long</code> of the number of frames received over the Link.
+     */
+    synchronized long freeze()
+    {
+        _frozen = true;
+
+        return _received;
+    }
+
+    /**
+     * Method to end the session when its Link is closed.
+     */
+    synchronized void detach()
+    {
+        SESSIONS.remove(_connection);
+
+        for (Connection previous : _previous)
+            SESSIONS.remove(previous);
+
+        _previous.clear();
+    }
+
+    /**
+     * Method to count a frame as it is written and keep it until it is acknowledged.
+     *
+     * @param frame <code>byte[]</code> of the frame.
+     */
+    synchronized void sent(byte[] frame)
+    {
+        _unacknowledged.addLast(frame);
+        ++_sent;
+
+        // IF we are keeping more than we may, the oldest can no longer be replayed
+        if (_unacknowledged.size() > Statics.RESUME_BUFFER)
+        {
+            _unacknowledged.removeFirst();
+            ++_firstUnacknowledged;
+        }
+    }
+
+    /**
+     * Method to count a frame received over the Link, sending a LinkAck back if it is time to.
+     *
+     * @param connection <code>Connection</code> the frame was received on.
+     * @return <code>true</code> if the frame counts and should be delivered; <code>false</code> if the
+     * connection it came over has been given up on.
+     */
+    public boolean received(Connection connection)
+    {
+        long received;
+
+        // the LinkAck is sent outside the lock, as a full queue would hold up the writer counting what it writes
+        synchronized (this)
+        {
+            // IF the connection has been given up on, the frame will be replayed
+            if (_frozen || connection != _connection)
+                return false;
+
+            received = ++_received;
+
+            // IF not enough frames have arrived since the last acknowledgement
+            if (received - _acknowledged < Statics.RESUME_ACK_FRAMES)
+                return true;
+
+            _acknowledged = received;
+        }
+
+        LinkAck linkAck = (LinkAck) EventFactory.getFactoryInstance().createEvent(Protocol.LINK_ACK);
+        linkAck.setReceived(received);
+
+        _link.send(linkAck.getBytes());
+
+        return true;
+    }
+
+    /**
+     * Method to let go of the frames the other end has received.
+     *
+     * @param received <code>long</code> of the number of frames the other end has received.
+     */
+    public synchronized void acknowledged(long received)
+    {
+        // WHILE the oldest frame kept has been received
+        while (_firstUnacknowledged < received && !_unacknowledged.isEmpty())
+        {
+            _unacknowledged.removeFirst();
+            ++_firstUnacknowledged;
+        }
+    }
+
+    /**
+     * Method to get the frames the other end is missing after the Link's connection failed.
+     *
+     * @param received <code>long</code> of the number of frames the other end says it received.
+     * @return <code>byte[][]</code> of the frames to replay, oldest first; null if some of them are no longer kept.
+     */
+    synchronized byte[][] replayFrom(long received)
+    {
+        // IF the other end is missing frames we have let go of, or claims frames we never sent
+        if (received < _firstUnacknowledged || received > _sent)
+            return null;
+
+        acknowledged(received);
+
+        byte[][] replay = _unacknowledged.toArray(new byte[0][]);
+
+        ++_resumes;
+        _replayed += replay.length;
+
+        return replay;
+    }
+
+
+    /**
+     * ************************* OVERIDDEN METHODS **********************************
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return "sent " + _sent + ", received " + _received + ", unacknowledged " + _unacknowledged.size() +
+                ", resumed " + _resumes + " times, replayed " + _replayed + " frames";
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public synchronized long getReceived()
+    {
+        return _received;
+    }
+
+    public synchronized long getSent()
+    {
+        return _sent;
+    }
+
+    public synchronized int getResumes()
+    {
+        return _resumes;
+    }
+
+}
@@ -0,0 +1,229 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.Statics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A LinkStripe class for one of the extra connections a striped Link spreads its payload messages
+ * over. Each stripe has its own data queue and LinkWriter, so with N stripes a Link's payload flood
+ * is written by N writers into N congestion windows instead of one. Control frames are never sent
+ * on a stripe; they stay on the Link's own connection.
+ *
+ * A stripe whose connection is lost is abandoned: it takes no more frames, and those still queued
+ * on it are handed back to the Link. Frames already written to the lost connection are gone, as
+ * stripes aren't covered by the Link's LinkSession.
+ */
+public class LinkStripe
+{
+    /**
+     * Connection the stripe writes to
+     */
+    private final Connection _connection;
+
+    /**
+     * OutboundQueue of payload frames waiting to be written; null if frames are written by the sender
+     */
+    private OutboundQueue _dataQueue;
+
+    /**
+     * LinkWriter writing the queue to the connection
+     */
+    private LinkWriter _writer;
+
+    /**
+     * boolean for if the stripe has been closed or abandoned and takes no more frames
+     */
+    private volatile boolean _closed;
+
+
+    /**
+     * Constructor
+     *
+     * @param connection <code>Connection</code> to the same node as the Link's own connection.
+     * @param name       <code>String</code> naming the writer thread.
+     */
+    public LinkStripe(Connection connection, String name)
+    {
+        _connection = connection;
+
+        // IF frames are to be queued rather than written by the sender
+        if (Statics.LINK_QUEUE_CAPACITY > 0)
+        {
+            _dataQueue = new OutboundQueue(Statics.LINK_QUEUE_CAPACITY);
+            _writer = new LinkWriter(new OutboundQueue(1), _dataQueue, connection, name);
+        }
+    }
+
+    /**
+     * Method to send a payload frame on this stripe.
+     *
+     * @param data <code>byte[]</code> containing the payload message.
+     * @return <code>false</code> if the stripe has been closed and the frame must go another way.
+     */
+    public boolean send(byte[] data)
+    {
+        // IF frames are written by the sender
+        if (_dataQueue == null)
+            return sendNow(data);
+
+        /**
+         * int for the tries at queueing the frame
+         */
+        int tries = 0;
+
+        // WHILE the queue is full, give the writer a chance to catch up
+        while (!offer(data))
+        {
+            // IF the stripe was closed while we waited
+            if (_closed)
+                return false;
+
+            _writer.signal();
+
+            if (WaitStrategy.SEND.isBlocking())
+                LockSupport.parkNanos(50000);
+            else
+                WaitStrategy.SEND.idle(++tries);
+        }
+
+        _writer.signal();
+
+        return true;
+    }
+
+    /**
+     * Method to queue a frame unless the stripe has been closed, under the lock abandon() takes, so
+     * no frame is queued after the queue has been handed back.
+     *
+     * @param data <code>byte[]</code> containing the payload message.
+     * @return <code>true</code> if the frame was queued; <code>false</code> if the queue is full or the stripe closed.
+     */
+    private synchronized boolean offer(byte[] data)
+    {
+        return !_closed && _dataQueue.offer(data);
+    }
+
+    /**
+     * Method to write a frame straight to the connection.
+     *
+     * @param data <code>byte[]</code> containing the payload message.
+     * @return <code>false</code> if the stripe has been closed and the frame must go another way.
+     */
+    private synchronized boolean sendNow(byte[] data)
+    {
+        // IF the stripe has been closed
+        if (_closed)
+            return false;
+
+        try
+        {
+            _connection.sendData(data);
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+        }
+
+        return true;
+    }
+
+    /**
+     * Method to have the stripe's writer compress the frames it writes, with a BatchCompressor of its own.
+     */
+    public void compress()
+    {
+        // IF there is a writer to batch frames
+        if (_writer != null)
+            _writer.setCompressor(new BatchCompressor());
+    }
+
+    /**
+     * Method to give up on the stripe after its connection was lost: it takes no more frames, its
+     * writer stops without writing anything more, and the frames still queued are handed back.
+     *
+     * @return <code>byte[][]</code> of the frames that were queued and not written, oldest first.
+     */
+    public byte[][] abandon()
+    {
+        synchronized (this)
+        {
+            _closed = true;
+        }
+
+        byte[][] queued = new byte[0][];
+        int count = 0;
+
+        // IF there is a queue, hand back what is on it
+        if (_dataQueue != null)
+        {
+            // the writer stops where it is, leaving us the only one taking frames off the queue
+            _writer.abandon();
+
+            queued = new byte[_dataQueue.size()][];
+            byte[] frame;
+
+            while (count < queued.length && (frame = _dataQueue.poll()) != null)
+                queued[count++] = frame;
+        }
+
+        try
+        {
+            _connection.close();
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+        }
+
+        return (count == queued.length) ? queued : Arrays.copyOf(queued, count);
+    }
+
+    /**
+     * Method to close the stripe once the frames already queued have been written.
+     */
+    public void close()
+    {
+        synchronized (this)
+        {
+            _closed = true;
+        }
+
+        // IF there is a writer, it closes the connection once it has written the frames already queued
+        if (_writer != null)
+        {
+            _writer.close();
+            return;
+        }
+
+        try
+        {
+            _connection.close();
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+        }
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    /**
+     * @return <code>int</code> of the number of payload messages waiting to be written to this stripe.
+     */
+    public int getDataQueueDepth()
+    {
+        return (_dataQueue == null) ? 0 : _dataQueue.size();
+    }
+
+    public Connection getConnection()
+    {
+        return _connection;
+    }
+
+}
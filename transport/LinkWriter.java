@@ -0,0 +1,501 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.OverlayThreadFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A LinkWriter class to drain a Link's OutboundQueues into its Connection, so the threads sending
+ * on the Link never wait on the socket. A TCP Link gets a writer thread of its own; a Link over an
+ * NIOConnection is drained by a task on the connection's event loop instead.
+ *
+ * A Link has a control queue and a data queue. Control frames have strict priority: the control
+ * queue is looked at before every data frame is written, so a control frame waits behind at most
+ * the one data frame being written, however many are queued.
+ *
+ * If the Link has negotiated compression, the frames drained in one go are gathered by a
+ * BatchCompressor and written as CompressedBatch frames instead.
+ *
+ * A drain over an NIOConnection stops once the connection has Statics.NIO_WRITE_QUEUE_BYTES waiting
+ * to be written, leaving the rest in the queues so senders feel the back-pressure, and carries on
+ * when the connection signals it has room. If writing fails on a Link that can't be resumed, the
+ * connection is broken so the node is told it was lost, as it would be by a failed read.
+ *
+ * A stopped writer writes its last frames on its own thread, or in a task on its loop, so the
+ * caller, which may hold its node's monitor, never waits on the socket. A writer taking over from
+ * one that was stopped writes nothing until that one has finished.
+ */
+public class LinkWriter implements Runnable
+{
+    /**
+     * OutboundQueue of control frames to be written ahead of any data frames
+     */
+    private final OutboundQueue _controlQueue;
+
+    /**
+     * OutboundQueue of data (payload) frames to be written
+     */
+    private final OutboundQueue _dataQueue;
+
+    /**
+     * Connection the frames are written to
+     */
+    private final Connection _connection;
+
+    /**
+     * Executor to run drain tasks on; null if this writer has a thread of its own
+     */
+    private final Executor _executor;
+
+    /**
+     * NIOConnection the frames are written to, whose write queue a drain stops at; null for any other connection
+     */
+    private final NIOConnection _nio;
+
+    /**
+     * Thread of its own, when there is no executor
+     */
+    private Thread _thread;
+
+    /**
+     * boolean for if the writer thread is (about to be) parked waiting for frames
+     */
+    private volatile boolean _waiting;
+
+    /**
+     * boolean for if a drain task has been handed to the executor
+     */
+    private final AtomicBoolean _scheduled;
+
+    /**
+     * boolean for if the writer has been stopped
+     */
+    private volatile boolean _stopped;
+
+    /**
+     * boolean for if the writer has written the last of its frames; only set holding the writer's lock
+     */
+    private volatile boolean _finished;
+
+    /**
+     * boolean for if the writer is to close the connection once it has finished
+     */
+    private volatile boolean _closeConnection;
+
+    /**
+     * LinkWriter this one took over from, which has to finish before this one writes; null once it has
+     */
+    private volatile LinkWriter _previous;
+
+    /**
+     * LinkWriter taking over from this one, to be signalled once this one has finished; null if none
+     */
+    private volatile LinkWriter _next;
+
+    /**
+     * BatchCompressor the drained frames are gathered in; null if the Link isn't compressed
+     */
+    private volatile BatchCompressor _compressor;
+
+    /**
+     * LinkSession counting and keeping the frames written; null if the Link isn't resumable
+     */
+    private final LinkSession _session;
+
+    /**
+     * boolean for if the writer has been told to write nothing more, as its connection has failed
+     */
+    private volatile boolean _paused;
+
+    /**
+     * byte array of frames to write before anything queued, already counted by the LinkSession; null for none
+     */
+    private volatile byte[][] _replay;
+
+
+    /**
+     * Constructor
+     *
+     * @param controlQueue <code>OutboundQueue</code> of control frames to write first.
+     * @param dataQueue    <code>OutboundQueue</code> of data frames to write.
+     * @param connection   <code>Connection</code> to write the frames to.
+     * @param name         <code>String</code> naming the writer thread.
+     */
+    public LinkWriter(OutboundQueue controlQueue, OutboundQueue dataQueue, Connection connection, String name)
+    {
+        this(controlQueue, dataQueue, connection, name, null, null, null, null);
+    }
+
+    /**
+     * Overloaded Constructor for the writer of a resumable Link, or of one taking over from a writer
+     * whose connection failed.
+     *
+     * @param controlQueue <code>OutboundQueue</code> of control frames to write first.
+     * @param dataQueue    <code>OutboundQueue</code> of data frames to write.
+     * @param connection   <code>Connection</code> to write the frames to.
+     * @param name         <code>String</code> naming the writer thread.
+     * @param session      <code>LinkSession</code> to count and keep the frames written; null for none.
+     * @param compressor   <code>BatchCompressor</code> to gather frames in; null to write them as they are.
+     * @param replay       <code>byte[][]</code> of frames the other end is missing, to write first; null for none.
+     * @param previous     <code>LinkWriter</code> stopped writer of the same queues, to wait for; null for none.
+     */
+    public LinkWriter(OutboundQueue controlQueue, OutboundQueue dataQueue, Connection connection, String name,
+                      LinkSession session, BatchCompressor compressor, byte[][] replay, LinkWriter previous)
+    {
+        _session = session;
+        _replay = replay;
+        _compressor = compressor;
+        _controlQueue = controlQueue;
+        _dataQueue = dataQueue;
+        _connection = connection;
+        _scheduled = new AtomicBoolean(false);
+        _waiting = false;
+        _stopped = false;
+        _finished = false;
+        _closeConnection = false;
+
+        // the previous writer learns of us before we first look at it, so one of us always sees the other
+        _previous = previous;
+
+        if (previous != null)
+            previous._next = this;
+
+        // IF the connection is serviced by an event loop, drain on the loop
+        if (connection instanceof NIOConnection)
+        {
+            _nio = (NIOConnection) connection;
+            _executor = _nio.getLoop();
+        }
+        else
+        {
+            _nio = null;
+            _executor = null;
+            _thread = OverlayThreadFactory.getFactoryInstance().newThread(this, name);
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+    }
+
+    /**
+     * Method to let the writer know a frame has been queued.
+     */
+    public void signal()
+    {
+        // IF we drain on an executor, hand it a task unless one is already on the way
+        if (_executor != null)
+        {
+            if (_scheduled.compareAndSet(false, true))
+                _executor.execute(this);
+        }
+        // ELSE IF the writer thread is waiting for frames, wake it up
+        else if (_waiting)
+            LockSupport.unpark(_thread);
+    }
+
+    /**
+     * Write frames until stopped (writer thread), or until the queue is empty (drain task).
+     */
+    public void run()
+    {
+        // IF we are a drain task on an executor
+        if (_executor != null)
+        {
+            _scheduled.set(false);
+
+            // IF the writer was stopped, this is the task writing its last frames
+            if (_stopped)
+                finish();
+            else
+                drain();
+
+            return;
+        }
+
+        // WHILE we haven't finished
+        while (true)
+        {
+            // IF we were stopped, write the last frames, unless the writer before us is still at it
+            if (_stopped && finish())
+                return;
+
+            drain();
+
+            // IF we poll for frames rather than wait to be signalled
+            if (!WaitStrategy.SEND.isBlocking())
+            {
+                int idle = 0;
+
+                while (!hasWork())
+                    WaitStrategy.SEND.idle(++idle);
+
+                continue;
+            }
+
+            _waiting = true;
+
+            // IF nothing arrived while we were getting ready to wait
+            if (!hasWork())
+                LockSupport.park(this);
+
+            _waiting = false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if there is something for the writer thread to do: frames to write, or
+     * its last ones once stopped, and no writer before it still at it.
+     */
+    private boolean hasWork()
+    {
+        // IF the writer before us hasn't finished, we wait to be signalled when it has
+        if (!previousFinished())
+            return false;
+
+        return _stopped || (!_paused && (!_controlQueue.isEmpty() || !_dataQueue.isEmpty()));
+    }
+
+    /**
+     * @return <code>true</code> if there is no writer before this one that is still writing.
+     */
+    private boolean previousFinished()
+    {
+        LinkWriter previous = _previous;
+
+        // IF there is no writer before us
+        if (previous == null)
+            return true;
+
+        if (!previous._finished)
+            return false;
+
+        _previous = null;
+
+        return true;
+    }
+
+    /**
+     * Method to write the last frames of a stopped writer, then close the connection if asked to and
+     * let the writer taking over know it can start.
+     *
+     * @return <code>true</code> if the writer has finished; <code>false</code> if it has to wait, for
+     * the writer before it to finish or the connection to have room, and try again when signalled.
+     */
+    private boolean finish()
+    {
+        synchronized (this)
+        {
+            // IF we have already finished
+            if (_finished)
+                return true;
+
+            if (!previousFinished())
+                return false;
+
+            drain();
+
+            // IF the connection has no room for the rest yet, we are signalled when it has
+            if (!_paused && isBlocked())
+                return false;
+
+            _finished = true;
+        }
+
+        // IF the Link is closing, its connection goes once the last frames have been written to it
+        if (_closeConnection)
+        {
+            try
+            {
+                _connection.close();
+            }
+            catch (IOException ioe)
+            {
+                ioe.printStackTrace();
+            }
+        }
+
+        LinkWriter next = _next;
+
+        // IF a writer took over from us, it may start now
+        if (next != null)
+            next.signal();
+
+        return true;
+    }
+
+    /**
+     * Method to write every queued frame, control frames first, and then flush the connection.
+     */
+    private synchronized void drain()
+    {
+        byte[] frame;
+
+        BatchCompressor compressor = _compressor;
+
+        // IF the connection has failed, or the writer has finished, the frames wait for the writer taking over
+        if (_paused || _finished)
+            return;
+
+        // IF the writer we took over from is still writing, we are signalled once it has finished
+        if (!previousFinished())
+            return;
+
+        try
+        {
+            byte[][] replay = _replay;
+
+            // IF the other end is missing frames, they go first, as they are; they were counted when first written
+            if (replay != null)
+            {
+                _replay = null;
+
+                for (byte[] replayed : replay)
+                    _connection.sendData(replayed);
+            }
+
+            // WHILE there is a frame to write and room to write it, taking a control frame whenever there is one
+            while (!_paused && !isBlocked() &&
+                    ((frame = _controlQueue.poll()) != null || (frame = _dataQueue.poll()) != null))
+            {
+                // IF the Link is resumable, keep the frame in case the connection fails under it
+                if (_session != null)
+                    _session.sent(frame);
+
+                // IF frames are written as they are
+                if (compressor == null)
+                {
+                    _connection.sendData(frame);
+                    continue;
+                }
+
+                compressor.add(frame);
+
+                if (compressor.isFull())
+                    _connection.sendData(compressor.finish());
+            }
+
+            // IF there is the start of a batch left over, send it now rather than hold it back
+            if (compressor != null && !compressor.isEmpty())
+                _connection.sendData(compressor.finish());
+
+            _connection.flush();
+
+            // IF we stopped because the connection has enough to write, carry on once it has room
+            if (isBlocked())
+                _nio.signalWhenWritable(this);
+        }
+        catch (IOException ioe)
+        {
+            // IF the Link is resumable, what we failed to write is kept; the rest waits until it is resumed
+            if (_session != null)
+            {
+                _paused = true;
+                System.out.println("Writing to " + _connection.getHostname() + " failed: " + ioe.getMessage());
+
+                return;
+            }
+
+            // the frames taken off the queues are lost, and so is the Link; break the connection so the node is told
+            _paused = true;
+            System.err.println("Writing to " + _connection.getHostname() + " failed, closing the connection: " +
+                    ioe.getMessage());
+
+            // IF the connection isn't one that can be broken, closing it will have to do
+            if (!Link.abort(_connection))
+            {
+                try
+                {
+                    _connection.close();
+                }
+                catch (IOException closeFailed)
+                {
+                    closeFailed.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the connection has as much waiting to be written as a writer may hand it.
+     */
+    private boolean isBlocked()
+    {
+        return _nio != null && _nio.isWriteQueueFull();
+    }
+
+    /**
+     * Method to have the writer compress the frames it writes from its next drain on.
+     *
+     * @param compressor <code>BatchCompressor</code> to gather frames in; null to stop compressing.
+     */
+    public void setCompressor(BatchCompressor compressor)
+    {
+        _compressor = compressor;
+    }
+
+    /**
+     * Method to have the writer write nothing more, leaving what is queued for a writer over a new
+     * connection. The frame being written, if any, is kept by the LinkSession to be replayed.
+     */
+    public void pause()
+    {
+        _paused = true;
+    }
+
+    /**
+     * @return <code>true</code> if the writer is writing frames as they are queued: it isn't paused or
+     * stopped, and has no frames left to replay.
+     */
+    boolean isReady()
+    {
+        return !_paused && !_stopped && _replay == null && previousFinished();
+    }
+
+    /**
+     * Method to stop the writer once the frames already queued have been written. They are written
+     * by the writer thread, or a task on the loop, and the caller doesn't wait for them: callers hold
+     * their node's monitor, and a virtual thread waiting with a monitor held keeps its carrier, which
+     * the writer thread may need to finish on. A writer taking over the queues is given this one as
+     * the one before it, and waits for it instead.
+     */
+    public void stop()
+    {
+        _stopped = true;
+
+        // IF we drain on an executor, hand it the task writing the last frames
+        if (_executor != null)
+            _executor.execute(this);
+        else
+            LockSupport.unpark(_thread);
+    }
+
+    /**
+     * Method to stop the writer, and have it close the connection once the last frames have been written.
+     */
+    public void close()
+    {
+        _closeConnection = true;
+        stop();
+    }
+
+    /**
+     * Method to stop the writer at once, leaving what is queued to the caller or a writer taking over.
+     * A drain already writing gives up after the frame it is on, as the writer is paused; the caller
+     * waits for that, and nothing more, so the frame has been counted and nothing else is taking frames
+     * off the queues once this returns.
+     */
+    void abandon()
+    {
+        _paused = true;
+        stop();
+
+        // drains hold the writer's lock, so once we have it no drain is taking frames off the queues
+        synchronized (this)
+        {
+            _finished = true;
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package cs455.overlay.transport;
+
+import java.io.IOException;
+
+/**
+ * A Listener interface for the end of a Transport that accepts Connections from other Nodes and
+ * hands each to the Node it was opened for.
+ */
+public interface Listener
+{
+    /**
+     * Method to start accepting Connections.
+     */
+    public void start();
+
+    /**
+     * Method to stop accepting Connections.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException;
+
+    /**
+     * @return <code>String</code> of the host name other Nodes reach this Listener at.
+     */
+    public String getLocalHostName();
+
+    /**
+     * @return <code>int</code> of the port this Listener accepts Connections on.
+     */
+    public int getLocalPort();
+}
@@ -0,0 +1,650 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.util.Statics;
+import cs455.overlay.wireformats.Event;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A NIOConnection class to represent a non-blocking socket channel serviced by an NIOEventLoop.
+ * The connection does the same length-prefixed framing as TCPSender/TCPReceiverThread: every frame
+ * is a 4 byte length followed by that many bytes of message, so either end of a Link may use
+ * either transport.
+ *
+ * The loop only does the socket I/O. Reading and decoding frames, and handing them to the Node, is
+ * done by the connection's NIODelivery, and the channel isn't read again until it is done, so a Node
+ * that blocks holds up only this connection and the frames it hasn't read yet wait in the socket.
+ * The delivery hands over one read at a time, and the channel isn't watched for reads again until
+ * every frame of it has been handed to the Node, so frames never pile up between the socket and the
+ * Node. Frames waiting to be written are bounded by Statics.NIO_WRITE_QUEUE_BYTES: once that many are
+ * waiting, a LinkWriter stops, leaving the rest in its Link's queues, and is signalled again once the
+ * socket has taken half of them; any other thread sending waits, as it would on a blocking socket,
+ * until there is room. The loop itself never waits.
+ */
+public class NIOConnection implements Connection
+{
+    /**
+     * int for the most frames handed to a single gathering write
+     */
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * SocketChannel to the other node
+     */
+    private final SocketChannel _channel;
+
+    /**
+     * NIOEventLoop servicing this connection
+     */
+    private final NIOEventLoop _loop;
+
+    /**
+     * Node to be notified when a message is received
+     */
+    private final Node _callbackNode;
+
+    /**
+     * SelectionKey of the channel with the loop's selector
+     */
+    private SelectionKey _key;
+
+    /**
+     * FrameDecoder holding the buffer the channel is read into; only touched by the delivery
+     */
+    private FrameDecoder _decoder;
+
+    /**
+     * NIODelivery reading the channel and handing what arrives to the callback node, off the loop
+     */
+    private final NIODelivery _delivery;
+
+    /**
+     * Runnable the delivery runs to read the channel, and the loop runs to start watching it again
+     */
+    private final Runnable _read;
+    private final Runnable _resumeRead;
+
+    /**
+     * boolean for if the channel isn't watched for reads while the delivery reads it; only touched by the loop
+     */
+    private boolean _readSuspended;
+
+    /**
+     * boolean for if the channel is watched for the socket taking more; only touched by the loop
+     */
+    private boolean _writeBlocked;
+
+    /**
+     * Frames queued by any thread waiting to be written by the loop
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> _writeQueue;
+
+    /**
+     * long for the bytes of the frames queued and not yet completely written
+     */
+    private final AtomicLong _queuedBytes;
+
+    /**
+     * LinkWriter waiting for the write queue to have room; null if none is
+     */
+    private volatile LinkWriter _roomWaiter;
+
+    /**
+     * Object other threads sending wait on for the write queue to have room
+     */
+    private final Object _room;
+
+    /**
+     * int for the number of threads waiting on _room
+     */
+    private volatile int _roomWaiters;
+
+    /**
+     * Frames taken off the write queue that have not been completely written; only touched by the loop
+     */
+    private final ArrayDeque<ByteBuffer> _inFlight;
+
+    /**
+     * ByteBuffer array the in flight frames are handed to a gathering write in; only touched by the loop
+     */
+    private final ByteBuffer[] _gather;
+
+    /**
+     * boolean for if a flush has already been asked of the loop
+     */
+    private final AtomicBoolean _flushScheduled;
+
+    /**
+     * boolean for if delivery of received messages has been stopped
+     */
+    private volatile boolean _interrupted;
+
+    /**
+     * boolean for if the callback node has been, or is about to be, told the connection was lost
+     */
+    private final AtomicBoolean _lost;
+
+
+    /**
+     * Constructor
+     *
+     * @param channel      <code>SocketChannel</code> in non-blocking mode connected to the other node.
+     * @param loop         <code>NIOEventLoop</code> that will service the channel.
+     * @param callbackNode <code>Node</code> that has interest in the received messages.
+     */
+    NIOConnection(SocketChannel channel, NIOEventLoop loop, Node callbackNode)
+    {
+        _channel = channel;
+        _loop = loop;
+        _callbackNode = callbackNode;
+
+        _decoder = new FrameDecoder(Statics.RECEIVE_BUFFER_DIRECT);
+        _delivery = new NIODelivery();
+        _writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+        _queuedBytes = new AtomicLong();
+        _room = new Object();
+        _roomWaiters = 0;
+        _inFlight = new ArrayDeque<ByteBuffer>();
+        _gather = new ByteBuffer[MAX_GATHER];
+        _flushScheduled = new AtomicBoolean(false);
+        _interrupted = false;
+        _lost = new AtomicBoolean(false);
+
+        _read = new Runnable()
+        {
+            public void run()
+            {
+                read();
+            }
+        };
+
+        _resumeRead = new Runnable()
+        {
+            public void run()
+            {
+                _readSuspended = false;
+                updateInterest();
+            }
+        };
+    }
+
+    /**
+     * Method to register the channel with the loop's selector. Must be run on the loop.
+     */
+    void register()
+    {
+        try
+        {
+            _key = _channel.register(_loop.getSelector(), SelectionKey.OP_READ, this);
+
+            // IF frames were queued before we were registered
+            if (!_writeQueue.isEmpty())
+                handleWrite();
+        }
+        catch (ClosedChannelException cce)
+        {
+            System.err.println("Channel closed before it could be registered: " + cce.getMessage());
+        }
+    }
+
+    /**
+     * Connection interface method to send a frame to the other node. The frame is queued and
+     * written by the event loop; unless sent from the loop, this waits while the write queue is
+     * full. Frames sent back-to-back, including from the loop itself, go out together once the loop
+     * gets to them.
+     *
+     * @param data <code>byte[]</code> containing the message to the other node.
+     * @throws IOException
+     */
+    public void sendData(byte[] data) throws IOException
+    {
+        awaitRoom();
+
+        // IF the channel has been closed
+        if (!_channel.isOpen())
+            throw new ClosedChannelException();
+
+        ByteBuffer frame = ByteBuffer.allocate(4 + data.length);
+        frame.putInt(data.length);
+        frame.put(data);
+        frame.flip();
+
+        queue(frame);
+    }
+
+    /**
+     * Connection interface method to send a message to the other node. It is encoded straight into the
+     * buffer the event loop writes from, after its length prefix.
+     *
+     * @param event <code>Event</code> to send to the other node.
+     * @throws IOException
+     */
+    public void sendEvent(Event event) throws IOException
+    {
+        awaitRoom();
+
+        // IF the channel has been closed
+        if (!_channel.isOpen())
+            throw new ClosedChannelException();
+
+        int length = event.encodedSize();
+
+        ByteBuffer frame = ByteBuffer.allocate(4 + length);
+        frame.putInt(length);
+        event.writeTo(frame);
+        frame.flip();
+
+        queue(frame);
+    }
+
+    /**
+     * Method to wait, unless we are the loop, until the write queue has room or the channel is closed.
+     *
+     * @throws IOException if interrupted while waiting.
+     */
+    private void awaitRoom() throws IOException
+    {
+        // IF there is room, or we are the loop, which must never wait
+        if (!isWriteQueueFull() || Thread.currentThread() == _loop)
+            return;
+
+        synchronized (_room)
+        {
+            ++_roomWaiters;
+
+            try
+            {
+                while (isWriteQueueFull() && _channel.isOpen())
+                    _room.wait();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting to write to " + getHostname());
+            }
+            finally
+            {
+                --_roomWaiters;
+            }
+        }
+    }
+
+    /**
+     * Method to wake the threads waiting for the write queue to have room, if there are any.
+     */
+    private void wakeRoomWaiters()
+    {
+        // IF nobody is waiting
+        if (_roomWaiters == 0)
+            return;
+
+        synchronized (_room)
+        {
+            _room.notifyAll();
+        }
+    }
+
+    /**
+     * Method to queue a frame for the event loop to write, asking it for a flush if none is pending.
+     *
+     * @param frame <code>ByteBuffer</code> of the length prefix and frame, ready to be written.
+     */
+    private void queue(ByteBuffer frame)
+    {
+        _queuedBytes.addAndGet(frame.limit());
+        _writeQueue.offer(frame);
+
+        // IF no flush is pending, ask the loop for one
+        if (_flushScheduled.compareAndSet(false, true))
+        {
+            _loop.executeLater(new Runnable()
+            {
+                public void run()
+                {
+                    _flushScheduled.set(false);
+                    handleWrite();
+                }
+            });
+        }
+    }
+
+    /**
+     * Connection interface method to write any queued frames. The event loop writes them as soon as
+     * it can, so there is nothing to do here.
+     */
+    public void flush()
+    {
+
+    }
+
+    /**
+     * @return <code>true</code> if the frames waiting to be written take up Statics.NIO_WRITE_QUEUE_BYTES
+     * or more, and a LinkWriter should leave the rest in its Link's queues.
+     */
+    boolean isWriteQueueFull()
+    {
+        return _queuedBytes.get() >= Statics.NIO_WRITE_QUEUE_BYTES;
+    }
+
+    /**
+     * Method for a LinkWriter that stopped because the write queue was full to be signalled once the
+     * socket has taken half of what is waiting. Must be run on the loop.
+     *
+     * @param writer <code>LinkWriter</code> to signal.
+     */
+    void signalWhenWritable(LinkWriter writer)
+    {
+        _roomWaiter = writer;
+
+        // IF the socket took what was waiting before the writer asked, don't leave it waiting for a write
+        if (!isWriteQueueFull() && _roomWaiter == writer)
+        {
+            _roomWaiter = null;
+            writer.signal();
+        }
+    }
+
+    /**
+     * Method to write as many queued frames as the socket will take in single gathering writes,
+     * and to ask for OP_WRITE if the socket could not take them all. Must be run on the loop.
+     */
+    void handleWrite()
+    {
+        // IF we haven't been registered yet, the registration will flush for us
+        if (_key == null || !_key.isValid())
+            return;
+
+        try
+        {
+            while (true)
+            {
+                ByteBuffer frame;
+
+                // top up the in flight frames from the queue
+                while (_inFlight.size() < MAX_GATHER && (frame = _writeQueue.poll()) != null)
+                    _inFlight.add(frame);
+
+                // IF there is nothing left to write
+                if (_inFlight.isEmpty())
+                {
+                    _writeBlocked = false;
+                    break;
+                }
+
+                int count = 0;
+                for (ByteBuffer buffer : _inFlight)
+                    _gather[count++] = buffer;
+
+                _channel.write(_gather, 0, count);
+
+                // drop the frames that were completely written
+                while (!_inFlight.isEmpty() && !_inFlight.peekFirst().hasRemaining())
+                    _queuedBytes.addAndGet(-_inFlight.removeFirst().limit());
+
+                // IF the socket would not take everything, wait until it is writable again
+                if (!_inFlight.isEmpty())
+                {
+                    _writeBlocked = true;
+                    break;
+                }
+            }
+
+            updateInterest();
+        }
+        catch (IOException ioe)
+        {
+            System.out.println("Sender belongs to: " + getCallbackNode().getID() + ": " + ioe);
+            lost(ioe);
+            return;
+        }
+
+        // IF there is room for threads waiting to send
+        if (!isWriteQueueFull())
+            wakeRoomWaiters();
+
+        LinkWriter writer = _roomWaiter;
+
+        // IF a LinkWriter is waiting for room and there is now plenty of it
+        if (writer != null && _queuedBytes.get() <= Statics.NIO_WRITE_QUEUE_BYTES / 2)
+        {
+            _roomWaiter = null;
+            writer.signal();
+        }
+    }
+
+    /**
+     * Method to stop watching the channel for reads and have the delivery read it. Must be run on the loop.
+     */
+    void handleRead()
+    {
+        _readSuspended = true;
+        updateInterest();
+
+        _delivery.execute(_read);
+    }
+
+    /**
+     * Method to read what is available on the channel and hand every complete frame to the callback
+     * node, and then have the loop watch the channel again. Run by the delivery.
+     */
+    private void read()
+    {
+        // IF the connection was closed since it was selected
+        if (_decoder == null || !_channel.isOpen())
+            return;
+
+        try
+        {
+            int read = _channel.read(_decoder.getBuffer());
+
+            // IF the other end closed the connection
+            if (read < 0)
+            {
+                System.out.println("Receiver belongs to: " + getCallbackNode().getID());
+                System.out.println("Connection closed by: " + getHostname());
+                lost(new EOFException("Connection closed by " + getHostname()));
+                return;
+            }
+
+            _decoder.decodeFrames(this);
+        }
+        catch (IOException ioe)
+        {
+            System.out.println("Receiver belongs to: " + getCallbackNode().getID() + ": " + ioe);
+            lost(ioe);
+            return;
+        }
+        catch (RuntimeException re)
+        {
+            // the node failed handling a frame; we can't know where in the stream we are, so give up on it
+            re.printStackTrace();
+            lost(new IOException("Handling a frame from " + getHostname() + " failed: " + re, re));
+            return;
+        }
+
+        _loop.executeLater(_resumeRead);
+    }
+
+    /**
+     * Method to set what the loop watches the channel for. Must be run on the loop.
+     */
+    private void updateInterest()
+    {
+        // IF the channel has been closed
+        if (_key == null || !_key.isValid())
+            return;
+
+        try
+        {
+            _key.interestOps((_readSuspended ? 0 : SelectionKey.OP_READ) |
+                    (_writeBlocked ? SelectionKey.OP_WRITE : 0));
+        }
+        catch (CancelledKeyException cke)
+        {
+            // the channel was closed by another thread since we looked; there is nothing left to watch
+        }
+    }
+
+    /**
+     * Method to close the channel after reading or writing it failed and, unless we had stopped
+     * delivering from it, have the delivery tell the callback node it was lost, after anything it
+     * is still handing over.
+     *
+     * @param cause <code>IOException</code> the channel failed with.
+     */
+    void lost(final IOException cause)
+    {
+        boolean interrupted = _interrupted;
+
+        closeQuietly();
+
+        // IF the node still wanted what came over the connection, and hasn't been told already
+        if (!interrupted && _lost.compareAndSet(false, true))
+        {
+            _delivery.execute(new Runnable()
+            {
+                public void run()
+                {
+                    getCallbackNode().connectionLost(NIOConnection.this, cause);
+                }
+            });
+        }
+    }
+
+    /**
+     * Method to reset the channel, as a network fault would; the node is told the connection was lost.
+     */
+    void abort()
+    {
+        _loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    _channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+                }
+                catch (IOException ioe)
+                {
+                    ioe.printStackTrace();
+                }
+
+                lost(new IOException("Connection to " + getHostname() + " reset"));
+            }
+        });
+    }
+
+    /**
+     * Connection interface method to close the channel.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        _interrupted = true;
+
+        if (_key != null)
+            _key.cancel();
+
+        _channel.close();
+
+        // threads waiting for room will find the channel closed
+        wakeRoomWaiters();
+
+        // give the read buffer back once the delivery is done with it
+        _delivery.execute(new Runnable()
+        {
+            public void run()
+            {
+                // IF the buffer hasn't already been given back
+                if (_decoder != null)
+                {
+                    _decoder.release();
+                    _decoder = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Method to close the channel after an error, printing rather than throwing any further error.
+     */
+    private void closeQuietly()
+    {
+        try
+        {
+            close();
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Connection interface method to stop delivering received messages to the callback node.
+     */
+    public void interrupt()
+    {
+        _interrupted = true;
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public boolean isInterrupted()
+    {
+        return _interrupted;
+    }
+
+    public String getHostname()
+    {
+        return _channel.socket().getInetAddress().getCanonicalHostName();
+    }
+
+    public int getPort()
+    {
+        return _channel.socket().getPort();
+    }
+
+    public String getLocalHostName()
+    {
+        return _channel.socket().getLocalAddress().getCanonicalHostName();
+    }
+
+    public int getLocalPort()
+    {
+        return _channel.socket().getLocalPort();
+    }
+
+    public Node getCallbackNode()
+    {
+        return _callbackNode;
+    }
+
+    public SocketChannel getChannel()
+    {
+        return _channel;
+    }
+
+    public NIOEventLoop getLoop()
+    {
+        return _loop;
+    }
+
+}//ENDNIOCONNECTION
@@ -0,0 +1,124 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.OverlayThreadFactory;
+import cs455.overlay.util.Statics;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A NIODelivery class to run everything an NIOConnection hands its Node (received frames, and its
+ * loss) off the connection's event loop, so a Node that blocks in onEvent never holds up the loop.
+ * The tasks of one connection run one at a time and in the order they were handed over, as a TCP
+ * receiver thread would run them. They run on a fixed pool of Statics.NIO_DELIVERY_THREADS threads
+ * shared by every connection in the JVM, so the thread count stays the same however many
+ * connections there are; a Node that blocks ties up one of them until it returns.
+ *
+ * A connection hands over at most one read at a time, and doesn't read its channel again until the
+ * frames of that read have been delivered, so a delivery never holds more than a few tasks.
+ */
+public class NIODelivery
+{
+    /**
+     * ExecutorService the tasks of every connection run on
+     */
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(Statics.NIO_DELIVERY_THREADS,
+            new ThreadFactory()
+            {
+                /**
+                 * AtomicInteger numbering the worker threads
+                 */
+                private final AtomicInteger _count = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = OverlayThreadFactory.getFactoryInstance().newThread(runnable,
+                            "nio-delivery-" + _count.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+
+    /**
+     * ConcurrentLinkedQueue of the tasks waiting to run, oldest first
+     */
+    private final ConcurrentLinkedQueue<Runnable> _tasks;
+
+    /**
+     * boolean for if a worker is running the tasks
+     */
+    private final AtomicBoolean _running;
+
+    /**
+     * Runnable a worker runs to work through the tasks
+     */
+    private final Runnable _drain;
+
+
+    /**
+     * Constructor
+     */
+    NIODelivery()
+    {
+        _tasks = new ConcurrentLinkedQueue<Runnable>();
+        _running = new AtomicBoolean(false);
+
+        _drain = new Runnable()
+        {
+            public void run()
+            {
+                drain();
+            }
+        };
+    }
+
+    /**
+     * Method to run a task after every task handed over before it. Never blocks.
+     *
+     * @param task <code>Runnable</code> to run.
+     */
+    void execute(Runnable task)
+    {
+        _tasks.offer(task);
+
+        // IF no worker is running the tasks, have one start
+        if (_running.compareAndSet(false, true))
+            WORKERS.execute(_drain);
+    }
+
+    /**
+     * Method to run the tasks until there are none left.
+     */
+    private void drain()
+    {
+        // WHILE there may be tasks left
+        while (true)
+        {
+            Runnable task;
+
+            while ((task = _tasks.poll()) != null)
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException re)
+                {
+                    re.printStackTrace();
+                }
+            }
+
+            _running.set(false);
+
+            // IF nothing was handed over since we looked, or another worker has taken over
+            if (_tasks.isEmpty() || !_running.compareAndSet(false, true))
+                return;
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.util.Statics;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class defines a selector event-loop thread. Each loop owns a Selector and services the reads
+ * and writes of every NIOConnection registered with it, so a Node can hold any number of Links with
+ * a fixed number of threads. The loops are created once per JVM (Statics.NIO_EVENT_LOOPS of them,
+ * one per core by default) and connections are sharded across them round-robin.
+ *
+ * A loop never runs Node callbacks, as they may block: every connection hands what it reads to its
+ * Node through its own NIODelivery. A connection that fails while being serviced is closed on its
+ * own; the loop carries on with the rest.
+ */
+public class NIOEventLoop extends Thread implements Executor
+{
+    /**
+     * The event loops shared by every Node in this JVM, created on first use
+     */
+    private static NIOEventLoop[] _loops;
+
+    /**
+     * Round-robin counter for handing out loops to new connections
+     */
+    private static final AtomicInteger _nextLoop = new AtomicInteger();
+
+    /**
+     * Selector for the channels this loop services
+     */
+    private final Selector _selector;
+
+    /**
+     * Tasks from other threads to be run on this loop (channel registration, write interest)
+     */
+    private final ConcurrentLinkedQueue<Runnable> _tasks;
+
+
+    /**
+     * Constructor
+     *
+     * @param index <code>int</code> index of this loop, used for its name.
+     * @throws IOException
+     */
+    private NIOEventLoop(int index) throws IOException
+    {
+        super("nio-event-loop-" + index);
+        setDaemon(true);
+
+        _selector = Selector.open();
+        _tasks = new ConcurrentLinkedQueue<Runnable>();
+    }
+
+
+    /**
+     * Method to register a connected channel with the next event loop. The channel is switched to
+     * non-blocking mode and messages read from it are handed to the callback node.
+     *
+     * @param channel      <code>SocketChannel</code> connected to the other node.
+     * @param callbackNode <code>Node</code> that has interest in the received messages.
+     * @return <code>NIOConnection</code> for the channel.
+     * @throws IOException
+     */
+    public static NIOConnection register(SocketChannel channel, Node callbackNode) throws IOException
+    {
+        NIOEventLoop loop = next();
+
+        channel.configureBlocking(false);
+
+        // IF small frames are to go out at once rather than wait to be coalesced
+        if (Statics.tcpNoDelay())
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        final NIOConnection connection = new NIOConnection(channel, loop, callbackNode);
+
+        loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                connection.register();
+            }
+        });
+
+        return connection;
+    }
+
+    /**
+     * Method to get the next event loop, creating the loops the first time through.
+     *
+     * @return <code>NIOEventLoop</code> to register the next channel with.
+     * @throws IOException
+     */
+    private static synchronized NIOEventLoop next() throws IOException
+    {
+        // IF the loops have not been started yet
+        if (_loops == null)
+        {
+            NIOEventLoop[] loops = new NIOEventLoop[Math.max(1, Statics.NIO_EVENT_LOOPS)];
+
+            for (int i = 0; i < loops.length; ++i)
+            {
+                loops[i] = new NIOEventLoop(i);
+                loops[i].start();
+            }
+
+            _loops = loops;
+        }
+
+        return _loops[(_nextLoop.getAndIncrement() & Integer.MAX_VALUE) % _loops.length];
+    }
+
+    /**
+     * Method to run a task on this loop. If called from the loop itself the task runs right away.
+     *
+     * @param task <code>Runnable</code> to run on the loop.
+     */
+    public void execute(Runnable task)
+    {
+        // IF we are already on the loop, there is no reason to wait
+        if (Thread.currentThread() == this)
+            task.run();
+        else
+        {
+            _tasks.offer(task);
+            _selector.wakeup();
+        }
+    }
+
+    /**
+     * Method to run a task on this loop once it has finished what it is doing, even if called from
+     * the loop itself.
+     *
+     * @param task <code>Runnable</code> to run on the loop.
+     */
+    public void executeLater(Runnable task)
+    {
+        _tasks.offer(task);
+        _selector.wakeup();
+    }
+
+    /**
+     * Select ready channels and service them until the JVM exits.
+     */
+    public void run()
+    {
+        /**
+         * int for the polls in a row that found nothing to do, when polling rather than blocking in select()
+         */
+        int idle = 0;
+
+        // Keep servicing channels until we terminate
+        while (true)
+        {
+            try
+            {
+                // IF we block until a channel is ready or we are woken up
+                if (WaitStrategy.RECEIVE.isBlocking())
+                    _selector.select();
+                // ELSE IF a poll found nothing ready and there are no tasks, wait the way we were told to
+                else if (_selector.selectNow() == 0 && _tasks.isEmpty())
+                {
+                    WaitStrategy.RECEIVE.idle(++idle);
+                    continue;
+                }
+
+                idle = 0;
+
+                runTasks();
+
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+
+                // FOR every channel that is ready
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    NIOConnection connection = (NIOConnection) key.attachment();
+
+                    try
+                    {
+                        // IF the channel was closed since it was selected
+                        if (!key.isValid())
+                            continue;
+
+                        if (key.isWritable())
+                            connection.handleWrite();
+
+                        if (key.isValid() && key.isReadable())
+                            connection.handleRead();
+                    }
+                    catch (CancelledKeyException cke)
+                    {
+                        // the channel was closed by another thread while we were servicing it
+                    }
+                    catch (RuntimeException re)
+                    {
+                        // give up on the one connection; the rest of the loop's channels carry on
+                        re.printStackTrace();
+                        connection.lost(new IOException("Servicing the connection to " + connection.getHostname() +
+                                " failed: " + re, re));
+                    }
+                }
+            }
+            catch (IOException ioe)
+            {
+                ioe.printStackTrace();
+            }
+            catch (RuntimeException re)
+            {
+                // nothing outside a single connection should fail, but if it does the loop carries on
+                re.printStackTrace();
+            }
+
+        }// ENDWHILE
+
+    }//ENDRUN
+
+    /**
+     * Method to run all of the tasks other threads have queued for this loop.
+     */
+    private void runTasks()
+    {
+        Runnable task;
+
+        while ((task = _tasks.poll()) != null)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException re)
+            {
+                // a task failing mustn't take down the loop, and with it every connection on it
+                re.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public Selector getSelector()
+    {
+        return _selector;
+    }
+
+}//ENDNIOEVENTLOOP
@@ -0,0 +1,122 @@
+package cs455.overlay.transport;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multiple-producer single-consumer queue of frames waiting to be written
+ * to a Link. Any number of threads (the message generator, receivers relaying messages) may offer
+ * frames at once; only the Link's writer takes them off.
+ */
+public class OutboundQueue
+{
+    /**
+     * Slots holding the queued frames; a slot is null until its producer has stored the frame
+     */
+    private final AtomicReferenceArray<byte[]> _slots;
+
+    /**
+     * int mask to turn an index into a slot (capacity is a power of two)
+     */
+    private final int _mask;
+
+    /**
+     * long for the index the next producer will claim
+     */
+    private final AtomicLong _producerIndex;
+
+    /**
+     * long for the index the consumer will take next; only written by the consumer
+     */
+    private volatile long _consumerIndex;
+
+
+    /**
+     * Constructor
+     *
+     * @param capacity <code>int</code> of the most frames the queue will hold; rounded up to a power of two.
+     */
+    public OutboundQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+        _slots = new AtomicReferenceArray<byte[]>(size);
+        _mask = size - 1;
+        _producerIndex = new AtomicLong(0);
+        _consumerIndex = 0;
+    }
+
+    /**
+     * Method to add a frame to the queue without blocking. Safe to call from any thread.
+     *
+     * @param frame <code>byte[]</code> frame to queue.
+     * @return <code>true</code> if the frame was queued, <code>false</code> if the queue is full.
+     */
+    public boolean offer(byte[] frame)
+    {
+        while (true)
+        {
+            long index = _producerIndex.get();
+
+            // IF there is no free slot
+            if (index - _consumerIndex > _mask)
+                return false;
+
+            // IF we claimed the slot, store the frame in it
+            if (_producerIndex.compareAndSet(index, index + 1))
+            {
+                _slots.lazySet((int) index & _mask, frame);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Method to take the oldest frame off the queue. Must only be called by the consumer.
+     *
+     * @return <code>byte[]</code> frame, or <code>null</code> if the queue is empty.
+     */
+    public byte[] poll()
+    {
+        long index = _consumerIndex;
+        int slot = (int) index & _mask;
+
+        byte[] frame = _slots.get(slot);
+
+        // IF the slot is empty, either the queue is empty or a producer is still storing its frame
+        if (frame == null)
+        {
+            if (index == _producerIndex.get())
+                return null;
+
+            while ((frame = _slots.get(slot)) == null)
+                Thread.onSpinWait();
+        }
+
+        _slots.lazySet(slot, null);
+        _consumerIndex = index + 1;
+
+        return frame;
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public boolean isEmpty()
+    {
+        return _consumerIndex == _producerIndex.get();
+    }
+
+    public int size()
+    {
+        return (int) Math.max(0, _producerIndex.get() - _consumerIndex);
+    }
+
+    public int capacity()
+    {
+        return _mask + 1;
+    }
+
+}
@@ -0,0 +1,463 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.util.OverlayThreadFactory;
+import cs455.overlay.util.Statics;
+import cs455.overlay.wireformats.Event;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A SharedMemoryConnection class to represent a connection between two nodes on the same machine
+ * that exchanges frames through a memory-mapped file instead of the loopback TCP stack. The file
+ * holds a SharedMemoryRing for each direction. The node that dialed the TCP connection creates the
+ * file and offers it over TCP; if the other node can map it and finds the same nonce in it, the two
+ * are on the same machine and both build their Link on the rings. Otherwise the Link stays on TCP.
+ *
+ * The TCP connection the rings were negotiated on is kept as the control connection: it gives the
+ * Link its addresses, carries any frame too large for a ring, and is what is closed at the end.
+ * Frames are the same length-prefixed messages as on TCP, so EventFactory and Node.onEvent do not
+ * change. The reader spins on the inbound ring for Statics.SHM_SPIN polls before it starts to park,
+ * so a busy link sees frames well under a microsecond after they are written.
+ */
+public class SharedMemoryConnection implements Runnable, Connection
+{
+    /**
+     * long marking a file as an overlay ring file
+     */
+    private static final long MAGIC = 0x4F564C5952494E47L;
+
+    /**
+     * int for the bytes at the start of the file holding the magic number, nonce and ring size
+     */
+    private static final int FILE_HEADER_BYTES = 64;
+
+    /**
+     * long for the most nanoseconds the reader parks for between polls once it stops spinning
+     */
+    private static final long MAX_PARK_NANOS = 100000;
+
+    /**
+     * WaitStrategy the reader waits with: spinning for Statics.SHM_SPIN polls, then backing off, unless told otherwise
+     */
+    private static final WaitStrategy WAIT = WaitStrategy.forLoop(Statics.WAIT_RECEIVE,
+            new WaitStrategy(Statics.WAIT_BACKOFF, Statics.SHM_SPIN, MAX_PARK_NANOS));
+
+    /**
+     * Connection the rings were negotiated on
+     */
+    private final Connection _control;
+
+    /**
+     * File the rings are mapped from; only known to the node that created it
+     */
+    private File _file;
+
+    /**
+     * SharedMemoryRing frames are written to
+     */
+    private final SharedMemoryRing _outbound;
+
+    /**
+     * SharedMemoryRing frames are read from
+     */
+    private final SharedMemoryRing _inbound;
+
+    /**
+     * Thread the reader runs on
+     */
+    private Thread _thread;
+
+    /**
+     * boolean for if delivery of received messages has been stopped
+     */
+    private volatile boolean _interrupted;
+
+
+    /**
+     * Constructor
+     *
+     * @param control  <code>Connection</code> the rings were negotiated on.
+     * @param buffer   <code>MappedByteBuffer</code> of the ring file.
+     * @param capacity <code>int</code> bytes of frame data in each ring.
+     * @param creator  <code>boolean</code> for if this end created the file (and writes the first ring).
+     */
+    private SharedMemoryConnection(Connection control, MappedByteBuffer buffer, int capacity, boolean creator)
+    {
+        _control = control;
+        _interrupted = false;
+
+        SharedMemoryRing first = new SharedMemoryRing(buffer, FILE_HEADER_BYTES, capacity);
+        SharedMemoryRing second = new SharedMemoryRing(buffer, FILE_HEADER_BYTES + SharedMemoryRing.HEADER_BYTES
+                + capacity, capacity);
+
+        _outbound = creator ? first : second;
+        _inbound = creator ? second : first;
+    }
+
+    /**
+     * Method to create a ring file to offer to the node at the other end of a connection.
+     *
+     * @param control <code>Connection</code> to the other node.
+     * @param nonce   <code>long</code> to write in the file for the other node to check.
+     * @return <code>SharedMemoryConnection</code> over the new file, not yet started.
+     * @throws IOException
+     */
+    public static SharedMemoryConnection create(Connection control, long nonce) throws IOException
+    {
+        int capacity = ringCapacity();
+
+        File file = new File(Statics.SHM_DIR, "overlay-ring-" + Long.toHexString(new Random().nextLong()));
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(capacity));
+
+            buffer.putLong(8, nonce);
+            buffer.putInt(16, capacity);
+            buffer.putLong(0, MAGIC);
+
+            SharedMemoryConnection connection = new SharedMemoryConnection(control, buffer, capacity, true);
+            connection._file = file;
+
+            return connection;
+        }
+        catch (IOException ioe)
+        {
+            file.delete();
+            throw ioe;
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Method to open a ring file offered by the node at the other end of a connection.
+     *
+     * @param control <code>Connection</code> to the other node.
+     * @param path    <code>String</code> path of the offered file.
+     * @param nonce   <code>long</code> the other node wrote in the file.
+     * @return <code>SharedMemoryConnection</code> over the file, not yet started; <code>null</code> if
+     * the file can't be opened or isn't the one offered, ie. the nodes are not on the same machine.
+     */
+    public static SharedMemoryConnection open(Connection control, String path, long nonce)
+    {
+        File file = new File(path);
+
+        // IF we can't see the file, we are not on the same machine
+        if (!file.isFile())
+            return null;
+
+        try
+        {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+            try
+            {
+                FileChannel channel = randomAccessFile.getChannel();
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_BYTES);
+
+                // IF this is not the file that was offered
+                if (header.getLong(0) != MAGIC || header.getLong(8) != nonce)
+                    return null;
+
+                int capacity = header.getInt(16);
+
+                // IF the file is not as big as its rings
+                if (channel.size() < fileBytes(capacity))
+                    return null;
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(capacity));
+
+                return new SharedMemoryConnection(control, buffer, capacity, false);
+            }
+            finally
+            {
+                randomAccessFile.close();
+            }
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("Could not open shared memory ring " + path + ": " + ioe.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Method to tell if the node at the other end of a connection could be on this machine, and so
+     * worth offering a ring file to.
+     *
+     * @param control <code>Connection</code> to the other node.
+     * @return <code>true</code> if the other end's address is one of ours.
+     */
+    public static boolean isLocal(Connection control)
+    {
+        // IF the connection isn't over a network, there is nothing for a ring to bypass
+        if (control instanceof InMemoryConnection)
+            return false;
+
+        try
+        {
+            InetAddress address = InetAddress.getByName(control.getHostname());
+
+            return address.isLoopbackAddress() || NetworkInterface.getByInetAddress(address) != null;
+        }
+        catch (IOException ioe)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>int</code> bytes of frame data per ring: Statics.SHM_RING_BYTES rounded up to a power of two.
+     */
+    private static int ringCapacity()
+    {
+        return Integer.highestOneBit(Math.max(1024, Statics.SHM_RING_BYTES) - 1) << 1;
+    }
+
+    /**
+     * @param capacity <code>int</code> bytes of frame data per ring.
+     * @return <code>long</code> size of a ring file holding two rings of that capacity.
+     */
+    private static long fileBytes(int capacity)
+    {
+        return FILE_HEADER_BYTES + 2L * (SharedMemoryRing.HEADER_BYTES + capacity);
+    }
+
+    /**
+     * Method to remove the ring file from the file system. Once both nodes have it mapped it is no
+     * longer needed by name, and removing it keeps a crashed node from leaving it behind.
+     */
+    public void unlink()
+    {
+        if (_file != null)
+        {
+            _file.delete();
+            _file = null;
+        }
+    }
+
+    /**
+     * Method to start reading the inbound ring on a thread of the selected kind.
+     */
+    public void start()
+    {
+        _thread = OverlayThreadFactory.getFactoryInstance().newThread(this, "shm-reader-" + _control.getHostname() +
+                ":" + _control.getPort());
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Read frames off the inbound ring and notify the node of each, spinning while the link is busy
+     * and parking for longer and longer while it is idle (or as overlay.wait.receive says).
+     */
+    public void run()
+    {
+        /**
+         * byte array each message is copied into to be decoded
+         */
+        byte[] scratch = new byte[64 * 1024];
+
+        /**
+         * int for the polls since the last frame
+         */
+        int idle = 0;
+
+        // WHILE we want to listen
+        while (!_interrupted)
+        {
+            int length = _inbound.peekLength();
+
+            // IF there is nothing to read
+            if (length < 0)
+            {
+                WAIT.idle(++idle);
+                continue;
+            }
+
+            idle = 0;
+
+            if (scratch.length < length)
+                scratch = new byte[length];
+
+            _inbound.poll(scratch);
+
+            try
+            {
+                FrameDispatcher.dispatch(getCallbackNode(), this, scratch, 0, length, false);
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("Receiver belongs to: " + getCallbackNode().getID());
+                ioe.printStackTrace();
+            }
+
+        } // END WHILE
+
+    }//ENDRUN
+
+    /**
+     * Connection interface method to write a frame to the outbound ring, waiting for room if the other
+     * node has fallen behind. A frame too large for the ring goes over the control connection.
+     *
+     * @param data <code>byte[]</code> containing the message to the other node.
+     * @throws IOException
+     */
+    public synchronized void sendData(byte[] data) throws IOException
+    {
+        // IF the frame could never fit in the ring
+        if (!_outbound.fits(data.length))
+        {
+            _control.sendData(data);
+            return;
+        }
+
+        /**
+         * int for the tries at writing the frame
+         */
+        int tries = 0;
+
+        // WHILE the ring is too full, give the reader a chance to catch up
+        while (!_outbound.offer(data))
+        {
+            if (_interrupted)
+                throw new IOException("Shared memory connection to " + getHostname() + " has been closed");
+
+            if (++tries < Statics.SHM_SPIN)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(MAX_PARK_NANOS / 10);
+        }
+    }
+
+    /**
+     * Connection interface method to encode a message straight into the outbound ring, waiting for room
+     * if the other node has fallen behind. A message too large for the ring goes over the control
+     * connection.
+     *
+     * @param event <code>Event</code> to send to the other node.
+     * @throws IOException
+     */
+    public synchronized void sendEvent(Event event) throws IOException
+    {
+        // IF the message could never fit in the ring
+        if (!_outbound.fits(event.encodedSize()))
+        {
+            _control.sendEvent(event);
+            return;
+        }
+
+        /**
+         * int for the tries at writing the message
+         */
+        int tries = 0;
+
+        // WHILE the ring is too full, give the reader a chance to catch up
+        while (!_outbound.offer(event))
+        {
+            if (_interrupted)
+                throw new IOException("Shared memory connection to " + getHostname() + " has been closed");
+
+            if (++tries < Statics.SHM_SPIN)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(MAX_PARK_NANOS / 10);
+        }
+    }
+
+    /**
+     * Connection interface method to write any held back frames. Frames are in the ring as soon as
+     * they are sent, so only the control connection may have any.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException
+    {
+        _control.flush();
+    }
+
+    /**
+     * Connection interface method to stop reading the ring and close the control connection.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        _interrupted = true;
+
+        unlink();
+
+        _control.close();
+    }
+
+    /**
+     * Connection interface method to stop delivering received messages to the callback node.
+     */
+    public void interrupt()
+    {
+        _interrupted = true;
+
+        _control.interrupt();
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public boolean isInterrupted()
+    {
+        return _interrupted;
+    }
+
+    public String getHostname()
+    {
+        return _control.getHostname();
+    }
+
+    public int getPort()
+    {
+        return _control.getPort();
+    }
+
+    public String getLocalHostName()
+    {
+        return _control.getLocalHostName();
+    }
+
+    public int getLocalPort()
+    {
+        return _control.getLocalPort();
+    }
+
+    public Node getCallbackNode()
+    {
+        return _control.getCallbackNode();
+    }
+
+    public Connection getControl()
+    {
+        return _control;
+    }
+
+    public String getPath()
+    {
+        return (_file == null) ? null : _file.getPath();
+    }
+
+}
@@ -0,0 +1,266 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.wireformats.Event;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A SharedMemoryRing class to represent one direction of a SharedMemoryConnection: a single-producer,
+ * single-consumer ring of length-prefixed frames laid out in a region of a memory-mapped file that
+ * both nodes have mapped. The producer and consumer positions live in the region too, each on a
+ * cache line of its own, and are published with release/acquire ordering so frames written by one
+ * process are seen whole by the other.
+ *
+ * Layout of a region: [consumer position: 8 bytes, padded to 64][producer position: 8 bytes, padded
+ * to 64][capacity bytes of frames]. Frames are a 4 byte length followed by the message, padded to a
+ * multiple of 4 so a length never wraps around the end of the ring (a message may).
+ */
+public class SharedMemoryRing
+{
+    /**
+     * int for the bytes of a region taken by the positions ahead of the frames
+     */
+    public static final int HEADER_BYTES = 128;
+
+    /**
+     * VarHandle for ordered access to the positions stored in the mapped buffer
+     */
+    private static final VarHandle POSITION = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    /**
+     * ByteBuffer of the whole mapped file
+     */
+    private final ByteBuffer _buffer;
+
+    /**
+     * ByteBuffer over the same memory for the producer to encode messages straight into the ring
+     */
+    private final ByteBuffer _producer;
+
+    /**
+     * int index in the buffer of the consumer position
+     */
+    private final int _headIndex;
+
+    /**
+     * int index in the buffer of the producer position
+     */
+    private final int _tailIndex;
+
+    /**
+     * int index in the buffer of the first byte of frame data
+     */
+    private final int _dataIndex;
+
+    /**
+     * int for the bytes of frame data the ring holds; a power of two
+     */
+    private final int _capacity;
+
+    /**
+     * long for the producer's copy of the consumer position, so it rarely has to read the shared one
+     */
+    private long _cachedHead;
+
+
+    /**
+     * Constructor
+     *
+     * @param buffer   <code>ByteBuffer</code> of the mapped file (must be direct).
+     * @param offset   <code>int</code> index in the buffer where this ring's region starts; a multiple of 64.
+     * @param capacity <code>int</code> bytes of frame data; a power of two.
+     */
+    public SharedMemoryRing(ByteBuffer buffer, int offset, int capacity)
+    {
+        _buffer = buffer;
+        _producer = buffer.duplicate();
+        _headIndex = offset;
+        _tailIndex = offset + 64;
+        _dataIndex = offset + HEADER_BYTES;
+        _capacity = capacity;
+        _cachedHead = 0;
+    }
+
+    /**
+     * Method to work out the bytes a frame takes in the ring.
+     *
+     * @param length <code>int</code> length of the message.
+     * @return <code>int</code> of the bytes the frame, with its length and padding, takes.
+     */
+    private static int frameBytes(int length)
+    {
+        return (4 + length + 3) & ~3;
+    }
+
+    /**
+     * Method to tell if a message could ever fit in the ring.
+     *
+     * @param length <code>int</code> length of the message.
+     * @return <code>true</code> if the message fits in an empty ring.
+     */
+    public boolean fits(int length)
+    {
+        return frameBytes(length) <= _capacity;
+    }
+
+    /**
+     * Method for the producer to write a frame if there is room for it.
+     *
+     * @param data <code>byte[]</code> holding the message.
+     * @return <code>true</code> if the frame was written, <code>false</code> if the ring is too full.
+     */
+    public boolean offer(byte[] data)
+    {
+        int bytes = frameBytes(data.length);
+        long tail = (long) POSITION.getOpaque(_buffer, _tailIndex);
+
+        // IF the ring is too full
+        if (!hasRoom(tail, bytes))
+            return false;
+
+        int index = (int) (tail & (_capacity - 1));
+
+        _buffer.putInt(_dataIndex + index, data.length);
+        copyIn(index + 4, data);
+
+        // publish the frame
+        POSITION.setRelease(_buffer, _tailIndex, tail + bytes);
+
+        return true;
+    }
+
+    /**
+     * Method for the producer to encode a message straight into the ring if there is room for it. A
+     * message that would wrap around the end of the ring is encoded into an array and copied in.
+     *
+     * @param event <code>Event</code> of the message.
+     * @return <code>true</code> if the frame was written, <code>false</code> if the ring is too full.
+     */
+    public boolean offer(Event event)
+    {
+        int length = event.encodedSize();
+        int bytes = frameBytes(length);
+        long tail = (long) POSITION.getOpaque(_buffer, _tailIndex);
+
+        // IF the ring is too full
+        if (!hasRoom(tail, bytes))
+            return false;
+
+        int index = (int) (tail & (_capacity - 1));
+        int start = (index + 4) & (_capacity - 1);
+
+        _buffer.putInt(_dataIndex + index, length);
+
+        // IF the message runs past the end of the ring it can't be encoded where it goes
+        if (start + length > _capacity)
+            copyIn(start, event.getBytes());
+        else
+        {
+            _producer.clear();
+            _producer.position(_dataIndex + start);
+            _producer.limit(_dataIndex + start + length);
+
+            event.writeTo(_producer);
+        }
+
+        // publish the frame
+        POSITION.setRelease(_buffer, _tailIndex, tail + bytes);
+
+        return true;
+    }
+
+    /**
+     * Method for the producer to tell if a frame fits in the room the consumer has left.
+     *
+     * @param tail  <code>long</code> of the producer position.
+     * @param bytes <code>int</code> of the bytes the frame takes.
+     * @return <code>true</code> if there is room for the frame.
+     */
+    private boolean hasRoom(long tail, int bytes)
+    {
+        // IF there seems to be room
+        if (tail + bytes - _cachedHead <= _capacity)
+            return true;
+
+        // look at where the consumer really is
+        _cachedHead = (long) POSITION.getAcquire(_buffer, _headIndex);
+
+        return tail + bytes - _cachedHead <= _capacity;
+    }
+
+    /**
+     * Method to copy a message into the ring, wrapping around the end if need be.
+     *
+     * @param index <code>int</code> index in the ring data to start at (may be at the very end).
+     * @param data  <code>byte[]</code> holding the message.
+     */
+    private void copyIn(int index, byte[] data)
+    {
+        index &= _capacity - 1;
+
+        int first = Math.min(data.length, _capacity - index);
+
+        _buffer.put(_dataIndex + index, data, 0, first);
+
+        if (first < data.length)
+            _buffer.put(_dataIndex, data, first, data.length - first);
+    }
+
+    /**
+     * Method for the consumer to find the length of the next frame.
+     *
+     * @return <code>int</code> length of the next message, or -1 if the ring is empty.
+     */
+    public int peekLength()
+    {
+        long head = (long) POSITION.getOpaque(_buffer, _headIndex);
+
+        // IF the producer hasn't published anything past us
+        if (head == (long) POSITION.getAcquire(_buffer, _tailIndex))
+            return -1;
+
+        return _buffer.getInt(_dataIndex + (int) (head & (_capacity - 1)));
+    }
+
+    /**
+     * Method for the consumer to copy out the next frame's message and free its room in the ring.
+     * Must only be called after peekLength() returned the length.
+     *
+     * @param destination <code>byte[]</code> at least as long as the message.
+     * @return <code>int</code> length of the message copied.
+     */
+    public int poll(byte[] destination)
+    {
+        long head = (long) POSITION.getOpaque(_buffer, _headIndex);
+        int index = (int) (head & (_capacity - 1));
+        int length = _buffer.getInt(_dataIndex + index);
+
+        int start = (index + 4) & (_capacity - 1);
+        int first = Math.min(length, _capacity - start);
+
+        _buffer.get(_dataIndex + start, destination, 0, first);
+
+        if (first < length)
+            _buffer.get(_dataIndex, destination, first, length - first);
+
+        // hand the room back to the producer
+        POSITION.setRelease(_buffer, _headIndex, head + frameBytes(length));
+
+        return length;
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public int getCapacity()
+    {
+        return _capacity;
+    }
+
+}
@@ -2,21 +2,43 @@ package cs455.overlay.transport;
 
 
 import cs455.overlay.node.Node;
+import cs455.overlay.util.OverlayThreadFactory;
+import cs455.overlay.util.Statics;
 import cs455.overlay.wireformats.Event;
-import cs455.overlay.wireformats.EventFactory;
+import cs455.overlay.wireformats.PayloadMessage;
+import cs455.overlay.wireformats.Protocol;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 
 
 /**
  * This class defines a thread that will continuously listen for new connections to the current Node.
  *
+ * A payload frame of at least Statics.CUT_THROUGH_BYTES that is still arriving is offered to a Node
+ * that is a FrameRelay as soon as its next hop has arrived, and cut through onto the Link to it: the
+ * rest is written on as it is read, rather than the whole frame being read before the relay starts.
+ * A frame whose rest doesn't arrive within Statics.CUT_THROUGH_WAIT_MILLIS is given up on and received
+ * whole, so it can't keep control frames off the next hop's Link for longer than that.
+ *
  * @author Aaron Hartman
  */
-public class TCPReceiverThread extends Thread
+public class TCPReceiverThread implements Runnable, Connection
 {
+    /**
+     * What became of a frame being cut through: written on whole, writing it failed, or it was given up
+     * on as the rest of it took too long to arrive
+     */
+    static final int CUT_THROUGH_SENT = 0;
+    static final int CUT_THROUGH_FAILED = 1;
+    static final int CUT_THROUGH_GIVEN_UP = 2;
+
     /**
      * Socket connection to receive the data from
      */
@@ -33,9 +55,29 @@ public class TCPReceiverThread extends Thread
     private Node _callbackNode;
 
     /**
-     * EventFactory instance
+     * TCPSender to send data back over the same socket
+     */
+    private TCPSender _sender;
+
+    /**
+     * Thread the receiver runs on
+     */
+    private Thread _thread;
+
+    /**
+     * boolean for if the receiver has been asked to stop delivering messages
+     */
+    private volatile boolean _interrupted;
+
+    /**
+     * boolean for if the last frame cut through was committed and finished
+     */
+    private boolean _committed;
+
+    /**
+     * int of the bytes read of the last frame whose cut through was given up part way; 0 if none
      */
-    private EventFactory _eventFactory = EventFactory.getFactoryInstance();
+    private int _cutReceived;
 
 
     /**
@@ -49,9 +91,20 @@ public class TCPReceiverThread extends Thread
     {
         _socket = socket;
         _din = new DataInputStream(socket.getInputStream());
+        _sender = new TCPSender(socket);
 
         _callbackNode = callbackNode;
+        _interrupted = false;
+
+    }
 
+    /**
+     * Method to start receiving on a thread of the selected kind.
+     */
+    public void start()
+    {
+        _thread = OverlayThreadFactory.getFactoryInstance().start(this, "tcp-receiver-" + _socket
+                .getRemoteSocketAddress());
     }
 
     /**
@@ -60,6 +113,12 @@ public class TCPReceiverThread extends Thread
      */
     public void run()
     {
+        // IF frames are to be read in bulk into a pooled buffer
+        if (Statics.RECEIVER.equals(Statics.RECEIVER_BULK))
+        {
+            runBulk();
+            return;
+        }
 
         // WHILE we want to listen
 //        while (!Thread.currentThread().isInterrupted())
@@ -73,34 +132,521 @@ public class TCPReceiverThread extends Thread
             {
                 int payLoadLength = _din.readInt();
 
+                // IF the frame is large enough to be cut through
+                if (Statics.CUT_THROUGH_BYTES > 0 && payLoadLength >= Statics.CUT_THROUGH_BYTES)
+                {
+                    receiveLarge(new byte[payLoadLength], 0);
+                    continue;
+                }
+
                 byte[] payload = new byte[payLoadLength];
 
                 _din.readFully(payload, 0, payLoadLength);
 
-                Event event = _eventFactory.createEvent(payload);
-
-                _callbackNode.onEvent(this, event);
+                // the frame has an array of its own, so a relay may forward it as it is
+                FrameDispatcher.dispatch(_callbackNode, this, payload, 0, payLoadLength, true);
 
             }
             catch (IOException ioe)
             {
-                System.out.println("Receiver belongs to: " + getCallbackNode().getID());
-                System.out.println("Message sent from: " + _socket.getInetAddress().getCanonicalHostName());
-//                System.out.println("Byte array length: " + payload.)
-
-                ioe.printStackTrace();
-                System.exit(0);
+                receiveFailed(ioe);
+                return;
             }
 
         } // END WHILE
 
     }//ENDRUN
 
+    /**
+     * Receive loop that reads as much as the socket has into a pooled buffer at a time and
+     * notifies the receiving node of every complete frame in it, rather than reading and
+     * allocating frame by frame.
+     */
+    private void runBulk()
+    {
+        SocketChannel channel = _socket.getChannel();
+        InputStream in = null;
+
+        /**
+         * The buffer can only be direct if there is a channel to read it from
+         */
+        FrameDecoder decoder = new FrameDecoder(Statics.RECEIVE_BUFFER_DIRECT && channel != null);
+
+        try
+        {
+            // IF there is no channel, read the stream straight into the heap buffer's array
+            if (channel == null)
+                in = _socket.getInputStream();
+
+            // WHILE we want to listen
+            while (true)
+            {
+                ByteBuffer buffer = decoder.getBuffer();
+                int read;
+
+                if (in == null)
+                    read = channel.read(buffer);
+                else
+                {
+                    read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+
+                    if (read > 0)
+                        buffer.position(buffer.position() + read);
+                }
+
+                // IF the other end closed the connection
+                if (read < 0)
+                    throw new EOFException();
+
+                decoder.decodeFrames(this);
+
+                // IF a frame large enough to be cut through has only started arriving, we read the rest ourselves
+                if (Statics.CUT_THROUGH_BYTES > 0 && decoder.getPartialFrameLength() >= Statics.CUT_THROUGH_BYTES &&
+                        !isInterrupted())
+                {
+                    byte[] frame = new byte[decoder.getPartialFrameLength()];
+                    receiveLarge(frame, decoder.takePartialFrame(frame));
+                }
+
+            } // END WHILE
+        }
+        catch (IOException ioe)
+        {
+            receiveFailed(ioe);
+        }
+        finally
+        {
+            decoder.release();
+        }
+
+    }//ENDRUNBULK
+
+    /**
+     * Private method to receive a large frame that has started arriving. If it is a payload frame the
+     * node relays, and its Link to the next hop can take it, it is cut through: written on from the
+     * moment its next hop is known. Otherwise it is read whole and dispatched as usual.
+     *
+     * @param frame    <code>byte[]</code> the size of the frame to read it into.
+     * @param received <code>int</code> of the number of bytes of the frame already in it.
+     * @throws IOException
+     */
+    private void receiveLarge(byte[] frame, int received) throws IOException
+    {
+        int length = frame.length;
+
+        /**
+         * Link to cut the frame through on; null if it is received whole
+         */
+        Link link = null;
+
+        /**
+         * int index in the frame of the next hop's entry
+         */
+        int nextHop = -1;
+
+        received = readAtLeast(frame, received, Math.min(length, 8));
+
+        // IF it is a payload frame, and the node relays frames as they are
+        if (length >= 8 && PayloadMessage.readInt(frame, 0) == Protocol.PAYLOAD_MESSAGE &&
+                _callbackNode instanceof FrameRelay)
+        {
+            int hopCursor = PayloadMessage.readInt(frame, PayloadMessage.HOP_CURSOR_OFFSET);
+
+            // IF the receiving node's entry lies within the frame, the next hop's follows it
+            if (hopCursor >= 8 && hopCursor <= length - PayloadMessage.ENTRY_SIZE)
+                nextHop = PayloadMessage.nextHop(frame, 0, length);
+
+            // IF there is a next hop, read as far as the end of its entry
+            if (nextHop > hopCursor)
+            {
+                received = readAtLeast(frame, received, nextHop + PayloadMessage.ENTRY_SIZE);
+                link = ((FrameRelay) _callbackNode).cutThroughLink(this, frame, nextHop);
+            }
+
+            // IF the frame can be cut through, move its cursor on before any of it is written
+            if (link != null)
+            {
+                PayloadMessage.setHopCursor(frame, 0, nextHop);
+
+                if (link.cutThrough(frame, received, this))
+                {
+                    // IF it wasn't dropped, to be replayed to us, as it was finished
+                    if (_committed)
+                        ((FrameRelay) _callbackNode).frameCutThrough(this);
+
+                    return;
+                }
+
+                // IF it was given up on part way, carry on from as much of it as was read
+                if (_cutReceived > 0)
+                {
+                    received = _cutReceived;
+                    _cutReceived = 0;
+                }
+
+                PayloadMessage.setHopCursor(frame, 0, hopCursor);
+            }
+        }
+
+        readAtLeast(frame, received, length);
+
+        // the frame has an array of its own, so a relay may forward it as it is
+        FrameDispatcher.dispatch(_callbackNode, this, frame, 0, length, true);
+    }
+
+    /**
+     * Method to read more of a frame, as much as the socket has, up to the end of the frame.
+     *
+     * @param frame    <code>byte[]</code> the frame is being read into.
+     * @param received <code>int</code> of the number of bytes of the frame read so far.
+     * @return <code>int</code> of the number of bytes of the frame read now.
+     * @throws IOException
+     */
+    int readSome(byte[] frame, int received) throws IOException
+    {
+        int read = _din.read(frame, received, frame.length - received);
+
+        // IF the other end closed the connection in the middle of the frame
+        if (read < 0)
+            throw new EOFException();
+
+        return received + read;
+    }
+
+    /**
+     * Method to read more of a frame, as much as the socket has, giving up if nothing arrives in time.
+     *
+     * @param frame         <code>byte[]</code> the frame is being read into.
+     * @param received      <code>int</code> of the number of bytes of the frame read so far.
+     * @param deadlineNanos <code>long</code> of the System.nanoTime() by which more of the frame must arrive.
+     * @return <code>int</code> of the number of bytes of the frame read now.
+     * @throws SocketTimeoutException if nothing more arrived by the deadline.
+     * @throws IOException
+     */
+    private int readSome(byte[] frame, int received, long deadlineNanos) throws IOException
+    {
+        long waitMillis = (deadlineNanos - System.nanoTime()) / 1000000;
+
+        // IF the time is already up; a timeout of 0 would mean waiting for ever
+        if (waitMillis <= 0)
+            throw new SocketTimeoutException("Frame took too long to arrive");
+
+        _socket.setSoTimeout((int) Math.min(waitMillis, Integer.MAX_VALUE));
+
+        try
+        {
+            return readSome(frame, received);
+        }
+        finally
+        {
+            _socket.setSoTimeout(0);
+        }
+    }
+
+    /**
+     * Private method to read a frame until at least a number of its bytes have been read.
+     *
+     * @param frame    <code>byte[]</code> the frame is being read into.
+     * @param received <code>int</code> of the number of bytes of the frame read so far.
+     * @param needed   <code>int</code> of the number of bytes of the frame needed.
+     * @return <code>int</code> of the number of bytes of the frame read now.
+     * @throws IOException
+     */
+    private int readAtLeast(byte[] frame, int received, int needed) throws IOException
+    {
+        // WHILE we don't have as much as we need
+        while (received < needed)
+            received = readSome(frame, received);
+
+        return received;
+    }
+
+    /**
+     * Method to count a frame being cut through as received, once all of it but its last byte has been
+     * written on. Like FrameDispatcher, a frame arriving on a resumable Link's connection that has been
+     * given up on isn't counted, and isn't to be finished: it is replayed to us once the Link is resumed.
+     *
+     * @return <code>true</code> if the frame is to be finished.
+     */
+    boolean commitCutThrough()
+    {
+        LinkSession session = LinkSession.forConnection(this);
+
+        _committed = (session == null || session.received(this));
+
+        return _committed;
+    }
+
+    /**
+     * Method to write a frame out as it is read from another connection, holding the sender for the
+     * whole frame so no other frame is written into the middle of it. The last byte is only written
+     * once the frame has been committed where it came from. A frame cut short, because reading it
+     * failed or it wasn't committed, is taken back by breaking this connection: the other end never
+     * sees it, and our LinkSession never counted it. So is one whose rest doesn't arrive within
+     * Statics.CUT_THROUGH_WAIT_MILLIS; the source is left to read the rest of it and dispatch it whole.
+     *
+     * @param frame    <code>byte[]</code> the frame is being read into.
+     * @param received <code>int</code> of the number of bytes of the frame read so far.
+     * @param source   <code>TCPReceiverThread</code> the frame is being read from.
+     * @param session  <code>LinkSession</code> of the Link over this connection.
+     * @return <code>int</code> CUT_THROUGH_SENT; CUT_THROUGH_FAILED if writing the frame failed, and it is
+     * kept by the LinkSession to be replayed; CUT_THROUGH_GIVEN_UP if the frame is to be sent the usual way.
+     * @throws IOException if reading the rest of the frame failed.
+     */
+    int sendCutThrough(byte[] frame, int received, TCPReceiverThread source, LinkSession session)
+            throws IOException
+    {
+        int length = frame.length;
+        int written = 0;
+
+        /**
+         * long for the System.nanoTime() by which the whole frame must have arrived
+         */
+        long deadline = System.nanoTime() + Statics.CUT_THROUGH_WAIT_MILLIS * 1000000L;
+
+        /**
+         * IOException writing failed with; the frame is still read to the end, and replayed once the Link is resumed
+         */
+        IOException failed = null;
+
+        synchronized (_sender)
+        {
+            try
+            {
+                _sender.startFrame(length);
+            }
+            catch (IOException ioe)
+            {
+                failed = ioe;
+            }
+
+            // WHILE there is more of the frame to write on
+            while (true)
+            {
+                // everything read but the last byte, which waits for the frame to be committed
+                int ready = Math.min(received, length - 1);
+
+                if (failed == null && ready > written)
+                {
+                    try
+                    {
+                        _sender.sendPart(frame, written, ready - written);
+                    }
+                    catch (IOException ioe)
+                    {
+                        failed = ioe;
+                    }
+
+                    written = ready;
+                }
+
+                // IF the whole frame has been read
+                if (received == length)
+                    break;
+
+                try
+                {
+                    received = source.readSome(frame, received, deadline);
+                }
+                catch (SocketTimeoutException ste)
+                {
+                    // the other end never sees the part written, and the source reads the rest itself
+                    abort();
+                    source._cutReceived = received;
+
+                    return CUT_THROUGH_GIVEN_UP;
+                }
+                catch (IOException ioe)
+                {
+                    abort();
+                    throw ioe;
+                }
+            }
+
+            // IF the frame isn't to be delivered, it mustn't be finished
+            if (!source.commitCutThrough())
+            {
+                abort();
+                return CUT_THROUGH_SENT;
+            }
+
+            if (failed == null)
+            {
+                try
+                {
+                    _sender.sendPart(frame, length - 1, 1);
+                }
+                catch (IOException ioe)
+                {
+                    failed = ioe;
+                }
+            }
+
+            session.sent(frame);
+        }
+
+        // IF writing failed, the receiver will find the connection gone and the Link will be resumed
+        if (failed != null)
+        {
+            System.out.println("Cutting a frame through to " + getHostname() + " failed: " + failed.getMessage());
+            return CUT_THROUGH_FAILED;
+        }
+
+        return CUT_THROUGH_SENT;
+    }
+
+    /**
+     * Method to deal with the socket failing under the receiver. If we were asked to stop listening
+     * the socket was closed on purpose and there is nothing to do.
+     *
+     * @param ioe <code>IOException</code> the receive failed with.
+     */
+    private void receiveFailed(IOException ioe)
+    {
+        // IF we were asked to stop listening, the socket was closed on purpose
+        if (isInterrupted())
+            return;
+
+        System.out.println("Receiver belongs to: " + getCallbackNode().getID());
+        System.out.println("Message sent from: " + _socket.getInetAddress().getCanonicalHostName() + ": " + ioe);
+//                System.out.println("Byte array length: " + payload.)
+
+        // the socket is no use to anyone now; the node decides whether to resume the Link over a new one
+        _interrupted = true;
+
+        try
+        {
+            _socket.close();
+        }
+        catch (IOException closeFailed)
+        {
+            closeFailed.printStackTrace();
+        }
+
+        _callbackNode.connectionLost(this, ioe);
+    }
+
+    /**
+     * Method to reset the connection underneath the receiver, as a network fault would, without
+     * telling it; the receive fails and the node is told the connection was lost.
+     */
+    void abort()
+    {
+        // IF the connection has already gone
+        if (_socket.isClosed())
+            return;
+
+        try
+        {
+            _socket.setSoLinger(true, 0);
+            _socket.close();
+        }
+        catch (IOException ioe)
+        {
+            ioe.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Connection interface method to send a frame back over this receiver's socket.
+     *
+     * @param data <code>byte[]</code> containing the message to the other node.
+     * @throws IOException
+     */
+    public void sendData(byte[] data) throws IOException
+    {
+        synchronized (_sender)
+        {
+            _sender.sendData(data);
+        }
+    }
+
+    /**
+     * Connection interface method to send a message, encoded by the sender.
+     *
+     * @param event <code>Event</code> to send to the other node.
+     * @throws IOException
+     */
+    public void sendEvent(Event event) throws IOException
+    {
+        synchronized (_sender)
+        {
+            _sender.sendEvent(event);
+        }
+    }
+
+    /**
+     * Connection interface method to write anything the sender is still holding.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException
+    {
+        _sender.flush();
+    }
+
+    /**
+     * Connection interface method to close the socket this receiver is listening to.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        // write anything the sender is still holding
+        _sender.flush();
+
+        // IF the receiver hasn't been interrupted yet
+        if (!isInterrupted())
+            interrupt();
+
+        _din.close();
+        _socket.close();
+    }
+
+
+    /**
+     * Connection interface method to stop delivering received messages to the callback node. The
+     * receiver's thread is interrupted as well, in case it is blocked somewhere it can be woken.
+     */
+    public void interrupt()
+    {
+        _interrupted = true;
+
+        if (_thread != null)
+            _thread.interrupt();
+    }
+
 
     /**
      * ************************* ACCESSORS AND MUTATORS ******************************
      */
 
+    public boolean isInterrupted()
+    {
+        return _interrupted;
+    }
+
+    public String getHostname()
+    {
+        return _socket.getInetAddress().getCanonicalHostName();
+    }
+
+    public int getPort()
+    {
+        return _socket.getPort();
+    }
+
+    public String getLocalHostName()
+    {
+        return _socket.getLocalAddress().getCanonicalHostName();
+    }
+
+    public int getLocalPort()
+    {
+        return _socket.getLocalPort();
+    }
+
     public DataInputStream getDin()
     {
         return _din;
@@ -116,5 +662,10 @@ public class TCPReceiverThread extends Thread
         return _callbackNode;
     }
 
+    public Thread getThread()
+    {
+        return _thread;
+    }
+
 }//ENDTCPRECEIVERTHREAD
 
@@ -1,18 +1,97 @@
 package cs455.overlay.transport;
 
+import cs455.overlay.util.Statics;
+import cs455.overlay.wireformats.Event;
+
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * TCPSender class to facilitate the sending of messages to other nodes in the overlay.
  *
+ * In the default "stream" mode every frame is written straight to the socket. In the "gather" mode
+ * (-Doverlay.sender=gather) frames are held for up to Statics.SENDER_COALESCE_MICROS or
+ * Statics.SENDER_COALESCE_BYTES and then written together, length prefixes and bodies handed to the
+ * socket's channel in a single gathering write, which holds on to the frames only while writing them.
+ * Gathering needs the channel, so a socket opened without one is written in stream mode whatever the
+ * mode; nothing is copied to make up for it. Frames left lingering are written by a flusher thread
+ * of the sender's own, which only lives while there is something to flush, so one sender blocked on
+ * its socket never holds up another's frames.
+ *
  * @author Aaron Hartman
  */
 public class TCPSender
 {
+    /**
+     * int for the most frames written by a single gathering write
+     */
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * long for the seconds a flusher thread waits for another flush before it finishes
+     */
+    private static final long FLUSHER_KEEP_ALIVE_SECONDS = 1;
+
+    /**
+     * ScheduledThreadPoolExecutor flushing this sender's frames once they have lingered; null until first needed
+     */
+    private ScheduledThreadPoolExecutor _flusher;
+
     private DataOutputStream _dataOutputStream;
 
+    /**
+     * GatheringByteChannel of the socket the frames are gathered into in gather mode
+     */
+    private GatheringByteChannel _channel;
+
+    /**
+     * OutputStream of the socket, used in gather mode for frames written in parts
+     */
+    private OutputStream _outputStream;
+
+    /**
+     * boolean for if this sender coalesces frames
+     */
+    private boolean _gathering;
+
+    /**
+     * Frames waiting to be written
+     */
+    private ArrayList<byte[]> _pending;
+
+    /**
+     * int for the number of bytes (prefixes included) waiting to be written
+     */
+    private int _pendingBytes;
+
+    /**
+     * boolean for if a lingering flush has been scheduled
+     */
+    private boolean _flushScheduled;
+
+    /**
+     * ByteBuffers handed to the gathering write; reused between writes
+     */
+    private ByteBuffer[] _gather;
+
+    /**
+     * ByteBuffers for the length prefixes; reused between writes
+     */
+    private ByteBuffer[] _headers;
+
+    /**
+     * ByteBuffer messages are encoded into, length prefix first, in stream mode; reused between sends
+     */
+    private ByteBuffer _encoded;
+
     /**
      * Constructor
      *
@@ -21,21 +100,287 @@ public class TCPSender
      */
     public TCPSender(Socket socket) throws IOException
     {
-        _dataOutputStream = new DataOutputStream(socket.getOutputStream());
+        _gathering = isGathering() && socket.getChannel() != null;
+
+        // IF we are to write frames straight through, or there is no channel to gather with
+        if (!_gathering)
+        {
+            _dataOutputStream = new DataOutputStream(socket.getOutputStream());
+            _encoded = ByteBuffer.allocate(256);
+            return;
+        }
+
+        _channel = socket.getChannel();
+        _outputStream = socket.getOutputStream();
+
+        _pending = new ArrayList<byte[]>();
+        _pendingBytes = 0;
+        _flushScheduled = false;
+
+        _gather = new ByteBuffer[2 * MAX_GATHER];
+        _headers = new ByteBuffer[MAX_GATHER];
+
+        for (int i = 0; i < MAX_GATHER; ++i)
+            _headers[i] = ByteBuffer.allocate(4);
     }
 
     /**
-     * Method to send the byte array to the connected node.
+     * Method to send the byte array to the connected node. In stream mode it is copied, after its
+     * length prefix, into the buffer sendEvent() encodes into and written with a single write.
      *
      * @param dataToSend <code>byte[]</code> containing the message to the other node.
      * @throws IOException
      */
-    public void sendData(byte[] dataToSend) throws IOException
+    public synchronized void sendData(byte[] dataToSend) throws IOException
     {
-//        System.out.println(dataToSend);
-        _dataOutputStream.writeInt(dataToSend.length);
-        _dataOutputStream.write(dataToSend, 0, dataToSend.length);
+        // IF we are coalescing frames
+        if (_gathering)
+        {
+            queueData(dataToSend);
+            return;
+        }
+
+        // IF the frame won't fit in the buffer
+        if (_encoded.capacity() < 4 + dataToSend.length)
+            _encoded = ByteBuffer.allocate(4 + dataToSend.length);
+
+        // the prefix and body go in a single write, so Nagle's algorithm never holds the body back behind the prefix
+        _encoded.clear();
+        _encoded.putInt(dataToSend.length);
+        _encoded.put(dataToSend);
+
+        _dataOutputStream.write(_encoded.array(), 0, _encoded.position());
         _dataOutputStream.flush();
+    }
+
+    /**
+     * Method to send a message to the connected node. In stream mode it is encoded, after its length
+     * prefix, into a buffer kept for the purpose and written with a single write; frames being
+     * coalesced are held as arrays, so in gather mode it is encoded into one.
+     *
+     * @param event <code>Event</code> to send to the other node.
+     * @throws IOException
+     */
+    public synchronized void sendEvent(Event event) throws IOException
+    {
+        // IF we are coalescing frames
+        if (_gathering)
+        {
+            queueData(event.getBytes());
+            return;
+        }
+
+        int length = event.encodedSize();
+
+        // IF the message won't fit in the buffer
+        if (_encoded.capacity() < 4 + length)
+            _encoded = ByteBuffer.allocate(4 + length);
+
+        _encoded.clear();
+        _encoded.putInt(length);
+        event.writeTo(_encoded);
+
+        _dataOutputStream.write(_encoded.array(), 0, _encoded.position());
+        _dataOutputStream.flush();
+    }
+
+    /**
+     * Method to start writing a frame whose body is written in parts, with sendPart(), as it becomes
+     * available. Anything pending is written first. The caller holds the sender's monitor until the
+     * whole body has been written, so no other frame is written into the middle of it.
+     *
+     * @param length <code>int</code> of the number of bytes in the frame's body.
+     * @throws IOException
+     */
+    public synchronized void startFrame(int length) throws IOException
+    {
+        byte[] prefix = new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8),
+                (byte) length};
+
+        // IF we are streaming frames straight through
+        if (!_gathering)
+        {
+            _dataOutputStream.write(prefix);
+            return;
+        }
+
+        flush();
+
+        _outputStream.write(prefix);
+    }
+
+    /**
+     * Method to write part of the body of a frame started with startFrame().
+     *
+     * @param data   <code>byte[]</code> holding the part.
+     * @param offset <code>int</code> index in data of the first byte of the part.
+     * @param length <code>int</code> number of bytes in the part.
+     * @throws IOException
+     */
+    public synchronized void sendPart(byte[] data, int offset, int length) throws IOException
+    {
+        // IF we are streaming frames straight through
+        if (!_gathering)
+        {
+            _dataOutputStream.write(data, offset, length);
+            _dataOutputStream.flush();
+            return;
+        }
+
+        _outputStream.write(data, offset, length);
+        _outputStream.flush();
+    }
+
+    /**
+     * Method to add a frame to the pending batch, writing the batch when it has reached the byte
+     * threshold or arranging for it to be written once the linger time is up.
+     *
+     * @param dataToSend <code>byte[]</code> containing the message to the other node.
+     * @throws IOException
+     */
+    private synchronized void queueData(byte[] dataToSend) throws IOException
+    {
+        _pending.add(dataToSend);
+        _pendingBytes += 4 + dataToSend.length;
+
+        // IF the batch is big enough, or we aren't to linger at all
+        if (_pendingBytes >= Statics.SENDER_COALESCE_BYTES || Statics.SENDER_COALESCE_MICROS <= 0)
+        {
+            flush();
+            return;
+        }
+
+        // IF no flush is on the way yet
+        if (!_flushScheduled)
+        {
+            _flushScheduled = true;
+
+            // IF this sender has no flusher yet
+            if (_flusher == null)
+                _flusher = createFlusher();
+
+            _flusher.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        flush();
+                    }
+                    catch (IOException ioe)
+                    {
+                        ioe.printStackTrace();
+                    }
+                }
+            }, Statics.SENDER_COALESCE_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Method to write every pending frame to the socket. The frames are let go of even if writing
+     * them fails, as the stream can't be written where it left off: anything that must survive a
+     * broken connection is kept by the Link's LinkSession and replayed over the next one.
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException
+    {
+        // IF we write frames straight through there is nothing held back
+        if (!_gathering)
+            return;
+
+        _flushScheduled = false;
+
+        try
+        {
+            int start = 0;
+
+            // write the pending frames MAX_GATHER at a time
+            while (start < _pending.size())
+            {
+                int count = Math.min(MAX_GATHER, _pending.size() - start);
+
+                writeBatch(start, count);
+
+                start += count;
+            }
+        }
+        finally
+        {
+            _pending.clear();
+            _pendingBytes = 0;
+        }
+    }
+
+    /**
+     * Method to write a batch of pending frames with a single gathering write of their length
+     * prefixes and bodies.
+     *
+     * @param start <code>int</code> index of the first pending frame to write.
+     * @param count <code>int</code> number of frames to write.
+     * @throws IOException
+     */
+    private void writeBatch(int start, int count) throws IOException
+    {
+        long total = 0;
+
+        for (int i = 0; i < count; ++i)
+        {
+            byte[] frame = _pending.get(start + i);
+
+            _headers[i].clear();
+            _headers[i].putInt(frame.length);
+            _headers[i].flip();
+
+            _gather[2 * i] = _headers[i];
+            _gather[2 * i + 1] = ByteBuffer.wrap(frame);
+
+            total += 4 + frame.length;
+        }
+
+        try
+        {
+            // a blocking channel normally takes everything in one go
+            while (total > 0)
+                total -= _channel.write(_gather, 0, 2 * count);
+        }
+        finally
+        {
+            // the written frames aren't held on to until the next batch overwrites them
+            for (int i = 0; i < count; ++i)
+                _gather[2 * i + 1] = null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if senders coalesce frames into gathering writes.
+     */
+    public static boolean isGathering()
+    {
+        return Statics.SENDER_GATHER.equals(Statics.SENDER);
+    }
+
+    /**
+     * Method to create the executor that flushes this sender's lingering frames. Its one thread
+     * finishes once it has had nothing to flush for FLUSHER_KEEP_ALIVE_SECONDS.
+     *
+     * @return <code>ScheduledThreadPoolExecutor</code> to schedule flushes with.
+     */
+    private static ScheduledThreadPoolExecutor createFlusher()
+    {
+        ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "tcp-sender-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        flusher.setKeepAliveTime(FLUSHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        flusher.allowCoreThreadTimeOut(true);
 
+        return flusher;
     }
 }
@@ -1,19 +1,22 @@
 package cs455.overlay.transport;
 
 import cs455.overlay.node.Node;
+import cs455.overlay.util.OverlayThreadFactory;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 
 /**
  * This class defines a thread that will monitor for incoming request connections. When
- * a connection is made, it sends the connection to the TCPReceiverThread to obtain
- * the calling nodes message.
+ * a connection is made, it hands the connection to the ConnectionFactory to obtain
+ * the calling nodes message. The loop runs on a thread from the OverlayThreadFactory.
+ * It is the Listener of the socket Transports.
  *
  * @author Aaron Hartman
  */
-public class TCPServerThread extends Thread
+public class TCPServerThread implements Runnable, Listener
 {
 
     /**
@@ -22,11 +25,16 @@ public class TCPServerThread extends Thread
     private ServerSocket _serverSocket;
 
     /**
-     * Node linked to this server thread. This will be passed to the TCPReceiverThread
+     * Node linked to this server thread. This will be passed to the Connection
      * so it can signal the node when a message is received.
      */
     private Node _callbackNode;
 
+    /**
+     * Thread the accept loop runs on
+     */
+    private Thread _thread;
+
     /**
      * Constructor
      *
@@ -39,6 +47,14 @@ public class TCPServerThread extends Thread
         _callbackNode = callbackNode;
     }
 
+    /**
+     * Method to start accepting connections on a thread of the selected kind.
+     */
+    public void start()
+    {
+        _thread = OverlayThreadFactory.getFactoryInstance().start(this, "tcp-server-" + _serverSocket.getLocalPort());
+    }
+
     public void run()
     {
 
@@ -55,15 +71,16 @@ public class TCPServerThread extends Thread
             {
                 socket = _serverSocket.accept();
 
-                /**
-                 *  TCPReceiverThread to receive communication from the client
-                 */
-                TCPReceiverThread receiver = new TCPReceiverThread(socket, _callbackNode);
-                receiver.start();
+                // receive communication from the client
+                ConnectionFactory.startConnection(socket, _callbackNode);
 
             }
             catch (IOException ioe)
             {
+                // IF the server socket was closed on purpose
+                if (_serverSocket.isClosed())
+                    return;
+
                 ioe.printStackTrace();
             }
 
@@ -73,13 +90,49 @@ public class TCPServerThread extends Thread
     }//ENDRUN
 
 
+    /**
+     * Listener interface method to stop accepting connections.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        _serverSocket.close();
+    }
+
+
     /**
      * ************************* ACCESSORS AND MUTATORS ******************************
      */
 
+    /**
+     * @return <code>String</code> of the canonical host name of this machine.
+     */
+    public String getLocalHostName()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getCanonicalHostName();
+        }
+        catch (IOException ioe)
+        {
+            return InetAddress.getLoopbackAddress().getCanonicalHostName();
+        }
+    }
+
+    public int getLocalPort()
+    {
+        return _serverSocket.getLocalPort();
+    }
+
     public ServerSocket getServerSocket()
     {
         return _serverSocket;
     }
 
+    public Thread getThread()
+    {
+        return _thread;
+    }
+
 }//ENDTCPSERVERTHREAD
@@ -0,0 +1,53 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A TCPTransport class for the socket Transports: "tcp", with a TCPReceiverThread per Connection,
+ * and "nio", with Connections handed to the shared NIOEventLoops. Listeners are TCPServerThreads;
+ * the ConnectionFactory decides which kind of Connection an accepted or connected socket becomes.
+ */
+public class TCPTransport implements Transport
+{
+    /**
+     * Transport interface method to open a server socket and a TCPServerThread to accept from it.
+     *
+     * @param port         <code>int</code> of the port to listen to; 0 for any free port.
+     * @param callbackNode <code>Node</code> to be notified of the messages received on accepted Connections.
+     * @return <code>Listener</code> for the port.
+     * @throws IOException
+     */
+    public Listener listen(int port, Node callbackNode) throws IOException
+    {
+        return new TCPServerThread(ConnectionFactory.openServerSocket(port, 0), callbackNode);
+    }
+
+    /**
+     * Transport interface method to open a socket to the given node and begin receiving on it.
+     *
+     * @param hostName     <code>String</code> of the host to connect to.
+     * @param port         <code>int</code> of the port to connect to.
+     * @param callbackNode <code>Node</code> that has interest in the received messages.
+     * @return <code>Connection</code> to the node.
+     * @throws IOException
+     */
+    public Connection connect(String hostName, int port, Node callbackNode) throws IOException
+    {
+        // IF we are using the selector transport
+        if (ConnectionFactory.isNIO())
+            return NIOEventLoop.register(SocketChannel.open(new InetSocketAddress(hostName, port)), callbackNode);
+
+        // IF the sender needs a channel to gather with
+        if (TCPSender.isGathering())
+            return ConnectionFactory.startConnection(SocketChannel.open(new InetSocketAddress(hostName, port))
+                    .socket(), callbackNode);
+
+        return ConnectionFactory.startConnection(new Socket(hostName, port), callbackNode);
+    }
+
+}
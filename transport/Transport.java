@@ -0,0 +1,36 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.node.Node;
+
+import java.io.IOException;
+
+/**
+ * A Transport interface for the ways Nodes can reach each other. A Transport opens Listeners that
+ * accept Connections from other Nodes, and opens Connections to them; frames are sent over a
+ * Connection with sendData() and every frame received on one is handed to its callback Node by the
+ * FrameDispatcher. The Nodes only see Listeners and Connections, so the Transport selected at
+ * startup (Statics.TRANSPORT, see ConnectionFactory) can be changed without them knowing.
+ */
+public interface Transport
+{
+    /**
+     * Method to open a Listener for Connections from other Nodes. It accepts nothing until started.
+     *
+     * @param port         <code>int</code> of the port to listen to; 0 for any free port.
+     * @param callbackNode <code>Node</code> to be notified of the messages received on accepted Connections.
+     * @return <code>Listener</code> for the port.
+     * @throws IOException
+     */
+    public Listener listen(int port, Node callbackNode) throws IOException;
+
+    /**
+     * Method to open a Connection to the Node listening at the given address and begin receiving on it.
+     *
+     * @param hostName     <code>String</code> of the host to connect to.
+     * @param port         <code>int</code> of the port to connect to.
+     * @param callbackNode <code>Node</code> that has interest in the received messages.
+     * @return <code>Connection</code> to the node.
+     * @throws IOException
+     */
+    public Connection connect(String hostName, int port, Node callbackNode) throws IOException;
+}
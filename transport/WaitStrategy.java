@@ -0,0 +1,134 @@
+package cs455.overlay.transport;
+
+import cs455.overlay.util.Statics;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A WaitStrategy class for how a transport loop waits when it has nothing to do: a receiver with no
+ * frame to read, or a writer with no frame to write. The strategy trades latency for CPU:
+ *
+ * spin     - never gives up the CPU; the lowest latency, a whole core per waiting thread.
+ * yield    - spins Statics.WAIT_SPINS times, then yields to other threads between polls.
+ * backoff  - spins Statics.WAIT_SPINS times, then parks for longer and longer, up to
+ *            Statics.WAIT_MAX_PARK_MICROS, between polls.
+ * blocking - blocks in whatever the loop can block in (a socket read, select(), a park until
+ *            signalled) and uses no CPU at all while idle. A loop with nothing to block in backs off
+ *            without spinning.
+ *
+ * Receive loops (the NIO event loop, in-memory and shared memory receivers, which also dispatch what
+ * they receive) take overlay.wait.receive; send loops (LinkWriters and senders waiting for room in a
+ * full queue) take overlay.wait.send. Unset, every loop keeps the way it has always waited.
+ * TCPReceiverThreads always block, as a blocking socket has no way to poll it.
+ */
+public class WaitStrategy
+{
+    /**
+     * WaitStrategy for blocking, the way receive and send loops wait unless told otherwise
+     */
+    public static final WaitStrategy BLOCKING = new WaitStrategy(Statics.WAIT_BLOCKING, 0,
+            Statics.WAIT_MAX_PARK_MICROS * 1000L);
+
+    /**
+     * WaitStrategy receive loops with nothing to block in use, unless they have their own
+     */
+    public static final WaitStrategy RECEIVE = forLoop(Statics.WAIT_RECEIVE, BLOCKING);
+
+    /**
+     * WaitStrategy send loops use
+     */
+    public static final WaitStrategy SEND = forLoop(Statics.WAIT_SEND, BLOCKING);
+
+    /**
+     * String of the strategy, one of the Statics.WAIT_ names
+     */
+    private final String _name;
+
+    /**
+     * int for the idle polls spent spinning before yielding or parking
+     */
+    private final int _spins;
+
+    /**
+     * long for the most nanoseconds to park for between polls
+     */
+    private final long _maxParkNanos;
+
+
+    /**
+     * Constructor
+     *
+     * @param name         <code>String</code> of the strategy, one of the Statics.WAIT_ names.
+     * @param spins        <code>int</code> of the idle polls to spin for before yielding or parking.
+     * @param maxParkNanos <code>long</code> of the most nanoseconds to park for between polls.
+     */
+    public WaitStrategy(String name, int spins, long maxParkNanos)
+    {
+        _name = name;
+        _spins = spins;
+        _maxParkNanos = Math.max(1000, maxParkNanos);
+    }
+
+    /**
+     * Method to get the strategy a loop was told to use.
+     *
+     * @param name     <code>String</code> of the strategy asked for; empty for the loop's own.
+     * @param fallback <code>WaitStrategy</code> the loop uses if none was asked for.
+     * @return <code>WaitStrategy</code> for the loop.
+     */
+    public static WaitStrategy forLoop(String name, WaitStrategy fallback)
+    {
+        // IF no strategy was asked for, the loop keeps its own
+        if (name.isEmpty())
+            return fallback;
+
+        // IF the strategy isn't one we know
+        if (!name.equals(Statics.WAIT_SPIN) && !name.equals(Statics.WAIT_YIELD) &&
+                !name.equals(Statics.WAIT_BACKOFF) && !name.equals(Statics.WAIT_BLOCKING))
+        {
+            System.err.println("Wait strategy [" + name + "] invalid! Must be one of [" + Statics.WAIT_SPIN + ", " +
+                    Statics.WAIT_YIELD + ", " + Statics.WAIT_BACKOFF + ", " + Statics.WAIT_BLOCKING + "].");
+            return fallback;
+        }
+
+        return new WaitStrategy(name, name.equals(Statics.WAIT_BLOCKING) ? 0 : Statics.WAIT_SPINS,
+                Statics.WAIT_MAX_PARK_MICROS * 1000L);
+    }
+
+    /**
+     * @return <code>true</code> if the loop should block in whatever it can block in rather than poll.
+     */
+    public boolean isBlocking()
+    {
+        return _name.equals(Statics.WAIT_BLOCKING);
+    }
+
+    /**
+     * Method for a polling loop to wait once it has found nothing to do.
+     *
+     * @param idle <code>int</code> of the polls in a row, this one included, that have found nothing.
+     */
+    public void idle(int idle)
+    {
+        // IF we never give up the CPU, or haven't been idle long enough to
+        if (_name.equals(Statics.WAIT_SPIN) || idle <= _spins)
+            Thread.onSpinWait();
+        // ELSE IF we let other threads run, but stay ready
+        else if (_name.equals(Statics.WAIT_YIELD))
+            Thread.yield();
+        // ELSE park, twice as long each time up to the most we may
+        else
+            LockSupport.parkNanos(Math.min(_maxParkNanos, 1000L << Math.min(20, idle - _spins - 1)));
+    }
+
+
+    /**
+     * ************************* OVERIDDEN METHODS **********************************
+     */
+    @Override
+    public String toString()
+    {
+        return _name;
+    }
+
+}
@@ -0,0 +1,313 @@
+package cs455.overlay.util;
+
+import cs455.overlay.wireformats.*;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A CodecBenchmark class to measure what encoding and decoding each message type costs, in time and
+ * in bytes allocated on the heap. Each message type is encoded and decoded many times over in a
+ * warmed up loop, both into and out of a new byte array (getBytes() and the EventFactory) and into
+ * and out of a ByteBuffer kept between runs (writeTo() and readFrom() on a message kept between
+ * runs). The bytes allocated come from the thread's allocation counter, so nothing but the codec is
+ * counted; writeTo() should allocate nothing at all, and readFrom() nothing but the strings it reads.
+ * Last, it measures what a sink receiving a PayloadMessage through a view (see PayloadMessage.wrap())
+ * pays to find it is the sink and read the payload, and what a Link sending compact payload frames
+ * (see CompactPayload) pays to make the sample PayloadMessage compact and expand it again.
+ *
+ * Usage: java cs455.overlay.util.CodecBenchmark [iterations]
+ */
+public class CodecBenchmark
+{
+    /**
+     * Sender fields every sample message is given
+     */
+    private static final String IP = "192.168.100.121";
+    private static final int PORT = 40002;
+    private static final String ID = "192.168.100.121:40002";
+
+    /**
+     * long accumulating what each operation returns, so the JIT can't leave any of them out
+     */
+    private static long _sink;
+
+
+    /**
+     * An operation measured over and over
+     */
+    private interface Operation
+    {
+        /**
+         * @return <code>int</code> of anything depending on the work done.
+         * @throws IOException
+         * @throws MessageTypeException
+         */
+        public int run() throws IOException, MessageTypeException;
+    }
+
+
+    /**
+     * main method
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int iterations = 200000;
+
+        try
+        {
+            if (args.length > 0)
+                iterations = Integer.parseInt(args[0]);
+        }
+        catch (NumberFormatException e)
+        {
+            System.err.println("Usage: java CodecBenchmark [iterations]");
+            System.exit(1);
+        }
+
+        System.out.printf("%-26s %6s %12s %10s %12s %10s %12s %10s %12s %10s%n", "message", "bytes",
+                "getBytes B", "ns", "create B", "ns", "writeTo B", "ns", "readFrom B", "ns");
+
+        // FOR every message type
+        for (final Event sample : samples())
+        {
+            final byte[] frame = sample.getBytes();
+            final ByteBuffer buffer = ByteBuffer.allocate(frame.length);
+            final Event reused = EventFactory.createEvent(frame);
+
+            Operation encode = new Operation()
+            {
+                public int run()
+                {
+                    return sample.getBytes().length;
+                }
+            };
+
+            Operation decode = new Operation()
+            {
+                public int run() throws IOException
+                {
+                    return EventFactory.createEvent(frame).getType();
+                }
+            };
+
+            Operation write = new Operation()
+            {
+                public int run()
+                {
+                    buffer.clear();
+                    sample.writeTo(buffer);
+                    return buffer.position();
+                }
+            };
+
+            Operation read = new Operation()
+            {
+                public int run() throws MessageTypeException
+                {
+                    buffer.rewind();
+                    reused.readFrom(buffer);
+                    return buffer.position();
+                }
+            };
+
+            double[] encoded = measure(encode, iterations);
+            double[] decoded = measure(decode, iterations);
+            double[] written = measure(write, iterations);
+            double[] reread = measure(read, iterations);
+
+            System.out.printf("%-26s %6d %12.1f %10.1f %12.1f %10.1f %12.1f %10.1f %12.1f %10.1f%n",
+                    sample.getClass().getSimpleName(), frame.length, encoded[0], encoded[1], decoded[0], decoded[1],
+                    written[0], written[1], reread[0], reread[1]);
+        }
+
+        final PayloadMessage view = new PayloadMessage();
+        final byte[] payloadFrame = samples().get(0).getBytes();
+
+        Operation sink = new Operation()
+        {
+            public int run()
+            {
+                view.wrap(payloadFrame, 0, payloadFrame.length);
+
+                int payload = view.getPathSize() + view.getPayload();
+
+                view.release();
+
+                return payload;
+            }
+        };
+
+        double[] viewed = measure(sink, iterations);
+
+        System.out.printf("%nPayloadMessage view, wrap + getPathSize + getPayload: %.1f B/op, %.1f ns%n", viewed[0],
+                viewed[1]);
+
+        final byte[] compactFrame = CompactPayload.compact(payloadFrame, CompactPayload.EPOCH);
+
+        Operation compact = new Operation()
+        {
+            public int run()
+            {
+                return CompactPayload.compact(payloadFrame, CompactPayload.EPOCH).length;
+            }
+        };
+
+        Operation expand = new Operation()
+        {
+            public int run()
+            {
+                return CompactPayload.expand(compactFrame, 0, compactFrame.length, CompactPayload.EPOCH).length;
+            }
+        };
+
+        double[] compacted = measure(compact, iterations);
+        double[] expanded = measure(expand, iterations);
+
+        System.out.printf("CompactPayload, %d bytes as %d: compact %.1f B/op, %.1f ns; expand %.1f B/op, %.1f ns%n",
+                payloadFrame.length, compactFrame.length, compacted[0], compacted[1], expanded[0], expanded[1]);
+
+        // keep the results alive
+        if (_sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * Private method to run an operation until it is warmed up, and then measure it.
+     *
+     * @param operation  <code>Operation</code> to measure.
+     * @param iterations <code>int</code> of the times to run it while measuring.
+     * @return <code>double[]</code> of the bytes allocated and the nanoseconds taken per run.
+     * @throws IOException
+     * @throws MessageTypeException
+     */
+    private static double[] measure(Operation operation, int iterations) throws IOException, MessageTypeException
+    {
+        // FOR the warm up, long enough for the JIT to compile the codec
+        for (int i = 0; i < iterations; ++i)
+            _sink += operation.run();
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; ++i)
+            _sink += operation.run();
+
+        long nanos = System.nanoTime() - start;
+
+        return new double[]{(double) (allocatedBytes() - allocated) / iterations, (double) nanos / iterations};
+    }
+
+    /**
+     * @return <code>long</code> of the bytes the current thread has allocated on the heap so far.
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        // IF the JVM can tell us what a thread has allocated
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    /**
+     * @return <code>ArrayList<Event></code> of a message of every type, filled in the way the overlay fills them.
+     */
+    private static ArrayList<Event> samples()
+    {
+        EventFactory factory = EventFactory.getFactoryInstance();
+
+        ArrayList<Event> samples = new ArrayList<Event>();
+
+        PayloadMessage payloadMessage = (PayloadMessage) factory.createEvent(Protocol.PAYLOAD_MESSAGE, IP, PORT, ID);
+        payloadMessage.setPayload(-1234567);
+
+        // a path of four hops
+        payloadMessage.setPath(new int[]{3, 8, 1, 6});
+
+        samples.add(payloadMessage);
+
+        LinkWeights linkWeights = (LinkWeights) factory.createEvent(Protocol.LINK_WEIGHTS, IP, PORT, ID);
+
+        // FOR the links of ten nodes with four each
+        for (int i = 0; i < 20; ++i)
+            linkWeights.addConnectionInfo("192.168.100." + (100 + i % 10) + ":40000",
+                    "192.168.100." + (100 + (i + 3 + i / 10) % 10) + ":40000", 1 + i % 10);
+
+        samples.add(linkWeights);
+
+        MessagingNodeList messagingNodeList = (MessagingNodeList) factory.createEvent(Protocol.MESSAGING_NODE_LIST, IP,
+                PORT, ID);
+
+        // FOR the four nodes to connect to
+        for (int i = 0; i < 4; ++i)
+            messagingNodeList.addNodeConnectionInfo("192.168.100." + (130 + i) + ":40000", 2 + i);
+
+        messagingNodeList.setNodeIndex(1);
+        messagingNodeList.setNumPeerMessagingNodes(4);
+        samples.add(messagingNodeList);
+
+        TrafficSummary trafficSummary = (TrafficSummary) factory.createEvent(Protocol.TRAFFIC_SUMMARY, IP, PORT, ID);
+        trafficSummary.setNumSent(5000);
+        trafficSummary.setSentSummation(123456789012L);
+        trafficSummary.setNumReceived(4990);
+        trafficSummary.setReceivedSummation(-98765432109L);
+        trafficSummary.setNumRelayed(10000);
+        samples.add(trafficSummary);
+
+        RegistrationRequest registrationRequest = (RegistrationRequest) factory.createEvent(
+                Protocol.REGISTRATION_REQUEST, IP, PORT, ID);
+        registrationRequest.setNodeServerPort(40003);
+        samples.add(registrationRequest);
+
+        RegistrationResponse registrationResponse = (RegistrationResponse) factory.createEvent(
+                Protocol.REGISTRATION_RESPONSE, IP, PORT, ID);
+        registrationResponse.setStatus(true);
+        registrationResponse.setNodeIndex(9);
+        registrationResponse.setDescription("Registration request successful. The number of messaging nodes " +
+                "currently constituting the overlay is (10)");
+        samples.add(registrationResponse);
+
+        LinkEmulation linkEmulation = (LinkEmulation) factory.createEvent(Protocol.LINK_EMULATION, IP, PORT, ID);
+        linkEmulation.setTargetID("192.168.100.122:40004");
+        linkEmulation.setDelayMicros(20000);
+        samples.add(linkEmulation);
+
+        LinkLatency linkLatency = (LinkLatency) factory.createEvent(Protocol.LINK_LATENCY, IP, PORT, ID);
+        linkLatency.setTargetID("192.168.100.122:40004");
+        linkLatency.setRttNanos(123456);
+        samples.add(linkLatency);
+
+        CompressedBatch compressedBatch = (CompressedBatch) factory.createEvent(Protocol.COMPRESSED_BATCH, IP, PORT,
+                ID);
+        compressedBatch.setRawLength(4096);
+        compressedBatch.setDeflated(new byte[1024]);
+        samples.add(compressedBatch);
+
+        SharedMemoryOffer sharedMemoryOffer = (SharedMemoryOffer) factory.createEvent(Protocol.SHARED_MEMORY_OFFER,
+                IP, PORT, ID);
+        sharedMemoryOffer.setPath("/dev/shm/overlay-40002-40004.ring");
+        samples.add(sharedMemoryOffer);
+
+        int[] others = {Protocol.DEREGISTRATION_REQUEST, Protocol.MESSAGING_NODE_CONNECTION_REQUEST,
+                Protocol.MESSAGING_NODE_CONNECTION_RESPONSE, Protocol.TASK_INITIATE, Protocol.TASK_COMPLETE,
+                Protocol.PULL_TRAFFIC_SUMMARY, Protocol.FLOW_CREDIT, Protocol.SHARED_MEMORY_RESPONSE,
+                Protocol.LINK_CAPABILITIES, Protocol.LINK_PING, Protocol.LINK_PONG, Protocol.STRIPE_JOIN,
+                Protocol.LINK_ACK, Protocol.LINK_RESUME};
+
+        // FOR every message type with nothing but numbers to fill in, or nothing at all
+        for (int type : others)
+            samples.add(factory.createEvent(type, IP, PORT, ID));
+
+        return samples;
+    }
+
+}
@@ -0,0 +1,176 @@
+package cs455.overlay.util;
+
+import cs455.overlay.transport.Link;
+import cs455.overlay.wireformats.EventFactory;
+import cs455.overlay.wireformats.LinkLatency;
+import cs455.overlay.wireformats.LinkPing;
+import cs455.overlay.wireformats.Protocol;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A LinkProber class to measure the round trip time of each of a MessagingNode's Links. Every
+ * Statics.PROBE_INTERVAL_MILLIS it sends a LinkPing over each Link to another MessagingNode, and
+ * reports the Links' smoothed round trip times so far to the Registry in LinkLatency messages, so
+ * the Registry can weight the overlay by measured latency. The LinkPong answering a probe is
+ * folded into its Link by the MessagingNode.
+ *
+ * The probes are control messages, so they are not held up behind payload messages queued on the
+ * Link; what they measure is the network and the nodes, not the depth of the data queue.
+ */
+public class LinkProber implements Runnable
+{
+    /**
+     * ConcurrentHashMap reference to the node's Links, by the ID of the node at the other end
+     */
+    private ConcurrentHashMap<String, Link> _registeredNodes;
+
+    /**
+     * String of the registry ID, whose Link isn't probed and which the measurements are reported to
+     */
+    private String _registryID;
+
+    /**
+     * String of the IP address the probing node listens on
+     */
+    private String _listeningIP;
+
+    /**
+     * int of the port the probing node listens on
+     */
+    private int _listeningPort;
+
+    /**
+     * String of the ID of the probing node
+     */
+    private String _ID;
+
+    /**
+     * int for the sequence number of the next probe
+     */
+    private int _sequence;
+
+    /**
+     * boolean for if the prober has been told to stop
+     */
+    private volatile boolean _stopped;
+
+    /**
+     * EventFactory for messages
+     */
+    private EventFactory _eventFactory;
+
+
+    /**
+     * Constructor
+     *
+     * @param registeredNodes <code>ConcurrentHashMap<String, Link></code> reference to the node's Links.
+     * @param registryID      <code>String</code> of the Registry the node is registered with.
+     * @param listeningIP     <code>String</code> of the IP address the node listens on.
+     * @param listeningPort   <code>int</code> of the port the node listens on.
+     * @param ID              <code>String</code> of the node's ID.
+     */
+    public LinkProber(ConcurrentHashMap<String, Link> registeredNodes, String registryID, String listeningIP,
+                      int listeningPort, String ID)
+    {
+        _registeredNodes = registeredNodes;
+        _registryID = registryID;
+        _listeningIP = listeningIP;
+        _listeningPort = listeningPort;
+        _ID = ID;
+        _sequence = 0;
+        _eventFactory = EventFactory.getFactoryInstance();
+    }
+
+    /**
+     * Method to start probing on a thread of the selected kind.
+     */
+    public void start()
+    {
+        Thread thread = OverlayThreadFactory.getFactoryInstance().newThread(this, "link-prober");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Method to stop probing after the current round.
+     */
+    public void stop()
+    {
+        _stopped = true;
+    }
+
+    public void run()
+    {
+        // WHILE we haven't been stopped
+        while (!_stopped)
+        {
+            try
+            {
+                Thread.sleep(Statics.PROBE_INTERVAL_MILLIS);
+            }
+            catch (InterruptedException ie)
+            {
+                return;
+            }
+
+            probe();
+            report();
+
+        } // END WHILE
+
+    }//ENDRUN
+
+    /**
+     * Method to send a LinkPing over every Link to another MessagingNode.
+     */
+    private void probe()
+    {
+        // FOR every Link the node has
+        for (Link link : _registeredNodes.values())
+        {
+            // IF the Link is to the registry, it isn't part of the overlay
+            if (link.getTargetID().equals(_registryID))
+                continue;
+
+            LinkPing linkPing = (LinkPing) _eventFactory.createEvent(Protocol.LINK_PING, _listeningIP,
+                    _listeningPort, _ID);
+
+            linkPing.setSequence(_sequence++);
+            linkPing.setSentNanos(System.nanoTime());
+
+            link.send(linkPing.getBytes());
+        }
+    }
+
+    /**
+     * Method to report the smoothed round trip time of every measured Link to the registry.
+     */
+    private void report()
+    {
+        Link registryLink = _registeredNodes.get(_registryID);
+
+        // IF we have lost the registry, there is no one to report to
+        if (registryLink == null)
+            return;
+
+        // FOR every Link the node has
+        for (Link link : _registeredNodes.values())
+        {
+            long rttNanos = link.getRttNanos();
+
+            // IF the Link is to the registry or hasn't been measured yet
+            if (link.getTargetID().equals(_registryID) || rttNanos == 0)
+                continue;
+
+            LinkLatency linkLatency = (LinkLatency) _eventFactory.createEvent(Protocol.LINK_LATENCY, _listeningIP,
+                    _listeningPort, _ID);
+
+            linkLatency.setTargetID(link.getTargetID());
+            linkLatency.setRttNanos(rttNanos);
+
+            registryLink.send(linkLatency.getBytes());
+        }
+    }
+
+}
@@ -7,6 +7,7 @@ import cs455.overlay.wireformats.Protocol;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -72,6 +73,7 @@ public class LinkWeightsMessageCreator
          * calling the lists from the hash maps.
          */
         LinkWeights weightsMessage = (LinkWeights) EventFactory.getFactoryInstance().createEvent(Protocol.LINK_WEIGHTS);
+        indexNodes(weightsMessage);
 
         /**
          * MessagingNodeList for the current node connection info
@@ -124,6 +126,117 @@ public class LinkWeightsMessageCreator
         return weightsMessage;
     }
 
+    /**
+     * Method to create the LinkWeights message for the overlay from the round trip times the nodes have
+     * measured on their links, so the routes the nodes compute are the ones with the least latency. A
+     * link's weight is its round trip time in units of Statics.LINK_WEIGHT_UNIT_MICROS, at least 1,
+     * averaged over the two directions where both ends measured it. A link no end has measured yet is
+     * given the largest measured weight, so it isn't preferred on no evidence; if no link has been
+     * measured at all the weights are random, as with createLinkWeightMessage().
+     *
+     * @param linkRtts <code>Map</code> of the round trip times in nanoseconds the nodes reported, keyed by
+     *                 linkKey(source, target).
+     * @return <code>LinkWeights</code> message containing the link information for all Node's in the Overlay.
+     */
+    public LinkWeights createMeasuredLinkWeightMessage(Map<String, Long> linkRtts)
+    {
+        /**
+         * HashMap of the weight of every measured link, by linkKey of the direction listed
+         */
+        HashMap<String, Integer> measuredWeights = new HashMap<String, Integer>();
+
+        /**
+         * int for the largest weight of any measured link
+         */
+        int maxWeight = 0;
+
+        // FOR every Node's connections, weight the links measured in either direction
+        for (MessagingNodeList nodesListMessage : getMessagingNodesListMap().values())
+        {
+            for (String targetID : nodesListMessage.getNodeConnectionInfo())
+            {
+                Long forward = linkRtts.get(linkKey(nodesListMessage.getID(), targetID));
+                Long reverse = linkRtts.get(linkKey(targetID, nodesListMessage.getID()));
+
+                // IF neither end has measured the link
+                if (forward == null && reverse == null)
+                    continue;
+
+                long rttNanos = (forward == null) ? reverse : (reverse == null) ? forward : (forward + reverse) / 2;
+
+                int linkWeight = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                        Math.round(rttNanos / (Statics.LINK_WEIGHT_UNIT_MICROS * 1000.0))));
+
+                measuredWeights.put(linkKey(nodesListMessage.getID(), targetID), linkWeight);
+                maxWeight = Math.max(maxWeight, linkWeight);
+            }
+        }
+
+        // IF no link has been measured, there is nothing to go on
+        if (measuredWeights.isEmpty())
+        {
+            System.err.println("No link round trip times have been reported yet; sending random link weights.");
+
+            return createLinkWeightMessage();
+        }
+
+        LinkWeights weightsMessage = (LinkWeights) EventFactory.getFactoryInstance().createEvent(Protocol.LINK_WEIGHTS);
+        indexNodes(weightsMessage);
+
+        // FOR every Node's connections, add the link in both directions
+        for (MessagingNodeList nodesListMessage : getMessagingNodesListMap().values())
+        {
+            for (String targetID : nodesListMessage.getNodeConnectionInfo())
+            {
+                Integer linkWeight = measuredWeights.get(linkKey(nodesListMessage.getID(), targetID));
+
+                // IF the link hasn't been measured, don't favour it
+                if (linkWeight == null)
+                    linkWeight = maxWeight;
+
+                weightsMessage.addConnectionInfo(nodesListMessage.getID(), targetID, linkWeight);
+                weightsMessage.addConnectionInfo(targetID, nodesListMessage.getID(), linkWeight);
+            }
+        }
+
+        return weightsMessage;
+    }
+
+    /**
+     * Private method to give every node in the overlay the index the Registry assigned it in a
+     * LinkWeights message, before any link is added to it, as the MessagingNodeLists carry them.
+     *
+     * @param weightsMessage <code>LinkWeights</code> message to fill the node table of.
+     */
+    private void indexNodes(LinkWeights weightsMessage)
+    {
+        // FOR every Node's list, the Node and the Nodes it connects to
+        for (MessagingNodeList nodesListMessage : getMessagingNodesListMap().values())
+        {
+            if (nodesListMessage.getNodeIndex() >= 0)
+                weightsMessage.setNodeIndex(nodesListMessage.getID(), nodesListMessage.getNodeIndex());
+
+            for (int i = 0; i < nodesListMessage.getNodeIndices().size(); ++i)
+            {
+                if (nodesListMessage.getNodeIndices().get(i) >= 0)
+                    weightsMessage.setNodeIndex(nodesListMessage.getNodeConnectionInfo().get(i),
+                            nodesListMessage.getNodeIndices().get(i));
+            }
+        }
+    }
+
+    /**
+     * Method to get the key a link's round trip time is kept under.
+     *
+     * @param sourceID <code>String</code> of the ID of the node that measured the link.
+     * @param targetID <code>String</code> of the ID of the node at the other end.
+     * @return <code>String</code> key for the link in that direction.
+     */
+    public static String linkKey(String sourceID, String targetID)
+    {
+        return sourceID + "\t" + targetID;
+    }
+
     /**
      * ************************* ACCESSORS AND MUTATORS ******************************
      */
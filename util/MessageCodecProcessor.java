@@ -0,0 +1,463 @@
+package cs455.overlay.util;
+
+import cs455.overlay.wireformats.WireField;
+import cs455.overlay.wireformats.WireMessage;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A MessageCodecProcessor class to generate the codec of every Message subclass marked WireMessage at
+ * compile time, so no message is encoded or decoded through reflection. Every codec goes into the one
+ * MessageCodecs class, as an encodedSize(), writeTo() and readFrom() for each message that its own
+ * methods of the same name hand over to. The size of every fixed width field is added up while
+ * generating, so encodedSize() is a constant plus the strings and arrays, and writeTo() and readFrom()
+ * are straight runs of ByteBuffer puts and gets through the fields' accessors and mutators.
+ *
+ * The generated MessageCodecs is kept in the tree, so the overlay builds without the processor. After
+ * changing the fields of a message, generate it again and copy it over the one in wireformats:
+ *
+ * javac -d /tmp/codecs util/MessageCodecProcessor.java wireformats/WireMessage.java wireformats/WireField.java
+ * javac -proc:only -processorpath /tmp/codecs -processor cs455.overlay.util.MessageCodecProcessor -s /tmp/codecs
+ *       $(find . -name '*.java' ! -name MessageCodecs.java)
+ */
+public class MessageCodecProcessor extends AbstractProcessor
+{
+    /**
+     * String of the package the messages, and so the generated codecs, are in
+     */
+    private static final String PACKAGE = "cs455.overlay.wireformats";
+
+    /**
+     * String of the name of the generated class
+     */
+    private static final String CODECS = "MessageCodecs";
+
+    /**
+     * Kinds of field a WireField may be, and the bytes each fixed width kind takes up
+     */
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int BOOLEAN = 2;
+    private static final int STRING = 3;
+    private static final int BYTES = 4;
+    private static final int[] FIXED_SIZES = {4, 8, 1, 0, 0};
+
+    /**
+     * boolean for if MessageCodecs has been generated; it is generated once, in the first round
+     */
+    private boolean _generated;
+
+
+    /**
+     * A field of a message as it goes over the wire
+     */
+    private static class Field
+    {
+        /**
+         * String of the field's name without its leading underscore, which its accessor and mutator are named after
+         */
+        private final String _name;
+
+        /**
+         * int of the kind of field, one of INT, LONG, BOOLEAN, STRING or BYTES
+         */
+        private final int _kind;
+
+        private Field(String name, int kind)
+        {
+            _name = name;
+            _kind = kind;
+        }
+    }
+
+
+    /**
+     * Method to generate MessageCodecs from every message marked WireMessage.
+     *
+     * @param annotations <code>Set</code> of the annotation types asked for.
+     * @param environment <code>RoundEnvironment</code> of the round.
+     * @return <code>true</code>, as WireMessage is for no other processor.
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment environment)
+    {
+        // IF MessageCodecs is already generated, or there is nothing to generate it from
+        if (_generated || annotations.isEmpty())
+            return true;
+
+        _generated = true;
+
+        /**
+         * ArrayList of the messages, by name so MessageCodecs comes out the same every time
+         */
+        ArrayList<TypeElement> messages = new ArrayList<TypeElement>();
+
+        for (Element element : environment.getElementsAnnotatedWith(WireMessage.class))
+        {
+            if (element.getKind() == ElementKind.CLASS)
+                messages.add((TypeElement) element);
+            else
+                error(element, "WireMessage may only mark a class");
+        }
+
+        Collections.sort(messages, new Comparator<TypeElement>()
+        {
+            public int compare(TypeElement first, TypeElement second)
+            {
+                return first.getSimpleName().toString().compareTo(second.getSimpleName().toString());
+            }
+        });
+
+        StringBuilder source = new StringBuilder();
+
+        source.append("package ").append(PACKAGE).append(";\n\n");
+        source.append("import cs455.overlay.exceptions.MessageTypeException;\n\n");
+        source.append("import java.nio.ByteBuffer;\n\n");
+        source.append("/**\n");
+        source.append(" * A MessageCodecs class holding the codec of every message marked WireMessage. Generated by\n");
+        source.append(" * util.MessageCodecProcessor from the fields of the messages; don't edit it by hand.\n");
+        source.append(" */\n");
+        source.append("final class ").append(CODECS).append("\n{\n");
+
+        // FOR every message, its codec
+        for (TypeElement message : messages)
+        {
+            // IF the message can't be generated, the error has been reported
+            if (!generate(message, source))
+                return true;
+        }
+
+        source.append("}\n");
+
+        try
+        {
+            Writer writer = processingEnv.getFiler().createSourceFile(PACKAGE + "." + CODECS,
+                    messages.toArray(new Element[0])).openWriter();
+
+            writer.write(source.toString());
+            writer.close();
+        }
+        catch (IOException ioe)
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + CODECS + ": " +
+                    ioe.getMessage());
+        }
+
+        return true;
+    }
+
+    /**
+     * Private method to generate the codec of one message.
+     *
+     * @param message <code>TypeElement</code> of the message.
+     * @param source  <code>StringBuilder</code> of the source of MessageCodecs to add it to.
+     * @return <code>true</code> if it was generated; <code>false</code> if an error was reported instead.
+     */
+    private boolean generate(TypeElement message, StringBuilder source)
+    {
+        String name = message.getSimpleName().toString();
+
+        // IF it isn't a message, it has no header to write
+        if (!isMessage(message))
+        {
+            error(message, "WireMessage " + name + " must extend Message");
+            return false;
+        }
+
+        ArrayList<Field> fields = new ArrayList<Field>();
+
+        // FOR every field the class declares, in the order it declares them
+        for (Element element : message.getEnclosedElements())
+        {
+            if (element.getKind() != ElementKind.FIELD || element.getAnnotation(WireField.class) == null)
+                continue;
+
+            Field field = field(message, (VariableElement) element);
+
+            if (field == null)
+                return false;
+
+            fields.add(field);
+        }
+
+        String timestampAfter = message.getAnnotation(WireMessage.class).timestampAfter();
+
+        /**
+         * int index in fields of the field the time stamp follows; -1 if it is in the header
+         */
+        int timestampIndex = -1;
+
+        for (int i = 0; i < fields.size(); ++i)
+        {
+            if (fields.get(i)._name.equalsIgnoreCase(timestampAfter.startsWith("_") ?
+                    timestampAfter.substring(1) : timestampAfter))
+                timestampIndex = i;
+        }
+
+        // IF the time stamp is to follow a field the message doesn't have
+        if (!timestampAfter.isEmpty() && timestampIndex < 0)
+        {
+            error(message, "WireMessage " + name + " has no WireField " + timestampAfter +
+                    " for the time stamp to follow");
+            return false;
+        }
+
+        /**
+         * int for the bytes the fixed width fields take up: the type, the time stamp and the message's own
+         */
+        int fixedSize = 4 + 8;
+
+        StringBuilder size = new StringBuilder();
+
+        for (Field field : fields)
+        {
+            fixedSize += FIXED_SIZES[field._kind];
+
+            if (field._kind == STRING)
+                size.append(" + Message.stringSize(message.get").append(field._name).append("())");
+            else if (field._kind == BYTES)
+                size.append(" + Message.byteArraySize(message.get").append(field._name).append("())");
+        }
+
+        // encodedSize()
+        source.append("    /**\n");
+        source.append("     * @param message <code>").append(name).append("</code> to be measured.\n");
+        source.append("     * @return <code>int</code> of the number of bytes the message takes up on the wire.\n");
+        source.append("     */\n");
+        source.append("    static int encodedSize(").append(name).append(" message)\n    {\n");
+        source.append("        return ").append(fixedSize).append(" + message.senderSize()").append(size)
+                .append(";\n    }\n\n");
+
+        // writeTo()
+        source.append("    /**\n");
+        source.append("     * @param message <code>").append(name).append("</code> to be written.\n");
+        source.append("     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.\n");
+        source.append("     */\n");
+        source.append("    static void writeTo(").append(name).append(" message, ByteBuffer buffer)\n    {\n");
+
+        if (timestampIndex < 0)
+            source.append("        message.writeHeader(buffer);\n");
+        else
+        {
+            source.append("        buffer.putInt(message.getType());\n");
+            source.append("        message.writeSender(buffer);\n");
+        }
+
+        for (int i = 0; i < fields.size(); ++i)
+        {
+            Field field = fields.get(i);
+            String value = "message.get" + field._name + "()";
+
+            if (field._kind == INT)
+                source.append("        buffer.putInt(").append(value).append(");\n");
+            else if (field._kind == LONG)
+                source.append("        buffer.putLong(").append(value).append(");\n");
+            else if (field._kind == BOOLEAN)
+                source.append("        buffer.put((byte) (").append(value).append(" ? 1 : 0));\n");
+            else if (field._kind == STRING)
+                source.append("        Message.putString(buffer, ").append(value).append(");\n");
+            else
+                source.append("        Message.putByteArray(buffer, ").append(value).append(");\n");
+
+            if (i == timestampIndex)
+                source.append("        buffer.putLong(message.getTimestamp());\n");
+        }
+
+        source.append("    }\n\n");
+
+        // readFrom()
+        source.append("    /**\n");
+        source.append("     * @param message <code>").append(name).append("</code> to read the fields into.\n");
+        source.append("     * @param buffer  <code>ByteBuffer</code> holding the message.\n");
+        source.append("     * @throws MessageTypeException if the buffer holds a message of another type.\n");
+        source.append("     */\n");
+        source.append("    static void readFrom(").append(name).append(" message, ByteBuffer buffer) ")
+                .append("throws MessageTypeException\n    {\n");
+
+        if (timestampIndex < 0)
+            source.append("        message.readHeader(buffer);\n");
+        else
+        {
+            source.append("        message.readType(buffer);\n");
+            source.append("        message.readSender(buffer);\n");
+        }
+
+        for (int i = 0; i < fields.size(); ++i)
+        {
+            Field field = fields.get(i);
+
+            source.append("        message.set").append(field._name).append("(");
+
+            if (field._kind == INT)
+                source.append("buffer.getInt()");
+            else if (field._kind == LONG)
+                source.append("buffer.getLong()");
+            else if (field._kind == BOOLEAN)
+                source.append("buffer.get() != 0");
+            else if (field._kind == STRING)
+                source.append("Message.getString(buffer)");
+            else
+                source.append("Message.getByteArray(buffer)");
+
+            source.append(");\n");
+
+            if (i == timestampIndex)
+                source.append("        message.setTimestamp(buffer.getLong());\n");
+        }
+
+        source.append("    }\n\n");
+
+        return true;
+    }
+
+    /**
+     * Private method to work out how a WireField goes over the wire, and check it can be read and written.
+     *
+     * @param message <code>TypeElement</code> of the message declaring the field.
+     * @param element <code>VariableElement</code> of the field.
+     * @return <code>Field</code> of the field; null if an error was reported instead.
+     */
+    private Field field(TypeElement message, VariableElement element)
+    {
+        String fieldName = element.getSimpleName().toString();
+        String bare = fieldName.startsWith("_") ? fieldName.substring(1) : fieldName;
+        String name = Character.toUpperCase(bare.charAt(0)) + bare.substring(1);
+
+        TypeMirror type = element.asType();
+
+        int kind;
+
+        if (type.getKind() == TypeKind.INT)
+            kind = INT;
+        else if (type.getKind() == TypeKind.LONG)
+            kind = LONG;
+        else if (type.getKind() == TypeKind.BOOLEAN)
+            kind = BOOLEAN;
+        else if (type.getKind() == TypeKind.DECLARED &&
+                ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals("java.lang.String"))
+            kind = STRING;
+        else if (type.getKind() == TypeKind.ARRAY && ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE)
+            kind = BYTES;
+        else
+        {
+            error(element, "WireField " + fieldName + " must be an int, long, boolean, String or byte[]");
+            return null;
+        }
+
+        // IF the field can't be read and written through an accessor and mutator the codec can call
+        if (!hasMethod(message, "get" + name, 0) || !hasMethod(message, "set" + name, 1))
+        {
+            error(element, "WireField " + fieldName + " needs a get" + name + "() and a set" + name + "()");
+            return null;
+        }
+
+        return new Field(name, kind);
+    }
+
+    /**
+     * @param type       <code>TypeElement</code> of the class to look in, along with the classes it extends.
+     * @param name       <code>String</code> of the name of the method.
+     * @param parameters <code>int</code> of the number of parameters it takes.
+     * @return <code>true</code> if the class has a method by that name, taking that many parameters, that
+     * the codec can call.
+     */
+    private boolean hasMethod(TypeElement type, String name, int parameters)
+    {
+        // WHILE there are classes left to look in
+        while (type != null)
+        {
+            for (Element element : type.getEnclosedElements())
+            {
+                if (element.getKind() == ElementKind.METHOD && element.getSimpleName().contentEquals(name) &&
+                        ((ExecutableElement) element).getParameters().size() == parameters &&
+                        !element.getModifiers().contains(Modifier.PRIVATE))
+                    return true;
+            }
+
+            type = superclass(type);
+        }
+
+        return false;
+    }
+
+    /**
+     * @param type <code>TypeElement</code> of a class.
+     * @return <code>true</code> if the class extends Message.
+     */
+    private boolean isMessage(TypeElement type)
+    {
+        // WHILE there are classes left to look at
+        while ((type = superclass(type)) != null)
+        {
+            if (type.getQualifiedName().contentEquals(PACKAGE + ".Message"))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param type <code>TypeElement</code> of a class.
+     * @return <code>TypeElement</code> of the class it extends; null if it is Object.
+     */
+    private TypeElement superclass(TypeElement type)
+    {
+        TypeMirror superclass = type.getSuperclass();
+
+        if (superclass.getKind() != TypeKind.DECLARED)
+            return null;
+
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    /**
+     * Private method to report an error against an element, failing the compile.
+     *
+     * @param element <code>Element</code> the error is in.
+     * @param message <code>String</code> of what is wrong.
+     */
+    private void error(Element element, String message)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+
+    /**
+     * ************************* OVERIDDEN METHODS **********************************
+     */
+    @Override
+    public Set<String> getSupportedAnnotationTypes()
+    {
+        Set<String> types = new LinkedHashSet<String>();
+        types.add(WireMessage.class.getCanonicalName());
+
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+}
@@ -7,25 +7,23 @@ import cs455.overlay.wireformats.*;
 
 import java.io.IOException;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A NodeMessageGenerator class to send random values to random nodes
  * throughout the overlay in a series of messages sent over a period of
- * rounds designated by the Statics final declarations.
+ * rounds designated by the Statics final declarations. The generator runs on
+ * a thread from the OverlayThreadFactory.
  *
  * @author ahrtmn, 16 02 2014
  */
-public class NodeMessageGenerator extends Thread
+public class NodeMessageGenerator implements Runnable
 {
     /**
-     * HashMap reference to all the registered nodes in the overlay for
-     * random selection for message sending.
+     * Link array of the links to the nodes this node is connected to, by the index the Registry
+     * assigned each node, for the first hop of every message sent.
      */
-    private HashMap<String, Link> _registeredNodes;
+    private Link[] _links;
 
     /**
      * String of the registry ID to be sent with all outgoing messages
@@ -61,14 +59,14 @@ public class NodeMessageGenerator extends Thread
     /**
      * Constructor for the NodeMessageGenerator class.
      *
-     * @param registeredNodes <code>HashMap<String, Link></code> reference to all registered nodes in the Overlay.
-     * @param registryID      <code>String</code> of the Registry that all MessagingNode's in this Overlay connect to.
-     * @param callbackNode    <code>Node</code> reference to the node in the overlay that requested this job.
+     * @param links        <code>Link[]</code> of the calling node's links, by the index of the node each is to.
+     * @param registryID   <code>String</code> of the Registry that all MessagingNode's in this Overlay connect to.
+     * @param callbackNode <code>Node</code> reference to the node in the overlay that requested this job.
+     * @param routing      <code>RoutingCache</code> of the shortest paths from the calling node.
      */
-    public NodeMessageGenerator(HashMap<String, Link> registeredNodes, String registryID, Node callbackNode,
-                                RoutingCache routing)
+    public NodeMessageGenerator(Link[] links, String registryID, Node callbackNode, RoutingCache routing)
     {
-        _registeredNodes = registeredNodes;
+        _links = links;
         _registryID = registryID;
         _callbackNode = callbackNode;
         _routing = routing;
@@ -77,6 +75,14 @@ public class NodeMessageGenerator extends Thread
         _eventFactory = EventFactory.getFactoryInstance();
     }
 
+    /**
+     * Method to start generating messages on a thread of the selected kind.
+     */
+    public void start()
+    {
+        OverlayThreadFactory.getFactoryInstance().start(this, "message-generator");
+    }
+
     public void run()
     {
         /**
@@ -95,20 +101,19 @@ public class NodeMessageGenerator extends Thread
         Random rand = new Random(new Date().getTime());
 
         /**
-         * String to hold the random sink node
+         * int to hold the index of the random sink node
          */
-        String randomSinkNode;
+        int randomSinkNode;
 
         /**
-         * Object array to hold the strings of all our node ID's
+         * int array to hold the indices of all the nodes we have a route to; never ourselves or the registry
          */
-        Object[] nodeKeys = _routing.getRoutingMap().keySet().toArray();
-//        Object[] registeredKeys = _registeredNodes.keySet().toArray();
+        int[] nodeKeys = _routing.getSinks();
 
         /**
-         * LinkedList for the shortest path to the sink node
+         * int array for the shortest path to the sink node
          */
-        LinkedList<String> shortestPath;
+        int[] shortestPath;
 
         /**
          * String containing the sending node's ID
@@ -154,15 +159,7 @@ public class NodeMessageGenerator extends Thread
         {
 
             randNodeIndex = rand.nextInt(nodeKeys.length);
-            randomSinkNode = nodeKeys[randNodeIndex].toString();
-
-
-            // WHILE the random node index continues to be the registry or ourselves
-            while (randomSinkNode.equals(_registryID) || randomSinkNode.equals(nodeID))
-            {
-                randNodeIndex = rand.nextInt(nodeKeys.length);
-                randomSinkNode = nodeKeys[randNodeIndex].toString();
-            }
+            randomSinkNode = nodeKeys[randNodeIndex];
 
 
             shortestPath = _routing.getRoute(randomSinkNode);   // get the shortest path to the chosen node
@@ -183,14 +180,14 @@ public class NodeMessageGenerator extends Thread
                 PayloadMessage payloadMessage = (PayloadMessage) _eventFactory.createEvent(Protocol
                         .PAYLOAD_MESSAGE, nodeAddress, nodePort, nodeID);
 
-                // Add the shortest path to our message
-                for (String s : shortestPath)
-                    payloadMessage.getPath().add(s);
+                // Add the shortest path to our message; every message along it shares the one array
+                payloadMessage.setPath(shortestPath);
 
 
                 payloadMessage.setPayload(randVal);
 
-                _registeredNodes.get(payloadMessage.getPath().getFirst()).send(payloadMessage.getBytes());
+                // send within the link's credit window, waiting for credit if it has run out
+                _links[shortestPath[0]].sendPayload(payloadMessage.getBytes(), true);
 
 
                 _sendTracker += 1;          // increment the count for total messages sent
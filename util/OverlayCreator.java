@@ -22,17 +22,25 @@ public class OverlayCreator
      */
     private int _numConnections;
 
+    /**
+     * HashMap with the index the Registry assigned each Node, by its ID
+     */
+    private HashMap<String, Integer> _nodeIndices;
+
     /**
      * Constructor for the OverlayCreator class.
      *
      * @param registrationRequestMap <code>HashMap</code> of the calling Registry node's registered nodes.
      * @param numConnections         <code>int</code> denoting how many connections the overlay should give each
      *                               MessagingNode.
+     * @param nodeIndices            <code>HashMap</code> of the index the Registry assigned each node, by its ID.
      */
-    public OverlayCreator(HashMap<String, RegistrationRequest> registrationRequestMap, int numConnections)
+    public OverlayCreator(HashMap<String, RegistrationRequest> registrationRequestMap, int numConnections,
+                          HashMap<String, Integer> nodeIndices)
     {
         _registrationRequestMap = registrationRequestMap;
         _numConnections = numConnections;
+        _nodeIndices = nodeIndices;
     }
 
     /**
@@ -88,6 +96,8 @@ public class OverlayCreator
                             .getIpAddress(),
                     getRegisteredNodesMap().get(nodeKey.toString()).getPort(), nodeKey.toString());
 
+            nodeListMessage.setNodeIndex(getNodeIndex(nodeKey.toString()));
+
             /**
              * Put the peer messaging list message in the peer list hash map hashed to the recipient of that message.
              * This will allow us to easily add and increment the connections a particular message has.
@@ -124,8 +134,8 @@ public class OverlayCreator
                 /**
                  * Add a connection from the current node to the next node
                  */
-                messagingNodeList.getNodeConnectionInfo().add(getRegisteredNodesMap().get(nodeKeys[i + 1].toString())
-                        .getID());
+                messagingNodeList.addNodeConnectionInfo(getRegisteredNodesMap().get(nodeKeys[i + 1].toString())
+                        .getID(), getNodeIndex(nodeKeys[i + 1].toString()));
 
                 messagingNodeList.setNumPeerMessagingNodes(getNumConnections());
 
@@ -133,8 +143,8 @@ public class OverlayCreator
                  * Now add a connection from the current node to the 2nd node after us (the i + 2 node)
                  */
 
-                messagingNodeList.getNodeConnectionInfo().add(getRegisteredNodesMap().get(nodeKeys[i + 2].toString())
-                        .getID());
+                messagingNodeList.addNodeConnectionInfo(getRegisteredNodesMap().get(nodeKeys[i + 2].toString())
+                        .getID(), getNodeIndex(nodeKeys[i + 2].toString()));
 
                 messagingNodeList.setNumPeerMessagingNodes(getNumConnections());
 
@@ -146,8 +156,8 @@ public class OverlayCreator
                 /**
                  * Add a connection from the current node to the next node
                  */
-                messagingNodeList.getNodeConnectionInfo().add(getRegisteredNodesMap().get(nodeKeys[i + 1].toString())
-                        .getID());
+                messagingNodeList.addNodeConnectionInfo(getRegisteredNodesMap().get(nodeKeys[i + 1].toString())
+                        .getID(), getNodeIndex(nodeKeys[i + 1].toString()));
 
                 messagingNodeList.setNumPeerMessagingNodes(getNumConnections());
 
@@ -156,8 +166,8 @@ public class OverlayCreator
                  * Now add a connection from the 9th node to the first node
                  */
 
-                messagingNodeList.getNodeConnectionInfo().add(getRegisteredNodesMap().get(nodeKeys[0].toString())
-                        .getID());
+                messagingNodeList.addNodeConnectionInfo(getRegisteredNodesMap().get(nodeKeys[0].toString())
+                        .getID(), getNodeIndex(nodeKeys[0].toString()));
 
                 messagingNodeList.setNumPeerMessagingNodes(getNumConnections());
 
@@ -167,8 +177,8 @@ public class OverlayCreator
                 /**
                  * Add a connection from the current node to the next node
                  */
-                messagingNodeList.getNodeConnectionInfo().add(getRegisteredNodesMap().get(nodeKeys[0].toString())
-                        .getID());
+                messagingNodeList.addNodeConnectionInfo(getRegisteredNodesMap().get(nodeKeys[0].toString())
+                        .getID(), getNodeIndex(nodeKeys[0].toString()));
 
                 messagingNodeList.setNumPeerMessagingNodes(getNumConnections());
 
@@ -177,8 +187,8 @@ public class OverlayCreator
                  * Now add a connection from the current node to the 2nd node after us (the i + 2 node)
                  */
 
-                messagingNodeList.getNodeConnectionInfo().add(getRegisteredNodesMap().get(nodeKeys[1].toString())
-                        .getID());
+                messagingNodeList.addNodeConnectionInfo(getRegisteredNodesMap().get(nodeKeys[1].toString())
+                        .getID(), getNodeIndex(nodeKeys[1].toString()));
 
                 messagingNodeList.setNumPeerMessagingNodes(getNumConnections());
 
@@ -195,6 +205,17 @@ public class OverlayCreator
      */
 
 
+    /**
+     * @param nodeID <code>String</code> of a registered node's ID.
+     * @return <code>int</code> of the index the Registry assigned the node; -1 if it has none.
+     */
+    private int getNodeIndex(String nodeID)
+    {
+        Integer index = _nodeIndices.get(nodeID);
+
+        return (index == null) ? -1 : index;
+    }
+
     public HashMap<String, RegistrationRequest> getRegisteredNodesMap()
     {
         return _registrationRequestMap;
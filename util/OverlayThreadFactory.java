@@ -0,0 +1,115 @@
+package cs455.overlay.util;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A Singleton OverlayThreadFactory.getFactoryInstance() class to create the threads that run the
+ * blocking parts of the Overlay: server accept loops, connection receivers, Link writers and
+ * message generators. Which kind of thread is chosen at startup with Statics.THREADS; "platform"
+ * gives ordinary threads, "virtual" gives virtual threads so a JVM can hold many more connections
+ * without any change to the blocking I/O code.
+ *
+ * Virtual threads are looked up reflectively so the Overlay still builds and runs on JVMs without
+ * them; on such a JVM asking for them prints a warning and platform threads are used instead.
+ *
+ * Measured on JDK 21 (one core) with ThreadModeBenchmark: at 1000 connections virtual threads echo
+ * about as fast as platform threads (~140-155k/s either way) on 12 platform threads instead of about
+ * 2,200; at 5000 connections they echo 82k/s against 37k/s. Receivers still block while holding
+ * their node's monitor, which on JDK 21 keeps the carrier, so with few carriers an overlay task is
+ * slower to deliver its last messages than with platform threads.
+ */
+public class OverlayThreadFactory implements ThreadFactory
+{
+    private static final OverlayThreadFactory _factoryInstance = new OverlayThreadFactory();
+
+    /**
+     * ThreadFactory for virtual threads; null when platform threads are in use
+     */
+    private ThreadFactory _virtualFactory;
+
+
+    private OverlayThreadFactory()
+    {
+        // IF virtual threads were asked for, find them
+        if (Statics.THREADS_VIRTUAL.equals(Statics.THREADS))
+        {
+            try
+            {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+                _virtualFactory = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                        .getMethod("factory").invoke(builder);
+            }
+            catch (ReflectiveOperationException | RuntimeException e)
+            {
+                System.err.println("Virtual threads are not available on this JVM (" + System.getProperty
+                        ("java.version") + "), using platform threads: " + e);
+            }
+        }
+    }
+
+
+    /**
+     * ThreadFactory interface method to create an unstarted thread of the selected kind.
+     *
+     * @param runnable <code>Runnable</code> for the thread to run.
+     * @return unstarted <code>Thread</code>.
+     */
+    public Thread newThread(Runnable runnable)
+    {
+        // IF we are using virtual threads
+        if (_virtualFactory != null)
+            return _virtualFactory.newThread(runnable);
+
+        return new Thread(runnable);
+    }
+
+    /**
+     * Method to create an unstarted, named thread of the selected kind.
+     *
+     * @param runnable <code>Runnable</code> for the thread to run.
+     * @param name     <code>String</code> to name the thread.
+     * @return unstarted <code>Thread</code>.
+     */
+    public Thread newThread(Runnable runnable, String name)
+    {
+        Thread thread = newThread(runnable);
+        thread.setName(name);
+
+        return thread;
+    }
+
+    /**
+     * Method to create and start a named thread of the selected kind.
+     *
+     * @param runnable <code>Runnable</code> for the thread to run.
+     * @param name     <code>String</code> to name the thread.
+     * @return the started <code>Thread</code>.
+     */
+    public Thread start(Runnable runnable, String name)
+    {
+        Thread thread = newThread(runnable, name);
+        thread.start();
+
+        return thread;
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    /**
+     * @return <code>true</code> if the threads created are virtual threads.
+     */
+    public boolean isVirtual()
+    {
+        return _virtualFactory != null;
+    }
+
+    public static OverlayThreadFactory getFactoryInstance()
+    {
+        return _factoryInstance;
+    }
+
+}
@@ -1,9 +1,12 @@
 package cs455.overlay.util;
 
+import java.io.File;
+
 
 /**
  * A Statics interface to contain static variable definitions for use within
- * the Overlay.
+ * the Overlay. Values that can be chosen at startup are read from system
+ * properties, ie. java -Doverlay.transport=nio ...
  *
  * @author ahrtmn, 16 02 2014
  */
@@ -18,4 +21,366 @@ public interface Statics
      * int for the number of messages to send each round
      */
     public static final int NODE_MESSAGES_PER_ROUND = 5;
+
+    /**
+     * Names of the transports that can be selected with overlay.transport
+     */
+    public static final String TRANSPORT_TCP = "tcp";
+    public static final String TRANSPORT_NIO = "nio";
+    public static final String TRANSPORT_MEMORY = "memory";
+
+    /**
+     * String for the transport to use: "tcp" for a receiver thread per connection,
+     * "nio" for selector event loops shared by all connections, or "memory" for queues
+     * between nodes in the same JVM (see OverlayLauncher).
+     */
+    public static final String TRANSPORT = System.getProperty("overlay.transport", TRANSPORT_TCP);
+
+    /**
+     * int for the number of selector event loops used by the "nio" transport
+     */
+    public static final int NIO_EVENT_LOOPS = Integer.getInteger("overlay.nio.loops",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * int for the number of threads the "nio" transport hands received frames to Nodes on, shared by
+     * every connection; as many as there are event loops unless overlay.nio.delivery is set
+     */
+    public static final int NIO_DELIVERY_THREADS = Integer.getInteger("overlay.nio.delivery", NIO_EVENT_LOOPS);
+
+    /**
+     * int for the most bytes of frames an NIOConnection holds waiting for the event loop to write
+     * them: a LinkWriter leaves the rest in its Link's own queues, and any other thread sending waits
+     * until the socket has taken some of them
+     */
+    public static final int NIO_WRITE_QUEUE_BYTES = Integer.getInteger("overlay.nio.writequeue", 1024 * 1024);
+
+    /**
+     * Names of the sender modes that can be selected with overlay.sender
+     */
+    public static final String SENDER_STREAM = "stream";
+    public static final String SENDER_GATHER = "gather";
+
+    /**
+     * String for how TCPSenders write: "stream" writes each frame as it is sent, "gather" coalesces
+     * back-to-back frames into single gathering writes on the socket's channel; a socket without a
+     * channel is written in "stream" mode either way.
+     */
+    public static final String SENDER = System.getProperty("overlay.sender", SENDER_STREAM);
+
+    /**
+     * int for the number of pending bytes at which a gathering sender writes without waiting
+     */
+    public static final int SENDER_COALESCE_BYTES = Integer.getInteger("overlay.sender.coalesce.bytes", 16 * 1024);
+
+    /**
+     * int for the most microseconds a gathering sender holds a frame back waiting for more
+     */
+    public static final int SENDER_COALESCE_MICROS = Integer.getInteger("overlay.sender.coalesce.micros", 100);
+
+    /**
+     * int for the most frames queued on a Link waiting to be written by its writer; 0 to have the
+     * sending thread write to the socket itself
+     */
+    public static final int LINK_QUEUE_CAPACITY = Integer.getInteger("overlay.link.queue", 64 * 1024);
+
+    /**
+     * int for the most control frames queued on a Link ahead of its payload messages
+     */
+    public static final int LINK_CONTROL_QUEUE_CAPACITY = Integer.getInteger("overlay.link.control.queue", 1024);
+
+    /**
+     * Names of the receive paths that can be selected with overlay.receiver
+     */
+    public static final String RECEIVER_STREAM = "stream";
+    public static final String RECEIVER_BULK = "bulk";
+
+    /**
+     * String for how TCPReceiverThreads read: "stream" reads each frame on its own into a new array,
+     * "bulk" reads as much as the socket has into a pooled buffer and decodes every frame in it.
+     */
+    public static final String RECEIVER = System.getProperty("overlay.receiver", RECEIVER_BULK);
+
+    /**
+     * int for the size in bytes of the pooled receive buffers
+     */
+    public static final int RECEIVE_BUFFER_SIZE = Integer.getInteger("overlay.receive.buffer", 64 * 1024);
+
+    /**
+     * boolean for if receive buffers should be direct (off heap) when the socket has a channel to read them
+     */
+    public static final boolean RECEIVE_BUFFER_DIRECT = Boolean.getBoolean("overlay.receive.direct");
+
+    /**
+     * int for the most free receive buffers kept in the pool
+     */
+    public static final int RECEIVE_POOL_SIZE = Integer.getInteger("overlay.receive.pool", 64);
+
+    /**
+     * Names of the kinds of thread that can be selected with overlay.threads
+     */
+    public static final String THREADS_PLATFORM = "platform";
+    public static final String THREADS_VIRTUAL = "virtual";
+
+    /**
+     * String for the kind of thread that runs accept loops, receivers, Link writers and message
+     * generators: "platform" or "virtual" (on JVMs that have them).
+     */
+    public static final String THREADS = System.getProperty("overlay.threads", THREADS_PLATFORM);
+
+    /**
+     * int for the number of payload messages either end of a Link may have outstanding before it
+     * has to wait for credits back from the other end; 0 to turn flow control off. Every node in
+     * the overlay must use the same setting.
+     */
+    public static final int FLOW_CREDIT_WINDOW = Integer.getInteger("overlay.flow.window", 1024);
+
+    /**
+     * Names of the policies that can be selected with overlay.flow.policy
+     */
+    public static final String FLOW_POLICY_SPILL = "spill";
+    public static final String FLOW_POLICY_DROP = "drop";
+
+    /**
+     * String for what a relay does with a payload message when its next Link is out of credits:
+     * "spill" keeps it (up to overlay.flow.spill messages) until credits come back, "drop" drops it.
+     */
+    public static final String FLOW_POLICY = System.getProperty("overlay.flow.policy", FLOW_POLICY_SPILL);
+
+    /**
+     * int for the most payload messages spilled on a Link waiting for credits
+     */
+    public static final int FLOW_SPILL_CAPACITY = Integer.getInteger("overlay.flow.spill", 4096);
+
+    /**
+     * boolean for if MessagingNodes on the same machine should carry their Links over memory-mapped
+     * ring files rather than loopback TCP
+     */
+    public static final boolean SHM = Boolean.getBoolean("overlay.shm");
+
+    /**
+     * String for the directory ring files are created in; /dev/shm where there is one
+     */
+    public static final String SHM_DIR = System.getProperty("overlay.shm.dir",
+            new File("/dev/shm").isDirectory() ? "/dev/shm" : System.getProperty("java.io.tmpdir"));
+
+    /**
+     * int for the bytes of frames each direction of a ring file holds
+     */
+    public static final int SHM_RING_BYTES = Integer.getInteger("overlay.shm.ring", 1024 * 1024);
+
+    /**
+     * int for the number of times a ring reader (or a writer facing a full ring) spins before it parks
+     */
+    public static final int SHM_SPIN = Integer.getInteger("overlay.shm.spin", 20000);
+
+    /**
+     * boolean for if MessagingNodes should send payload messages to each other as UDP datagrams,
+     * with no retransmission, rather than over their TCP Links; control messages stay on TCP
+     */
+    public static final boolean DATAGRAM = Boolean.getBoolean("overlay.datagram");
+
+    /**
+     * int for the most bytes of payload messages packed into one datagram; kept under a 1500 byte
+     * MTU by default so datagrams are not fragmented
+     */
+    public static final int DATAGRAM_BYTES = Integer.getInteger("overlay.datagram.bytes", 1400);
+
+    /**
+     * int for the most microseconds a datagram that isn't full is held back for more messages; 0
+     * sends every message in a datagram of its own
+     */
+    public static final int DATAGRAM_LINGER_MICROS = Integer.getInteger("overlay.datagram.linger", 200);
+
+    /**
+     * int for the bytes of socket buffer asked for in each direction of a datagram endpoint; a burst
+     * bigger than the receive buffer is lost
+     */
+    public static final int DATAGRAM_SOCKET_BUFFER = Integer.getInteger("overlay.datagram.buffer", 4 * 1024 * 1024);
+
+    /**
+     * boolean for if Links should compress the frames they send in batches, where the node at the
+     * other end has compression turned on too
+     */
+    public static final boolean COMPRESS = Boolean.getBoolean("overlay.compress");
+
+    /**
+     * boolean for if Links should send payload messages in the compact form (see CompactPayload),
+     * where the node at the other end has it turned on too
+     */
+    public static final boolean COMPACT = Boolean.getBoolean("overlay.compact");
+
+    /**
+     * int for the Deflater level batches are compressed at; 1 (fastest) to 9 (smallest)
+     */
+    public static final int COMPRESS_LEVEL = Integer.getInteger("overlay.compress.level", 1);
+
+    /**
+     * int for the bytes of frames gathered before a batch is compressed and sent
+     */
+    public static final int COMPRESS_BATCH_BYTES = Integer.getInteger("overlay.compress.batch", 32 * 1024);
+
+    /**
+     * int for the smallest frame worth compressing when it is the only one in a batch
+     */
+    public static final int COMPRESS_MIN_BYTES = Integer.getInteger("overlay.compress.min", 256);
+
+    /**
+     * Names of the ways a MessagingNode can relay payload messages, selected with overlay.relay
+     */
+    public static final String RELAY_CURSOR = "cursor";
+    public static final String RELAY_DECODE = "decode";
+
+    /**
+     * String for how payload messages are relayed: "cursor" forwards the received frame with its hop
+     * cursor moved on, "decode" decodes the message and encodes it again for the next hop
+     */
+    public static final String RELAY = System.getProperty("overlay.relay", RELAY_CURSOR);
+
+    /**
+     * int for the bytes from which a payload frame a TCP receiver relays with the "cursor" relay is cut
+     * through: written on to its next hop as it arrives rather than once it all has; 0 to never cut through.
+     * Only a resumable Link, one with a RESUME_BUFFER, is cut through to.
+     * The "bulk" receiver only sees a frame still arriving when it is larger than what one read brings in,
+     * so it cuts through far fewer frames than the "stream" receiver.
+     */
+    public static final int CUT_THROUGH_BYTES = Integer.getInteger("overlay.relay.cutthrough", 0);
+
+    /**
+     * int for the most milliseconds a frame being cut through may hold the next hop's Link while waiting
+     * for the rest of it to arrive. Nothing else, control frames included, is written to that Link in the
+     * meantime; a frame that takes longer is taken back by breaking the next hop's connection, and is then
+     * received whole and sent the usual way once the Link has been resumed.
+     */
+    public static final int CUT_THROUGH_WAIT_MILLIS = Integer.getInteger("overlay.relay.cutthrough.wait", 20);
+
+    /**
+     * int for the milliseconds between rounds of LinkPing probes on a MessagingNode's Links; 0 to not probe
+     */
+    public static final int PROBE_INTERVAL_MILLIS = Integer.getInteger("overlay.probe.interval", 1000);
+
+    /**
+     * Names of the ways the Registry can weight the overlay's links, selected with overlay.weights
+     */
+    public static final String LINK_WEIGHTS_RANDOM = "random";
+    public static final String LINK_WEIGHTS_RTT = "rtt";
+
+    /**
+     * String for how the Registry weights links when send-overlay-link-weights is given no argument:
+     * "random" as the assignment asks, or "rtt" from the round trip times the MessagingNodes measured
+     */
+    public static final String LINK_WEIGHTS = System.getProperty("overlay.weights", LINK_WEIGHTS_RANDOM);
+
+    /**
+     * int for the microseconds of round trip time making up one unit of measured link weight
+     */
+    public static final int LINK_WEIGHT_UNIT_MICROS = Integer.getInteger("overlay.weights.unit", 10);
+
+    /**
+     * int for the number of extra connections a MessagingNode opens alongside each Link it opens to
+     * another MessagingNode, to spread payload messages over; 0 for one connection per Link
+     */
+    public static final int LINK_STRIPES = Integer.getInteger("overlay.link.stripes", 0);
+
+    /**
+     * Names of the ways payload messages are spread over a striped Link, selected with overlay.link.stripe.policy
+     */
+    public static final String LINK_STRIPE_FLOW = "flow";
+    public static final String LINK_STRIPE_ROUND_ROBIN = "roundrobin";
+
+    /**
+     * String for how payload messages are spread over a striped Link: "flow" by a hash of their source,
+     * so each source's messages stay in order, or "roundrobin", which spreads a single hot source too
+     */
+    public static final String LINK_STRIPE_POLICY = System.getProperty("overlay.link.stripe.policy", LINK_STRIPE_FLOW);
+
+    /**
+     * int for the frames an in-memory connection holds for its receiver before a sender has to wait
+     */
+    public static final int MEMORY_QUEUE_CAPACITY = Integer.getInteger("overlay.memory.queue", 4096);
+
+    /**
+     * int for the milliseconds the Registry waits between sending each node its TaskInitiate
+     */
+    public static final int TASK_INITIATE_STAGGER_MILLIS = Integer.getInteger("overlay.start.stagger", 5000);
+
+    /**
+     * String of the WAN path the Registry has every Link emulate when it sends the link weights, as
+     * "delay ms,jitter ms,bandwidth kB/s,loss %"; empty for none (see the emulate-links command)
+     */
+    public static final String EMULATE = System.getProperty("overlay.emulate", "");
+
+    /**
+     * int for the milliseconds an emulated lost frame waits for its retransmission
+     */
+    public static final int EMULATE_RTO_MILLIS = Integer.getInteger("overlay.emulate.rto", 200);
+
+    /**
+     * int for the bytes an emulated bandwidth cap lets through in a burst
+     */
+    public static final int EMULATE_BURST_BYTES = Integer.getInteger("overlay.emulate.burst", 16 * 1024);
+
+    /**
+     * Strings naming the ways a transport loop can wait when it has nothing to do (see WaitStrategy)
+     */
+    public static final String WAIT_SPIN = "spin";
+    public static final String WAIT_YIELD = "yield";
+    public static final String WAIT_BACKOFF = "backoff";
+    public static final String WAIT_BLOCKING = "blocking";
+
+    /**
+     * String of how receive loops wait for frames; empty for each loop's own way
+     */
+    public static final String WAIT_RECEIVE = System.getProperty("overlay.wait.receive", "");
+
+    /**
+     * String of how send loops wait for frames, or for room to queue them; empty for each loop's own way
+     */
+    public static final String WAIT_SEND = System.getProperty("overlay.wait.send", "");
+
+    /**
+     * int for the idle polls a yield or backoff wait spins for before it yields or parks
+     */
+    public static final int WAIT_SPINS = Integer.getInteger("overlay.wait.spins", 1000);
+
+    /**
+     * int for the most microseconds a backoff wait parks for between polls
+     */
+    public static final int WAIT_MAX_PARK_MICROS = Integer.getInteger("overlay.wait.park", 100);
+
+    /**
+     * boolean for if TCP connections should send small frames at once (TCP_NODELAY) rather than let
+     * Nagle's algorithm hold them back to coalesce them; for latency critical runs
+     */
+    public static final boolean TCP_NO_DELAY = Boolean.getBoolean("overlay.tcp.nodelay");
+
+    /**
+     * Method to tell whether TCP connections, of either transport, are to send small frames at once:
+     * when asked to, and when the round trip times probes measure weight the overlay, as a probe held
+     * back by Nagle's algorithm measures the hold rather than the path.
+     *
+     * @return <code>true</code> if TCP_NODELAY is to be set on TCP connections.
+     */
+    public static boolean tcpNoDelay()
+    {
+        return TCP_NO_DELAY || LINK_WEIGHTS.equals(LINK_WEIGHTS_RTT);
+    }
+
+    /**
+     * int for the most frames sent over a Link that are kept, until the other end acknowledges them,
+     * to be replayed if the Link's connection fails and is resumed; 0, the default, for Links that
+     * aren't resumed. Resuming costs a reference to every unacknowledged frame and a LinkAck every
+     * RESUME_ACK_FRAMES frames, so it is asked for; cutting frames through needs it.
+     */
+    public static final int RESUME_BUFFER = Integer.getInteger("overlay.resume.buffer", 0);
+
+    /**
+     * int for the frames received over a resumable Link between the LinkAcks sent back for them
+     */
+    public static final int RESUME_ACK_FRAMES = Integer.getInteger("overlay.resume.ack", 256);
+
+    /**
+     * int for the milliseconds a failed Link is given to be resumed before it is dropped
+     */
+    public static final int RESUME_TIMEOUT_MILLIS = Integer.getInteger("overlay.resume.timeout", 30000);
 }
@@ -32,6 +32,16 @@ public class StatisticsCollectorAndDisplay
      */
     private long _totalReceivedSummation;
 
+    /**
+     * int for the total number of datagram payload messages lost in the overlay
+     */
+    private int _totalLost;
+
+    /**
+     * int for the total number of datagram payload messages received out of order by the overlay
+     */
+    private int _totalReordered;
+
 
     public StatisticsCollectorAndDisplay()
     {
@@ -50,6 +60,8 @@ public class StatisticsCollectorAndDisplay
         _totalReceived += trafficSummary.getNumReceived();
         _totalSentSummation += trafficSummary.getSentSummation();
         _totalReceivedSummation += trafficSummary.getReceivedSummation();
+        _totalLost += trafficSummary.getNumLost();
+        _totalReordered += trafficSummary.getNumReordered();
 
         _trafficSummaryMap.put(trafficSummary.getID(), trafficSummary);
     }
@@ -76,7 +88,8 @@ public class StatisticsCollectorAndDisplay
         TrafficSummary trafficSummary;
 
         System.out.println("\t\tNumber of Messages Sent\t\tNumber of Messages Received\t\tSummation of Sent " +
-                "Messages\t\tSummation of Received Messages\t\tNumber of Messages Relayed");
+                "Messages\t\tSummation of Received Messages\t\tNumber of Messages Relayed" +
+                (Statics.DATAGRAM ? "\t\tNumber of Messages Lost\t\tNumber of Messages Reordered" : ""));
 
         // FOR every message in the map
         for (int i = 0; i < keys.length; ++i)
@@ -90,6 +103,13 @@ public class StatisticsCollectorAndDisplay
             System.out.print("\t\t" + trafficSummary.getSentSummation());
             System.out.print("\t\t" + trafficSummary.getReceivedSummation());
             System.out.print("\t\t" + trafficSummary.getNumRelayed());
+
+            // IF payload messages went as datagrams, show what became of them
+            if (Statics.DATAGRAM)
+            {
+                System.out.print("\t\t" + trafficSummary.getNumLost());
+                System.out.print("\t\t" + trafficSummary.getNumReordered());
+            }
             System.out.println();
         }
 
@@ -97,6 +117,13 @@ public class StatisticsCollectorAndDisplay
         System.out.print("\t\t" + _totalReceived);
         System.out.print("\t\t" + _totalSentSummation);
         System.out.print("\t\t" + _totalReceivedSummation);
+
+        if (Statics.DATAGRAM)
+        {
+            System.out.print("\t\t");
+            System.out.print("\t\t" + _totalLost);
+            System.out.print("\t\t" + _totalReordered);
+        }
         System.out.println();
     }
 
@@ -120,6 +147,8 @@ public class StatisticsCollectorAndDisplay
         _totalSentSummation = 0;
         _totalReceived = 0;
         _totalReceivedSummation = 0;
+        _totalLost = 0;
+        _totalReordered = 0;
 
         _trafficSummaryMap.clear();
     }
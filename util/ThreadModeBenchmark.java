@@ -0,0 +1,198 @@
+package cs455.overlay.util;
+
+import cs455.overlay.node.Node;
+import cs455.overlay.transport.Connection;
+import cs455.overlay.transport.ConnectionFactory;
+import cs455.overlay.transport.TCPServerThread;
+import cs455.overlay.wireformats.Event;
+import cs455.overlay.wireformats.EventFactory;
+import cs455.overlay.wireformats.PayloadMessage;
+import cs455.overlay.wireformats.Protocol;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ThreadModeBenchmark class to compare the kinds of thread the OverlayThreadFactory can give the
+ * transport. It opens a number of loopback connections to a TCPServerThread in this JVM, has a
+ * generator per connection send PayloadMessages over it, and has the server echo each one back
+ * from inside a synchronized onEvent, the way the MessagingNode relays. The time to connect, the
+ * time for every echo to come back, and the thread and heap use are printed.
+ *
+ * Run it once per kind of thread, ie.
+ * java -Doverlay.threads=platform cs455.overlay.util.ThreadModeBenchmark 1000 200
+ * java -Doverlay.threads=virtual -Djdk.tracePinnedThreads=short cs455.overlay.util.ThreadModeBenchmark 1000 200
+ * where the arguments are the number of connections and the messages sent on each. With virtual
+ * threads, -Djdk.tracePinnedThreads reports each time a receiver blocks while holding the
+ * synchronized onEvent / Link.send monitors.
+ */
+public class ThreadModeBenchmark
+{
+    /**
+     * Node at the server end of the connections: echoes every message back from a synchronized onEvent
+     */
+    private static class EchoNode implements Node
+    {
+        public synchronized void onEvent(Connection connection, Event event) throws IOException
+        {
+            connection.sendEvent(event);
+        }
+
+        public void registerConnection(Connection connection, String sourceID, String targetID)
+        {
+
+        }
+
+        public void deregisterConnection(String ID)
+        {
+
+        }
+
+        public void connectionLost(Connection connection, IOException cause)
+        {
+
+        }
+
+        public String getID()
+        {
+            return "echo";
+        }
+    }
+
+    /**
+     * Node at the client end of the connections: counts the echoes as they come back
+     */
+    private static class CountingNode implements Node
+    {
+        private final AtomicLong _received = new AtomicLong();
+
+        private final CountDownLatch _done;
+
+        private CountingNode(CountDownLatch done)
+        {
+            _done = done;
+        }
+
+        public void onEvent(Connection connection, Event event)
+        {
+            _received.incrementAndGet();
+            _done.countDown();
+        }
+
+        public void registerConnection(Connection connection, String sourceID, String targetID)
+        {
+
+        }
+
+        public void deregisterConnection(String ID)
+        {
+
+        }
+
+        public void connectionLost(Connection connection, IOException cause)
+        {
+
+        }
+
+        public String getID()
+        {
+            return "counter";
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception
+    {
+        /**
+         * int for the number of connections to open
+         */
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        /**
+         * int for the number of messages to send on each connection
+         */
+        final int messages = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        OverlayThreadFactory threadFactory = OverlayThreadFactory.getFactoryInstance();
+
+        CountDownLatch done = new CountDownLatch(connections * messages);
+        CountingNode countingNode = new CountingNode(done);
+
+        ServerSocket serverSocket = ConnectionFactory.openServerSocket(0, connections);
+        TCPServerThread serverThread = new TCPServerThread(serverSocket, new EchoNode());
+        serverThread.start();
+
+        /**
+         * The message every generator sends, encoded once
+         */
+        PayloadMessage payloadMessage = (PayloadMessage) EventFactory.createEvent(Protocol.PAYLOAD_MESSAGE,
+                "localhost", serverSocket.getLocalPort(), "localhost:" + serverSocket.getLocalPort());
+        payloadMessage.setPath(new int[]{0});
+        payloadMessage.setPayload(42);
+        final byte[] frame = payloadMessage.getBytes();
+
+
+        long connectStart = System.nanoTime();
+
+        ArrayList<Connection> clients = new ArrayList<Connection>(connections);
+
+        // FOR every connection, open it and start receiving the echoes
+        for (int i = 0; i < connections; ++i)
+            clients.add(ConnectionFactory.connect("localhost", serverSocket.getLocalPort(), countingNode));
+
+        long connectNanos = System.nanoTime() - connectStart;
+
+
+        long sendStart = System.nanoTime();
+
+        // FOR every connection, start a generator sending on it
+        for (final Connection client : clients)
+        {
+            threadFactory.start(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < messages; ++i)
+                            client.sendData(frame);
+
+                        client.flush();
+                    }
+                    catch (IOException ioe)
+                    {
+                        ioe.printStackTrace();
+                    }
+                }
+            }, "benchmark-generator");
+        }
+
+        done.await();
+
+        long sendNanos = System.nanoTime() - sendStart;
+
+        Runtime runtime = Runtime.getRuntime();
+        long total = (long) connections * messages;
+
+        System.out.println("threads:              " + (threadFactory.isVirtual() ? Statics.THREADS_VIRTUAL :
+                Statics.THREADS_PLATFORM) + " (transport " + Statics.TRANSPORT + ", receiver " + Statics.RECEIVER
+                + ")");
+        System.out.println("connections:          " + connections);
+        System.out.println("messages echoed:      " + countingNode._received.get());
+        System.out.println("connect time ms:      " + connectNanos / 1000000);
+        System.out.println("echo time ms:         " + sendNanos / 1000000);
+        System.out.println("echoes per second:    " + (total * 1000000000L / Math.max(1, sendNanos)));
+        System.out.println("platform threads now: " + threadBean.getThreadCount());
+        System.out.println("platform threads max: " + threadBean.getPeakThreadCount());
+        System.out.println("heap used MB:         " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,321 @@
+package cs455.overlay.wireformats;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A CompactPayload class to turn a PayloadMessage frame into the compact form a Link sends it in
+ * when both its ends have CAPABILITY_COMPACT, and back. The compact form carries the same message
+ * in far fewer bytes:
+ *
+ * type         int, Protocol.COMPACT_PAYLOAD_MESSAGE, so the frame is dispatched like any other
+ * hop index    unsigned varint, the index in the path of the receiving node's entry
+ * ID           unsigned varint length, then a byte per character; the IP address and port, which
+ *              the ID already holds as "IP:port", are left out
+ * time stamp   zigzag varint of its difference from the sending node's epoch (see EPOCH)
+ * payload      int; a random int doesn't get any shorter as a varint
+ * path         unsigned varint count, then an unsigned varint per node index
+ *
+ * Nothing but the frames on a Link change; a compact frame is expanded back into a PayloadMessage
+ * frame as soon as it is received, so relays and nodes only ever see the usual form. A message whose
+ * ID isn't its IP address and port can't be made compact, and is sent as it is.
+ */
+public class CompactPayload
+{
+    /**
+     * long for the time, in milliseconds, the time stamps of the compact frames this JVM sends are
+     * counted from. A node sends it as the time stamp of its LinkCapabilities, so the other end can
+     * count from it too.
+     */
+    public static final long EPOCH = System.currentTimeMillis();
+
+
+    /**
+     * Method to make a PayloadMessage frame compact.
+     *
+     * @param frame <code>byte[]</code> holding just the PayloadMessage frame.
+     * @param epoch <code>long</code> of the time the time stamp is to be counted from.
+     * @return <code>byte[]</code> of the compact frame; null if the message can't be made compact.
+     */
+    public static byte[] compact(byte[] frame, long epoch)
+    {
+        // IF there isn't even room for the type, the hop cursor and the IP address's length
+        if (frame.length < 12 || PayloadMessage.readInt(frame, 0) != Protocol.PAYLOAD_MESSAGE)
+            return null;
+
+        int ipLength = PayloadMessage.readInt(frame, 8);
+
+        // IF the IP address, the port and the ID's length don't fit
+        if (ipLength < 0 || ipLength > frame.length - 20)
+            return null;
+
+        int port = PayloadMessage.readInt(frame, 12 + ipLength);
+        int idEntry = 16 + ipLength;
+        int idLength = PayloadMessage.readInt(frame, idEntry);
+
+        // IF the ID, the time stamp, the payload and the number of path entries don't fit
+        if (idLength < 0 || idLength > frame.length - idEntry - 20 || !isSender(frame, 12, ipLength, port,
+                idEntry + 4, idLength))
+            return null;
+
+        int timestampIndex = idEntry + 4 + idLength;
+        int pathStart = timestampIndex + 16;
+        int numPaths = PayloadMessage.readInt(frame, timestampIndex + 12);
+        int hopCursor = PayloadMessage.readInt(frame, PayloadMessage.HOP_CURSOR_OFFSET);
+
+        // IF the path isn't just what is left of the frame, or the cursor isn't at one of its entries
+        if (numPaths < 0 || numPaths > frame.length ||
+                pathStart + PayloadMessage.ENTRY_SIZE * numPaths != frame.length || hopCursor < pathStart ||
+                hopCursor > frame.length || (hopCursor - pathStart) % PayloadMessage.ENTRY_SIZE != 0)
+            return null;
+
+        int hopIndex = (hopCursor - pathStart) / PayloadMessage.ENTRY_SIZE;
+        long timestamp = ((long) PayloadMessage.readInt(frame, timestampIndex) << 32) |
+                (PayloadMessage.readInt(frame, timestampIndex + 4) & 0xFFFFFFFFL);
+        long delta = zigzag(timestamp - epoch);
+
+        /**
+         * int for the number of bytes the compact frame takes up
+         */
+        int size = 4 + varintSize(hopIndex) + varintSize(idLength) + idLength + varintSize(delta) + 4 +
+                varintSize(numPaths);
+
+        // FOR every node in the path
+        for (int i = 0; i < numPaths; ++i)
+            size += varintSize(PayloadMessage.readInt(frame, pathStart + PayloadMessage.ENTRY_SIZE * i) &
+                    0xFFFFFFFFL);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+
+        buffer.putInt(Protocol.COMPACT_PAYLOAD_MESSAGE);
+        putVarint(buffer, hopIndex);
+        putVarint(buffer, idLength);
+        buffer.put(frame, idEntry + 4, idLength);
+        putVarint(buffer, delta);
+        buffer.put(frame, timestampIndex + 8, 4);
+        putVarint(buffer, numPaths);
+
+        // FOR every node in the path
+        for (int i = 0; i < numPaths; ++i)
+            putVarint(buffer, PayloadMessage.readInt(frame, pathStart + PayloadMessage.ENTRY_SIZE * i) &
+                    0xFFFFFFFFL);
+
+        return buffer.array();
+    }
+
+    /**
+     * Method to expand a compact frame back into the PayloadMessage frame it was made from.
+     *
+     * @param data   <code>byte[]</code> holding the compact frame.
+     * @param offset <code>int</code> index in data of the first byte of the frame.
+     * @param length <code>int</code> number of bytes in the frame.
+     * @param epoch  <code>long</code> of the time the sending node counted the time stamp from.
+     * @return <code>byte[]</code> of the PayloadMessage frame; null if the compact frame isn't well formed.
+     */
+    public static byte[] expand(byte[] data, int offset, int length, long epoch)
+    {
+        ByteBuffer compact = ByteBuffer.wrap(data, offset, length);
+
+        try
+        {
+            // IF it isn't a compact frame
+            if (compact.getInt() != Protocol.COMPACT_PAYLOAD_MESSAGE)
+                return null;
+
+            long hopIndex = getVarint(compact);
+            long idLength = getVarint(compact);
+
+            // IF the ID doesn't fit
+            if (idLength > compact.remaining())
+                return null;
+
+            int idStart = compact.position();
+            compact.position(idStart + (int) idLength);
+
+            long timestamp = unzigzag(getVarint(compact)) + epoch;
+            int payload = compact.getInt();
+            long numPaths = getVarint(compact);
+
+            // IF the path can't all be there, or the cursor isn't at one of its entries
+            if (numPaths > compact.remaining() || hopIndex > numPaths)
+                return null;
+
+            /**
+             * int index in the ID of the colon between the IP address and the port
+             */
+            int colon = (int) idLength - 1;
+
+            while (colon >= 0 && data[idStart + colon] != ':')
+                --colon;
+
+            // IF the ID isn't "IP:port", the message wasn't one we could have made compact
+            if (colon < 0)
+                return null;
+
+            int port = parsePort(data, idStart + colon + 1, (int) idLength - colon - 1);
+
+            if (port < 0)
+                return null;
+
+            int pathStart = 36 + colon + (int) idLength;
+
+            ByteBuffer frame = ByteBuffer.allocate(pathStart + PayloadMessage.ENTRY_SIZE * (int) numPaths);
+
+            frame.putInt(Protocol.PAYLOAD_MESSAGE);
+            frame.putInt(pathStart + PayloadMessage.ENTRY_SIZE * (int) hopIndex);
+            frame.putInt(colon);
+            frame.put(data, idStart, colon);
+            frame.putInt(port);
+            frame.putInt((int) idLength);
+            frame.put(data, idStart, (int) idLength);
+            frame.putLong(timestamp);
+            frame.putInt(payload);
+            frame.putInt((int) numPaths);
+
+            // FOR every node in the path
+            for (int i = 0; i < numPaths; ++i)
+                frame.putInt((int) getVarint(compact));
+
+            return frame.array();
+        }
+        catch (BufferUnderflowException bue)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Private method to check the ID of a message is its IP address and port, as "IP:port", so the
+     * IP address and port can be left out and found again from the ID.
+     *
+     * @param frame    <code>byte[]</code> holding the frame.
+     * @param ipStart  <code>int</code> index in frame of the IP address.
+     * @param ipLength <code>int</code> number of bytes in the IP address.
+     * @param port     <code>int</code> of the port.
+     * @param idStart  <code>int</code> index in frame of the ID.
+     * @param idLength <code>int</code> number of bytes in the ID.
+     * @return <code>true</code> if the ID is the IP address and port.
+     */
+    private static boolean isSender(byte[] frame, int ipStart, int ipLength, int port, int idStart, int idLength)
+    {
+        // IF the ID can't be the IP address, a colon, and the port
+        if (idLength < ipLength + 2 || frame[idStart + ipLength] != ':')
+            return false;
+
+        // FOR every byte of the IP address
+        for (int i = 0; i < ipLength; ++i)
+        {
+            if (frame[ipStart + i] != frame[idStart + i])
+                return false;
+        }
+
+        return parsePort(frame, idStart + ipLength + 1, idLength - ipLength - 1) == port;
+    }
+
+    /**
+     * Private method to read a port, written as Integer.toString() writes it, out of a frame.
+     *
+     * @param data   <code>byte[]</code> holding the port.
+     * @param start  <code>int</code> index in data of its first digit.
+     * @param length <code>int</code> number of digits.
+     * @return <code>int</code> of the port; -1 if it isn't one, or isn't written the way Integer.toString() writes it.
+     */
+    private static int parsePort(byte[] data, int start, int length)
+    {
+        // IF there are no digits, too many, or a leading zero Integer.toString() wouldn't write
+        if (length < 1 || length > 9 || (length > 1 && data[start] == '0'))
+            return -1;
+
+        int port = 0;
+
+        // FOR every digit
+        for (int i = start; i < start + length; ++i)
+        {
+            if (data[i] < '0' || data[i] > '9')
+                return -1;
+
+            port = port * 10 + (data[i] - '0');
+        }
+
+        return port;
+    }
+
+    /**
+     * @param value <code>long</code> of an unsigned value.
+     * @return <code>int</code> of the number of bytes the value takes up as a varint.
+     */
+    private static int varintSize(long value)
+    {
+        int size = 1;
+
+        // WHILE there are more than seven bits left
+        while ((value >>>= 7) != 0)
+            ++size;
+
+        return size;
+    }
+
+    /**
+     * Method to write an unsigned varint: seven bits a byte, lowest first, the top bit set on every
+     * byte but the last.
+     *
+     * @param buffer <code>ByteBuffer</code> to write to.
+     * @param value  <code>long</code> of the unsigned value.
+     */
+    private static void putVarint(ByteBuffer buffer, long value)
+    {
+        // WHILE there are more than seven bits left
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Method to read an unsigned varint written by putVarint().
+     *
+     * @param buffer <code>ByteBuffer</code> to read from.
+     * @return <code>long</code> of the value.
+     * @throws BufferUnderflowException if the varint runs off the end of the buffer, or is too long.
+     */
+    private static long getVarint(ByteBuffer buffer)
+    {
+        long value = 0;
+
+        // FOR every byte a long can take up as a varint
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = buffer.get();
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0)
+                return value;
+        }
+
+        throw new BufferUnderflowException();
+    }
+
+    /**
+     * @param value <code>long</code> of a signed value.
+     * @return <code>long</code> of the value with its sign in the lowest bit, so small values either side
+     * of 0 stay short.
+     */
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @param value <code>long</code> written by zigzag().
+     * @return <code>long</code> of the signed value.
+     */
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
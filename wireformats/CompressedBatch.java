@@ -0,0 +1,135 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A CompressedBatch class defining what a CompressedBatch message is. A Link that has negotiated
+ * compression writes a batch of queued frames as one CompressedBatch: the frames, each with its
+ * length in front, deflated together. The receiving Connection inflates the batch and delivers the
+ * frames in it one at a time, so nodes never see a CompressedBatch themselves.
+ */
+@WireMessage
+public class CompressedBatch extends Message implements Event
+{
+    /**
+     * int for the length of the batch before it was deflated
+     */
+    @WireField
+    private int _rawLength;
+
+    /**
+     * byte array of the deflated batch
+     */
+    @WireField
+    private byte[] _deflated = new byte[0];
+
+    /**
+     * Default constructor
+     */
+    public CompressedBatch()
+    {
+        this("", 0, "");
+    }
+
+    /**
+     * Standard constructor
+     */
+    public CompressedBatch(String ipAddress, int portNumber, String id)
+    {
+        setType(Protocol.COMPRESSED_BATCH);
+        setIpAddress(ipAddress);
+        setPort(portNumber);
+        setID(id);
+
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
+
+    }
+
+
+    /**
+     * Overloaded constructor to be used by the TCPReceiverThread. This constructor allows
+     * the caller to pass a byte array of the entire message and (assuming its the correct type)
+     * have the message construct itself from the byte array.
+     *
+     * @param data <code>byte[]</code> of all the data belonging to the CompressedBatch message type
+     */
+    public CompressedBatch(byte[] data) throws MessageTypeException
+    {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the CompressedBatch message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public CompressedBatch(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return MessageCodecs.encodedSize(this);
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
+    }
+
+    public int getRawLength()
+    {
+        return _rawLength;
+    }
+
+    public void setRawLength(int rawLength)
+    {
+        _rawLength = rawLength;
+    }
+
+    public byte[] getDeflated()
+    {
+        return _deflated;
+    }
+
+    public void setDeflated(byte[] deflated)
+    {
+        _deflated = deflated;
+    }
+}
@@ -2,8 +2,7 @@ package cs455.overlay.wireformats;
 
 import cs455.overlay.exceptions.MessageTypeException;
 
-import java.io.*;
-import java.util.Date;
+import java.nio.ByteBuffer;
 
 /**
  * A DeregistrationRequest class defining what a Deregistration request message is.
@@ -12,6 +11,7 @@ import java.util.Date;
  *
  * @author ahrtmn, 26 01 2014
  */
+@WireMessage
 public class DeregistrationRequest extends RegistrationRequest implements Event
 {
 
@@ -33,11 +33,8 @@ public class DeregistrationRequest extends RegistrationRequest implements Event
         setPort(portNumber);
         setID(id);
 
-        /**
-         * Get the current time stamp of message creation
-         */
-        Date date = new Date();
-        setTimestamp(date.getTime());
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
 
     }
 
@@ -51,113 +48,59 @@ public class DeregistrationRequest extends RegistrationRequest implements Event
      */
     public DeregistrationRequest(byte[] data) throws MessageTypeException
     {
+        this(data, 0, data.length);
+    }
 
-        /**
-         * Set up appropriate streams to read the fields from the byte array
-         * into the private data members.
-         */
-        ByteArrayInputStream baInputStream =
-                new ByteArrayInputStream(data);
-
-        DataInputStream din = new DataInputStream(new BufferedInputStream(baInputStream));
-
-
-        /**
-         * Try to read the message data in from the byte array
-         */
-        try
-        {
-            // read the type of the message
-            setType(din.readInt());
-
-            // read the length of the ip address
-            int ipLength = din.readInt();
-
-            // read the ip addresses bytes
-            byte[] ipBytes = new byte[ipLength];
-            din.readFully(ipBytes);
-
-            // convert the ip address to a string
-            setIpAddress(new String(ipBytes));
-
-            // get the port number
-            setPort(din.readInt());
-
-            // read the ID from the stream
-            int idLength = din.readInt();
-            byte[] idBytes = new byte[idLength];
-            din.readFully(idBytes);
-            setID(new String(idBytes));
-
-            // get the time stamp
-            setTimestamp(din.readLong());
-
-            baInputStream.close();
-            din.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-
-        // IF the message type isn't appropriate to this message
-        if (getType() != Protocol.DEREGISTRATION_REQUEST)
-            throw new MessageTypeException("Invalid message type! DeregistrationRequest must be " + Protocol
-                    .DEREGISTRATION_REQUEST + "!");
 
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the DeregistrationRequest message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public DeregistrationRequest(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
     }
 
 
     /**
      * Event interface method
-     * Returns the current message in bytes
+     * Returns the number of bytes the message takes up on the wire
      *
-     * @return <code>byte[]</code> of the message transformed into a byte array.
+     * @return <code>int</code> of the length of the message transformed into bytes.
      */
-    public byte[] getBytes()
+    public int encodedSize()
     {
-
-        /**
-         * Create an empty byte array and get the appropriate streams to be able to
-         * write to it.
-         */
-
-        byte[] marshalledBytes = null;
-        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
-        DataOutputStream dout =
-                new DataOutputStream(new BufferedOutputStream(baOutputStream));
-
-
-        try
-        {
-            /**
-             * Write the message data to the stream
-             */
-            dout.writeInt(getType());
-            dout.writeInt(getIpAddress().length());
-            dout.writeBytes(getIpAddress());
-            dout.writeInt(getPort());
-            dout.writeInt(getID().length());
-            dout.writeBytes(getID());
-            dout.writeLong(getTimestamp());
-
-            dout.flush();
-
-            // get the byte array
-            marshalledBytes = baOutputStream.toByteArray();
-
-            baOutputStream.close();
-            dout.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        return MessageCodecs.encodedSize(this);
+    }
 
 
-        return marshalledBytes;
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
 
 
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
     }
 
 }
@@ -1,5 +1,9 @@
 package cs455.overlay.wireformats;
 
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
 /**
  * A Event interface that all wire format messages will implement
  *
@@ -20,4 +24,27 @@ public interface Event
      * @return <code>byte[]</code> of the message transformed into a byte array.
      */
     public byte[] getBytes();
+
+    /**
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize();
+
+    /**
+     * Writes the message into a buffer, at the buffer's position, without allocating anything
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer);
+
+    /**
+     * Reads the message's fields from a buffer, from the buffer's position on, leaving the buffer
+     * positioned after the message
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException;
 }
@@ -2,10 +2,9 @@ package cs455.overlay.wireformats;
 
 import cs455.overlay.exceptions.MessageTypeException;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 /**
  * A Singleton EventFactory.getFactoryInstance() class to handle the creation of Messages
@@ -31,151 +30,43 @@ public class EventFactory
      */
     public static Event createEvent(byte[] data) throws IOException
     {
+        return createEvent(data, 0, data.length);
+    }
 
-        int type = 0;
-
-        try
-        {
-            ByteArrayInputStream baInputStream = new ByteArrayInputStream(data);
-            DataInputStream payloadInputStream = new DataInputStream(new BufferedInputStream(baInputStream));
-
-
-            type = payloadInputStream.readInt();
-
-        }
-        catch(IOException ioe)
-        {
-            ioe.printStackTrace();
-        }
+    /**
+     * createEvent method to return a specific message type determined by the caller, when the
+     * message is only part of a larger byte array such as a receive buffer holding several frames.
+     *
+     * @param data   <code>byte[]</code> holding the desired message contents
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     * @return <code>Event</code> of the desired message type.
+     */
+    public static Event createEvent(byte[] data, int offset, int length) throws IOException
+    {
+        return createEvent(ByteBuffer.wrap(data, offset, length));
+    }
 
-        switch (type)
-        {
+    /**
+     * createEvent method to return a specific message type read straight out of a buffer, from the
+     * buffer's position on. The buffer is left positioned after the message.
+     *
+     * @param buffer <code>ByteBuffer</code> holding the desired message contents
+     * @return <code>Event</code> of the desired message type.
+     */
+    public static Event createEvent(ByteBuffer buffer)
+    {
+        int type = 0;
 
-            case Protocol.REGISTRATION_REQUEST:
+        // IF there is a message type, peek at it without moving past it
+        if (buffer.remaining() >= 4)
+            type = buffer.getInt(buffer.position());
 
-                try
-                {
-                    return new RegistrationRequest(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.REGISTRATION_RESPONSE:
-                try
-                {
-                    return new RegistrationResponse(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.DEREGISTRATION_REQUEST:
-                try
-                {
-                    return new DeregistrationRequest(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.MESSAGING_NODE_LIST:
-                try
-                {
-                    return new MessagingNodeList(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.LINK_WEIGHTS:
-                try
-                {
-                    return new LinkWeights(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.MESSAGING_NODE_CONNECTION_REQUEST:
-                try
-                {
-                    return new NodeRegistrationRequest(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.MESSAGING_NODE_CONNECTION_RESPONSE:
-                try
-                {
-                    return new NodeRegistrationResponse(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.TASK_INITIATE:
-                try
-                {
-                    return new TaskInitiate(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.PAYLOAD_MESSAGE:
-                try
-                {
-                    return new PayloadMessage(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.TASK_COMPLETE:
-                try
-                {
-                    return new TaskComplete(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.printStackTrace();
-                }
-                break;
-            case Protocol.PULL_TRAFFIC_SUMMARY:
-                try
-                {
-                    return new PullTrafficSummary(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.printStackTrace();
-                }
-                break;
-            case Protocol.TRAFFIC_SUMMARY:
-                try
-                {
-                    return new TrafficSummary(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.printStackTrace();
-                }
-                break;
-            default:
-                break;
-        }
+        Event event = createEvent(type);
 
+        // IF the type is one we know, have the blank message read itself
+        if (event != null && readEvent(event, buffer))
+            return event;
 
         System.err.println("Error! Should not be here. EventFactories can't make null Events. This is known.");
         System.err.println("Type: " + type);
@@ -190,141 +81,44 @@ public class EventFactory
      */
     public static Event createEvent(int type, byte[] data) throws IOException
     {
+        Event event = createEvent(type);
 
-        switch (type)
-        {
-
-            case Protocol.REGISTRATION_REQUEST:
-
-                try
-                {
-                    return new RegistrationRequest(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.REGISTRATION_RESPONSE:
-                try
-                {
-                    return new RegistrationResponse(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.DEREGISTRATION_REQUEST:
-                try
-                {
-                    return new DeregistrationRequest(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.MESSAGING_NODE_LIST:
-                try
-                {
-                    return new MessagingNodeList(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.LINK_WEIGHTS:
-                try
-                {
-                    return new LinkWeights(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.MESSAGING_NODE_CONNECTION_REQUEST:
-                try
-                {
-                    return new NodeRegistrationRequest(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.MESSAGING_NODE_CONNECTION_RESPONSE:
-                try
-                {
-                    return new NodeRegistrationResponse(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.TASK_INITIATE:
-                try
-                {
-                    return new TaskInitiate(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.PAYLOAD_MESSAGE:
-                try
-                {
-                    return new PayloadMessage(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.getMessage();
-                }
-                break;
-            case Protocol.TASK_COMPLETE:
-                try
-                {
-                    return new TaskComplete(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.printStackTrace();
-                }
-                break;
-            case Protocol.PULL_TRAFFIC_SUMMARY:
-                try
-                {
-                    return new PullTrafficSummary(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.printStackTrace();
-                }
-                break;
-            case Protocol.TRAFFIC_SUMMARY:
-                try
-                {
-                    return new TrafficSummary(data);
-                }
-                catch (MessageTypeException mte)
-                {
-                    mte.printStackTrace();
-                }
-                break;
-            default:
-                break;
-        }
-
+        // IF the type is one we know, have the blank message read itself
+        if (event != null && readEvent(event, ByteBuffer.wrap(data)))
+            return event;
 
         System.err.println("Error! Should not be here. EventFactories can't make null Events. This is known.");
         System.err.println("Type: " + type);
         return null;
     }
 
+    /**
+     * Method to have a blank message read itself from a buffer.
+     *
+     * @param event  <code>Event</code> blank message of the type the buffer should hold.
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @return <code>true</code> if the buffer held a message of the event's type; <code>false</code> otherwise.
+     */
+    private static boolean readEvent(Event event, ByteBuffer buffer)
+    {
+        try
+        {
+            event.readFrom(buffer);
+        }
+        catch (MessageTypeException mte)
+        {
+            mte.printStackTrace();
+            return false;
+        }
+        catch (BufferUnderflowException bue)
+        {
+            // the message is cut short; what was read of it is still handed over
+            bue.printStackTrace();
+        }
+
+        return true;
+    }
+
     /**
      * createEvent method to return a specific message type (that is blank) determined by the caller.
      *
@@ -372,6 +166,42 @@ public class EventFactory
             case Protocol.TRAFFIC_SUMMARY:
                 return new TrafficSummary();
 
+            case Protocol.FLOW_CREDIT:
+                return new FlowCredit();
+
+            case Protocol.SHARED_MEMORY_OFFER:
+                return new SharedMemoryOffer();
+
+            case Protocol.SHARED_MEMORY_RESPONSE:
+                return new SharedMemoryResponse();
+
+            case Protocol.LINK_CAPABILITIES:
+                return new LinkCapabilities();
+
+            case Protocol.COMPRESSED_BATCH:
+                return new CompressedBatch();
+
+            case Protocol.LINK_PING:
+                return new LinkPing();
+
+            case Protocol.LINK_PONG:
+                return new LinkPong();
+
+            case Protocol.LINK_LATENCY:
+                return new LinkLatency();
+
+            case Protocol.STRIPE_JOIN:
+                return new StripeJoin();
+
+            case Protocol.LINK_EMULATION:
+                return new LinkEmulation();
+
+            case Protocol.LINK_ACK:
+                return new LinkAck();
+
+            case Protocol.LINK_RESUME:
+                return new LinkResume();
+
             default:
                 break;
         }
@@ -432,6 +262,42 @@ public class EventFactory
             case Protocol.TRAFFIC_SUMMARY:
                 return new TrafficSummary(IP, port, ID);
 
+            case Protocol.FLOW_CREDIT:
+                return new FlowCredit(IP, port, ID);
+
+            case Protocol.SHARED_MEMORY_OFFER:
+                return new SharedMemoryOffer(IP, port, ID);
+
+            case Protocol.SHARED_MEMORY_RESPONSE:
+                return new SharedMemoryResponse(IP, port, ID);
+
+            case Protocol.LINK_CAPABILITIES:
+                return new LinkCapabilities(IP, port, ID);
+
+            case Protocol.COMPRESSED_BATCH:
+                return new CompressedBatch(IP, port, ID);
+
+            case Protocol.LINK_PING:
+                return new LinkPing(IP, port, ID);
+
+            case Protocol.LINK_PONG:
+                return new LinkPong(IP, port, ID);
+
+            case Protocol.LINK_LATENCY:
+                return new LinkLatency(IP, port, ID);
+
+            case Protocol.STRIPE_JOIN:
+                return new StripeJoin(IP, port, ID);
+
+            case Protocol.LINK_EMULATION:
+                return new LinkEmulation(IP, port, ID);
+
+            case Protocol.LINK_ACK:
+                return new LinkAck(IP, port, ID);
+
+            case Protocol.LINK_RESUME:
+                return new LinkResume(IP, port, ID);
+
             default:
                 break;
         }
@@ -0,0 +1,118 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A FlowCredit class defining what a FlowCredit message is. This message is sent by a
+ * MessagingNode back over a Link as it works through the payload messages received on it,
+ * granting the node at the other end credit to send that many more payload messages.
+ */
+@WireMessage
+public class FlowCredit extends Message implements Event
+{
+    /**
+     * int for the number of payload messages the receiver of this message may send
+     */
+    @WireField
+    private int _credits;
+
+    /**
+     * Default constructor
+     */
+    public FlowCredit()
+    {
+        this("", 0, "");
+    }
+
+    /**
+     * Standard constructor
+     */
+    public FlowCredit(String ipAddress, int portNumber, String id)
+    {
+        setType(Protocol.FLOW_CREDIT);
+        setIpAddress(ipAddress);
+        setPort(portNumber);
+        setID(id);
+
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
+
+    }
+
+
+    /**
+     * Overloaded constructor to be used by the TCPReceiverThread. This constructor allows
+     * the caller to pass a byte array of the entire message and (assuming its the correct type)
+     * have the message construct itself from the byte array.
+     *
+     * @param data <code>byte[]</code> of all the data belonging to the FlowCredit message type
+     */
+    public FlowCredit(byte[] data) throws MessageTypeException
+    {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the FlowCredit message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public FlowCredit(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return MessageCodecs.encodedSize(this);
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
+    }
+
+    public int getCredits()
+    {
+        return _credits;
+    }
+
+    public void setCredits(int credits)
+    {
+        _credits = credits;
+    }
+}
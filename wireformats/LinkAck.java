@@ -0,0 +1,118 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A LinkAck class defining what a LinkAck message is. A MessagingNode sends one over a resumable
+ * Link every so many frames it receives on it, so the node at the other end can let go of the
+ * frames it was keeping to replay should the Link's connection fail.
+ */
+@WireMessage
+public class LinkAck extends Message implements Event
+{
+    /**
+     * long for the number of frames received over the Link so far
+     */
+    @WireField
+    private long _received;
+
+    /**
+     * Default constructor
+     */
+    public LinkAck()
+    {
+        this("", 0, "");
+    }
+
+    /**
+     * Standard constructor
+     */
+    public LinkAck(String ipAddress, int portNumber, String id)
+    {
+        setType(Protocol.LINK_ACK);
+        setIpAddress(ipAddress);
+        setPort(portNumber);
+        setID(id);
+
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
+
+    }
+
+
+    /**
+     * Overloaded constructor to be used by the TCPReceiverThread. This constructor allows
+     * the caller to pass a byte array of the entire message and (assuming its the correct type)
+     * have the message construct itself from the byte array.
+     *
+     * @param data <code>byte[]</code> of all the data belonging to the LinkAck message type
+     */
+    public LinkAck(byte[] data) throws MessageTypeException
+    {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the LinkAck message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public LinkAck(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return MessageCodecs.encodedSize(this);
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
+    }
+
+    public long getReceived()
+    {
+        return _received;
+    }
+
+    public void setReceived(long received)
+    {
+        _received = received;
+    }
+}
@@ -0,0 +1,137 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A LinkCapabilities class defining what a LinkCapabilities message is. This message is sent by a node
+ * that dials another, ahead of its registration request, to tell the other end what optional link
+ * features (see the Protocol CAPABILITY_ flags) it has turned on. The other end answers with its own
+ * LinkCapabilities, marked as a reply, and each end uses a feature on the Link only if both have it.
+ * A node offering CAPABILITY_COMPACT sends its CompactPayload.EPOCH as the time stamp, as the time the
+ * time stamps of the compact frames it sends are counted from.
+ */
+@WireMessage
+public class LinkCapabilities extends Message implements Event
+{
+    /**
+     * int of the CAPABILITY_ flags the sender has turned on
+     */
+    @WireField
+    private int _capabilities;
+
+    /**
+     * boolean for if this message answers one from the other end
+     */
+    @WireField
+    private boolean _reply;
+
+    /**
+     * Default constructor
+     */
+    public LinkCapabilities()
+    {
+        this("", 0, "");
+    }
+
+    /**
+     * Standard constructor
+     */
+    public LinkCapabilities(String ipAddress, int portNumber, String id)
+    {
+        setType(Protocol.LINK_CAPABILITIES);
+        setIpAddress(ipAddress);
+        setPort(portNumber);
+        setID(id);
+
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
+
+    }
+
+
+    /**
+     * Overloaded constructor to be used by the TCPReceiverThread. This constructor allows
+     * the caller to pass a byte array of the entire message and (assuming its the correct type)
+     * have the message construct itself from the byte array.
+     *
+     * @param data <code>byte[]</code> of all the data belonging to the LinkCapabilities message type
+     */
+    public LinkCapabilities(byte[] data) throws MessageTypeException
+    {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the LinkCapabilities message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public LinkCapabilities(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return MessageCodecs.encodedSize(this);
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
+    }
+
+    public int getCapabilities()
+    {
+        return _capabilities;
+    }
+
+    public void setCapabilities(int capabilities)
+    {
+        _capabilities = capabilities;
+    }
+
+    public boolean getReply()
+    {
+        return _reply;
+    }
+
+    public void setReply(boolean reply)
+    {
+        _reply = reply;
+    }
+}
@@ -0,0 +1,182 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A LinkEmulation class defining what a LinkEmulation message is. The Registry sends one to a
+ * MessagingNode to have it impose a delay, jitter, bandwidth cap and loss rate on what it sends over
+ * one of its Links, or over all of them, so a run on one machine behaves like one over a WAN.
+ */
+@WireMessage
+public class LinkEmulation extends Message implements Event
+{
+    /**
+     * String of the ID of the node at the other end of the Link; empty for every Link
+     */
+    @WireField
+    private String _targetID = "";
+
+    /**
+     * int for the one way delay to add, in microseconds
+     */
+    @WireField
+    private int _delayMicros;
+
+    /**
+     * int for the most the delay may vary either way, in microseconds
+     */
+    @WireField
+    private int _jitterMicros;
+
+    /**
+     * long for the bytes per second the Link may carry; 0 for no cap
+     */
+    @WireField
+    private long _bandwidthBytes;
+
+    /**
+     * int for the frames in every million that are lost
+     */
+    @WireField
+    private int _lossPerMillion;
+
+    /**
+     * Default constructor
+     */
+    public LinkEmulation()
+    {
+        this("", 0, "");
+    }
+
+    /**
+     * Standard constructor
+     */
+    public LinkEmulation(String ipAddress, int portNumber, String id)
+    {
+        setType(Protocol.LINK_EMULATION);
+        setIpAddress(ipAddress);
+        setPort(portNumber);
+        setID(id);
+
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
+
+    }
+
+
+    /**
+     * Overloaded constructor to be used by the TCPReceiverThread. This constructor allows
+     * the caller to pass a byte array of the entire message and (assuming its the correct type)
+     * have the message construct itself from the byte array.
+     *
+     * @param data <code>byte[]</code> of all the data belonging to the LinkEmulation message type
+     */
+    public LinkEmulation(byte[] data) throws MessageTypeException
+    {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the LinkEmulation message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public LinkEmulation(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return MessageCodecs.encodedSize(this);
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
+    }
+
+    public String getTargetID()
+    {
+        return _targetID;
+    }
+
+    public void setTargetID(String targetID)
+    {
+        _targetID = targetID;
+    }
+
+    public int getDelayMicros()
+    {
+        return _delayMicros;
+    }
+
+    public void setDelayMicros(int delayMicros)
+    {
+        _delayMicros = delayMicros;
+    }
+
+    public int getJitterMicros()
+    {
+        return _jitterMicros;
+    }
+
+    public void setJitterMicros(int jitterMicros)
+    {
+        _jitterMicros = jitterMicros;
+    }
+
+    public long getBandwidthBytes()
+    {
+        return _bandwidthBytes;
+    }
+
+    public void setBandwidthBytes(long bandwidthBytes)
+    {
+        _bandwidthBytes = bandwidthBytes;
+    }
+
+    public int getLossPerMillion()
+    {
+        return _lossPerMillion;
+    }
+
+    public void setLossPerMillion(int lossPerMillion)
+    {
+        _lossPerMillion = lossPerMillion;
+    }
+}
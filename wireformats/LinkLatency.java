@@ -0,0 +1,134 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A LinkLatency class defining what a LinkLatency message is. A MessagingNode sends one to the
+ * Registry for each of its Links after every round of LinkPing probes, giving the Link's smoothed
+ * round trip time, so the Registry can build LinkWeights from measured latencies.
+ */
+@WireMessage
+public class LinkLatency extends Message implements Event
+{
+    /**
+     * String of the ID of the node at the other end of the Link
+     */
+    @WireField
+    private String _targetID = "";
+
+    /**
+     * long of the Link's smoothed round trip time, in nanoseconds
+     */
+    @WireField
+    private long _rttNanos;
+
+    /**
+     * Default constructor
+     */
+    public LinkLatency()
+    {
+        this("", 0, "");
+    }
+
+    /**
+     * Standard constructor
+     */
+    public LinkLatency(String ipAddress, int portNumber, String id)
+    {
+        setType(Protocol.LINK_LATENCY);
+        setIpAddress(ipAddress);
+        setPort(portNumber);
+        setID(id);
+
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
+
+    }
+
+
+    /**
+     * Overloaded constructor to be used by the TCPReceiverThread. This constructor allows
+     * the caller to pass a byte array of the entire message and (assuming its the correct type)
+     * have the message construct itself from the byte array.
+     *
+     * @param data <code>byte[]</code> of all the data belonging to the LinkLatency message type
+     */
+    public LinkLatency(byte[] data) throws MessageTypeException
+    {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the LinkLatency message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public LinkLatency(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return MessageCodecs.encodedSize(this);
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
+    }
+
+    public String getTargetID()
+    {
+        return _targetID;
+    }
+
+    public void setTargetID(String targetID)
+    {
+        _targetID = targetID;
+    }
+
+    public long getRttNanos()
+    {
+        return _rttNanos;
+    }
+
+    public void setRttNanos(long rttNanos)
+    {
+        _rttNanos = rttNanos;
+    }
+}
@@ -0,0 +1,134 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A LinkPing class defining what a LinkPing message is. A MessagingNode periodically sends one
+ * over each of its Links to measure the Link's round trip time; the node at the other end answers
+ * right away with a LinkPong carrying the same sequence number and time.
+ */
+@WireMessage
+public class LinkPing extends Message implements Event
+{
+    /**
+     * int numbering the probes sent on a Link
+     */
+    @WireField
+    private int _sequence;
+
+    /**
+     * long of the sender's System.nanoTime() when the probe was sent; only meaningful to the sender
+     */
+    @WireField
+    private long _sentNanos;
+
+    /**
+     * Default constructor
+     */
+    public LinkPing()
+    {
+        this("", 0, "");
+    }
+
+    /**
+     * Standard constructor
+     */
+    public LinkPing(String ipAddress, int portNumber, String id)
+    {
+        setType(Protocol.LINK_PING);
+        setIpAddress(ipAddress);
+        setPort(portNumber);
+        setID(id);
+
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
+
+    }
+
+
+    /**
+     * Overloaded constructor to be used by the TCPReceiverThread. This constructor allows
+     * the caller to pass a byte array of the entire message and (assuming its the correct type)
+     * have the message construct itself from the byte array.
+     *
+     * @param data <code>byte[]</code> of all the data belonging to the LinkPing message type
+     */
+    public LinkPing(byte[] data) throws MessageTypeException
+    {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the LinkPing message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public LinkPing(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return MessageCodecs.encodedSize(this);
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
+    }
+
+    public int getSequence()
+    {
+        return _sequence;
+    }
+
+    public void setSequence(int sequence)
+    {
+        _sequence = sequence;
+    }
+
+    public long getSentNanos()
+    {
+        return _sentNanos;
+    }
+
+    public void setSentNanos(long sentNanos)
+    {
+        _sentNanos = sentNanos;
+    }
+}
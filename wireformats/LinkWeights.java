@@ -2,15 +2,20 @@ package cs455.overlay.wireformats;
 
 import cs455.overlay.exceptions.MessageTypeException;
 
-import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 
 /**
  * A LinkWeights class defining what a LinkWeights message is. The LinkWeights message
  * will be sent by the Registry to listening MessagingNodes so that they are aware of
  * the weights between nodes.
  *
+ * On the wire, the message carries the ID of every node once, in a table in the order of the indices
+ * the Registry assigned them (see RegistrationResponse), and each link as the indices of its two
+ * ends and its weight. Decoding it rebuilds the connection info in its usual String form.
+ *
  * @author ahrtmn, 26 01 2014
  */
 public class LinkWeights extends Message implements Event
@@ -26,6 +31,21 @@ public class LinkWeights extends Message implements Event
      */
     private ArrayList<String> _nodeConnectionInfo;
 
+    /**
+     * ArrayList of the link in each entry of _nodeConnectionInfo, as {source index, target index, weight}
+     */
+    private ArrayList<int[]> _links;
+
+    /**
+     * ArrayList of the ID of every node by its index; null where no node has the index
+     */
+    private ArrayList<String> _nodeIDs;
+
+    /**
+     * HashMap of the index of every node by its ID
+     */
+    private HashMap<String, Integer> _nodeIndices;
+
     /**
      * Default constructor
      */
@@ -44,16 +64,15 @@ public class LinkWeights extends Message implements Event
         setPort(portNumber);
         setID(id);
 
-        /**
-         * Get the current time stamp of message creation
-         */
-        Date date = new Date();
-        setTimestamp(date.getTime());
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
 
         _numPeerMessagingNodes = 0;
 
         _nodeConnectionInfo = new ArrayList<String>();
-
+        _links = new ArrayList<int[]>();
+        _nodeIDs = new ArrayList<String>();
+        _nodeIndices = new HashMap<String, Integer>();
 
     }
 
@@ -66,149 +85,168 @@ public class LinkWeights extends Message implements Event
      */
     public LinkWeights(byte[] data) throws MessageTypeException
     {
+        this(data, 0, data.length);
+    }
 
-        /**
-         * Set up appropriate streams to read the fields from the byte array
-         * into the private data members.
-         */
-        ByteArrayInputStream baInputStream =
-                new ByteArrayInputStream(data);
-
-        DataInputStream din = new DataInputStream(new BufferedInputStream(baInputStream));
 
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the LinkWeights message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public LinkWeights(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
 
-        /**
-         * Try to read the message data in from the byte array
-         */
-        try
-        {
-            // read the type of the message
-            setType(din.readInt());
 
-            // read the length of the ip address
-            int ipLength = din.readInt();
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return headerSize() + 4 + tableSize() + 4 + 12 * _links.size();
+    }
 
-            // read the ip addresses bytes
-            byte[] ipBytes = new byte[ipLength];
-            din.readFully(ipBytes);
 
-            // convert the ip address to a string
-            setIpAddress(new String(ipBytes));
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        writeHeader(buffer);
+        buffer.putInt(_nodeIDs.size());
 
-            // get the port number
-            setPort(din.readInt());
+        // FOR every index, the ID of the node that has it
+        for (String nodeID : _nodeIDs)
+            putString(buffer, (nodeID == null) ? "" : nodeID);
 
-            // read the ID from the stream
-            int idLength = din.readInt();
-            byte[] idBytes = new byte[idLength];
-            din.readFully(idBytes);
-            setID(new String(idBytes));
+        buffer.putInt(getNumConnections());
 
-            // get the time stamp
-            setTimestamp(din.readLong());
+        // FOR every link, its ends and its weight
+        for (int[] link : _links)
+        {
+            buffer.putInt(link[0]);
+            buffer.putInt(link[1]);
+            buffer.putInt(link[2]);
+        }
+    }
 
-            // Read in the number of connections
-            _numPeerMessagingNodes = din.readInt();
 
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        readHeader(buffer);
 
-            /**
-             * Re-create the connections ArrayList
-             */
-            _nodeConnectionInfo = new ArrayList<String>();
-            int byteLength;
-            byte[] stringBytes;
+        /**
+         * Re-create the node table
+         */
+        int numNodes = buffer.getInt();
+        _nodeIDs.clear();
+        _nodeIndices.clear();
 
-            // FOR every connection info we should have
-            for (int i = 0; i < _numPeerMessagingNodes; ++i)
-            {
-                // read in the length and create a byte array of that size
-                byteLength = din.readInt();
-                stringBytes = new byte[byteLength];
+        // FOR every index in the table
+        for (int i = 0; i < numNodes; ++i)
+        {
+            String nodeID = getString(buffer);
 
-                // read in the string
-                din.readFully(stringBytes);
+            // IF a node has the index
+            if (!nodeID.isEmpty())
+                setNodeIndex(nodeID, i);
+            else
+                _nodeIDs.add(null);
+        }
 
-                _nodeConnectionInfo.add(new String(stringBytes));
+        // Read in the number of connections
+        int numConnections = buffer.getInt();
 
-            }
+        /**
+         * Re-create the connections ArrayList
+         */
+        _nodeConnectionInfo.clear();
+        _links.clear();
+        _numPeerMessagingNodes = 0;
 
-            baInputStream.close();
-            din.close();
-        }
-        catch (IOException e)
+        // FOR every connection info we should have
+        for (int i = 0; i < numConnections; ++i)
         {
-            e.printStackTrace();
-        }
+            int source = buffer.getInt();
+            int target = buffer.getInt();
+            int weight = buffer.getInt();
 
-        // IF the message type isn't appropriate to this message
-        if (getType() != Protocol.LINK_WEIGHTS)
-            throw new MessageTypeException("Invalid message type! LinkWeights must be " + Protocol
-                    .LINK_WEIGHTS + "!");
+            // IF the link is between nodes the table doesn't have
+            if (getNodeID(source) == null || getNodeID(target) == null)
+                throw new BufferUnderflowException();
 
+            addConnectionInfo(getNodeID(source), getNodeID(target), weight);
+        }
     }
 
-
     /**
-     * Event interface method
-     * Returns the current message in bytes
-     *
-     * @return <code>byte[]</code> of the message transformed into a byte array.
+     * @return <code>int</code> of the number of bytes the node table takes up.
      */
-    public byte[] getBytes()
+    private int tableSize()
     {
+        int size = 0;
 
-        /**
-         * Create an empty byte array and get the appropriate streams to be able to
-         * write to it.
-         */
-
-        byte[] marshalledBytes = null;
-        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
-        DataOutputStream dout =
-                new DataOutputStream(new BufferedOutputStream(baOutputStream));
+        // FOR every index in the table
+        for (String nodeID : _nodeIDs)
+            size += (nodeID == null) ? 4 : stringSize(nodeID);
 
+        return size;
+    }
 
-        try
-        {
-            /**
-             * Write the message data to the stream
-             */
-            dout.writeInt(getType());
-            dout.writeInt(getIpAddress().length());
-            dout.writeBytes(getIpAddress());
-            dout.writeInt(getPort());
-            dout.writeInt(getID().length());
-            dout.writeBytes(getID());
-            dout.writeLong(getTimestamp());
-            dout.writeInt(getNumConnections());
-
-            // FOR every node in the connection list
-            for (String connectionInfo : getNodeConnectionInfo())
-            {
-                // write the length of the string
-                dout.writeInt(connectionInfo.length());
-
-                // write the actual connection info
-                dout.writeBytes(connectionInfo);
-            }
-
-            dout.flush();
-
-            // get the byte array
-            marshalledBytes = baOutputStream.toByteArray();
-
-            baOutputStream.close();
-            dout.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+    /**
+     * Method to give a node its index in the table, as the Registry assigned it. A node must be
+     * given its index before any link of it is added, or it is given the next free one.
+     *
+     * @param nodeID <code>String</code> of the node's ID (hostname:port).
+     * @param index  <code>int</code> of the node's index.
+     */
+    public void setNodeIndex(String nodeID, int index)
+    {
+        // WHILE the table doesn't reach the index
+        while (_nodeIDs.size() <= index)
+            _nodeIDs.add(null);
 
+        _nodeIDs.set(index, nodeID);
+        _nodeIndices.put(nodeID, index);
+    }
 
-        return marshalledBytes;
+    /**
+     * @param nodeID <code>String</code> of a node's ID (hostname:port).
+     * @return <code>int</code> of the node's index; -1 if it has none in the table.
+     */
+    public int getNodeIndex(String nodeID)
+    {
+        Integer index = _nodeIndices.get(nodeID);
 
+        return (index == null) ? -1 : index;
+    }
 
+    /**
+     * @param index <code>int</code> of a node's index.
+     * @return <code>String</code> of the ID of the node with the index; null if there is none.
+     */
+    public String getNodeID(int index)
+    {
+        return (index >= 0 && index < _nodeIDs.size()) ? _nodeIDs.get(index) : null;
     }
 
     /**
@@ -233,7 +271,15 @@ public class LinkWeights extends Message implements Event
             return;
         }
 
-        getNodeConnectionInfo().add(sourceID + "\t" + targetID + "\t" + weight);
+        // IF either end hasn't been given an index, give it the next one
+        if (getNodeIndex(sourceID) < 0)
+            setNodeIndex(sourceID, _nodeIDs.size());
+
+        if (getNodeIndex(targetID) < 0)
+            setNodeIndex(targetID, _nodeIDs.size());
+
+        getNodeConnectionInfo().add(connectionInfo);
+        _links.add(new int[]{getNodeIndex(sourceID), getNodeIndex(targetID), weight});
         setNumConnections(getNumConnections() + 1);
 
     }
@@ -252,4 +298,9 @@ public class LinkWeights extends Message implements Event
     {
         return _nodeConnectionInfo;
     }
+
+    public ArrayList<String> getNodeIDs()
+    {
+        return _nodeIDs;
+    }
 }
@@ -1,5 +1,11 @@
 package cs455.overlay.wireformats;
 
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * A Message class
  *
@@ -113,11 +119,219 @@ public abstract class Message implements Event
     }
 
     /**
-     * getBytes method from the Event interface
+     * getBytes method from the Event interface. The message is written straight into an array of
+     * exactly the size it takes up.
      *
      * @return <code>byte[]</code> of the current messages contents
      */
-    public abstract byte[] getBytes();
+    public byte[] getBytes()
+    {
+        byte[] marshalledBytes = new byte[encodedSize()];
+
+        writeTo(ByteBuffer.wrap(marshalledBytes));
+
+        return marshalledBytes;
+    }
+
+    /**
+     * Method for subclasses to get the size of the fields every message starts with: the type, the
+     * sender's IP address, port and ID, and the timestamp.
+     *
+     * @return <code>int</code> of the number of bytes the fields take up.
+     */
+    protected int headerSize()
+    {
+        return 4 + senderSize() + 8;
+    }
+
+    /**
+     * Method for subclasses to write the fields every message starts with.
+     *
+     * @param buffer <code>ByteBuffer</code> to write to.
+     */
+    protected void writeHeader(ByteBuffer buffer)
+    {
+        buffer.putInt(getType());
+        writeSender(buffer);
+        buffer.putLong(getTimestamp());
+    }
+
+    /**
+     * Method for subclasses to read the fields every message starts with.
+     *
+     * @param buffer <code>ByteBuffer</code> to read from.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    protected void readHeader(ByteBuffer buffer) throws MessageTypeException
+    {
+        readType(buffer);
+        readSender(buffer);
+        setTimestamp(buffer.getLong());
+    }
+
+    /**
+     * Method for subclasses to read the type of a message and check it is their own, before anything
+     * else is read.
+     *
+     * @param buffer <code>ByteBuffer</code> to read from.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    protected void readType(ByteBuffer buffer) throws MessageTypeException
+    {
+        int type = buffer.getInt();
+
+        // IF the message type isn't appropriate to this message
+        if (type != getType())
+            throw new MessageTypeException("Invalid message type! " + getClass().getSimpleName() + " must be " +
+                    getType() + "; given " + type + "!");
+    }
+
+    /**
+     * @return <code>int</code> of the number of bytes the sender's IP address, port and ID take up.
+     */
+    protected int senderSize()
+    {
+        return stringSize(getIpAddress()) + 4 + stringSize(getID());
+    }
+
+    /**
+     * Method for subclasses to write the sender's IP address, port and ID.
+     *
+     * @param buffer <code>ByteBuffer</code> to write to.
+     */
+    protected void writeSender(ByteBuffer buffer)
+    {
+        putString(buffer, getIpAddress());
+        buffer.putInt(getPort());
+        putString(buffer, getID());
+    }
+
+    /**
+     * Method for subclasses to read the sender's IP address, port and ID.
+     *
+     * @param buffer <code>ByteBuffer</code> to read from.
+     */
+    protected void readSender(ByteBuffer buffer)
+    {
+        setIpAddress(getString(buffer));
+        setPort(buffer.getInt());
+        setID(getString(buffer));
+    }
+
+    /**
+     * @param string <code>String</code> to be written.
+     * @return <code>int</code> of the number of bytes the string takes up: its length, then a byte per character.
+     */
+    protected static int stringSize(String string)
+    {
+        return 4 + string.length();
+    }
+
+    /**
+     * Method to write a string the way DataOutputStream.writeBytes() does, the low byte of every
+     * character, after its length.
+     *
+     * @param buffer <code>ByteBuffer</code> to write to.
+     * @param string <code>String</code> to be written.
+     */
+    protected static void putString(ByteBuffer buffer, String string)
+    {
+        int length = string.length();
+
+        buffer.putInt(length);
+
+        for (int i = 0; i < length; ++i)
+            buffer.put((byte) string.charAt(i));
+    }
+
+    /**
+     * Method to read a string written by putString().
+     *
+     * @param buffer <code>ByteBuffer</code> to read from.
+     * @return <code>String</code> read.
+     */
+    protected static String getString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+
+        // IF the length can't be right
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        String string;
+
+        // IF the buffer is on the heap the string can be made straight from its array
+        if (buffer.hasArray())
+            string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.ISO_8859_1);
+        else
+        {
+            byte[] bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            string = new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        buffer.position(buffer.position() + length);
+
+        return string;
+    }
+
+    /**
+     * Method to step over a string written by putString() without reading it.
+     *
+     * @param buffer <code>ByteBuffer</code> to read from.
+     */
+    protected static void skipString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+
+        // IF the length can't be right
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * @param bytes <code>byte[]</code> to be written.
+     * @return <code>int</code> of the number of bytes the array takes up: its length, then its bytes.
+     */
+    protected static int byteArraySize(byte[] bytes)
+    {
+        return 4 + bytes.length;
+    }
+
+    /**
+     * Method to write a byte array after its length.
+     *
+     * @param buffer <code>ByteBuffer</code> to write to.
+     * @param bytes  <code>byte[]</code> to be written.
+     */
+    protected static void putByteArray(ByteBuffer buffer, byte[] bytes)
+    {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Method to read a byte array written by putByteArray().
+     *
+     * @param buffer <code>ByteBuffer</code> to read from.
+     * @return <code>byte[]</code> read.
+     */
+    protected static byte[] getByteArray(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+
+        // IF the length can't be right
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return bytes;
+    }
 
     /**
      * getID method to return the ID of the node associated with the current message
@@ -0,0 +1,651 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A MessageCodecs class holding the codec of every message marked WireMessage. Generated by
+ * util.MessageCodecProcessor from the fields of the messages; don't edit it by hand.
+ */
+final class MessageCodecs
+{
+    /**
+     * @param message <code>CompressedBatch</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(CompressedBatch message)
+    {
+        return 16 + message.senderSize() + Message.byteArraySize(message.getDeflated());
+    }
+
+    /**
+     * @param message <code>CompressedBatch</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(CompressedBatch message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.putInt(message.getRawLength());
+        Message.putByteArray(buffer, message.getDeflated());
+    }
+
+    /**
+     * @param message <code>CompressedBatch</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(CompressedBatch message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setRawLength(buffer.getInt());
+        message.setDeflated(Message.getByteArray(buffer));
+    }
+
+    /**
+     * @param message <code>DeregistrationRequest</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(DeregistrationRequest message)
+    {
+        return 12 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>DeregistrationRequest</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(DeregistrationRequest message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+    }
+
+    /**
+     * @param message <code>DeregistrationRequest</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(DeregistrationRequest message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+    }
+
+    /**
+     * @param message <code>FlowCredit</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(FlowCredit message)
+    {
+        return 16 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>FlowCredit</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(FlowCredit message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.putInt(message.getCredits());
+    }
+
+    /**
+     * @param message <code>FlowCredit</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(FlowCredit message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setCredits(buffer.getInt());
+    }
+
+    /**
+     * @param message <code>LinkAck</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(LinkAck message)
+    {
+        return 20 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>LinkAck</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(LinkAck message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.putLong(message.getReceived());
+    }
+
+    /**
+     * @param message <code>LinkAck</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(LinkAck message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setReceived(buffer.getLong());
+    }
+
+    /**
+     * @param message <code>LinkCapabilities</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(LinkCapabilities message)
+    {
+        return 17 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>LinkCapabilities</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(LinkCapabilities message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.putInt(message.getCapabilities());
+        buffer.put((byte) (message.getReply() ? 1 : 0));
+    }
+
+    /**
+     * @param message <code>LinkCapabilities</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(LinkCapabilities message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setCapabilities(buffer.getInt());
+        message.setReply(buffer.get() != 0);
+    }
+
+    /**
+     * @param message <code>LinkEmulation</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(LinkEmulation message)
+    {
+        return 32 + message.senderSize() + Message.stringSize(message.getTargetID());
+    }
+
+    /**
+     * @param message <code>LinkEmulation</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(LinkEmulation message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        Message.putString(buffer, message.getTargetID());
+        buffer.putInt(message.getDelayMicros());
+        buffer.putInt(message.getJitterMicros());
+        buffer.putLong(message.getBandwidthBytes());
+        buffer.putInt(message.getLossPerMillion());
+    }
+
+    /**
+     * @param message <code>LinkEmulation</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(LinkEmulation message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setTargetID(Message.getString(buffer));
+        message.setDelayMicros(buffer.getInt());
+        message.setJitterMicros(buffer.getInt());
+        message.setBandwidthBytes(buffer.getLong());
+        message.setLossPerMillion(buffer.getInt());
+    }
+
+    /**
+     * @param message <code>LinkLatency</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(LinkLatency message)
+    {
+        return 20 + message.senderSize() + Message.stringSize(message.getTargetID());
+    }
+
+    /**
+     * @param message <code>LinkLatency</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(LinkLatency message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        Message.putString(buffer, message.getTargetID());
+        buffer.putLong(message.getRttNanos());
+    }
+
+    /**
+     * @param message <code>LinkLatency</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(LinkLatency message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setTargetID(Message.getString(buffer));
+        message.setRttNanos(buffer.getLong());
+    }
+
+    /**
+     * @param message <code>LinkPing</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(LinkPing message)
+    {
+        return 24 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>LinkPing</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(LinkPing message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.putInt(message.getSequence());
+        buffer.putLong(message.getSentNanos());
+    }
+
+    /**
+     * @param message <code>LinkPing</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(LinkPing message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setSequence(buffer.getInt());
+        message.setSentNanos(buffer.getLong());
+    }
+
+    /**
+     * @param message <code>LinkPong</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(LinkPong message)
+    {
+        return 24 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>LinkPong</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(LinkPong message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.putInt(message.getSequence());
+        buffer.putLong(message.getSentNanos());
+    }
+
+    /**
+     * @param message <code>LinkPong</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(LinkPong message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setSequence(buffer.getInt());
+        message.setSentNanos(buffer.getLong());
+    }
+
+    /**
+     * @param message <code>LinkResume</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(LinkResume message)
+    {
+        return 20 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>LinkResume</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(LinkResume message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.putLong(message.getReceived());
+    }
+
+    /**
+     * @param message <code>LinkResume</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(LinkResume message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setReceived(buffer.getLong());
+    }
+
+    /**
+     * @param message <code>NodeRegistrationRequest</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(NodeRegistrationRequest message)
+    {
+        return 12 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>NodeRegistrationRequest</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(NodeRegistrationRequest message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+    }
+
+    /**
+     * @param message <code>NodeRegistrationRequest</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(NodeRegistrationRequest message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+    }
+
+    /**
+     * @param message <code>PullTrafficSummary</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(PullTrafficSummary message)
+    {
+        return 12 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>PullTrafficSummary</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(PullTrafficSummary message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+    }
+
+    /**
+     * @param message <code>PullTrafficSummary</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(PullTrafficSummary message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+    }
+
+    /**
+     * @param message <code>RegistrationRequest</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(RegistrationRequest message)
+    {
+        return 16 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>RegistrationRequest</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(RegistrationRequest message, ByteBuffer buffer)
+    {
+        buffer.putInt(message.getType());
+        message.writeSender(buffer);
+        buffer.putInt(message.getNodeServerPort());
+        buffer.putLong(message.getTimestamp());
+    }
+
+    /**
+     * @param message <code>RegistrationRequest</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(RegistrationRequest message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readType(buffer);
+        message.readSender(buffer);
+        message.setNodeServerPort(buffer.getInt());
+        message.setTimestamp(buffer.getLong());
+    }
+
+    /**
+     * @param message <code>RegistrationResponse</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(RegistrationResponse message)
+    {
+        return 17 + message.senderSize() + Message.stringSize(message.getDescription());
+    }
+
+    /**
+     * @param message <code>RegistrationResponse</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(RegistrationResponse message, ByteBuffer buffer)
+    {
+        buffer.putInt(message.getType());
+        message.writeSender(buffer);
+        buffer.put((byte) (message.getStatus() ? 1 : 0));
+        Message.putString(buffer, message.getDescription());
+        buffer.putInt(message.getNodeIndex());
+        buffer.putLong(message.getTimestamp());
+    }
+
+    /**
+     * @param message <code>RegistrationResponse</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(RegistrationResponse message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readType(buffer);
+        message.readSender(buffer);
+        message.setStatus(buffer.get() != 0);
+        message.setDescription(Message.getString(buffer));
+        message.setNodeIndex(buffer.getInt());
+        message.setTimestamp(buffer.getLong());
+    }
+
+    /**
+     * @param message <code>SharedMemoryOffer</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(SharedMemoryOffer message)
+    {
+        return 20 + message.senderSize() + Message.stringSize(message.getPath());
+    }
+
+    /**
+     * @param message <code>SharedMemoryOffer</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(SharedMemoryOffer message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        Message.putString(buffer, message.getPath());
+        buffer.putLong(message.getNonce());
+    }
+
+    /**
+     * @param message <code>SharedMemoryOffer</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(SharedMemoryOffer message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setPath(Message.getString(buffer));
+        message.setNonce(buffer.getLong());
+    }
+
+    /**
+     * @param message <code>SharedMemoryResponse</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(SharedMemoryResponse message)
+    {
+        return 13 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>SharedMemoryResponse</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(SharedMemoryResponse message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.put((byte) (message.getStatus() ? 1 : 0));
+    }
+
+    /**
+     * @param message <code>SharedMemoryResponse</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(SharedMemoryResponse message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setStatus(buffer.get() != 0);
+    }
+
+    /**
+     * @param message <code>StripeJoin</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(StripeJoin message)
+    {
+        return 16 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>StripeJoin</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(StripeJoin message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+        buffer.putInt(message.getStripe());
+    }
+
+    /**
+     * @param message <code>StripeJoin</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(StripeJoin message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+        message.setStripe(buffer.getInt());
+    }
+
+    /**
+     * @param message <code>TaskComplete</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(TaskComplete message)
+    {
+        return 12 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>TaskComplete</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(TaskComplete message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+    }
+
+    /**
+     * @param message <code>TaskComplete</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(TaskComplete message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+    }
+
+    /**
+     * @param message <code>TaskInitiate</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(TaskInitiate message)
+    {
+        return 12 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>TaskInitiate</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(TaskInitiate message, ByteBuffer buffer)
+    {
+        message.writeHeader(buffer);
+    }
+
+    /**
+     * @param message <code>TaskInitiate</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(TaskInitiate message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readHeader(buffer);
+    }
+
+    /**
+     * @param message <code>TrafficSummary</code> to be measured.
+     * @return <code>int</code> of the number of bytes the message takes up on the wire.
+     */
+    static int encodedSize(TrafficSummary message)
+    {
+        return 48 + message.senderSize();
+    }
+
+    /**
+     * @param message <code>TrafficSummary</code> to be written.
+     * @param buffer  <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    static void writeTo(TrafficSummary message, ByteBuffer buffer)
+    {
+        buffer.putInt(message.getType());
+        message.writeSender(buffer);
+        buffer.putInt(message.getNumSent());
+        buffer.putLong(message.getSentSummation());
+        buffer.putInt(message.getNumReceived());
+        buffer.putLong(message.getReceivedSummation());
+        buffer.putInt(message.getNumRelayed());
+        buffer.putLong(message.getTimestamp());
+        buffer.putInt(message.getNumLost());
+        buffer.putInt(message.getNumReordered());
+    }
+
+    /**
+     * @param message <code>TrafficSummary</code> to read the fields into.
+     * @param buffer  <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    static void readFrom(TrafficSummary message, ByteBuffer buffer) throws MessageTypeException
+    {
+        message.readType(buffer);
+        message.readSender(buffer);
+        message.setNumSent(buffer.getInt());
+        message.setSentSummation(buffer.getLong());
+        message.setNumReceived(buffer.getInt());
+        message.setReceivedSummation(buffer.getLong());
+        message.setNumRelayed(buffer.getInt());
+        message.setTimestamp(buffer.getLong());
+        message.setNumLost(buffer.getInt());
+        message.setNumReordered(buffer.getInt());
+    }
+
+}
@@ -2,14 +2,14 @@ package cs455.overlay.wireformats;
 
 import cs455.overlay.exceptions.MessageTypeException;
 
-import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Date;
 
 /**
  * A MessagingNodeList class defining what a MessagingNodeList message is.
  * The MessagingNodeList will be sent by the Registry to all listening MessagingNodes informing
- * them of the other nodes in the overlay that they should connect with.
+ * them of the other nodes in the overlay that they should connect with. Along with each node's ID
+ * goes the index the Registry assigned it, and the message also carries the recipient's own.
  *
  * @author ahrtmn, 26 01 2014
  */
@@ -26,6 +26,16 @@ public class MessagingNodeList extends Message implements Event
      */
     private ArrayList<String> _nodeConnectionInfo;
 
+    /**
+     * ArrayList of the index the Registry assigned each node in _nodeConnectionInfo
+     */
+    private ArrayList<Integer> _nodeIndices;
+
+    /**
+     * int for the index the Registry assigned the recipient of this message
+     */
+    private int _nodeIndex;
+
     /**
      * Default constructor
      */
@@ -44,16 +54,17 @@ public class MessagingNodeList extends Message implements Event
         setPort(portNumber);
         setID(id);
 
-        /**
-         * Get the current time stamp of message creation
-         */
-        Date date = new Date();
-        setTimestamp(date.getTime());
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
 
         _numPeerMessagingNodes = 0;
 
         _nodeConnectionInfo = new ArrayList<String>();
 
+        _nodeIndices = new ArrayList<Integer>();
+
+        _nodeIndex = -1;
+
 
     }
 
@@ -67,156 +78,125 @@ public class MessagingNodeList extends Message implements Event
      */
     public MessagingNodeList(byte[] data) throws MessageTypeException
     {
+        this(data, 0, data.length);
+    }
 
-        /**
-         * Set up appropriate streams to read the fields from the byte array
-         * into the private data members.
-         */
-        ByteArrayInputStream baInputStream =
-                new ByteArrayInputStream(data);
-
-        DataInputStream din = new DataInputStream(new BufferedInputStream(baInputStream));
-
-
-        /**
-         * Try to read the message data in from the byte array
-         */
-        try
-        {
-            // read the type of the message
-            setType(din.readInt());
-
-            // read the length of the ip address
-            int ipLength = din.readInt();
-
-            // read the ip addresses bytes
-            byte[] ipBytes = new byte[ipLength];
-            din.readFully(ipBytes);
-
-            // convert the ip address to a string
-            setIpAddress(new String(ipBytes));
-
-            // get the port number
-            setPort(din.readInt());
-
-            // read the ID from the stream
-            int idLength = din.readInt();
-            byte[] idBytes = new byte[idLength];
-            din.readFully(idBytes);
-            setID(new String(idBytes));
-
-            // get the time stamp
-            setTimestamp(din.readLong());
-
-            // Read in the max number of connections the recipient is to have
-            _numPeerMessagingNodes = din.readInt();
 
-            /**
-             * Re-create the connections ArrayList
-             */
-            int numConnectionInfo = din.readInt();  // how many nodes the recipient is to connect with
-            _nodeConnectionInfo = new ArrayList<String>();
-            int byteLength;
-            byte[] stringBytes;
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the MessagingNodeList message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public MessagingNodeList(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
 
-            // FOR every connection info we should have
-            for (int i = 0; i < numConnectionInfo; ++i)
-            {
-                // read in the length and create a byte array of that size
-                byteLength = din.readInt();
-                stringBytes = new byte[byteLength];
 
-                // read in the string
-                din.readFully(stringBytes);
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return headerSize() + 4 + 4 + 4 + listSize();
+    }
 
-                _nodeConnectionInfo.add(new String(stringBytes));
 
-            }
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        writeHeader(buffer);
+        buffer.putInt(getNumConnections());
+        buffer.putInt(getNodeIndex());
+        buffer.putInt(getNodeConnectionInfo().size());
 
-            baInputStream.close();
-            din.close();
-        }
-        catch (IOException e)
+        // FOR every node in the connection list, its ID and its index
+        for (int i = 0; i < _nodeConnectionInfo.size(); ++i)
         {
-            e.printStackTrace();
+            putString(buffer, _nodeConnectionInfo.get(i));
+            buffer.putInt((i < _nodeIndices.size()) ? _nodeIndices.get(i) : -1);
         }
-
-        // IF the message type isn't appropriate to this message
-        if (getType() != Protocol.MESSAGING_NODE_LIST)
-            throw new MessageTypeException("Invalid message type! MessagingNodeList must be " + Protocol
-                    .MESSAGING_NODE_LIST + "!");
-
     }
 
 
     /**
      * Event interface method
-     * Returns the current message in bytes
+     * Reads the message's fields from a buffer
      *
-     * @return <code>byte[]</code> of the message transformed into a byte array.
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
      */
-    public byte[] getBytes()
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
     {
+        readHeader(buffer);
 
-        /**
-         * Create an empty byte array and get the appropriate streams to be able to
-         * write to it.
-         */
+        // Read in the max number of connections the recipient is to have
+        _numPeerMessagingNodes = buffer.getInt();
 
-        byte[] marshalledBytes = null;
-        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
-        DataOutputStream dout =
-                new DataOutputStream(new BufferedOutputStream(baOutputStream));
+        // read the index the recipient was assigned
+        _nodeIndex = buffer.getInt();
 
+        /**
+         * Re-create the connections ArrayList
+         */
+        int numConnectionInfo = buffer.getInt();  // how many nodes the recipient is to connect with
+        _nodeConnectionInfo.clear();
+        _nodeIndices.clear();
 
-        try
+        // FOR every connection info we should have
+        for (int i = 0; i < numConnectionInfo; ++i)
         {
-            /**
-             * Write the message data to the stream
-             */
-            dout.writeInt(getType());
-            dout.writeInt(getIpAddress().length());
-            dout.writeBytes(getIpAddress());
-            dout.writeInt(getPort());
-            dout.writeInt(getID().length());
-            dout.writeBytes(getID());
-            dout.writeLong(getTimestamp());
-            dout.writeInt(getNumConnections());
-            dout.writeInt(getNodeConnectionInfo().size());
-
-            // FOR every node in the connection list
-            for (String connectionInfo : _nodeConnectionInfo)
-            {
-                // write the length of the string
-                dout.writeInt(connectionInfo.length());
-
-                // write the actual connection info
-                dout.writeBytes(connectionInfo);
-            }
-
-            dout.flush();
-
-            // get the byte array
-            marshalledBytes = baOutputStream.toByteArray();
-
-            baOutputStream.close();
-            dout.close();
+            _nodeConnectionInfo.add(getString(buffer));
+            _nodeIndices.add(buffer.getInt());
         }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-
+    }
 
-        return marshalledBytes;
+    /**
+     * @return <code>int</code> of the number of bytes the connection info takes up.
+     */
+    private int listSize()
+    {
+        int size = 0;
 
+        // FOR every node in the connection list
+        for (String connectionInfo : _nodeConnectionInfo)
+            size += stringSize(connectionInfo) + 4;
 
+        return size;
     }
 
     /**
      * ************************* ACCESSORS AND MUTATORS ******************************
      */
 
+    /**
+     * Method to add a node the recipient is to connect with.
+     *
+     * @param ID    <code>String</code> of the node's ID (hostname:port).
+     * @param index <code>int</code> of the index the Registry assigned the node.
+     */
+    public void addNodeConnectionInfo(String ID, int index)
+    {
+        // IF some nodes were added without their indices, keep the indices in line with the IDs
+        while (_nodeIndices.size() < _nodeConnectionInfo.size())
+            _nodeIndices.add(-1);
+
+        _nodeConnectionInfo.add(ID);
+        _nodeIndices.add(index);
+    }
+
     public int getNumConnections()
     {
         return _numPeerMessagingNodes;
@@ -232,4 +212,19 @@ public class MessagingNodeList extends Message implements Event
         return _nodeConnectionInfo;
     }
 
+    public ArrayList<Integer> getNodeIndices()
+    {
+        return _nodeIndices;
+    }
+
+    public int getNodeIndex()
+    {
+        return _nodeIndex;
+    }
+
+    public void setNodeIndex(int nodeIndex)
+    {
+        _nodeIndex = nodeIndex;
+    }
+
 }
@@ -2,11 +2,11 @@ package cs455.overlay.wireformats;
 
 import cs455.overlay.exceptions.MessageTypeException;
 
-import java.io.*;
-import java.util.Date;
+import java.nio.ByteBuffer;
 
 /**
- * A NodeRegistrationResponse class
+ * A NodeRegistrationResponse class. It goes over the wire exactly as a RegistrationResponse does,
+ * so it is encoded and decoded by the RegistrationResponse's codec.
  *
  * @author ahrtmn, 11 02 2014
  */
@@ -37,11 +37,8 @@ public class NodeRegistrationResponse extends RegistrationResponse implements Ev
         setID(ID);
         setStatus(false);
 
-        /**
-         * Get the current time stamp of message creation
-         */
-        Date date = new Date();
-        setTimestamp(date.getTime());
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
 
         _description = "";
 
@@ -57,121 +54,22 @@ public class NodeRegistrationResponse extends RegistrationResponse implements Ev
      */
     public NodeRegistrationResponse(byte[] data) throws MessageTypeException
     {
-
-        /**
-         * Set up appropriate streams to read the fields from the byte array
-         * into the private data members.
-         */
-        ByteArrayInputStream baInputStream =
-                new ByteArrayInputStream(data);
-
-        DataInputStream din = new DataInputStream(new BufferedInputStream(baInputStream));
-
-
-        /**
-         * Try to read the message data in from the byte array
-         */
-        try
-        {
-            // read the type of the message
-            setType(din.readInt());
-
-            // read the ip addresses bytes
-            int ipLength = din.readInt();
-            byte[] ipBytes = new byte[ipLength];
-            din.readFully(ipBytes);
-            setIpAddress(new String(ipBytes));
-
-            // get the port number
-            setPort(din.readInt());
-
-            // get the ID
-            int idLength = din.readInt();
-            byte[] id = new byte[idLength];
-            din.readFully(id);
-            setID(new String(id));
-
-            // get the status
-            setStatus(din.readBoolean());
-
-            // read the description
-            int descLength = din.readInt();
-            byte[] desc = new byte[descLength];
-            din.readFully(desc);
-            setDescription(new String(desc));
-
-            // get the time stamp
-            setTimestamp(din.readLong());
-
-
-            baInputStream.close();
-            din.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-
-        // IF the message type isn't appropriate to this message
-        if (getType() != Protocol.MESSAGING_NODE_CONNECTION_RESPONSE)
-            throw new MessageTypeException("Invalid message type! RegistrationRequest must be " + Protocol
-                    .REGISTRATION_REQUEST + "!");
-
+        this(data, 0, data.length);
     }
 
+
     /**
-     * Event interface method
-     * Returns the current message in bytes
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
      *
-     * @return <code>byte[]</code> of the message transformed into a byte array.
+     * @param data   <code>byte[]</code> holding the NodeRegistrationResponse message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
      */
-    public byte[] getBytes()
+    public NodeRegistrationResponse(byte[] data, int offset, int length) throws MessageTypeException
     {
-
-        /**
-         * Create an empty byte array and get the appropriate streams to be able to
-         * write to it.
-         */
-
-        byte[] marshalledBytes = null;
-        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
-        DataOutputStream dout =
-                new DataOutputStream(new BufferedOutputStream(baOutputStream));
-
-
-        try
-        {
-            /**
-             * Write the message data to the stream
-             */
-            dout.writeInt(getType());
-            dout.writeInt(getIpAddress().length());
-            dout.writeBytes(getIpAddress());
-            dout.writeInt(getPort());
-            dout.writeInt(getID().length());
-            dout.writeBytes(getID());
-            dout.writeBoolean(getStatus());
-            dout.writeInt(getDescription().length());
-            dout.writeBytes(getDescription());
-            dout.writeLong(getTimestamp());
-
-            dout.flush();
-
-            // get the byte array
-            marshalledBytes = baOutputStream.toByteArray();
-
-            baOutputStream.close();
-            dout.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-
-
-        return marshalledBytes;
-
-
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
     }
 
     /**
@@ -2,28 +2,103 @@ package cs455.overlay.wireformats;
 
 import cs455.overlay.exceptions.MessageTypeException;
 
-import java.io.*;
-import java.util.Date;
-import java.util.LinkedList;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A PayloadMessage class to carry the actual data we are wanting to send.
  *
+ * The path a PayloadMessage takes is carried as the indices the Registry assigned the nodes along it
+ * (see RegistrationResponse), an int per hop, rather than their IDs. Right after the type, a
+ * PayloadMessage carries a hop cursor: the index in the message of the path entry for the node the
+ * message is being sent to. Entries before the cursor are hops already taken. A relay can therefore
+ * forward the message without decoding it: it reads the cursor, steps over its own entry to the next
+ * hop's, and writes the new cursor in place (see nextHop() and setHopCursor()). Decoding a message
+ * keeps the whole path, and getHopIndex() is where the receiving node is in it.
+ *
+ * A PayloadMessage can also be a view over a received frame (see wrap()), so a receiver can reuse one
+ * for every payload message it receives. The offsets of the fields are worked out once, when the
+ * frame is wrapped, and nothing is decoded until it is asked for: the port, time stamp, payload, path
+ * size and next hop are read straight out of the frame, and the sender's IP address, ID and the path
+ * only become objects the first time they are asked for. Changing or encoding a view decodes the whole
+ * message first, after which it no longer depends on the frame.
+ *
  * @author ahrtmn, 12 02 2014
  */
 public class PayloadMessage extends Message implements Event
 {
 
     /**
-     * String ArrayList to hold the path this message should take to its sink node
+     * int array of the indices of the nodes in the path this message should take to its sink node
      */
-    private LinkedList<String> _path;
+    private int[] _path;
+
+    /**
+     * int index in _path of the node the message is being sent to
+     */
+    private int _hopIndex;
 
     /**
      * int for actual payload
      */
     private int _payload;
 
+    /**
+     * int index in a PayloadMessage of its hop cursor
+     */
+    public static final int HOP_CURSOR_OFFSET = 4;
+
+    /**
+     * int for the number of bytes a path entry takes up: the node's index
+     */
+    public static final int ENTRY_SIZE = 4;
+
+    /**
+     * int array of the path of a message with none
+     */
+    private static final int[] NO_PATH = new int[0];
+
+    /**
+     * byte array holding the frame the message is a view over; null if the message isn't a view
+     */
+    private byte[] _frame;
+
+    /**
+     * int index in _frame of the first byte of the message
+     */
+    private int _offset;
+
+    /**
+     * int index in the viewed message of the entry of the sender's ID
+     */
+    private int _idEntry;
+
+    /**
+     * int index in the viewed message of the time stamp; the payload and the path follow it
+     */
+    private int _timestampIndex;
+
+    /**
+     * int index in the viewed message of the receiving node's path entry
+     */
+    private int _hopCursor;
+
+    /**
+     * int index in the viewed message of the end of the path
+     */
+    private int _pathEnd;
+
+    /**
+     * boolean for if the sender's IP address and ID of the viewed message have been decoded
+     */
+    private boolean _senderDecoded;
+
+    /**
+     * boolean for if the path of the viewed message has been decoded
+     */
+    private boolean _pathDecoded;
+
     /**
      * Default constructor
      */
@@ -44,13 +119,11 @@ public class PayloadMessage extends Message implements Event
         setID(id);
         _payload = 0;
 
-        _path = new LinkedList<String>();
+        _path = NO_PATH;
+        _hopIndex = 0;
 
-        /**
-         * Get the current time stamp of message creation
-         */
-        Date date = new Date();
-        setTimestamp(date.getTime());
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
 
     }
 
@@ -64,153 +137,341 @@ public class PayloadMessage extends Message implements Event
      */
     public PayloadMessage(byte[] data) throws MessageTypeException
     {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the PayloadMessage message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public PayloadMessage(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        materialize();
+
+        return 4 + 4 + senderSize() + 8 + 4 + 4 + ENTRY_SIZE * _path.length;
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        materialize();
+
+        buffer.putInt(getType());
+
+        // the cursor is at the receiving node's entry of the path, which follows the fixed fields
+        buffer.putInt(36 + getIpAddress().length() + getID().length() + ENTRY_SIZE * _hopIndex);
+        writeSender(buffer);
+        buffer.putLong(getTimestamp());
+        buffer.putInt(getPayload());
+        buffer.putInt(_path.length);
+
+        // FOR every node in the path
+        for (int node : _path)
+            buffer.putInt(node);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer.
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        release();
 
         /**
-         * Set up appropriate streams to read the fields from the byte array
-         * into the private data members.
+         * int index in the buffer of the first byte of the message, to find the cursor's entry
          */
-        ByteArrayInputStream baInputStream =
-                new ByteArrayInputStream(data);
+        int start = buffer.position();
+
+        readType(buffer);
+
+        // read the index of the path entry for the receiving node
+        int hopCursor = buffer.getInt();
+
+        readSender(buffer);
+
+        // get the time stamp
+        setTimestamp(buffer.getLong());
 
-        DataInputStream din = new DataInputStream(new BufferedInputStream(baInputStream));
+        // read the payload
+        _payload = buffer.getInt();
 
 
         /**
-         * Try to read the message data in from the byte array
+         * Re-create the path
          */
-        try
-        {
-            // read the type of the message
-            setType(din.readInt());
+        int numPaths = buffer.getInt();
 
-            // read the length of the ip address
-            int length = din.readInt();
+        // IF the path can't be all there
+        if (numPaths < 0 || numPaths > buffer.remaining() / ENTRY_SIZE)
+            throw new BufferUnderflowException();
 
-            // read the ip addresses bytes
-            byte[] ipBytes = new byte[length];
-            din.readFully(ipBytes);
+        int pathStart = buffer.position() - start;
 
-            // convert the ip address to a string
-            setIpAddress(new String(ipBytes));
+        // IF the cursor isn't at one of the entries, or just past the last
+        if (hopCursor < pathStart || hopCursor > pathStart + ENTRY_SIZE * numPaths ||
+                (hopCursor - pathStart) % ENTRY_SIZE != 0)
+            throw new BufferUnderflowException();
 
-            // get the port number
-            setPort(din.readInt());
+        _path = new int[numPaths];
+        _hopIndex = (hopCursor - pathStart) / ENTRY_SIZE;
 
-            // read the ID from the stream
-            length = din.readInt();
-            byte[] idBytes = new byte[length];
-            din.readFully(idBytes);
-            setID(new String(idBytes));
+        // FOR every path info we should have
+        for (int i = 0; i < numPaths; ++i)
+            _path[i] = buffer.getInt();
+    }
 
+    /**
+     * Method to make the message a view over a received frame, in place of whatever it held before.
+     * The frame is checked and the offsets of its fields worked out, but nothing is decoded. The frame
+     * must not change until release() is called, unless the message has been decoded by then.
+     *
+     * @param data   <code>byte[]</code> holding the PayloadMessage.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     * @return <code>true</code> if the message is now a view over the frame; <code>false</code> if the
+     * frame doesn't hold a well formed PayloadMessage, and the message is left as it was.
+     */
+    public boolean wrap(byte[] data, int offset, int length)
+    {
+        // IF there isn't even room for the type, the hop cursor and the IP address's length
+        if (length < 12 || readInt(data, offset) != Protocol.PAYLOAD_MESSAGE)
+            return false;
 
-            // get the time stamp
-            setTimestamp(din.readLong());
+        int ipLength = readInt(data, offset + 8);
 
-            // read the payload
-            _payload = din.readInt();
+        // IF the IP address, the port and the ID's length don't fit
+        if (ipLength < 0 || ipLength > length - 20)
+            return false;
 
+        int idEntry = 12 + ipLength + 4;
+        int idLength = readInt(data, offset + idEntry);
 
-            /**
-             * Re-create the path linked list
-             */
-            int numPaths = din.readInt();  // how many nodes the recipient is to connect with
-            _path = new LinkedList<String>();
-            int byteLength;
-            byte[] stringBytes;
+        // IF the ID, the time stamp, the payload and the number of path entries don't fit
+        if (idLength < 0 || idLength > length - idEntry - 20)
+            return false;
 
-            // FOR every path info we should have
-            for (int i = 0; i < numPaths; ++i)
-            {
-                // read in the length and create a byte array of that size
-                byteLength = din.readInt();
-                stringBytes = new byte[byteLength];
+        int timestampIndex = idEntry + 4 + idLength;
+        int hopCursor = readInt(data, offset + HOP_CURSOR_OFFSET);
+        int numPaths = readInt(data, offset + timestampIndex + 12);
 
-                // read in the string
-                din.readFully(stringBytes);
+        /**
+         * int index in the message of the first path entry
+         */
+        int pathStart = timestampIndex + 16;
 
-                _path.add(new String(stringBytes));
+        // IF the path entries don't fit
+        if (numPaths < 0 || numPaths > (length - pathStart) / ENTRY_SIZE)
+            return false;
 
-            }
+        int pathEnd = pathStart + ENTRY_SIZE * numPaths;
 
-            baInputStream.close();
-            din.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        // IF the cursor isn't at one of the entries, or just past the last
+        if (hopCursor < pathStart || hopCursor > pathEnd || (hopCursor - pathStart) % ENTRY_SIZE != 0)
+            return false;
 
-        // IF the message type isn't appropriate to this message
-        if (getType() != Protocol.PAYLOAD_MESSAGE)
-            throw new MessageTypeException("Invalid message type! PayloadMessage must be " + Protocol
-                    .PAYLOAD_MESSAGE + "; given " + getType() + "!");
+        _frame = data;
+        _offset = offset;
+        _idEntry = idEntry;
+        _timestampIndex = timestampIndex;
+        _hopCursor = hopCursor;
+        _pathEnd = pathEnd;
+        _senderDecoded = false;
+        _pathDecoded = false;
 
+        return true;
     }
 
+    /**
+     * Method to stop the message being a view over a frame, once the frame is about to be reused.
+     */
+    public void release()
+    {
+        _frame = null;
+    }
 
     /**
-     * Event interface method
-     * Returns the current message in bytes
-     *
-     * @return <code>byte[]</code> of the message transformed into a byte array.
+     * @return <code>true</code> if the message is a view over a frame that hasn't been decoded.
      */
-    public byte[] getBytes()
+    public boolean isView()
     {
+        return _frame != null;
+    }
 
-        /**
-         * Create an empty byte array and get the appropriate streams to be able to
-         * write to it.
-         */
+    /**
+     * @return <code>int</code> of the number of nodes left in the path, the receiving node's included;
+     * read out of the frame of a view.
+     */
+    public int getPathSize()
+    {
+        // IF the path of a view hasn't been decoded, the entries are counted from the cursor
+        if (_frame != null && !_pathDecoded)
+            return (_pathEnd - _hopCursor) / ENTRY_SIZE;
 
-        byte[] marshalledBytes = null;
-        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
-        DataOutputStream dout =
-                new DataOutputStream(new BufferedOutputStream(baOutputStream));
+        return _path.length - _hopIndex;
+    }
 
+    /**
+     * @return <code>int</code> of the index of the node the message is being sent to; read out of the
+     * frame of a view. -1 if the path has run out.
+     */
+    public int getHop()
+    {
+        // IF the path of a view hasn't been decoded, the entry is read where the cursor is
+        if (_frame != null && !_pathDecoded)
+            return (_hopCursor < _pathEnd) ? readInt(_frame, _offset + _hopCursor) : -1;
 
-        try
-        {
-            /**
-             * Write the message data to the stream
-             */
-            dout.writeInt(getType());
-            dout.writeInt(getIpAddress().length());
-            dout.writeBytes(getIpAddress());
-            dout.writeInt(getPort());
-            dout.writeInt(getID().length());
-            dout.writeBytes(getID());
-            dout.writeLong(getTimestamp());
-            dout.writeInt(getPayload());
-            dout.writeInt(getPath().size());
+        return (_hopIndex < _path.length) ? _path[_hopIndex] : -1;
+    }
 
-            // FOR every node in the connection list
-            for (String path : getPath())
-            {
-                // write the length of the string
-                dout.writeInt(path.length());
+    /**
+     * Private method to decode the sender's IP address and ID of a view.
+     */
+    private void decodeSender()
+    {
+        super.setIpAddress(new String(_frame, _offset + 12, _idEntry - 16, StandardCharsets.ISO_8859_1));
+        super.setID(new String(_frame, _offset + _idEntry + 4, _timestampIndex - _idEntry - 4,
+                StandardCharsets.ISO_8859_1));
 
-                // write the actual connection info
-                dout.writeBytes(path);
-            }
+        _senderDecoded = true;
+    }
 
+    /**
+     * Private method to decode the path of a view.
+     */
+    private void decodePath()
+    {
+        int pathStart = _timestampIndex + 16;
 
-            dout.flush();
+        _path = new int[(_pathEnd - pathStart) / ENTRY_SIZE];
+        _hopIndex = (_hopCursor - pathStart) / ENTRY_SIZE;
 
-            // get the byte array
-            marshalledBytes = baOutputStream.toByteArray();
+        // FOR every entry in the path
+        for (int i = 0; i < _path.length; ++i)
+            _path[i] = readInt(_frame, _offset + pathStart + ENTRY_SIZE * i);
 
-            baOutputStream.close();
-            dout.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        _pathDecoded = true;
+    }
+
+    /**
+     * Private method to decode whatever of a view hasn't been, so the message no longer depends on
+     * the frame and can be changed or encoded.
+     */
+    private void materialize()
+    {
+        // IF the message isn't a view
+        if (_frame == null)
+            return;
+
+        if (!_senderDecoded)
+            decodeSender();
 
+        if (!_pathDecoded)
+            decodePath();
 
-        return marshalledBytes;
+        int port = getPort();
+        long timestamp = getTimestamp();
+        int payload = getPayload();
 
+        _frame = null;
 
+        super.setPort(port);
+        super.setTimestamp(timestamp);
+        _payload = payload;
+    }
+
+    /**
+     * Method for a relay to find, without decoding the message, the path entry of the node a
+     * PayloadMessage goes to after the receiving node.
+     *
+     * @param data   <code>byte[]</code> holding the PayloadMessage.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     * @return <code>int</code> index in the message of the next hop's entry: its index, as readInt()
+     * reads it. -1 if the receiving node is the sink.
+     */
+    public static int nextHop(byte[] data, int offset, int length)
+    {
+        int nextHop = readInt(data, offset + HOP_CURSOR_OFFSET) + ENTRY_SIZE;
+
+        return (nextHop <= length - ENTRY_SIZE) ? nextHop : -1;
+    }
+
+    /**
+     * Method for a relay to move the hop cursor of a PayloadMessage in place.
+     *
+     * @param data      <code>byte[]</code> holding the PayloadMessage.
+     * @param offset    <code>int</code> index in data of the first byte of the message.
+     * @param hopCursor <code>int</code> index in the message of the entry the cursor is to point to.
+     */
+    public static void setHopCursor(byte[] data, int offset, int hopCursor)
+    {
+        data[offset + HOP_CURSOR_OFFSET] = (byte) (hopCursor >>> 24);
+        data[offset + HOP_CURSOR_OFFSET + 1] = (byte) (hopCursor >>> 16);
+        data[offset + HOP_CURSOR_OFFSET + 2] = (byte) (hopCursor >>> 8);
+        data[offset + HOP_CURSOR_OFFSET + 3] = (byte) hopCursor;
+    }
+
+    /**
+     * Method to hash the ID of the node a PayloadMessage came from, without decoding the message, so
+     * every message from one source can be kept to the same stripe of a Link and stay in order.
+     *
+     * @param data   <code>byte[]</code> holding the PayloadMessage.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @return <code>int</code> hash of the source ID.
+     */
+    public static int flowHash(byte[] data, int offset)
+    {
+        int idEntry = offset + 16 + readInt(data, offset + 8);
+        int idLength = readInt(data, idEntry);
+
+        int hash = 0;
+
+        for (int i = idEntry + 4; i < idEntry + 4 + idLength; ++i)
+            hash = 31 * hash + data[i];
+
+        return hash;
+    }
+
+    /**
+     * Method to read a big-endian int, as DataOutputStream writes it, out of a byte array.
+     *
+     * @param data  <code>byte[]</code> to read from.
+     * @param index <code>int</code> index of the first byte.
+     * @return <code>int</code> read.
+     */
+    public static int readInt(byte[] data, int index)
+    {
+        return ((data[index] & 0xFF) << 24) | ((data[index + 1] & 0xFF) << 16) | ((data[index + 2] & 0xFF) << 8) |
+                (data[index + 3] & 0xFF);
     }
 
     public static void main(String[] args)
@@ -372,18 +633,132 @@ public class PayloadMessage extends Message implements Event
 
     }
 
-    public LinkedList<String> getPath()
+    /**
+     * ************************* OVERIDDEN METHODS **********************************
+     */
+    @Override
+    public String getIpAddress()
+    {
+        // IF the sender of a view hasn't been decoded yet
+        if (_frame != null && !_senderDecoded)
+            decodeSender();
+
+        return super.getIpAddress();
+    }
+
+    @Override
+    public void setIpAddress(String ipAddress)
+    {
+        materialize();
+        super.setIpAddress(ipAddress);
+    }
+
+    @Override
+    public int getPort()
+    {
+        // IF the message is a view, the port is just before the ID's entry
+        if (_frame != null)
+            return readInt(_frame, _offset + _idEntry - 4);
+
+        return super.getPort();
+    }
+
+    @Override
+    public void setPort(int portNum)
+    {
+        materialize();
+        super.setPort(portNum);
+    }
+
+    @Override
+    public String getID()
+    {
+        // IF the sender of a view hasn't been decoded yet
+        if (_frame != null && !_senderDecoded)
+            decodeSender();
+
+        return super.getID();
+    }
+
+    @Override
+    public void setID(String ID)
+    {
+        materialize();
+        super.setID(ID);
+    }
+
+    @Override
+    public long getTimestamp()
+    {
+        // IF the message is a view
+        if (_frame != null)
+            return ((long) readInt(_frame, _offset + _timestampIndex) << 32) |
+                    (readInt(_frame, _offset + _timestampIndex + 4) & 0xFFFFFFFFL);
+
+        return super.getTimestamp();
+    }
+
+    @Override
+    public void setTimestamp(long timestamp)
+    {
+        materialize();
+        super.setTimestamp(timestamp);
+    }
+
+
+    /**
+     * ************************* ACCESSORS AND MUTATORS ******************************
+     */
+
+    public int[] getPath()
     {
+        // IF the path of a view hasn't been decoded yet
+        if (_frame != null && !_pathDecoded)
+            decodePath();
+
         return _path;
     }
 
+    /**
+     * Method to set the path the message is to take, the node it is first sent to first. The array
+     * is kept rather than copied, so one route can be given to every message sent along it.
+     *
+     * @param path <code>int[]</code> of the indices of the nodes in the path.
+     */
+    public void setPath(int[] path)
+    {
+        materialize();
+        _path = path;
+        _hopIndex = 0;
+    }
+
+    public int getHopIndex()
+    {
+        // IF the path of a view hasn't been decoded, the cursor gives where the receiving node is
+        if (_frame != null && !_pathDecoded)
+            return (_hopCursor - _timestampIndex - 16) / ENTRY_SIZE;
+
+        return _hopIndex;
+    }
+
+    public void setHopIndex(int hopIndex)
+    {
+        materialize();
+        _hopIndex = hopIndex;
+    }
+
     public int getPayload()
     {
+        // IF the message is a view
+        if (_frame != null)
+            return readInt(_frame, _offset + _timestampIndex + 8);
+
         return _payload;
     }
 
     public void setPayload(int payload)
     {
+        materialize();
         _payload = payload;
     }
 }
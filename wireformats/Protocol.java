@@ -22,5 +22,24 @@ public interface Protocol
     public static final int PAYLOAD_MESSAGE = 7500;
     public static final int PULL_TRAFFIC_SUMMARY = 8000;
     public static final int DEREGISTRATION_REQUEST = 9000;
+    public static final int FLOW_CREDIT = 9500;
+    public static final int SHARED_MEMORY_OFFER = 10000;
+    public static final int SHARED_MEMORY_RESPONSE = 10500;
+    public static final int LINK_CAPABILITIES = 11000;
+    public static final int COMPRESSED_BATCH = 11500;
+    public static final int LINK_PING = 12000;
+    public static final int LINK_PONG = 12500;
+    public static final int LINK_LATENCY = 13000;
+    public static final int STRIPE_JOIN = 13500;
+    public static final int LINK_EMULATION = 14000;
+    public static final int LINK_ACK = 14500;
+    public static final int LINK_RESUME = 15000;
+    public static final int COMPACT_PAYLOAD_MESSAGE = 15500;
+
+    /**
+     * Optional link features, as flags in a LinkCapabilities message
+     */
+    public static final int CAPABILITY_DEFLATE = 1;
+    public static final int CAPABILITY_COMPACT = 2;
 
 }
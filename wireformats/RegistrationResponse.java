@@ -2,29 +2,38 @@ package cs455.overlay.wireformats;
 
 import cs455.overlay.exceptions.MessageTypeException;
 
-import java.io.*;
-import java.util.Date;
+import java.nio.ByteBuffer;
 
 /**
  * A RegistrationResponse class defining what a Registration request response message is.
  * This message will notify the calling MessagingNode whether the registration was successful
- * or not.
+ * or not, and if it was, of the index the Registry assigned the node. Indices are dense, from 0,
+ * and a node's index stands for its ID wherever a message would otherwise repeat it.
  *
  * @author ahrtmn, 27 01 2014
  */
+@WireMessage(timestampAfter = "nodeIndex")
 public class RegistrationResponse extends Message implements Event
 {
 
     /**
      * boolean for the status code of registration
      */
+    @WireField
     private boolean _status;
 
     /**
      * String for the description of the register response
      */
+    @WireField
     private String _description;
 
+    /**
+     * int for the index the Registry assigned the registering node; -1 if it wasn't assigned one
+     */
+    @WireField
+    private int _nodeIndex;
+
 
     /**
      * Default constructor
@@ -44,17 +53,16 @@ public class RegistrationResponse extends Message implements Event
         setPort(portNumber);
         setID(ID);
 
-        /**
-         * Get the current time stamp of message creation
-         */
-        Date date = new Date();
-        setTimestamp(date.getTime());
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
 
         // Set the status to false
         _status = false;
 
         _description = "";
 
+        _nodeIndex = -1;
+
     }
 
 
@@ -67,121 +75,59 @@ public class RegistrationResponse extends Message implements Event
      */
     public RegistrationResponse(byte[] data) throws MessageTypeException
     {
+        this(data, 0, data.length);
+    }
 
-        /**
-         * Set up appropriate streams to read the fields from the byte array
-         * into the private data members.
-         */
-        ByteArrayInputStream baInputStream =
-                new ByteArrayInputStream(data);
-
-        DataInputStream din = new DataInputStream(new BufferedInputStream(baInputStream));
-
-
-        /**
-         * Try to read the message data in from the byte array
-         */
-        try
-        {
-            // read the type of the message
-            setType(din.readInt());
-
-            // read the ip addresses bytes
-            int ipLength = din.readInt();
-            byte[] ipBytes = new byte[ipLength];
-            din.readFully(ipBytes);
-            setIpAddress(new String(ipBytes));
-
-            // get the port number
-            setPort(din.readInt());
-
-            // get the ID
-            int idLength = din.readInt();
-            byte[] id = new byte[idLength];
-            din.readFully(id);
-            setID(new String(id));
-
-            // get the status
-            _status = din.readBoolean();
-
-            // read the description
-            int descLength = din.readInt();
-            byte[] desc = new byte[descLength];
-            din.readFully(desc);
-            setDescription(new String(desc));
-
-            // get the time stamp
-            setTimestamp(din.readLong());
-
-
-            baInputStream.close();
-            din.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-
-        // IF the message type isn't appropriate to this message
-        if (getType() != Protocol.REGISTRATION_RESPONSE)
-            throw new MessageTypeException("Invalid message type! RegistrationRequest must be " + Protocol
-                    .REGISTRATION_REQUEST + "!");
 
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the RegistrationResponse message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public RegistrationResponse(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
     }
 
+
     /**
      * Event interface method
-     * Returns the current message in bytes
+     * Returns the number of bytes the message takes up on the wire
      *
-     * @return <code>byte[]</code> of the message transformed into a byte array.
+     * @return <code>int</code> of the length of the message transformed into bytes.
      */
-    public byte[] getBytes()
+    public int encodedSize()
     {
-
-        /**
-         * Create an empty byte array and get the appropriate streams to be able to
-         * write to it.
-         */
-
-        byte[] marshalledBytes = null;
-        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
-        DataOutputStream dout =
-                new DataOutputStream(new BufferedOutputStream(baOutputStream));
-
-
-        try
-        {
-            /**
-             * Write the message data to the stream
-             */
-            dout.writeInt(getType());
-            dout.writeInt(getIpAddress().length());
-            dout.writeBytes(getIpAddress());
-            dout.writeInt(getPort());
-            dout.writeInt(getID().length());
-            dout.writeBytes(getID());
-            dout.writeBoolean(_status);
-            dout.writeInt(getDescription().length());
-            dout.writeBytes(getDescription());
-            dout.writeLong(getTimestamp());
-
-            dout.flush();
-
-            // get the byte array
-            marshalledBytes = baOutputStream.toByteArray();
-
-            baOutputStream.close();
-            dout.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        return MessageCodecs.encodedSize(this);
+    }
 
 
-        return marshalledBytes;
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
 
 
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
     }
 
     /**
@@ -207,5 +153,14 @@ public class RegistrationResponse extends Message implements Event
     {
         _description = description;
     }
-}
 
+    public int getNodeIndex()
+    {
+        return _nodeIndex;
+    }
+
+    public void setNodeIndex(int nodeIndex)
+    {
+        _nodeIndex = nodeIndex;
+    }
+}
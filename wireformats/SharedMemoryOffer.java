@@ -0,0 +1,134 @@
+package cs455.overlay.wireformats;
+
+import cs455.overlay.exceptions.MessageTypeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A SharedMemoryOffer class defining what a SharedMemoryOffer message is. This message is sent by
+ * a MessagingNode ahead of its NodeRegistrationRequest to offer the node it dialed a memory-mapped
+ * ring file to carry the Link instead of TCP. The other node answers with a SharedMemoryResponse.
+ */
+@WireMessage
+public class SharedMemoryOffer extends Message implements Event
+{
+    /**
+     * String for the path of the ring file
+     */
+    @WireField
+    private String _path = "";
+
+    /**
+     * long written in the ring file, for the other node to make sure it opened the file offered
+     */
+    @WireField
+    private long _nonce;
+
+    /**
+     * Default constructor
+     */
+    public SharedMemoryOffer()
+    {
+        this("", 0, "");
+    }
+
+    /**
+     * Standard constructor
+     */
+    public SharedMemoryOffer(String ipAddress, int portNumber, String id)
+    {
+        setType(Protocol.SHARED_MEMORY_OFFER);
+        setIpAddress(ipAddress);
+        setPort(portNumber);
+        setID(id);
+
+        // get the current time stamp of message creation
+        setTimestamp(System.currentTimeMillis());
+
+    }
+
+
+    /**
+     * Overloaded constructor to be used by the TCPReceiverThread. This constructor allows
+     * the caller to pass a byte array of the entire message and (assuming its the correct type)
+     * have the message construct itself from the byte array.
+     *
+     * @param data <code>byte[]</code> of all the data belonging to the SharedMemoryOffer message type
+     */
+    public SharedMemoryOffer(byte[] data) throws MessageTypeException
+    {
+        this(data, 0, data.length);
+    }
+
+
+    /**
+     * Overloaded constructor to be used when the message is only part of a larger byte array, such as
+     * a receive buffer holding several frames, so it can be decoded where it lies without a copy.
+     *
+     * @param data   <code>byte[]</code> holding the SharedMemoryOffer message.
+     * @param offset <code>int</code> index in data of the first byte of the message.
+     * @param length <code>int</code> number of bytes in the message.
+     */
+    public SharedMemoryOffer(byte[] data, int offset, int length) throws MessageTypeException
+    {
+        this();
+        readFrom(ByteBuffer.wrap(data, offset, length));
+    }
+
+
+    /**
+     * Event interface method
+     * Returns the number of bytes the message takes up on the wire
+     *
+     * @return <code>int</code> of the length of the message transformed into bytes.
+     */
+    public int encodedSize()
+    {
+        return MessageCodecs.encodedSize(this);
+    }
+
+
+    /**
+     * Event interface method
+     * Writes the message into a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> with at least encodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        MessageCodecs.writeTo(this, buffer);
+    }
+
+
+    /**
+     * Event interface method
+     * Reads the message's fields from a buffer
+     *
+     * @param buffer <code>ByteBuffer</code> holding the message.
+     * @throws MessageTypeException if the buffer holds a message of another type.
+     */
+    public void readFrom(ByteBuffer buffer) throws MessageTypeException
+    {
+        MessageCodecs.readFrom(this, buffer);
+    }
+
+    public String getPath()
+    {
+        return _path;
+    }
+
+    public void setPath(String path)
+    {
+        _path = path;
+    }
+
+    public long getNonce()
+    {
+        return _nonce;
+    }
+
+    public void setNonce(long nonce)
+    {
+        _nonce = nonce;
+    }
+}
@@ -0,0 +1,22 @@
+package cs455.overlay.wireformats;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A WireField annotation marking a field of a WireMessage that goes over the wire. The field is read
+ * and written through its accessor and mutator, named after it without its leading underscore
+ * (_numSent is getNumSent() and setNumSent()), and goes over the wire as:
+ *
+ * int, long    4 or 8 bytes, big endian
+ * boolean      a byte, 1 or 0
+ * String       its length as an int, then the low byte of every character (see Message.putString())
+ * byte[]       its length as an int, then its bytes
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface WireField
+{
+}
@@ -0,0 +1,23 @@
+package cs455.overlay.wireformats;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A WireMessage annotation marking a Message subclass whose codec is generated into MessageCodecs
+ * (see util.MessageCodecProcessor). On the wire the message is its header (the type, the sender's IP
+ * address, port and ID, and the time stamp), followed by the fields of the class marked WireField, in
+ * the order they are declared. Fields the class inherits from anything but Message are not part of it.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface WireMessage
+{
+    /**
+     * @return <code>String</code> of the name of the WireField the time stamp follows, for a message that
+     * goes over the wire with its time stamp after its own fields; empty for one with it in its header.
+     */
+    String timestampAfter() default "";
+}